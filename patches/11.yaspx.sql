@@ -0,0 +1,72 @@
+SET @OLD_UNIQUE_CHECKS=@@UNIQUE_CHECKS, UNIQUE_CHECKS=0;
+SET @OLD_FOREIGN_KEY_CHECKS=@@FOREIGN_KEY_CHECKS, FOREIGN_KEY_CHECKS=0;
+SET @OLD_SQL_MODE=@@SQL_MODE, SQL_MODE='TRADITIONAL,ALLOW_INVALID_DATES';
+
+-- -----------------------------------------------------
+-- Table `$prefix_total_blocks`
+-- Merge duplicate rows, then add the composite unique key used by the upserts
+-- -----------------------------------------------------
+DROP TEMPORARY TABLE IF EXISTS `$prefix_tmp_total_blocks`;
+CREATE TEMPORARY TABLE `$prefix_tmp_total_blocks` AS
+  SELECT MIN(`total_blocks_id`) AS `total_blocks_id`, `player_id`, `material_id`, SUM(`destroyed`) AS `destroyed`, SUM(`placed`) AS `placed`
+  FROM `$prefix_total_blocks` GROUP BY `player_id`, `material_id` HAVING COUNT(*) > 1;
+DELETE t FROM `$prefix_total_blocks` t JOIN `$prefix_tmp_total_blocks` d ON t.`player_id` = d.`player_id` AND t.`material_id` = d.`material_id` AND t.`total_blocks_id` <> d.`total_blocks_id`;
+UPDATE `$prefix_total_blocks` t JOIN `$prefix_tmp_total_blocks` d ON t.`total_blocks_id` = d.`total_blocks_id` SET t.`destroyed` = d.`destroyed`, t.`placed` = d.`placed`;
+DROP TEMPORARY TABLE `$prefix_tmp_total_blocks`;
+ALTER TABLE `$prefix_total_blocks` ADD UNIQUE KEY `uq_player_material1` (`player_id`, `material_id`);
+
+-- -----------------------------------------------------
+-- Table `$prefix_total_items`
+-- Merge duplicate rows, then add the composite unique key used by the upserts
+-- -----------------------------------------------------
+DROP TEMPORARY TABLE IF EXISTS `$prefix_tmp_total_items`;
+CREATE TEMPORARY TABLE `$prefix_tmp_total_items` AS
+  SELECT MIN(`total_items_id`) AS `total_items_id`, `player_id`, `material_id`, SUM(`dropped`) AS `dropped`, SUM(`picked_up`) AS `picked_up`, SUM(`used`) AS `used`, SUM(`crafted`) AS `crafted`, SUM(`smelted`) AS `smelted`, SUM(`broken`) AS `broken`, SUM(`enchanted`) AS `enchanted`, SUM(`repaired`) AS `repaired`
+  FROM `$prefix_total_items` GROUP BY `player_id`, `material_id` HAVING COUNT(*) > 1;
+DELETE t FROM `$prefix_total_items` t JOIN `$prefix_tmp_total_items` d ON t.`player_id` = d.`player_id` AND t.`material_id` = d.`material_id` AND t.`total_items_id` <> d.`total_items_id`;
+UPDATE `$prefix_total_items` t JOIN `$prefix_tmp_total_items` d ON t.`total_items_id` = d.`total_items_id` SET t.`dropped` = d.`dropped`, t.`picked_up` = d.`picked_up`, t.`used` = d.`used`, t.`crafted` = d.`crafted`, t.`smelted` = d.`smelted`, t.`broken` = d.`broken`, t.`enchanted` = d.`enchanted`, t.`repaired` = d.`repaired`;
+DROP TEMPORARY TABLE `$prefix_tmp_total_items`;
+ALTER TABLE `$prefix_total_items` ADD UNIQUE KEY `uq_player_material2` (`player_id`, `material_id`);
+
+-- -----------------------------------------------------
+-- Table `$prefix_total_deaths`
+-- Merge duplicate rows, then add the composite unique key used by the upserts
+-- -----------------------------------------------------
+DROP TEMPORARY TABLE IF EXISTS `$prefix_tmp_total_deaths`;
+CREATE TEMPORARY TABLE `$prefix_tmp_total_deaths` AS
+  SELECT MIN(`total_death_players_id`) AS `total_death_players_id`, `player_id`, `cause`, SUM(`times`) AS `times`
+  FROM `$prefix_total_deaths` GROUP BY `player_id`, `cause` HAVING COUNT(*) > 1;
+DELETE t FROM `$prefix_total_deaths` t JOIN `$prefix_tmp_total_deaths` d ON t.`player_id` = d.`player_id` AND t.`cause` = d.`cause` AND t.`total_death_players_id` <> d.`total_death_players_id`;
+UPDATE `$prefix_total_deaths` t JOIN `$prefix_tmp_total_deaths` d ON t.`total_death_players_id` = d.`total_death_players_id` SET t.`times` = d.`times`;
+DROP TEMPORARY TABLE `$prefix_tmp_total_deaths`;
+ALTER TABLE `$prefix_total_deaths` ADD UNIQUE KEY `uq_player_cause` (`player_id`, `cause`);
+
+-- -----------------------------------------------------
+-- Table `$prefix_total_pvp_kills`
+-- Merge duplicate rows, then add the composite unique key used by the upserts
+-- -----------------------------------------------------
+DROP TEMPORARY TABLE IF EXISTS `$prefix_tmp_total_pvp_kills`;
+CREATE TEMPORARY TABLE `$prefix_tmp_total_pvp_kills` AS
+  SELECT MIN(`total_pvp_id`) AS `total_pvp_id`, `player_id`, `victim_id`, `material_id`, SUM(`times`) AS `times`
+  FROM `$prefix_total_pvp_kills` GROUP BY `player_id`, `victim_id`, `material_id` HAVING COUNT(*) > 1;
+DELETE t FROM `$prefix_total_pvp_kills` t JOIN `$prefix_tmp_total_pvp_kills` d ON t.`player_id` = d.`player_id` AND t.`victim_id` = d.`victim_id` AND t.`material_id` = d.`material_id` AND t.`total_pvp_id` <> d.`total_pvp_id`;
+UPDATE `$prefix_total_pvp_kills` t JOIN `$prefix_tmp_total_pvp_kills` d ON t.`total_pvp_id` = d.`total_pvp_id` SET t.`times` = d.`times`;
+DROP TEMPORARY TABLE `$prefix_tmp_total_pvp_kills`;
+ALTER TABLE `$prefix_total_pvp_kills` ADD UNIQUE KEY `uq_player_victim_material` (`player_id`, `victim_id`, `material_id`);
+
+-- -----------------------------------------------------
+-- Table `$prefix_total_pve_kills`
+-- Merge duplicate rows, then add the composite unique key used by the upserts
+-- -----------------------------------------------------
+DROP TEMPORARY TABLE IF EXISTS `$prefix_tmp_total_pve_kills`;
+CREATE TEMPORARY TABLE `$prefix_tmp_total_pve_kills` AS
+  SELECT MIN(`total_pve_id`) AS `total_pve_id`, `player_id`, `entity_id`, `material_id`, SUM(`player_killed`) AS `player_killed`, SUM(`creature_killed`) AS `creature_killed`
+  FROM `$prefix_total_pve_kills` GROUP BY `player_id`, `entity_id`, `material_id` HAVING COUNT(*) > 1;
+DELETE t FROM `$prefix_total_pve_kills` t JOIN `$prefix_tmp_total_pve_kills` d ON t.`player_id` = d.`player_id` AND t.`entity_id` = d.`entity_id` AND t.`material_id` = d.`material_id` AND t.`total_pve_id` <> d.`total_pve_id`;
+UPDATE `$prefix_total_pve_kills` t JOIN `$prefix_tmp_total_pve_kills` d ON t.`total_pve_id` = d.`total_pve_id` SET t.`player_killed` = d.`player_killed`, t.`creature_killed` = d.`creature_killed`;
+DROP TEMPORARY TABLE `$prefix_tmp_total_pve_kills`;
+ALTER TABLE `$prefix_total_pve_kills` ADD UNIQUE KEY `uq_player_entity_material` (`player_id`, `entity_id`, `material_id`);
+
+SET SQL_MODE=@OLD_SQL_MODE;
+SET FOREIGN_KEY_CHECKS=@OLD_FOREIGN_KEY_CHECKS;
+SET UNIQUE_CHECKS=@OLD_UNIQUE_CHECKS;
@@ -0,0 +1,16 @@
+SET @OLD_UNIQUE_CHECKS=@@UNIQUE_CHECKS, UNIQUE_CHECKS=0;
+SET @OLD_FOREIGN_KEY_CHECKS=@@FOREIGN_KEY_CHECKS, FOREIGN_KEY_CHECKS=0;
+SET @OLD_SQL_MODE=@@SQL_MODE, SQL_MODE='TRADITIONAL,ALLOW_INVALID_DATES';
+
+-- -----------------------------------------------------
+-- Table `$prefix_spool`
+-- Last journal record replayed from the local spool, committed with the replayed rows
+-- -----------------------------------------------------
+CREATE  TABLE IF NOT EXISTS `$dbname`.`$prefix_spool` (
+  `epoch` BIGINT NOT NULL ,
+  `sequence` BIGINT NOT NULL DEFAULT 0 ,
+  PRIMARY KEY (`epoch`) );
+
+SET SQL_MODE=@OLD_SQL_MODE;
+SET FOREIGN_KEY_CHECKS=@OLD_FOREIGN_KEY_CHECKS;
+SET UNIQUE_CHECKS=@OLD_UNIQUE_CHECKS;
@@ -0,0 +1,31 @@
+SET @OLD_UNIQUE_CHECKS=@@UNIQUE_CHECKS, UNIQUE_CHECKS=0;
+SET @OLD_FOREIGN_KEY_CHECKS=@@FOREIGN_KEY_CHECKS, FOREIGN_KEY_CHECKS=0;
+SET @OLD_SQL_MODE=@@SQL_MODE, SQL_MODE='TRADITIONAL,ALLOW_INVALID_DATES';
+
+-- -----------------------------------------------------
+-- Table `$prefix_server_totals`
+-- Server-wide totals, updated with the same deltas as the totals tables
+-- The row is rebuilt from the totals tables by the plugin if it is missing
+-- -----------------------------------------------------
+CREATE  TABLE IF NOT EXISTS `$dbname`.`$prefix_server_totals` (
+  `id` INT NOT NULL ,
+  `blocks_broken` BIGINT(20) NOT NULL DEFAULT 0 ,
+  `blocks_placed` BIGINT(20) NOT NULL DEFAULT 0 ,
+  `distance_foot` DOUBLE NOT NULL DEFAULT 0 ,
+  `distance_ride` DOUBLE NOT NULL DEFAULT 0 ,
+  `distance_minecart` DOUBLE NOT NULL DEFAULT 0 ,
+  `distance_boat` DOUBLE NOT NULL DEFAULT 0 ,
+  `distance_flight` DOUBLE NOT NULL DEFAULT 0 ,
+  `distance_swim` DOUBLE NOT NULL DEFAULT 0 ,
+  `tools_broken` BIGINT(20) NOT NULL DEFAULT 0 ,
+  `items_crafted` BIGINT(20) NOT NULL DEFAULT 0 ,
+  `snacks_eaten` BIGINT(20) NOT NULL DEFAULT 0 ,
+  `pvp_kills` BIGINT(20) NOT NULL DEFAULT 0 ,
+  `pve_kills` BIGINT(20) NOT NULL DEFAULT 0 ,
+  `deaths` BIGINT(20) NOT NULL DEFAULT 0 ,
+  `rebuilt_at` BIGINT(20) NOT NULL DEFAULT 0 ,
+  PRIMARY KEY (`id`) );
+
+SET SQL_MODE=@OLD_SQL_MODE;
+SET FOREIGN_KEY_CHECKS=@OLD_FOREIGN_KEY_CHECKS;
+SET UNIQUE_CHECKS=@OLD_UNIQUE_CHECKS;
@@ -0,0 +1,9 @@
+-- -----------------------------------------------------
+-- Composite unique keys used by the upserts
+-- Embedded databases are created after the duplicate rows were merged, so only the keys are added
+-- -----------------------------------------------------
+ALTER TABLE `$prefix_total_blocks` ADD CONSTRAINT `uq_player_material1` UNIQUE (`player_id`, `material_id`);
+ALTER TABLE `$prefix_total_items` ADD CONSTRAINT `uq_player_material2` UNIQUE (`player_id`, `material_id`);
+ALTER TABLE `$prefix_total_deaths` ADD CONSTRAINT `uq_player_cause` UNIQUE (`player_id`, `cause`);
+ALTER TABLE `$prefix_total_pvp_kills` ADD CONSTRAINT `uq_player_victim_material` UNIQUE (`player_id`, `victim_id`, `material_id`);
+ALTER TABLE `$prefix_total_pve_kills` ADD CONSTRAINT `uq_player_entity_material` UNIQUE (`player_id`, `entity_id`, `material_id`);
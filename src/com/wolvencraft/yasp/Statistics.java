@@ -39,6 +39,7 @@ import org.bukkit.plugin.java.JavaPlugin;
 import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.PatchManager;
 import com.wolvencraft.yasp.db.Query;
+import com.wolvencraft.yasp.db.WriteBehind;
 import com.wolvencraft.yasp.db.data.ServerStatistics;
 import com.wolvencraft.yasp.db.totals.ServerTotals;
 import com.wolvencraft.yasp.listeners.BlockListener;
@@ -49,14 +50,18 @@ import com.wolvencraft.yasp.listeners.ServerListener;
 import com.wolvencraft.yasp.listeners.SessionListener;
 import com.wolvencraft.yasp.listeners.StatsBookListener;
 import com.wolvencraft.yasp.listeners.StatsSignListener;
+import com.wolvencraft.yasp.listeners.handlers.EventRing;
 import com.wolvencraft.yasp.settings.LocalConfiguration;
 import com.wolvencraft.yasp.settings.Module;
 import com.wolvencraft.yasp.settings.RemoteConfiguration;
 import com.wolvencraft.yasp.util.ExceptionHandler;
 import com.wolvencraft.yasp.util.Message;
 import com.wolvencraft.yasp.util.cache.CachedData;
+import com.wolvencraft.yasp.util.cache.EntityCache;
+import com.wolvencraft.yasp.util.cache.MaterialCache;
 import com.wolvencraft.yasp.util.cache.OnlineSessionCache;
 import com.wolvencraft.yasp.util.tasks.DatabaseTask;
+import com.wolvencraft.yasp.util.tasks.MovementTask;
 import com.wolvencraft.yasp.util.tasks.RefreshTask;
 import com.wolvencraft.yasp.util.tasks.SignRefreshTask;
 import com.wolvencraft.yasp.util.tasks.SignRefreshTask.StatsSign;
@@ -128,6 +133,12 @@ public class Statistics extends JavaPlugin {
         
         Message.log("Database connection established.");
         
+        new WriteBehind();
+        new EventRing();
+        
+        MaterialCache.load();
+        EntityCache.load();
+        
         hookManager = new HookManager();
         hookManager.onEnable();
         
@@ -167,6 +178,7 @@ public class Statistics extends JavaPlugin {
         
         Bukkit.getScheduler().runTaskTimer(this, new SignRefreshTask(), ping, ping);
         Bukkit.getScheduler().runTaskTimer(this, new TickTask(), 0L, 1L);
+        Bukkit.getScheduler().runTaskTimer(this, new MovementTask(), 20L, 20L);
     }
 
     @Override
@@ -174,10 +186,12 @@ public class Statistics extends JavaPlugin {
         if(crashed) { crashed = false; return; }
         
         try {
+            MovementTask.flushAll();
             for(Player player : Bukkit.getOnlinePlayers()) {
                 OnlineSessionCache.fetch(player).getPlayersData().addPlayerLog(player.getLocation(), false);
             }
-            DatabaseTask.commit();
+            EventRing.shutdown();
+            DatabaseTask.commit(true);
             serverStatistics.pluginShutdown();
             OnlineSessionCache.dumpSessions();
             CachedData.stopAll();
@@ -186,6 +200,7 @@ public class Statistics extends JavaPlugin {
             
             hookManager.onDisable();
 
+            WriteBehind.shutdown();
             Database.close();
         } catch (Throwable t) { 
             Message.log(Level.SEVERE, t.getMessage());
@@ -20,22 +20,30 @@
 
 package com.wolvencraft.yasp.cmd;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
 import com.wolvencraft.yasp.CommandManager;
 import com.wolvencraft.yasp.CommandManager.Command;
 import com.wolvencraft.yasp.Statistics;
+import com.wolvencraft.yasp.db.ConnectionPool;
 import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.Query;
-import com.wolvencraft.yasp.db.Query.QueryResult;
+import com.wolvencraft.yasp.db.QueryCursor;
+import com.wolvencraft.yasp.db.WriteBehind;
+import com.wolvencraft.yasp.db.data.players.ProfileLoader;
 import com.wolvencraft.yasp.db.tables.Normal.PlayerStats;
+import com.wolvencraft.yasp.listeners.handlers.EventRing;
+import com.wolvencraft.yasp.session.OnlineSession;
 import com.wolvencraft.yasp.settings.Constants.StatPerms;
 import com.wolvencraft.yasp.util.ExceptionHandler;
 import com.wolvencraft.yasp.util.Message;
+import com.wolvencraft.yasp.util.cache.OfflineSessionCache;
 import com.wolvencraft.yasp.util.cache.OnlineSessionCache;
 import com.wolvencraft.yasp.util.tasks.DatabaseTask;
 import com.wolvencraft.yasp.util.tasks.SignRefreshTask;
@@ -59,12 +67,17 @@ public class DatabaseCommands {
             public void run() {
                 DatabaseTask.commit();
                 
-                List<QueryResult> results= Query.table(PlayerStats.TableName).column(PlayerStats.Name).condition(PlayerStats.Online, true).selectAll();
-                for(QueryResult result : results) {
-                    String playerName = result.asString(PlayerStats.Name);
-                    if(Bukkit.getPlayerExact(playerName) == null)
-                        Query.table(PlayerStats.TableName).value(PlayerStats.Online, false).condition(PlayerStats.Name, playerName).update();
-                }
+                List<String> offline = new ArrayList<String>();
+                QueryCursor results = Query.table(PlayerStats.TableName).column(PlayerStats.Name).condition(PlayerStats.Online, true).stream();
+                try {
+                    while(results.hasNext()) {
+                        String playerName = results.next().asString(PlayerStats.Name);
+                        if(Bukkit.getPlayerExact(playerName) == null) offline.add(playerName);
+                    }
+                } finally { results.close(); }
+                
+                for(String playerName : offline)
+                    Query.table(PlayerStats.TableName).value(PlayerStats.Online, false).condition(PlayerStats.Name, playerName).update();
                 
                 Bukkit.getScheduler().runTask(Statistics.getInstance(), new Runnable() {
                     
@@ -176,6 +189,83 @@ public class DatabaseCommands {
         }
     }
     
+    @Command(
+            alias = "rebuild",
+            minArgs = 0,
+            maxArgs = 0,
+            permission = "stats.cmd.rebuild",
+            allowConsole = true,
+            usage = "/stats rebuild",
+            description = "Recalculates the server totals from the totals tables"
+            )
+    public static boolean rebuild(List<String> args) {
+        final CommandSender sender = CommandManager.getSender();
+        Bukkit.getScheduler().runTaskAsynchronously(Statistics.getInstance(), new Runnable() {
+            
+            @Override
+            public void run() {
+                if(DatabaseTask.rebuildTotals()) Message.sendFormattedSuccess(sender, "Server totals rebuilt");
+                else Message.sendFormattedError(sender, "An error occurred while rebuilding the server totals");
+            }
+            
+        });
+        return true;
+    }
+    
+    @Command(
+            alias = "pool",
+            minArgs = 0,
+            maxArgs = 0,
+            permission = "stats.cmd.pool",
+            allowConsole = true,
+            usage = "/stats pool",
+            description = "Displays the database connection pool, connection breaker and commit statistics"
+            )
+    public static boolean pool(List<String> args) {
+        ConnectionPool pool = Database.getPool();
+        if(pool == null) {
+            Message.sendFormattedError(CommandManager.getSender(), "The database connection is closed");
+            return false;
+        }
+        Message.formatHeader(20, "Connection Pool");
+        Message.send(ChatColor.GREEN + "Active: " + ChatColor.GRAY + pool.getActive() + " / " + pool.getMaxSize());
+        Message.send(ChatColor.GREEN + "Idle: " + ChatColor.GRAY + pool.getIdle() + " (min " + pool.getMinSize() + ")");
+        Message.send(ChatColor.GREEN + "Leases: " + ChatColor.GRAY + pool.getBorrowCount());
+        Message.send(ChatColor.GREEN + "Wait time: " + ChatColor.GRAY + String.format("%.2f", pool.getAverageWait()) + " ms avg, " + String.format("%.2f", pool.getMaxWait()) + " ms max");
+        Message.send(ChatColor.GREEN + "Timeouts: " + ChatColor.GRAY + pool.getTimeoutCount());
+        Message.send(ChatColor.GREEN + "Broken connections: " + ChatColor.GRAY + pool.getInvalidatedCount());
+        Message.send(ChatColor.GREEN + "Connection: " + ChatColor.GRAY + Database.getBreakerState() + (Database.getOutageDuration() > 0 ? " for " + (Database.getOutageDuration() / 1000) + " s" : ""));
+        Message.send(ChatColor.GREEN + "Outages: " + ChatColor.GRAY + Database.getOutageCount() + " (" + (Database.getTotalOutage() / 1000) + " s total, " + Database.getProbeCount() + " probes)");
+        Message.send(ChatColor.GREEN + "Commits: " + ChatColor.GRAY + Database.getCommitCount() + " (" + Database.getRollbackCount() + " rolled back)");
+        Message.send(ChatColor.GREEN + "Commit latency: " + ChatColor.GRAY + String.format("%.2f", Database.getAverageCommitLatency()) + " ms avg, " + String.format("%.2f", Database.getMaxCommitLatency()) + " ms max");
+        Message.send(ChatColor.GREEN + "Write queue: " + ChatColor.GRAY + WriteBehind.getQueueDepth() + (WriteBehind.isRunning() ? "" : " (stopped)"));
+        Message.send(ChatColor.GREEN + "Flushes: " + ChatColor.GRAY + WriteBehind.getFlushCount() + " (" + WriteBehind.getWrittenCount() + " statements, " + WriteBehind.getCoalescedCount() + " coalesced)");
+        Message.send(ChatColor.GREEN + "Flush latency: " + ChatColor.GRAY + String.format("%.2f", WriteBehind.getAverageFlushLatency()) + " ms avg, " + String.format("%.2f", WriteBehind.getMaxFlushLatency()) + " ms max");
+        Message.send(ChatColor.GREEN + "Dropped rows: " + ChatColor.GRAY + WriteBehind.getDroppedCount() + ", failed units: " + WriteBehind.getFailedCount());
+        if(WriteBehind.getSpoolPending() >= 0)
+            Message.send(ChatColor.GREEN + "Spool: " + ChatColor.GRAY + WriteBehind.getSpoolPending() + " pending (" + WriteBehind.getSpooledCount() + " spooled, " + WriteBehind.getReplayedCount() + " replayed)");
+        return true;
+    }
+    
+    @Command(
+            alias = "metrics",
+            minArgs = 0,
+            maxArgs = 0,
+            permission = "stats.cmd.metrics",
+            allowConsole = true,
+            usage = "/stats metrics",
+            description = "Displays the event handling and session cache statistics"
+            )
+    public static boolean metrics(List<String> args) {
+        Message.formatHeader(20, "Metrics");
+        Message.send(ChatColor.GREEN + "Event ring: " + ChatColor.GRAY + EventRing.getOccupancy() + " / " + EventRing.getCapacity() + " (" + EventRing.getConsumerCount() + " consumers" + (EventRing.isRunning() ? "" : ", stopped") + ")");
+        Message.send(ChatColor.GREEN + "Events: " + ChatColor.GRAY + EventRing.getHandledCount() + " / " + EventRing.getPublishedCount() + " handled, " + String.format("%.1f", EventRing.getAverageBatch()) + " per batch, " + EventRing.getOverflowCount() + " overflowed, " + EventRing.getDroppedCount() + " dropped");
+        Message.send(ChatColor.GREEN + "Offline sessions: " + ChatColor.GRAY + OfflineSessionCache.size() + " cached, " + OfflineSessionCache.getHitCount() + " hits, " + OfflineSessionCache.getMissCount() + " misses, " + OfflineSessionCache.getEvictionCount() + " evicted, " + OfflineSessionCache.getRefreshCount() + " refreshed");
+        Message.send(ChatColor.GREEN + "Profiles: " + ChatColor.GRAY + ProfileLoader.getLoadedCount() + " loaded, " + String.format("%.1f", ProfileLoader.getAverageBatch()) + " per batch");
+        Message.send(ChatColor.GREEN + "Pre-ready events: " + ChatColor.GRAY + OnlineSession.getBufferedCount() + " buffered, " + OnlineSession.getReplayedCount() + " replayed, " + OnlineSession.getOverflowCount() + " overflowed");
+        return true;
+    }
+    
     @Command(
             alias = "dump",
             minArgs = 0,
@@ -0,0 +1,284 @@
+/*
+ * CircuitBreaker.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.db;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import com.wolvencraft.yasp.util.ExceptionHandler;
+import com.wolvencraft.yasp.util.Message;
+
+/**
+ * Tracks the health of the database connection.<br />
+ * The breaker is <b>closed</b> while the database is healthy. After a number of consecutive connection failures it <b>opens</b>,
+ * and database calls fail fast instead of waiting for connections that cannot be established. While it is open, a health probe
+ * runs on its own schedule, with an exponential backoff and jitter between attempts. Once a probe succeeds, the breaker is
+ * <b>half-open</b>: calls are let through again, and the first one to succeed closes the breaker, while the first one to fail opens it again.
+ * @author bitWolfy
+ *
+ */
+public class CircuitBreaker {
+
+    private final Callable<Boolean> probe;
+    private final int failureThreshold;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final Random random;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile State state;
+    private volatile int failures;
+    private int attempts;
+    private long openedAt;
+    private long totalOutage;
+    private long tripCount;
+    private long probeCount;
+    private ScheduledFuture<?> scheduled;
+
+    /**
+     * <b>Default constructor</b><br />
+     * Creates a new, closed circuit breaker
+     * @param probe Health check, returning <b>true</b> if the database can be reached
+     * @param failureThreshold Number of consecutive connection failures that open the breaker
+     * @param baseDelay Delay before the first probe, in milliseconds
+     * @param maxDelay Maximum delay between probes, in milliseconds
+     */
+    public CircuitBreaker(Callable<Boolean> probe, int failureThreshold, long baseDelay, long maxDelay) {
+        this.probe = probe;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.baseDelay = Math.max(100, baseDelay);
+        this.maxDelay = Math.max(this.baseDelay, maxDelay);
+        this.random = new Random();
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Statistics-HealthProbe");
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+
+        this.state = State.Closed;
+        this.failures = 0;
+        this.attempts = 0;
+        this.openedAt = 0;
+        this.totalOutage = 0;
+        this.tripCount = 0;
+        this.probeCount = 0;
+        this.scheduled = null;
+    }
+
+    /**
+     * Checks if database calls should be attempted
+     * @return <b>false</b> if the breaker is open and calls should fail fast, <b>true</b> otherwise
+     */
+    public boolean allow() {
+        return state != State.Open;
+    }
+
+    /**
+     * Records a successful database call.<br />
+     * Closes the breaker if it was not closed already.
+     */
+    public void recordSuccess() {
+        if(state == State.Closed && failures == 0) return;
+        synchronized(this) {
+            failures = 0;
+            if(state != State.Closed) close();
+        }
+    }
+
+    /**
+     * Records a database call that failed because the connection could not be established or was lost.<br />
+     * Opens the breaker once the failure threshold is reached, or right away if the breaker is half-open.
+     */
+    public synchronized void recordFailure() {
+        switch(state) {
+            case Closed:
+                if(++failures >= failureThreshold) open();
+                break;
+            case HalfOpen:
+                open();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Runs the health probe right away, regardless of the schedule
+     * @return <b>true</b> if the database can be reached, <b>false</b> otherwise
+     */
+    public boolean probe() {
+        boolean healthy = check();
+        synchronized(this) {
+            if(healthy) {
+                failures = 0;
+                if(state != State.Closed) close();
+            } else if(state == State.Open) {
+                schedule();
+            } else recordFailure();
+        }
+        return healthy;
+    }
+
+    /**
+     * Stops the health probe
+     */
+    public synchronized void shutdown() {
+        if(scheduled != null) scheduled.cancel(false);
+        scheduled = null;
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Opens the breaker and schedules the health probe
+     */
+    private void open() {
+        if(openedAt == 0) {
+            openedAt = System.currentTimeMillis();
+            tripCount++;
+            Message.log(Level.WARNING, "Lost connection to the database. Database calls are suspended until it can be reached again.");
+        }
+        state = State.Open;
+        schedule();
+    }
+
+    /**
+     * Closes the breaker and records the length of the outage
+     */
+    private void close() {
+        state = State.Closed;
+        failures = 0;
+        attempts = 0;
+        if(scheduled != null) scheduled.cancel(false);
+        scheduled = null;
+        if(openedAt != 0) {
+            long outage = System.currentTimeMillis() - openedAt;
+            totalOutage += outage;
+            openedAt = 0;
+            Message.log("Connection to the database re-established after " + (outage / 1000) + " seconds.");
+        }
+    }
+
+    /**
+     * Schedules the next run of the health probe.<br />
+     * The delay doubles with every attempt, up to the maximum; half of it is randomized,
+     * so that several servers do not probe a recovering database at the same time.
+     */
+    private void schedule() {
+        if(scheduler.isShutdown()) return;
+        if(scheduled != null) scheduled.cancel(false);
+
+        long delay = baseDelay << Math.min(attempts, 20);
+        if(delay <= 0 || delay > maxDelay) delay = maxDelay;
+        delay = delay / 2 + (long) (random.nextDouble() * (delay / 2));
+        attempts++;
+
+        Message.debug("Next database health probe in " + delay + " ms");
+        scheduled = scheduler.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                boolean healthy = check();
+                synchronized(CircuitBreaker.this) {
+                    if(state != State.Open) return;
+                    if(healthy) state = State.HalfOpen;
+                    else schedule();
+                }
+            }
+
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the health check
+     * @return <b>true</b> if the database can be reached, <b>false</b> otherwise
+     */
+    private boolean check() {
+        synchronized(this) { probeCount++; }
+        try { return probe.call(); }
+        catch (Throwable t) {
+            ExceptionHandler.handle(t);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the current state of the breaker
+     * @return Breaker state
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the length of the ongoing outage
+     * @return Time since the breaker opened, in milliseconds, or <b>0</b> if the database is reachable
+     */
+    public synchronized long getOutageDuration() {
+        if(openedAt == 0) return 0;
+        return System.currentTimeMillis() - openedAt;
+    }
+
+    /**
+     * Returns the total length of all outages since the plugin was enabled
+     * @return Total outage time, in milliseconds
+     */
+    public synchronized long getTotalOutage() {
+        return totalOutage + getOutageDuration();
+    }
+
+    /**
+     * Returns the number of times the breaker has opened
+     * @return Trip count
+     */
+    public synchronized long getTripCount() {
+        return tripCount;
+    }
+
+    /**
+     * Returns the number of health probes run
+     * @return Probe count
+     */
+    public synchronized long getProbeCount() {
+        return probeCount;
+    }
+
+    /**
+     * Represents the state of the breaker
+     * @author bitWolfy
+     *
+     */
+    public enum State {
+        Closed,
+        Open,
+        HalfOpen;
+    }
+}
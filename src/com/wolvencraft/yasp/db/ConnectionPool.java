@@ -0,0 +1,467 @@
+/*
+ * ConnectionPool.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import com.wolvencraft.yasp.exceptions.PoolExhaustedException;
+import com.wolvencraft.yasp.util.Message;
+
+/**
+ * Bounded pool of database connections.<br />
+ * Connections are leased for the duration of a single task and validated when they are borrowed.
+ * @author bitWolfy
+ *
+ */
+public class ConnectionPool {
+
+    private static final int VALIDATION_TIMEOUT = 2;
+    private static final long POLL_INTERVAL = 100L;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final String GENERATED_KEYS = "#keys:";
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    @Getter(AccessLevel.PUBLIC) private final int minSize;
+    @Getter(AccessLevel.PUBLIC) private final int maxSize;
+    @Getter(AccessLevel.PUBLIC) private final long timeout;
+
+    private final LinkedBlockingDeque<Connection> idle;
+    private final AtomicInteger total;
+    private final AtomicInteger active;
+    private final Map<Connection, StatementCache> statements;
+
+    private final AtomicLong borrowCount;
+    private final AtomicLong totalWait;
+    private final AtomicLong maxWait;
+    private final AtomicLong timeoutCount;
+    private final AtomicLong invalidatedCount;
+
+    private volatile boolean closed;
+
+    /**
+     * <b>Default constructor</b><br />
+     * Creates a new connection pool and opens the minimum number of connections
+     * @param url Database URL
+     * @param user Database user
+     * @param password Database password
+     * @param minSize Number of connections kept open at all times
+     * @param maxSize Maximum number of connections open at the same time
+     * @param timeout Time, in milliseconds, to wait for a free connection
+     * @throws SQLException Thrown if the initial connections could not be established
+     */
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize, long timeout) throws SQLException {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+
+        if(maxSize < 2) maxSize = 2;
+        if(minSize < 1) minSize = 1;
+        if(minSize > maxSize) minSize = maxSize;
+        if(timeout < POLL_INTERVAL) timeout = POLL_INTERVAL;
+
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+
+        idle = new LinkedBlockingDeque<Connection>();
+        total = new AtomicInteger(0);
+        active = new AtomicInteger(0);
+        statements = new ConcurrentHashMap<Connection, StatementCache>();
+
+        borrowCount = new AtomicLong(0);
+        totalWait = new AtomicLong(0);
+        maxWait = new AtomicLong(0);
+        timeoutCount = new AtomicLong(0);
+        invalidatedCount = new AtomicLong(0);
+
+        closed = false;
+
+        try { fill(); }
+        catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Leases a connection from the pool.<br />
+     * Idle connections are validated before they are handed out; broken ones are discarded and replaced.
+     * The connection must be returned with {@link #release(Connection)} or {@link #invalidate(Connection)}.
+     * @return Database connection
+     * @throws SQLException Thrown if a new connection could not be opened
+     * @throws PoolExhaustedException Thrown if no connection became available in time
+     */
+    public Connection borrow() throws SQLException {
+        if(closed) throw new SQLException("Connection pool is closed");
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            while(true) {
+                Connection connection = idle.pollFirst();
+                if(connection == null) {
+                    connection = open();
+                    if(connection != null) return lease(connection);
+
+                    long remaining = deadline - System.nanoTime();
+                    if(remaining <= 0) {
+                        timeoutCount.incrementAndGet();
+                        throw new PoolExhaustedException("Timed out waiting for a database connection (" + active.get() + " in use)");
+                    }
+
+                    try { connection = idle.pollFirst(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL)), TimeUnit.NANOSECONDS); }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new PoolExhaustedException("Interrupted while waiting for a database connection", e);
+                    }
+                    if(connection == null) continue;
+                }
+
+                if(isValid(connection)) return lease(connection);
+                invalidatedCount.incrementAndGet();
+                discard(connection);
+            }
+        } finally {
+            long wait = System.nanoTime() - start;
+            borrowCount.incrementAndGet();
+            totalWait.addAndGet(wait);
+            long max;
+            do { max = maxWait.get(); }
+            while(wait > max && !maxWait.compareAndSet(max, wait));
+        }
+    }
+
+    /**
+     * Returns a leased connection to the pool.<br />
+     * Any uncommitted work left on the connection is rolled back.
+     * @param connection Connection to return
+     */
+    public void release(Connection connection) {
+        if(connection == null) return;
+        active.decrementAndGet();
+
+        try {
+            if(closed || connection.isClosed()) {
+                discard(connection);
+                return;
+            }
+            if(!connection.getAutoCommit()) connection.rollback();
+        } catch (SQLException e) {
+            discard(connection);
+            return;
+        }
+
+        idle.offerFirst(connection);
+        if(closed && idle.remove(connection)) discard(connection);
+    }
+
+    /**
+     * Removes a leased connection from the pool without returning it.<br />
+     * Used when the connection is known to be broken.
+     * @param connection Connection to discard
+     */
+    public void invalidate(Connection connection) {
+        if(connection == null) return;
+        active.decrementAndGet();
+        invalidatedCount.incrementAndGet();
+        discard(connection);
+    }
+
+    /**
+     * Returns a prepared statement for the query template on the leased connection.<br />
+     * Statements are cached per connection, so every query of the same shape is only parsed once.
+     * The statement must not be closed by the caller.
+     * @param connection Leased connection
+     * @param sql Query template
+     * @return Prepared statement
+     * @throws SQLException Thrown if the statement could not be prepared
+     */
+    public PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        return prepare(connection, sql, false);
+    }
+
+    /**
+     * Returns a prepared statement for the query template on the leased connection.<br />
+     * Statements that return generated keys are cached apart from the ones that do not.
+     * The statement must not be closed by the caller.
+     * @param connection Leased connection
+     * @param sql Query template
+     * @param generatedKeys <b>true</b> if the statement should return the keys generated by it
+     * @return Prepared statement
+     * @throws SQLException Thrown if the statement could not be prepared
+     */
+    public PreparedStatement prepare(Connection connection, String sql, boolean generatedKeys) throws SQLException {
+        StatementCache cache = statements.get(connection);
+        if(cache == null) {
+            cache = new StatementCache();
+            statements.put(connection, cache);
+        }
+
+        String key = generatedKeys ? GENERATED_KEYS + sql : sql;
+        PreparedStatement statement = cache.get(key);
+        if(statement == null || statement.isClosed()) {
+            if(generatedKeys) statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            else statement = connection.prepareStatement(sql);
+            cache.put(key, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Checks if the connection is still usable
+     * @param connection Connection to check
+     * @return <b>true</b> if the connection is valid, <b>false</b> otherwise
+     */
+    public boolean isValid(Connection connection) {
+        try { return !connection.isClosed() && connection.isValid(VALIDATION_TIMEOUT); }
+        catch (SQLException e) { return false; }
+    }
+
+    /**
+     * Validates all idle connections, discarding broken ones, and re-opens connections up to the minimum size
+     * @return <b>true</b> if the pool holds at least one valid connection, <b>false</b> otherwise
+     */
+    public boolean refresh() {
+        if(closed) return false;
+
+        int count = idle.size();
+        for(int i = 0; i < count; i++) {
+            Connection connection = idle.pollLast();
+            if(connection == null) break;
+            if(isValid(connection)) idle.offerFirst(connection);
+            else {
+                invalidatedCount.incrementAndGet();
+                discard(connection);
+            }
+        }
+
+        try { fill(); }
+        catch (SQLException e) { Message.log(Level.FINE, "Could not open a database connection: " + e.getMessage()); }
+
+        return total.get() > 0;
+    }
+
+    /**
+     * Closes all idle connections and prevents new ones from being leased.<br />
+     * Connections that are still in use are closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        Connection connection;
+        while((connection = idle.pollFirst()) != null) discard(connection);
+    }
+
+    /**
+     * Checks if the pool has been closed
+     * @return <b>true</b> if the pool is closed, <b>false</b> otherwise
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the number of connections currently leased
+     * @return Active connections
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Returns the number of open connections waiting to be leased
+     * @return Idle connections
+     */
+    public int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * Returns the number of open connections
+     * @return Open connections
+     */
+    public int getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Returns the number of times a connection was requested from the pool
+     * @return Borrow count
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * Returns the average time spent waiting for a connection
+     * @return Average wait time, in milliseconds
+     */
+    public double getAverageWait() {
+        long count = borrowCount.get();
+        if(count == 0) return 0;
+        return totalWait.get() / (double) count / 1000000D;
+    }
+
+    /**
+     * Returns the longest time spent waiting for a connection
+     * @return Maximum wait time, in milliseconds
+     */
+    public double getMaxWait() {
+        return maxWait.get() / 1000000D;
+    }
+
+    /**
+     * Returns the number of requests that timed out waiting for a connection
+     * @return Timeout count
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Returns the number of connections that were discarded as broken
+     * @return Invalidated connection count
+     */
+    public long getInvalidatedCount() {
+        return invalidatedCount.get();
+    }
+
+    /**
+     * Opens new connections until the pool holds the minimum number of them
+     * @throws SQLException Thrown if a connection could not be established
+     */
+    private void fill() throws SQLException {
+        while(!closed && total.get() < minSize) {
+            Connection connection = open();
+            if(connection == null) break;
+            idle.offerLast(connection);
+        }
+    }
+
+    /**
+     * Opens a new connection if the pool has not reached its maximum size
+     * @return New connection, or <b>null</b> if the pool is full
+     * @throws SQLException Thrown if the connection could not be established
+     */
+    private Connection open() throws SQLException {
+        int count;
+        do {
+            count = total.get();
+            if(count >= maxSize) return null;
+        } while(!total.compareAndSet(count, count + 1));
+
+        Connection connection = null;
+        try {
+            connection = DriverManager.getConnection(url, user, password);
+            if(connection.getAutoCommit()) connection.setAutoCommit(false);
+            return connection;
+        } catch (SQLException e) {
+            total.decrementAndGet();
+            if(connection != null) {
+                try { connection.close(); }
+                catch (SQLException ex) { }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Marks the connection as leased
+     * @param connection Connection to lease
+     * @return Leased connection
+     */
+    private Connection lease(Connection connection) {
+        active.incrementAndGet();
+        return connection;
+    }
+
+    /**
+     * Closes the connection and frees its slot in the pool
+     * @param connection Connection to close
+     */
+    private void discard(Connection connection) {
+        total.decrementAndGet();
+        StatementCache cache = statements.remove(connection);
+        if(cache != null) cache.close();
+        try { connection.close(); }
+        catch (SQLException e) { Message.log(Level.FINE, "Error closing database connection"); }
+    }
+
+    /**
+     * Prepared statements of a single connection, keyed by query template.<br />
+     * Only accessed by the task that currently leases the connection; the least recently used statement is closed when the cache is full.
+     * @author bitWolfy
+     *
+     */
+    private static class StatementCache extends LinkedHashMap<String, PreparedStatement> {
+        private static final long serialVersionUID = -4327150217316462215L;
+
+        /**
+         * <b>Default constructor</b><br />
+         * Creates a new access-ordered statement cache
+         */
+        public StatementCache() {
+            super(16, 0.75F, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if(size() <= STATEMENT_CACHE_SIZE) return false;
+            closeStatement(eldest.getValue());
+            return true;
+        }
+
+        /**
+         * Closes all cached statements
+         */
+        public void close() {
+            for(PreparedStatement statement : values()) closeStatement(statement);
+            clear();
+        }
+
+        /**
+         * Closes the statement, ignoring any errors
+         * @param statement Statement to close
+         */
+        private static void closeStatement(PreparedStatement statement) {
+            try { statement.close(); }
+            catch (SQLException e) { Message.log(Level.FINE, "Error closing database connection [Statement]"); }
+        }
+    }
+
+}
@@ -26,26 +26,34 @@ import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.Savepoint;
+import java.sql.Types;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import org.bukkit.Bukkit;
 
 import com.wolvencraft.yasp.Statistics;
+import com.wolvencraft.yasp.db.CircuitBreaker.State;
 import com.wolvencraft.yasp.db.Query.QueryResult;
+import com.wolvencraft.yasp.db.backend.StorageBackend;
 import com.wolvencraft.yasp.db.tables.Miscellaneous.SettingsTable;
 import com.wolvencraft.yasp.events.plugin.DatabasePatchEvent;
 import com.wolvencraft.yasp.exceptions.DatabaseConnectionException;
+import com.wolvencraft.yasp.exceptions.PoolExhaustedException;
 import com.wolvencraft.yasp.exceptions.RuntimeSQLException;
 import com.wolvencraft.yasp.settings.LocalConfiguration;
 import com.wolvencraft.yasp.settings.Module;
 import com.wolvencraft.yasp.settings.RemoteConfiguration;
+import com.wolvencraft.yasp.settings.RemoteSettings;
 import com.wolvencraft.yasp.util.ExceptionHandler;
 import com.wolvencraft.yasp.util.Message;
 
@@ -57,34 +65,57 @@ import com.wolvencraft.yasp.util.Message;
  */
 public class Database {
     
-    private static Connection connection = null;
+    private static StorageBackend backend = null;
+    private static ConnectionPool pool = null;
+    private static CircuitBreaker breaker = null;
+    private static final ThreadLocal<Transaction> transaction = new ThreadLocal<Transaction>();
+    
+    private static final AtomicLong commitCount = new AtomicLong(0);
+    private static final AtomicLong rollbackCount = new AtomicLong(0);
+    private static final AtomicLong commitTime = new AtomicLong(0);
+    private static final AtomicLong maxCommitTime = new AtomicLong(0);
     
     /**
-     * Default constructor. Connects to the remote database, performs patches if necessary, and holds to the DB info.<br />
+     * Default constructor. Connects to the configured database, performs patches if necessary, and holds to the DB info.<br />
      * @throws DatabaseConnectionException Thrown if the plugin could not connect to the database
      */
     public Database() throws DatabaseConnectionException {
+        backend = StorageBackend.get(LocalConfiguration.DBType.toString());
         
-        try { Class.forName("com.mysql.jdbc.Driver"); }
-        catch (ClassNotFoundException ex) { throw new DatabaseConnectionException("MySQL driver was not found!"); }
+        try { Class.forName(backend.getDriver()); }
+        catch (ClassNotFoundException ex) { throw new DatabaseConnectionException("Database driver was not found: " + backend.getDriver()); }
         
         try {
-            connection = DriverManager.getConnection(
-                LocalConfiguration.DBConnect.toString(),
+            pool = new ConnectionPool(
+                backend.getUrl(),
                 LocalConfiguration.DBUser.toString(),
-                LocalConfiguration.DBPass.toString()
+                LocalConfiguration.DBPass.toString(),
+                LocalConfiguration.DBPoolMinSize.toInteger(),
+                LocalConfiguration.DBPoolMaxSize.toInteger(),
+                LocalConfiguration.DBPoolTimeout.toInteger()
             );
         } catch (SQLException e) { throw new DatabaseConnectionException(e); }
         
-        try { if (connection.getAutoCommit()) connection.setAutoCommit(false); }
-        catch (Throwable t) { throw new RuntimeSQLException("Could not set AutoCommit to false. Cause: " + t, t); }
+        breaker = new CircuitBreaker(
+            new Callable<Boolean>() {
+                
+                @Override
+                public Boolean call() {
+                    return isValid();
+                }
+                
+            },
+            LocalConfiguration.DBBreakerThreshold.toInteger(),
+            LocalConfiguration.DBBreakerBaseDelay.toInteger(),
+            LocalConfiguration.DBBreakerMaxDelay.toInteger()
+        );
         
+        RemoteSettings.refresh();
         if(!patchDatabase(false)) Message.log("Target database is up to date");
         
         Statistics.setPaused(false);
         
-        RemoteConfiguration.clearCache();
-        Module.clearCache();
+        RemoteSettings.refresh();
     }
     
     /**
@@ -111,11 +142,10 @@ public class Database {
         Message.debug("Current version: " + databaseVersion + ", latest version: " + latestPatchVersion);
         databaseVersion++;
         
-        ScriptRunner scriptRunner = new ScriptRunner(connection);
         Message.log("+-------] Database Patcher [-------+");
         for(; databaseVersion <= latestPatchVersion; databaseVersion++) {
             Message.log("|       Applying patch " + databaseVersion + " / " + latestPatchVersion + "       |");
-            executePatch(scriptRunner, databaseVersion + "." + PatchManager.PATCH_KEY);
+            executePatch(databaseVersion + "." + PatchManager.PATCH_KEY);
             RemoteConfiguration.DatabaseVersion.update(databaseVersion);
         }
         Message.log("+----------------------------------+");
@@ -147,12 +177,11 @@ public class Database {
         Message.debug("Current version: " + moduleVersion + ", latest version: " + latestPatchVersion);
         moduleVersion++;
         
-        ScriptRunner scriptRunner = new ScriptRunner(connection);
         Message.log("+-------] Database Patcher [-------+");
         Message.log("|" + Message.centerString("Patching " + module.name(), 34) + "|");
         for(; moduleVersion <= latestPatchVersion; moduleVersion++) {
             Message.log("|       Applying patch " + moduleVersion + " / " + latestPatchVersion + "       |");
-            executePatch(scriptRunner, moduleVersion + "." + module.name().toLowerCase());
+            executePatch(moduleVersion + "." + module.name().toLowerCase());
             module.setVersion(moduleVersion);
         }
         Message.log("+----------------------------------+");
@@ -166,29 +195,27 @@ public class Database {
      * @return <b>true</b> if a patch was applied, <b>false</b> if it was not.
      */
     public static boolean executePatch(String patchId) throws DatabaseConnectionException {
-        return executePatch(new ScriptRunner(connection), patchId);
-    }
-    
-    /**
-     * Applies the patch to the remote database
-     * @param scriptRunner Script runner instance that executes the patch
-     * @param patchId Unique ID of the desired patch, i.e. <code>1.vault</code>.
-     * @throws DatabaseConnectionException Thrown if the plugin is unable to patch the remote database
-     * @return <b>true</b> if a patch was applied, <b>false</b> if it was not.
-     */
-    private static boolean executePatch(ScriptRunner scriptRunner, String patchId) throws DatabaseConnectionException {
         DatabasePatchEvent event = new DatabasePatchEvent(patchId);
         Bukkit.getServer().getPluginManager().callEvent(event);
         
         if(event.isCancelled()) return false;
         
+        StorageBackend backend = getBackend();
+        File patchFile = new File(Statistics.getInstance().getDataFolder() + "/patches/" + backend.getName() + "/" + patchId + ".sql");
+        if(!patchFile.exists()) {
+            if(backend.requiresOwnPatch(patchId)) throw new DatabaseConnectionException("Patch " + patchId + ".sql has no version for the " + backend.getName() + " backend");
+            patchFile = new File(Statistics.getInstance().getDataFolder() + "/patches/" + patchId + ".sql");
+        }
+        
         InputStream is;
-        try { is = new FileInputStream(Statistics.getInstance().getDataFolder() + "/patches/" + patchId + ".sql"); }
+        try { is = new FileInputStream(patchFile); }
         catch (FileNotFoundException e1) { return false; }
-        Message.log(Level.FINE, "Executing database patch: " + patchId + ".sql");
-        try {scriptRunner.runScript(new InputStreamReader(is)); }
+        Message.log(Level.FINE, "Executing database patch: " + patchId + ".sql (" + backend.getName() + ")");
+        Connection connection = getConnection();
+        try { new ScriptRunner(connection, backend).runScript(new InputStreamReader(is)); }
         catch (RuntimeSQLException e) { throw new DatabaseConnectionException("An error occured while executing database patch: " + patchId + ".sql", e); }
         finally {
+            releaseConnection(connection);
             if(!Query.table(SettingsTable.TableName).condition("key", "patched").exists()) {
                 Query.table(SettingsTable.TableName).value("key", "patched").value("value", 1).insert();
             }
@@ -198,30 +225,165 @@ public class Database {
     }
     
     /**
-     * Attempts to reconnect to the remote server
+     * Attempts to reconnect to the remote server.<br />
+     * Broken idle connections are discarded, and the pool is refilled to its minimum size.
+     * The health probe is run right away, closing the circuit breaker if the database can be reached.
      * @return <b>true</b> if the connection was present, or reconnect is successful. <b>false</b> otherwise.
      */
     public static boolean reconnect() {
-        try {
-            if (connection.isValid(10)) {
-                Message.log("Connection is still present. Malformed query detected.");
-                return false;
-            }
-            Message.log(Level.WARNING, "Attempting to re-connect to the database");
-            connection = DriverManager.getConnection(
-                LocalConfiguration.DBConnect.toString(),
-                LocalConfiguration.DBUser.toString(),
-                LocalConfiguration.DBPass.toString()
-            );
+        ConnectionPool pool = Database.pool;
+        CircuitBreaker breaker = Database.breaker;
+        if(pool == null || breaker == null) return false;
+        Message.log(Level.WARNING, "Attempting to re-connect to the database");
+        if(pool.refresh() && breaker.probe()) {
             Message.log("Connection re-established. No data is lost.");
             return true;
-        } catch (Exception e) {
-            Message.log(Level.SEVERE, "Failed to re-connect to the database. Data is being stored locally.");
-            if (LocalConfiguration.Debug.toBoolean()) e.printStackTrace();
         }
+        Message.log(Level.SEVERE, "Failed to re-connect to the database. Data is being stored locally.");
+        return false;
+    }
+    
+    /**
+     * Checks if the remote database can currently be reached.<br />
+     * Fails fast while the circuit breaker is open; otherwise, leases a connection and validates it.
+     * @return <b>true</b> if a valid connection could be leased, <b>false</b> otherwise
+     */
+    public static boolean isReachable() {
+        CircuitBreaker breaker = Database.breaker;
+        if(breaker == null || !breaker.allow()) return false;
+        
+        if(isValid()) {
+            breaker.recordSuccess();
+            return true;
+        }
+        breaker.recordFailure();
+        return false;
+    }
+    
+    /**
+     * Leases a connection and validates it; a broken connection is removed from the pool.<br />
+     * Used as the health probe of the circuit breaker.
+     * @return <b>true</b> if a valid connection could be leased, <b>false</b> otherwise
+     */
+    private static boolean isValid() {
+        ConnectionPool pool = Database.pool;
+        if(pool == null) return false;
+        
+        Connection connection;
+        try { connection = pool.borrow(); }
+        catch (SQLException e) { return false; }
+        
+        if(pool.isValid(connection)) {
+            pool.release(connection);
+            return true;
+        }
+        pool.invalidate(connection);
         return false;
     }
     
+    /**
+     * Starts a transaction on the current thread.<br />
+     * All statements executed by this thread are run on a single connection and are not committed
+     * until <code>commitTransaction()</code> is called. If no connection could be leased, statements are committed one by one.
+     * @return <b>true</b> if the transaction was started, <b>false</b> otherwise
+     */
+    public static boolean beginTransaction() {
+        if(transaction.get() != null) return true;
+        ConnectionPool pool = Database.pool;
+        if(pool == null || !isAllowed(null)) return false;
+        
+        try { transaction.set(new Transaction(lease(pool, null))); }
+        catch (SQLException e) {
+            ExceptionHandler.handle(e);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Commits the transaction of the current thread.<br />
+     * Tasks scheduled with <code>afterCommit(Runnable)</code> are run only if the commit was successful;
+     * otherwise, the transaction is rolled back and the tasks are discarded.
+     * @return <b>true</b> if the transaction was committed, <b>false</b> if it was rolled back
+     */
+    public static boolean commitTransaction() {
+        Transaction current = transaction.get();
+        if(current == null) return true;
+        transaction.remove();
+        
+        boolean committed = false;
+        if(!current.failed) {
+            try {
+                commit(current.connection);
+                recordSuccess();
+                committed = true;
+            } catch (SQLException e) { ExceptionHandler.handle(e); }
+        }
+        
+        if(!committed) {
+            rollbackCount.incrementAndGet();
+            endTransaction(current);
+            return false;
+        }
+        
+        endTransaction(current);
+        for(Runnable task : current.tasks) {
+            try { task.run(); }
+            catch (Throwable t) { ExceptionHandler.handle(t); }
+        }
+        return true;
+    }
+    
+    /**
+     * Rolls back the transaction of the current thread and discards all tasks scheduled to run after it
+     */
+    public static void rollbackTransaction() {
+        Transaction current = transaction.get();
+        if(current == null) return;
+        transaction.remove();
+        rollbackCount.incrementAndGet();
+        endTransaction(current);
+    }
+    
+    /**
+     * Schedules a task to run once the data written by the current thread is durable.<br />
+     * If the thread is capturing writes for the write-behind queue, the task is run once they have been flushed.
+     * If there is no transaction in progress, the task is run immediately.
+     * @param task Task to run
+     */
+    public static void afterCommit(Runnable task) {
+        if(WriteBehind.afterFlush(task)) return;
+        Transaction current = transaction.get();
+        if(current == null) task.run();
+        else current.tasks.add(task);
+    }
+    
+    /**
+     * Returns the number of statements executed in the transaction of the current thread
+     * @return Number of uncommitted statements
+     */
+    public static int getTransactionSize() {
+        Transaction current = transaction.get();
+        if(current == null) return 0;
+        return current.statements;
+    }
+    
+    /**
+     * Returns the transaction connection to the pool, rolling back any uncommitted work
+     * @param current Transaction to close
+     */
+    private static void endTransaction(Transaction current) {
+        ConnectionPool pool = Database.pool;
+        if(pool == null) {
+            try { current.connection.close(); }
+            catch (SQLException e) { Message.log(Level.SEVERE, "Error closing database connection"); }
+        } else if(current.failed && !pool.isValid(current.connection)) {
+            pool.invalidate(current.connection);
+        } else {
+            pool.release(current.connection);
+        }
+    }
+    
     /**
      * Pushes data to the remote database.<br />
      * This is a raw method and should never be used by itself. Use the <b>QueryUtils</b> wrapper for more options 
@@ -230,26 +392,182 @@ public class Database {
      * @return <b>true</b> if the sync is successful, <b>false</b> otherwise
      */
     public static boolean executeUpdate(String query) {
+        return executeUpdate(query, new ArrayList<Object>(0), true);
+    }
+    
+    /**
+     * Pushes data to the remote database.<br />
+     * This is a raw method and should never be used by itself. Use the <b>QueryUtils</b> wrapper for more options 
+     * and proper error handling. This method is not to be used for regular commits to the database.
+     * @param query SQL query template
+     * @param params Values bound to the query template, in order
+     * @return <b>true</b> if the sync is successful, <b>false</b> otherwise
+     */
+    public static boolean executeUpdate(String query, List<Object> params) {
+        return executeUpdate(query, params, true);
+    }
+    
+    /**
+     * Pushes data to the remote database on a leased connection.<br />
+     * If the connection turns out to be broken, the query is retried once on a freshly validated connection.
+     * A failed query marks the transaction of the current thread for rollback.
+     * @param query SQL query template
+     * @param params Values bound to the query template, in order
+     * @param retry <b>true</b> to retry the query if the connection was lost
+     * @return <b>true</b> if the sync is successful, <b>false</b> otherwise
+     */
+    private static boolean executeUpdate(String query, List<Object> params, boolean retry) {
+        ConnectionPool pool = Database.pool;
+        if(pool == null) return false;
+        
+        Transaction transaction = Database.transaction.get();
+        if(!isAllowed(transaction)) return false;
         int rowsChanged = 0;
-        Statement statement = null;
+        Connection connection = null;
         try {
-            statement = connection.createStatement();
-            rowsChanged = statement.executeUpdate(query);
-            statement.close();
-            connection.commit();
+            connection = lease(pool, transaction);
+            PreparedStatement statement = pool.prepare(connection, query);
+            bind(statement, params);
+            rowsChanged = statement.executeUpdate();
+            if(transaction == null) commit(connection);
+            else transaction.statements++;
+            recordSuccess();
         } catch (Throwable t) {
             ExceptionHandler.handle(t);
-            if(reconnect()) return executeUpdate(query);
-            else return false;
+            if(transaction != null) transaction.failed = true;
+            if(!discard(pool, transaction, connection)) return false;
+            connection = null;
+            if(retry) return executeUpdate(query, params, false);
+            return false;
         } finally {
-            if (statement != null) {
-                try { statement.close(); }
-                catch (SQLException e) { Message.log(Level.SEVERE, "Error closing database connection"); }
-            }
+            if(transaction == null) pool.release(connection);
         }
         return rowsChanged > 0;
     }
     
+    /**
+     * Pushes a single row to the remote database, and returns the key generated for it.<br />
+     * This is a raw method and should never be used by itself. Use the <b>Query</b> wrapper for proper error handling.
+     * If the connection turns out to be broken, the query is retried once on a freshly validated connection.
+     * @param query SQL query template
+     * @param params Values bound to the query template, in order
+     * @return Generated key, or <b>-1</b> if the query failed or did not generate a key
+     */
+    public static long executeInsert(String query, List<Object> params) {
+        return executeInsert(query, params, true);
+    }
+    
+    /**
+     * Pushes a single row to the remote database on a leased connection, and returns the key generated for it.<br />
+     * A failed query marks the transaction of the current thread for rollback.
+     * @param query SQL query template
+     * @param params Values bound to the query template, in order
+     * @param retry <b>true</b> to retry the query if the connection was lost
+     * @return Generated key, or <b>-1</b> if the query failed or did not generate a key
+     */
+    private static long executeInsert(String query, List<Object> params, boolean retry) {
+        ConnectionPool pool = Database.pool;
+        if(pool == null) return -1;
+        
+        Transaction transaction = Database.transaction.get();
+        if(!isAllowed(transaction)) return -1;
+        long key = -1;
+        Connection connection = null;
+        ResultSet rs = null;
+        try {
+            connection = lease(pool, transaction);
+            PreparedStatement statement = pool.prepare(connection, query, true);
+            bind(statement, params);
+            statement.executeUpdate();
+            rs = statement.getGeneratedKeys();
+            if(rs.next()) key = rs.getLong(1);
+            if(transaction == null) commit(connection);
+            else transaction.statements++;
+            recordSuccess();
+        } catch (Throwable t) {
+            ExceptionHandler.handle(t);
+            closeResultSet(rs);
+            rs = null;
+            if(transaction != null) transaction.failed = true;
+            if(!discard(pool, transaction, connection)) return -1;
+            connection = null;
+            if(retry) return executeInsert(query, params, false);
+            return -1;
+        } finally {
+            closeResultSet(rs);
+            if(transaction == null) pool.release(connection);
+        }
+        return key;
+    }
+    
+    /**
+     * Pushes several rows to the remote database as JDBC batches, committing them at once.<br />
+     * This is a raw method and should never be used by itself. Use the <b>Query</b> wrapper for proper error handling.
+     * @param batches Rows to push, mapped to the query template they are bound to
+     * @return <b>true</b> if all rows were pushed, <b>false</b> if the batch was rolled back
+     */
+    public static boolean executeBatch(Map<String, List<List<Object>>> batches) {
+        return executeBatch(batches, true);
+    }
+    
+    /**
+     * Pushes several rows to the remote database as JDBC batches on a leased connection.<br />
+     * If the connection turns out to be broken, the batch is retried once on a freshly validated connection.
+     * @param batches Rows to push, mapped to the query template they are bound to
+     * @param retry <b>true</b> to retry the batch if the connection was lost
+     * @return <b>true</b> if all rows were pushed, <b>false</b> if the batch was rolled back
+     */
+    private static boolean executeBatch(Map<String, List<List<Object>>> batches, boolean retry) {
+        ConnectionPool pool = Database.pool;
+        if(pool == null) return false;
+        
+        Transaction transaction = Database.transaction.get();
+        if(!isAllowed(transaction)) return false;
+        Connection connection = null;
+        Savepoint savepoint = null;
+        PreparedStatement statement = null;
+        int rows = 0;
+        try {
+            connection = lease(pool, transaction);
+            if(transaction != null) savepoint = connection.setSavepoint();
+            for(Entry<String, List<List<Object>>> batch : batches.entrySet()) {
+                statement = pool.prepare(connection, batch.getKey());
+                for(List<Object> row : batch.getValue()) {
+                    bind(statement, row);
+                    statement.addBatch();
+                    rows++;
+                }
+                statement.executeBatch();
+                statement = null;
+            }
+            if(transaction == null) commit(connection);
+            else {
+                connection.releaseSavepoint(savepoint);
+                transaction.statements += rows;
+            }
+            recordSuccess();
+        } catch (Throwable t) {
+            ExceptionHandler.handle(t);
+            if(connection != null && pool.isValid(connection)) {
+                try {
+                    if(statement != null) statement.clearBatch();
+                    if(savepoint != null) connection.rollback(savepoint);
+                } catch (SQLException e) {
+                    Message.log(Level.SEVERE, "Error rolling back the statement batch");
+                    if(transaction != null) transaction.failed = true;
+                }
+                return false;
+            }
+            if(!discard(pool, transaction, connection)) return false;
+            connection = null;
+            if(retry) return executeBatch(batches, false);
+            return false;
+        } finally {
+            if(transaction == null) pool.release(connection);
+        }
+        return true;
+    }
+    
     /**
      * Returns the data from the remote server according to the SQL query.<br />
      * This is a raw method and should never be used by itself. Use the <b>QueryUtils</b> wrapper for more options 
@@ -258,43 +576,234 @@ public class Database {
      * @return Data from the remote database
      */
     public static List<QueryResult> executeQuery(String query) {
+        return executeQuery(query, new ArrayList<Object>(0));
+    }
+    
+    /**
+     * Returns the data from the remote server according to the SQL query.<br />
+     * This is a raw method and should never be used by itself. Use the <b>QueryUtils</b> wrapper for more options 
+     * and proper error handling. This method is not to be used for regular commits to the database.
+     * @param query SQL query template
+     * @param params Values bound to the query template, in order
+     * @return Data from the remote database
+     */
+    public static List<QueryResult> executeQuery(String query, List<Object> params) {
+        List<QueryResult> results = executeQuery(query, params, true);
+        if(results == null) return new ArrayList<QueryResult>();
+        return results;
+    }
+    
+    /**
+     * Returns the data from the remote server according to the SQL query, or <b>null</b> if the query could not be run.<br />
+     * Should be used instead of <code>executeQuery</code> when an empty result has to be told apart from a failure.
+     * @param query SQL query template
+     * @param params Values bound to the query template, in order
+     * @return Data from the remote database, or <b>null</b> if an error occurred
+     */
+    public static List<QueryResult> tryExecuteQuery(String query, List<Object> params) {
+        return executeQuery(query, params, true);
+    }
+    
+    /**
+     * Returns the data from the remote server according to the SQL query, using a leased connection.<br />
+     * If the connection turns out to be broken, the query is retried once on a freshly validated connection.
+     * @param query SQL query template
+     * @param params Values bound to the query template, in order
+     * @param retry <b>true</b> to retry the query if the connection was lost
+     * @return Data from the remote database, or <b>null</b> if an error occurred
+     */
+    private static List<QueryResult> executeQuery(String query, List<Object> params, boolean retry) {
+        ConnectionPool pool = Database.pool;
+        if(pool == null) return null;
+        
+        Transaction transaction = Database.transaction.get();
+        if(!isAllowed(transaction)) return null;
         List<QueryResult> colData = new ArrayList<QueryResult>();
-        Statement statement = null;
+        Connection connection = null;
         ResultSet rs = null;
         try {
-            statement = connection.createStatement();
-            rs = statement.executeQuery(query);
-            while (rs.next()) {
-                HashMap<String, String> rowToAdd = new HashMap<String, String>();
-                for (int x = 1; x <= rs.getMetaData().getColumnCount(); ++x) {
-                    rowToAdd.put(rs.getMetaData().getColumnName(x), rs.getString(x));
-                }
-                colData.add(Query.toQueryResult(rowToAdd));
-            }
+            connection = lease(pool, transaction);
+            PreparedStatement statement = pool.prepare(connection, query);
+            bind(statement, params);
+            rs = statement.executeQuery();
+            ResultLayout layout = new ResultLayout(rs.getMetaData());
+            while (rs.next()) colData.add(Query.toQueryResult(layout, rs));
+            recordSuccess();
         } catch (Throwable t) {
             ExceptionHandler.handle(t);
-            if(reconnect()) return executeQuery(query);
-            else return new ArrayList<QueryResult>();
+            closeResultSet(rs);
+            rs = null;
+            if(!discard(pool, transaction, connection)) return null;
+            connection = null;
+            if(retry) return executeQuery(query, params, false);
+            return null;
         } finally {
-            if (rs != null) {
-                try { rs.close(); }
-                catch (SQLException e) { Message.log(Level.SEVERE, "Error closing database connection [ResultSet]"); }
-            }
-            if (statement != null) {
+            closeResultSet(rs);
+            if(transaction == null) pool.release(connection);
+        }
+        return colData;
+    }
+    
+    /**
+     * Opens a cursor over the results of the SQL query.<br />
+     * The query runs on a dedicated connection with a forward-only, read-only statement, and the rows are fetched
+     * as the cursor advances. The connection is returned to the pool when the cursor is closed.
+     * @param query SQL query template
+     * @param params Values bound to the query template, in order
+     * @param fetchSize Number of rows fetched at a time, or <b>0</b> to stream rows one by one
+     * @return Cursor over the results. Empty if the query could not be run
+     */
+    public static QueryCursor openCursor(String query, List<Object> params, int fetchSize) {
+        ConnectionPool pool = Database.pool;
+        if(pool == null || !isAllowed(null)) return new QueryCursor();
+        
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = lease(pool, null);
+            statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(getBackend().getFetchSize(fetchSize));
+            bind(statement, params);
+            recordSuccess();
+            return new QueryCursor(pool, connection, statement);
+        } catch (Throwable t) {
+            ExceptionHandler.handle(t);
+            if(statement != null) {
                 try { statement.close(); }
                 catch (SQLException e) { Message.log(Level.SEVERE, "Error closing database connection [Statement]"); }
             }
+            if(connection != null) {
+                if(pool.isValid(connection)) pool.release(connection);
+                else {
+                    pool.invalidate(connection);
+                    recordFailure();
+                }
+            }
+            return new QueryCursor();
         }
-        return colData;
     }
     
     /**
-     * Closes the database connection and cleans up any leftover instances to prevent memory leaks
+     * Checks if a statement should be attempted, or fail fast because the database is known to be unreachable.<br />
+     * Statements of a transaction that is already in progress are always attempted.
+     * @param transaction Transaction bound to the current thread, or <b>null</b>
+     * @return <b>true</b> if the statement should be attempted, <b>false</b> otherwise
+     */
+    private static boolean isAllowed(Transaction transaction) {
+        if(transaction != null) return true;
+        CircuitBreaker breaker = Database.breaker;
+        return breaker == null || breaker.allow();
+    }
+    
+    /**
+     * Returns the connection of the current transaction, or leases a new one from the pool.<br />
+     * A connection that could not be opened is recorded by the circuit breaker; waiting too long for a busy pool is not,
+     * since the database itself might be healthy.
+     * @param pool Connection pool
+     * @param transaction Transaction bound to the current thread, or <b>null</b>
+     * @return Database connection
+     * @throws SQLException Thrown if no connection could be leased
+     */
+    private static Connection lease(ConnectionPool pool, Transaction transaction) throws SQLException {
+        if(transaction != null) return transaction.connection;
+        try { return pool.borrow(); }
+        catch (PoolExhaustedException e) { throw e; }
+        catch (SQLException e) {
+            recordFailure();
+            throw e;
+        }
+    }
+    
+    /**
+     * Records a lost or unavailable connection with the circuit breaker
+     */
+    private static void recordFailure() {
+        CircuitBreaker breaker = Database.breaker;
+        if(breaker != null) breaker.recordFailure();
+    }
+    
+    /**
+     * Records a statement that completed with the circuit breaker
+     */
+    private static void recordSuccess() {
+        CircuitBreaker breaker = Database.breaker;
+        if(breaker != null) breaker.recordSuccess();
+    }
+    
+    /**
+     * Handles a connection after a statement has failed on it.<br />
+     * A broken standalone connection is removed from the pool; a broken transaction is marked for rollback.
+     * @param pool Connection pool
+     * @param transaction Transaction bound to the current thread, or <b>null</b>
+     * @param connection Connection the statement failed on
+     * @return <b>true</b> if the connection was broken and the statement can be retried, <b>false</b> otherwise
+     */
+    private static boolean discard(ConnectionPool pool, Transaction transaction, Connection connection) {
+        if(connection == null || pool.isValid(connection)) return false;
+        recordFailure();
+        if(transaction != null) {
+            transaction.failed = true;
+            return false;
+        }
+        pool.invalidate(connection);
+        return true;
+    }
+    
+    /**
+     * Commits the connection and records the commit latency
+     * @param connection Connection to commit
+     * @throws SQLException Thrown if the commit failed
+     */
+    private static void commit(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        connection.commit();
+        long latency = System.nanoTime() - start;
+        
+        commitCount.incrementAndGet();
+        commitTime.addAndGet(latency);
+        long max;
+        do { max = maxCommitTime.get(); }
+        while(latency > max && !maxCommitTime.compareAndSet(max, latency));
+    }
+    
+    /**
+     * Binds the values to the prepared statement according to their type
+     * @param statement Prepared statement
+     * @param params Values to bind, in order
+     * @throws SQLException Thrown if a value could not be bound
+     */
+    private static void bind(PreparedStatement statement, List<Object> params) throws SQLException {
+        statement.clearParameters();
+        for(int i = 0; i < params.size(); i++) {
+            Object value = params.get(i);
+            int index = i + 1;
+            if(value == null) statement.setNull(index, Types.NULL);
+            else if(value instanceof Integer || value instanceof Short || value instanceof Byte) statement.setInt(index, ((Number) value).intValue());
+            else if(value instanceof Long) statement.setLong(index, (Long) value);
+            else if(value instanceof Double || value instanceof Float) statement.setDouble(index, ((Number) value).doubleValue());
+            else if(value instanceof Boolean) statement.setBoolean(index, (Boolean) value);
+            else statement.setString(index, value.toString().replace("\u00A7", "&"));
+        }
+    }
+    
+    /**
+     * Closes the result set, logging any errors
+     * @param rs Result set to close
+     */
+    private static void closeResultSet(ResultSet rs) {
+        if (rs == null) return;
+        try { rs.close(); }
+        catch (SQLException e) { Message.log(Level.SEVERE, "Error closing database connection [ResultSet]"); }
+    }
+    
+    /**
+     * Closes the database connections and cleans up any leftover instances to prevent memory leaks
      */
     public static void close() {
-        try { connection.close(); }
-        catch (SQLException e) { Message.log(Level.SEVERE, "Error closing database connection"); }
-        connection = null;
+        if(breaker != null) breaker.shutdown();
+        breaker = null;
+        if(pool != null) pool.close();
+        pool = null;
     }
     
     /**
@@ -302,14 +811,159 @@ public class Database {
      * @return <b>true</b> if the connection is closed, <b>false</b> if it is open.
      */
     public static boolean isClosed() {
-        return connection == null;
+        return pool == null || pool.isClosed();
     }
     
     /**
-     * Returns the connection instance
+     * Leases a connection from the pool.<br />
+     * The connection must be returned with {@link #releaseConnection(Connection)} once the task is complete.
      * @return Connection instance
+     * @throws DatabaseConnectionException Thrown if no connection could be obtained
+     */
+    public static Connection getConnection() throws DatabaseConnectionException {
+        ConnectionPool pool = Database.pool;
+        if(pool == null) throw new DatabaseConnectionException("Database connection is closed");
+        try { return pool.borrow(); }
+        catch (SQLException e) { throw new DatabaseConnectionException(e); }
+    }
+    
+    /**
+     * Returns a leased connection to the pool
+     * @param connection Connection instance
+     */
+    public static void releaseConnection(Connection connection) {
+        ConnectionPool pool = Database.pool;
+        if(pool == null) {
+            try { if(connection != null) connection.close(); }
+            catch (SQLException e) { Message.log(Level.SEVERE, "Error closing database connection"); }
+            return;
+        }
+        pool.release(connection);
+    }
+    
+    /**
+     * Returns the storage backend the statistics are stored in
+     * @return Storage backend
      */
-    public static Connection getConnection() {
-        return connection;
+    public static StorageBackend getBackend() {
+        if(backend == null) backend = StorageBackend.get(LocalConfiguration.DBType.toString());
+        return backend;
+    }
+    
+    /**
+     * Returns the connection pool
+     * @return Connection pool, or <b>null</b> if the database is closed
+     */
+    public static ConnectionPool getPool() {
+        return pool;
+    }
+    
+    /**
+     * Returns the number of commits performed since the plugin was enabled
+     * @return Commit count
+     */
+    public static long getCommitCount() {
+        return commitCount.get();
+    }
+    
+    /**
+     * Returns the number of transactions that were rolled back
+     * @return Rollback count
+     */
+    public static long getRollbackCount() {
+        return rollbackCount.get();
+    }
+    
+    /**
+     * Returns the average time a commit took to complete
+     * @return Average commit latency, in milliseconds
+     */
+    public static double getAverageCommitLatency() {
+        long count = commitCount.get();
+        if(count == 0) return 0;
+        return commitTime.get() / (double) count / 1000000D;
+    }
+    
+    /**
+     * Returns the longest time a commit took to complete
+     * @return Maximum commit latency, in milliseconds
+     */
+    public static double getMaxCommitLatency() {
+        return maxCommitTime.get() / 1000000D;
+    }
+    
+    /**
+     * Returns the state of the circuit breaker guarding the database connection
+     * @return Breaker state, or <b>null</b> if the database is closed
+     */
+    public static State getBreakerState() {
+        CircuitBreaker breaker = Database.breaker;
+        if(breaker == null) return null;
+        return breaker.getState();
+    }
+    
+    /**
+     * Returns the length of the ongoing database outage
+     * @return Outage duration, in milliseconds, or <b>0</b> if the database is reachable
+     */
+    public static long getOutageDuration() {
+        CircuitBreaker breaker = Database.breaker;
+        if(breaker == null) return 0;
+        return breaker.getOutageDuration();
+    }
+    
+    /**
+     * Returns the total length of all database outages since the plugin was enabled
+     * @return Total outage time, in milliseconds
+     */
+    public static long getTotalOutage() {
+        CircuitBreaker breaker = Database.breaker;
+        if(breaker == null) return 0;
+        return breaker.getTotalOutage();
+    }
+    
+    /**
+     * Returns the number of times the database was found to be unreachable
+     * @return Number of times the circuit breaker opened
+     */
+    public static long getOutageCount() {
+        CircuitBreaker breaker = Database.breaker;
+        if(breaker == null) return 0;
+        return breaker.getTripCount();
+    }
+    
+    /**
+     * Returns the number of health probes run against the database
+     * @return Probe count
+     */
+    public static long getProbeCount() {
+        CircuitBreaker breaker = Database.breaker;
+        if(breaker == null) return 0;
+        return breaker.getProbeCount();
+    }
+    
+    /**
+     * Represents a transaction bound to a single thread
+     * @author bitWolfy
+     *
+     */
+    private static class Transaction {
+        
+        private final Connection connection;
+        private final List<Runnable> tasks;
+        private int statements;
+        private boolean failed;
+        
+        /**
+         * <b>Default constructor</b><br />
+         * Creates a new transaction on the leased connection
+         * @param connection Leased connection
+         */
+        public Transaction(Connection connection) {
+            this.connection = connection;
+            this.tasks = new ArrayList<Runnable>();
+            this.statements = 0;
+            this.failed = false;
+        }
     }
 }
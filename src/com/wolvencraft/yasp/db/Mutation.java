@@ -0,0 +1,192 @@
+/*
+ * Mutation.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.db;
+
+import java.util.Arrays;
+import java.util.List;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Immutable record of a single write to the database.<br />
+ * Holds the compiled query template and the values bound to it, along with the role of each value,
+ * which is used to coalesce writes to the same row before they are sent to the database.
+ * @author bitWolfy
+ *
+ */
+@Getter(AccessLevel.PUBLIC)
+public class Mutation {
+
+    private final String sql;
+    private final Object[] params;
+    private final Merge[] merge;
+    private final Kind kind;
+    private final String key;
+
+    /**
+     * <b>Default constructor</b><br />
+     * Creates a new mutation from the compiled query
+     * @param sql Query template
+     * @param params Values bound to the template, in order
+     * @param merge Role of each value, in order, or <b>null</b> if the mutation cannot be coalesced
+     * @param kind Kind of the mutation
+     */
+    public Mutation(String sql, List<Object> params, Merge[] merge, Kind kind) {
+        this(sql, params.toArray(), merge, kind);
+    }
+
+    /**
+     * Creates a new mutation from the compiled query
+     * @param sql Query template
+     * @param params Values bound to the template, in order
+     * @param merge Role of each value, in order, or <b>null</b> if the mutation cannot be coalesced
+     * @param kind Kind of the mutation
+     */
+    private Mutation(String sql, Object[] params, Merge[] merge, Kind kind) {
+        this.sql = sql;
+        this.params = params;
+        this.merge = merge;
+        this.kind = kind;
+        this.key = buildKey();
+    }
+
+    /**
+     * Returns the values bound to the query template
+     * @return Values, in order
+     */
+    public List<Object> getParamList() {
+        return Arrays.asList(params);
+    }
+
+    /**
+     * Checks if the mutation can be coalesced with other writes to the same row
+     * @return <b>true</b> if the mutation identifies the row it writes to, <b>false</b> otherwise
+     */
+    public boolean isCoalescable() {
+        return key != null;
+    }
+
+    /**
+     * Combines this mutation with a later write to the same row.<br />
+     * Added values are summed, maximum values keep the greater one, and all other values are taken from the later write.
+     * @param later Later mutation with the same key
+     * @return Combined mutation
+     */
+    public Mutation merge(Mutation later) {
+        if(key == null || !key.equals(later.key)) throw new IllegalArgumentException("Mutations do not write to the same row");
+
+        Object[] merged = new Object[params.length];
+        for(int i = 0; i < params.length; i++) {
+            switch(merge[i]) {
+                case Add:
+                    merged[i] = add(params[i], later.params[i]);
+                    break;
+                case Max:
+                    merged[i] = max(params[i], later.params[i]);
+                    break;
+                default:
+                    merged[i] = later.params[i];
+                    break;
+            }
+        }
+        return new Mutation(sql, merged, merge, kind);
+    }
+
+    /**
+     * Builds the key identifying the row the mutation writes to
+     * @return Row key, or <b>null</b> if the mutation cannot be coalesced
+     */
+    private String buildKey() {
+        if(merge == null || merge.length != params.length) return null;
+
+        StringBuilder builder = new StringBuilder(sql);
+        boolean keyed = false;
+        for(int i = 0; i < params.length; i++) {
+            if(merge[i] != Merge.Key) continue;
+            builder.append('\u0000').append(params[i]);
+            keyed = true;
+        }
+        if(!keyed) return null;
+        return builder.toString();
+    }
+
+    /**
+     * Sums two numeric values
+     * @param first First value
+     * @param second Second value
+     * @return Sum of the values
+     */
+    private static Object add(Object first, Object second) {
+        if(!(first instanceof Number) || !(second instanceof Number)) return second;
+        if(isIntegral(first) && isIntegral(second)) return ((Number) first).longValue() + ((Number) second).longValue();
+        return ((Number) first).doubleValue() + ((Number) second).doubleValue();
+    }
+
+    /**
+     * Returns the greater of two numeric values
+     * @param first First value
+     * @param second Second value
+     * @return Greater value
+     */
+    private static Object max(Object first, Object second) {
+        if(!(first instanceof Number) || !(second instanceof Number)) return second;
+        if(((Number) first).doubleValue() > ((Number) second).doubleValue()) return first;
+        return second;
+    }
+
+    /**
+     * Checks if the value is a whole number
+     * @param value Value to check
+     * @return <b>true</b> if the value is a whole number, <b>false</b> otherwise
+     */
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Role of a value bound to a query template
+     * @author bitWolfy
+     *
+     */
+    public enum Merge {
+        /** Identifies the row */
+        Key,
+        /** Overwrites the stored value */
+        Set,
+        /** Is added to the stored value */
+        Add,
+        /** Replaces the stored value if greater */
+        Max;
+    }
+
+    /**
+     * Kind of a mutation, which determines how it is treated when the write queue is full
+     * @author bitWolfy
+     *
+     */
+    public enum Kind {
+        /** Totals and lookup data; never dropped */
+        Normal,
+        /** Individual detailed rows; can be dropped when the queue is full */
+        Detailed;
+    }
+}
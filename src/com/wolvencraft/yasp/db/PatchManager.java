@@ -21,12 +21,15 @@
 package com.wolvencraft.yasp.db;
 
 import java.io.File;
+import java.util.logging.Level;
 
 import com.wolvencraft.yasp.Statistics;
+import com.wolvencraft.yasp.db.backend.StorageBackend;
 import com.wolvencraft.yasp.util.Message;
 
 /**
- * First copies the patch files from jar to the plugin directory. Then checks the download server for updates.
+ * First copies the patch files from jar to the plugin directory. Then checks the download server for updates.<br />
+ * Patches written for a specific storage backend are copied to <code>patches/&lt;backend&gt;/</code>, and take precedence over the generic ones.
  * @author bitWolfy
  *
  */
@@ -51,8 +54,15 @@ public class PatchManager {
      */
     public static void fetch(String extension) {
         Message.log("+------ [ Fetching Patches ] ------+");
+        StorageBackend backend = Database.getBackend();
         int j = 1;
         while(Statistics.getInstance().getResource("patches/" + j + "." + extension + ".sql") != null) {
+            String dialectPatch = backend.getName() + "/" + j + "." + extension + ".sql";
+            if(Statistics.getInstance().getResource("patches/" + dialectPatch) != null) {
+                if(!localFileExists(dialectPatch)) Statistics.getInstance().saveResource("patches/" + dialectPatch, false);
+            } else if(backend.requiresOwnPatch(j + "." + extension) && !localFileExists(dialectPatch)) {
+                Message.log(Level.SEVERE, "Patch " + dialectPatch + " is missing from the plugin; the database cannot be patched past version " + (j - 1));
+            }
             if(localFileExists(j + "." + extension + ".sql")) { j++; continue; }
             Message.log("|" + Message.centerString("Copying " + j + "." + extension + ".sql", 34) + "|");
             Statistics.getInstance().saveResource("patches/" + j + "." + extension + ".sql", false);
@@ -20,19 +20,24 @@
 
 package com.wolvencraft.yasp.db;
 
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.logging.Level;
 
+import com.wolvencraft.yasp.db.Mutation.Kind;
+import com.wolvencraft.yasp.db.Mutation.Merge;
+import com.wolvencraft.yasp.db.backend.StorageBackend;
 import com.wolvencraft.yasp.db.tables.DBTable;
 import com.wolvencraft.yasp.settings.LocalConfiguration;
 import com.wolvencraft.yasp.util.ExceptionHandler;
 import com.wolvencraft.yasp.util.Message;
-import com.wolvencraft.yasp.util.Util;
 
 /**
  * Modular database query factory. Used to build and run SELECT, INSERT, and UPDATE queries.
@@ -59,6 +64,14 @@ public class Query {
         return instance.new DatabaseQuery(table.getColumnName());
     }
     
+    /**
+     * Returns an aggregate query, which calculates values over several tables in a single round-trip
+     * @return Aggregate query
+     */
+    public static AggregateQuery aggregate() {
+        return instance.new AggregateQuery();
+    }
+    
     /**
      * Safely casts a Map to QueryResult
      * @param map Map to apply the cast to
@@ -68,16 +81,94 @@ public class Query {
         return instance.new QueryResult(map);
     }
     
+    /**
+     * Decodes the current row of the result set
+     * @param layout Layout of the result set
+     * @param rs Result set, positioned on the row to read
+     * @return <b>QueryResult</b> decoded row
+     * @throws SQLException Thrown if a value could not be read
+     */
+    public static QueryResult toQueryResult(ResultLayout layout, ResultSet rs) throws SQLException {
+        return instance.new QueryResult(layout, rs);
+    }
+    
+    /**
+     * Runs the INSERT queries as one batch and commits them at once.<br />
+     * Queries of the same shape share a single prepared statement.
+     * @param queries INSERT queries to run
+     * @return <b>true</b> if all rows were inserted, <b>false</b> if the batch was rolled back
+     */
+    public static boolean insert(List<DatabaseQuery> queries) {
+        return executeBatch(queries, false);
+    }
+    
+    /**
+     * Runs the INSERT ... ON DUPLICATE KEY UPDATE queries as one batch and commits them at once.<br />
+     * Queries of the same shape share a single prepared statement, which the driver may send as a single multi-row statement.
+     * @param queries Upsert queries to run
+     * @return <b>true</b> if all rows were inserted or updated, <b>false</b> if the batch was rolled back
+     */
+    public static boolean upsert(List<DatabaseQuery> queries) {
+        return executeBatch(queries, true);
+    }
+    
+    /**
+     * Runs the queries as one batch and commits them at once, or hands them over to the write-behind queue
+     * if the current thread is capturing writes
+     * @param queries Queries to run
+     * @param upsert <b>true</b> to run the queries as upserts, <b>false</b> to run them as inserts
+     * @return <b>true</b> if all rows were written, <b>false</b> if the batch was rolled back
+     */
+    private static boolean executeBatch(List<DatabaseQuery> queries, boolean upsert) {
+        if(queries.isEmpty()) return true;
+        
+        if(WriteBehind.isCapturing()) {
+            for(DatabaseQuery query : queries) {
+                List<Object> params = new ArrayList<Object>();
+                if(upsert) {
+                    Merge[] merge = new Merge[query.values.size()];
+                    WriteBehind.capture(new Mutation(query.buildUpsert(params, merge, null), params, merge, Kind.Normal));
+                } else WriteBehind.capture(new Mutation(query.buildInsert(params), params, null, Kind.Detailed));
+            }
+            return true;
+        }
+        
+        Map<String, List<List<Object>>> batches = new LinkedHashMap<String, List<List<Object>>>();
+        for(DatabaseQuery query : queries) {
+            List<Object> params = new ArrayList<Object>();
+            String sql;
+            if(upsert) sql = query.buildUpsert(params, new Merge[query.values.size()], null);
+            else sql = query.buildInsert(params);
+            List<List<Object>> rows = batches.get(sql);
+            if(rows == null) {
+                rows = new ArrayList<List<Object>>();
+                batches.put(sql, rows);
+            }
+            rows.add(params);
+        }
+        
+        try {
+            Message.debug(Level.FINEST, "Batch of " + queries.size() + " rows: " + batches.keySet());
+            return Database.executeBatch(batches);
+        } catch (Throwable t) {
+            Message.log(Level.SEVERE, "An error occurred while pushing data to the remote database.");
+            Message.log(Level.SEVERE, t.getMessage());
+            if(LocalConfiguration.Debug.toBoolean()) ExceptionHandler.handle(t);
+            return false;
+        }
+    }
+    
     /**
      * Safely pushes data to the remote database. <br />
      * Wraps around the corresponding Database method and handles any errors that might occur in it.
-     * @param sql SQL query
+     * @param sql SQL query template
+     * @param params Values bound to the query template, in order
      * @return <b>true</b> if the sync is successful, <b>false</b> otherwise
      */
-    private static boolean executeUpdate(String sql) {
+    private static boolean executeUpdate(String sql, List<Object> params) {
         try {
-            Message.debug(Level.FINEST, sql);
-            return Database.executeUpdate(sql);
+            Message.debug(Level.FINEST, sql + " " + params);
+            return Database.executeUpdate(sql, params);
         } catch (Throwable t) {
             Message.log(Level.SEVERE, "An error occurred while pushing data to the remote database.");
             Message.log(Level.SEVERE, t.getMessage());
@@ -86,27 +177,80 @@ public class Query {
         }
     }
     
+    /**
+     * Safely pushes a single row to the remote database, and returns the key generated for it.<br />
+     * Wraps around the corresponding Database method and handles any errors that might occur in it.
+     * @param sql SQL query template
+     * @param params Values bound to the query template, in order
+     * @return Generated key, or <b>-1</b> if there is none
+     */
+    private static long executeInsert(String sql, List<Object> params) {
+        try {
+            Message.debug(Level.FINEST, sql + " " + params);
+            return Database.executeInsert(sql, params);
+        } catch (Throwable t) {
+            Message.log(Level.SEVERE, "An error occurred while pushing data to the remote database.");
+            Message.log(Level.SEVERE, t.getMessage());
+            if(LocalConfiguration.Debug.toBoolean()) ExceptionHandler.handle(t);
+            return -1;
+        }
+    }
+    
+    /**
+     * Hands the query over to the write-behind queue if the current thread is capturing writes or the query is deferred;
+     * otherwise, pushes it to the remote database right away.
+     * @param sql SQL query template
+     * @param params Values bound to the query template, in order
+     * @param merge Role of each value, in order, or <b>null</b> if the query cannot be coalesced
+     * @param kind Kind of the query
+     * @param deferred <b>true</b> if the query does not have to be written before the method returns
+     * @return <b>true</b> if the query was queued or the sync is successful, <b>false</b> otherwise
+     */
+    private static boolean executeUpdate(String sql, List<Object> params, Merge[] merge, Kind kind, boolean deferred) {
+        Mutation mutation = new Mutation(sql, params, merge, kind);
+        if(WriteBehind.capture(mutation)) return true;
+        if(deferred && WriteBehind.defer(mutation)) return true;
+        return executeUpdate(sql, params);
+    }
+    
     /**
      * Safely returns the data from the remote server according to the SQL query.<br />
      * Wraps around the corresponding Database method and handles any errors that might occur in it.
-     * @param sql SQL query
+     * @param sql SQL query template
+     * @param params Values bound to the query template, in order
      * @return Data from the remote database
      */
-    private static List<QueryResult> executeQuery(String sql) {
+    private static List<QueryResult> executeQuery(String sql, List<Object> params) {
+        return executeQuery(sql, params, false);
+    }
+    
+    /**
+     * Safely returns the data from the remote server according to the SQL query.<br />
+     * Wraps around the corresponding Database method and handles any errors that might occur in it.
+     * @param sql SQL query template
+     * @param params Values bound to the query template, in order
+     * @param strict <b>true</b> to return <b>null</b> if the query could not be run, <b>false</b> to return an empty list
+     * @return Data from the remote database, or <b>null</b> if an error occurred and <i>strict</i> is set
+     */
+    private static List<QueryResult> executeQuery(String sql, List<Object> params, boolean strict) {
         try {
-            Message.debug(Level.FINEST, sql);
-            return Database.executeQuery(sql);
+            Message.debug(Level.FINEST, sql + " " + params);
+            if(strict) return Database.tryExecuteQuery(sql, params);
+            return Database.executeQuery(sql, params);
         } catch (Throwable t) {
             Message.log(Level.SEVERE, "An error occurred while fetching data from the remote database.");
             Message.log(Level.SEVERE, t.getMessage());
             if(LocalConfiguration.Debug.toBoolean()) ExceptionHandler.handle(t);
+            if(strict) return null;
             return new ArrayList<QueryResult>();
         }
     }    
     
     
     /**
-     * Represents a standard database query
+     * Represents a standard database query.<br />
+     * Queries are compiled into parameterized templates; values are never written into the SQL string,
+     * so queries of the same shape share a single prepared statement.
      * @author bitWolfy
      *
      */
@@ -116,7 +260,11 @@ public class Query {
         private String table;
         private List<String> columns;
         private Map<Object, Object> values;
+        private Map<Object, String> updates;
+        private Map<Object, Merge> merges;
         private List<String> conditions;
+        private List<Object> conditionValues;
+        private boolean deferred;
         
         /**
          * <b>Default constructor</b><br />
@@ -128,8 +276,12 @@ public class Query {
             this.instance = this;
             this.table = table;
             this.columns = new ArrayList<String>();
-            this.values = new HashMap<Object, Object>();
+            this.values = new LinkedHashMap<Object, Object>();
+            this.updates = new LinkedHashMap<Object, String>();
+            this.merges = new LinkedHashMap<Object, Merge>();
             this.conditions = new ArrayList<String>();
+            this.conditionValues = new ArrayList<Object>();
+            this.deferred = false;
         }
         
         /**
@@ -172,7 +324,8 @@ public class Query {
          * @return Database query
          */
         public DatabaseQuery condition(String key, Object value) {
-            this.conditions.add("`" + key + "`='" + value.toString() + "'");
+            this.conditions.add("`" + key + "`=?");
+            this.conditionValues.add(value);
             return instance;
         }
         
@@ -183,7 +336,8 @@ public class Query {
          * @return Database query
          */
         public DatabaseQuery condition(DBTable column, String value) {
-            this.conditions.add("`" + column.getColumnName() + "`='" + value + "'");
+            this.conditions.add("`" + column.getColumnName() + "`=?");
+            this.conditionValues.add(value);
             return instance;
         }
 
@@ -194,7 +348,8 @@ public class Query {
          * @return Database query
          */
         public DatabaseQuery condition(DBTable column, Integer value) {
-            this.conditions.add("`" + column.getColumnName() + "`=" + value);
+            this.conditions.add("`" + column.getColumnName() + "`=?");
+            this.conditionValues.add(value);
             return instance;
         }
 
@@ -205,7 +360,8 @@ public class Query {
          * @return Database query
          */
         public DatabaseQuery condition(DBTable column, Double value) {
-            this.conditions.add("`" + column.getColumnName() + "`=" + value);
+            this.conditions.add("`" + column.getColumnName() + "`=?");
+            this.conditionValues.add(value);
             return instance;
         }
 
@@ -216,7 +372,8 @@ public class Query {
          * @return Database query
          */
         public DatabaseQuery condition(DBTable column, Long value) {
-            this.conditions.add("`" + column.getColumnName() + "`=" + value);
+            this.conditions.add("`" + column.getColumnName() + "`=?");
+            this.conditionValues.add(value);
             return instance;
         }
 
@@ -227,13 +384,33 @@ public class Query {
          * @return Database query
          */
         public DatabaseQuery condition(DBTable column, Boolean value) {
-            if(value) this.conditions.add("`" + column.getColumnName() + "`=1");
-            else this.conditions.add("`" + column.getColumnName() + "`=0");
+            this.conditions.add("`" + column.getColumnName() + "`=?");
+            this.conditionValues.add(value);
             return instance;
         }
 
         /**
-         * Applies a set of conditions to the query
+         * Applies a condition that matches any of the specified values
+         * @param column Column
+         * @param values Column values. Must not be empty
+         * @return Database query
+         */
+        public DatabaseQuery conditionIn(DBTable column, Collection<?> values) {
+            StringBuilder condition = new StringBuilder("`").append(column.getColumnName()).append("` IN (");
+            boolean first = true;
+            for(Object value : values) {
+                if(!first) condition.append(", ");
+                condition.append("?");
+                this.conditionValues.add(value);
+                first = false;
+            }
+            this.conditions.add(condition.append(")").toString());
+            return instance;
+        }
+        
+        /**
+         * Applies a set of raw conditions to the query.<br />
+         * The conditions are inserted into the query template as-is and should not contain user input.
          * @param list List of conditions
          * @return Database query
          */
@@ -296,6 +473,61 @@ public class Query {
             return instance;
         }
         
+        /**
+         * Adds a value to be added to the one stored in the database.<br />
+         * Used by <code>upsert()</code>; other queries treat it as a normal value.
+         * @param column Column name
+         * @param delta Amount to add
+         * @return Database query
+         */
+        public DatabaseQuery increment(DBTable column, Object delta) {
+            String key = column.getColumnName();
+            this.values.put(key, delta);
+            this.updates.put(key, "`" + key + "` = `" + key + "` + " + Database.getBackend().getInsertedValue(key));
+            this.merges.put(key, Merge.Add);
+            return instance;
+        }
+        
+        /**
+         * Adds a value that only replaces the one stored in the database if it is greater.<br />
+         * Used by <code>upsert()</code>; other queries treat it as a normal value.
+         * @param column Column name
+         * @param value Column value
+         * @return Database query
+         */
+        public DatabaseQuery maximum(DBTable column, Object value) {
+            String key = column.getColumnName();
+            this.values.put(key, value);
+            this.updates.put(key, "`" + key + "` = " + Database.getBackend().getGreatest("`" + key + "`", Database.getBackend().getInsertedValue(key)));
+            this.merges.put(key, Merge.Max);
+            return instance;
+        }
+        
+        /**
+         * Adds a value that is only written if the row does not exist yet.<br />
+         * Used by <code>upsert()</code>; other queries treat it as a normal value.
+         * @param column Column name
+         * @param value Column value
+         * @return Database query
+         */
+        public DatabaseQuery initial(DBTable column, Object value) {
+            String key = column.getColumnName();
+            this.values.put(key, value);
+            this.updates.put(key, "`" + key + "` = `" + key + "`");
+            return instance;
+        }
+        
+        /**
+         * Allows the query to be written to the database in the background.<br />
+         * Deferred queries return as soon as they are queued, and are written in the order they were run.
+         * Has no effect if the write-behind queue is not running.
+         * @return Database query
+         */
+        public DatabaseQuery deferred() {
+            this.deferred = true;
+            return instance;
+        }
+        
         /**
          * Builds and runs the SELECT query that returns the first result found
          * @return <b>QueryResult</b> the first result found or <b>null</b> if there isn't one.
@@ -310,26 +542,7 @@ public class Query {
          * @return <b>QueryResult</b> the result found or <b>null</b> if there isn't one.
          */
         public QueryResult select(int index) {
-            String sql = "SELECT ";
-            
-            String columnString = "";
-            if(instance.columns.isEmpty()) columnString = "*";
-            else {
-                for(String str : instance.columns) {
-                    if(!columnString.equals("")) columnString += ", ";
-                    columnString += "`" + str + "`";
-                }
-            }
-            sql += columnString + " FROM `" + LocalConfiguration.DBPrefix.toString() + table + "`";
-            
-            String conditionString = "";
-            for(String str : instance.conditions) {
-                if(!conditionString.equals("")) conditionString += " AND ";
-                conditionString += str;
-            }
-            if(!conditionString.equals("")) sql += " WHERE " + conditionString;
-            
-            try { return Query.executeQuery(sql + ";").get(index); }
+            try { return selectAll().get(index); }
             catch (NullPointerException ex) { return null; }
             catch (IndexOutOfBoundsException aiex) { return null; }
         }
@@ -340,26 +553,58 @@ public class Query {
          * @return List of results. Might be empty.
          */
         public List<QueryResult> selectAll() {
-            String sql = "SELECT ";
+            return selectAll(false);
+        }
+        
+        /**
+         * Builds and runs the SELECT query that returns a list of results from the database.
+         * @param strict If <b>true</b>, <b>null</b> is returned if the query could not be run, instead of an empty list
+         * @return List of results, or <b>null</b> if an error occurred and <i>strict</i> is set
+         */
+        public List<QueryResult> selectAll(boolean strict) {
+            return Query.executeQuery(buildSelect(), conditionValues, strict);
+        }
+        
+        /**
+         * Builds and runs the SELECT query, returning a cursor that fetches the results as it advances.<br />
+         * Should be used instead of <code>selectAll();</code> for tables that might be too large to fit in memory.
+         * The cursor must be closed once it is no longer needed.
+         * @return Cursor over the results. Empty if an error occurred
+         */
+        public QueryCursor stream() {
+            return stream(LocalConfiguration.DBFetchSize.toInteger());
+        }
+        
+        /**
+         * Builds and runs the SELECT query, returning a cursor that fetches the results as it advances.<br />
+         * The cursor must be closed once it is no longer needed.
+         * @param fetchSize Number of rows fetched at a time, or <b>0</b> to stream rows one by one
+         * @return Cursor over the results. Empty if an error occurred
+         */
+        public QueryCursor stream(int fetchSize) {
+            String sql = buildSelect();
+            Message.debug(Level.FINEST, sql + " " + conditionValues);
+            return Database.openCursor(sql, conditionValues, fetchSize);
+        }
+        
+        /**
+         * Builds the SELECT query template
+         * @return Query template
+         */
+        private String buildSelect() {
+            StringBuilder sql = new StringBuilder("SELECT ");
             
-            String columnString = "";
-            if(instance.columns.isEmpty()) columnString = "*";
+            if(columns.isEmpty()) sql.append("*");
             else {
-                for(String str : instance.columns) {
-                    if(!columnString.equals("")) columnString += ", ";
-                    columnString += "`" + str + "`";
+                for(int i = 0; i < columns.size(); i++) {
+                    if(i > 0) sql.append(", ");
+                    sql.append("`").append(columns.get(i)).append("`");
                 }
             }
-            sql += columnString + " FROM `" + LocalConfiguration.DBPrefix.toString() + table + "`";
+            sql.append(" FROM `").append(LocalConfiguration.DBPrefix.toString()).append(table).append("`");
+            appendConditions(sql);
             
-            String conditionString = "";
-            for(String str : instance.conditions) {
-                if(!conditionString.equals("")) conditionString += " AND ";
-                conditionString += str;
-            }
-            if(!conditionString.equals("")) sql += " WHERE " + conditionString;
-            
-            return Query.executeQuery(sql + ";");
+            return sql.append(";").toString();
         }
         
         /**
@@ -375,26 +620,14 @@ public class Query {
          * @return <b>double</b> sum of rows in a specified column
          */
         public double sum() {
-            String sql = "SELECT sum(";
+            StringBuilder sql = new StringBuilder("SELECT sum(");
             
-            String columnString = "";
-            if(instance.columns.isEmpty()) columnString = "*";
-            else {
-                for(String str : instance.columns) {
-                    if(!columnString.equals("")) columnString += ", ";
-                    else columnString += "`" + str + "`";
-                }
-            }
-            sql += columnString + ") as `temp` FROM `" + LocalConfiguration.DBPrefix.toString() + table + "`";
-            
-            String conditionString = "";
-            for(String str : instance.conditions) {
-                if(!conditionString.equals("")) conditionString += " AND ";
-                conditionString += str;
-            }
-            if(!conditionString.equals("")) sql += " WHERE " + conditionString;
+            if(columns.isEmpty()) sql.append("*");
+            else sql.append("`").append(columns.get(0)).append("`");
+            sql.append(") as `temp` FROM `").append(LocalConfiguration.DBPrefix.toString()).append(table).append("`");
+            appendConditions(sql);
             
-            try { return Query.executeQuery(sql + ";").get(0).asDouble("temp"); }
+            try { return Query.executeQuery(sql.append(";").toString(), conditionValues).get(0).asDouble("temp"); }
             catch (Exception e) { return 0; }
         }
         
@@ -403,30 +636,95 @@ public class Query {
          * @return <b>true</b> if the value was successfully inserted, <b>false</b> if an error occurred
          */
         public boolean insert() {
-            String sql = "INSERT INTO `" + LocalConfiguration.DBPrefix.toString() + table + "` (";
+            List<Object> params = new ArrayList<Object>(values.size() + conditionValues.size());
+            return executeUpdate(buildInsert(params), params, null, Kind.Detailed, deferred);
+        }
+        
+        /**
+         * Builds the INSERT query template
+         * @param params List to which the values are added, in order
+         * @return Query template
+         */
+        private String buildInsert(List<Object> params) {
+            StringBuilder sql = new StringBuilder("INSERT INTO `").append(LocalConfiguration.DBPrefix.toString()).append(table).append("` (");
             
-            String fieldString = "";
-            String valueString = "";
-            Iterator<Entry<Object, Object>> it = instance.values.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<Object, Object> pairs = (Entry<Object, Object>) it.next();
-                if(!fieldString.equals("")) fieldString += ", ";
-                if(!valueString.equals("")) valueString += ", ";
-                
-                fieldString += "`" + pairs.getKey().toString() + "`";
-                valueString += "'" + Util.parseString(pairs.getValue().toString()) + "'";
-                it.remove();
+            StringBuilder valueString = new StringBuilder();
+            for(Entry<Object, Object> pairs : values.entrySet()) {
+                if(valueString.length() > 0) {
+                    sql.append(", ");
+                    valueString.append(", ");
+                }
+                sql.append("`").append(pairs.getKey().toString()).append("`");
+                valueString.append("?");
+                params.add(pairs.getValue());
             }
-            sql += fieldString + ") VALUES (" + valueString + ")";
+            sql.append(") VALUES (").append(valueString).append(")");
+            appendConditions(sql);
+            params.addAll(conditionValues);
+            
+            return sql.append(";").toString();
+        }
+        
+        /**
+         * Builds and runs the INSERT ... ON DUPLICATE KEY UPDATE query, in the dialect of the storage backend.<br />
+         * The values must include all columns of a unique key of the table. If a row with the same key exists,
+         * incremented columns are added to it, maximum columns keep the greater value, and all other columns are overwritten.
+         * Conditions are ignored.
+         * @return <b>true</b> if the row was inserted or updated, <b>false</b> if an error occurred
+         */
+        public boolean upsert() {
+            List<Object> params = new ArrayList<Object>(values.size());
+            Merge[] merge = new Merge[values.size()];
+            return executeUpdate(buildUpsert(params, merge, null), params, merge, Kind.Normal, deferred);
+        }
+        
+        /**
+         * Builds and runs the INSERT ... ON DUPLICATE KEY UPDATE query right away, and returns the key of the row.<br />
+         * The query is never queued, since its result is needed. If the backend cannot report the key of an existing row,
+         * <b>-1</b> is returned, and the row has to be selected instead.
+         * @param key Auto-increment key column of the table
+         * @return Key of the inserted or updated row, or <b>-1</b> if it is not known
+         */
+        public long upsertKey(DBTable key) {
+            List<Object> params = new ArrayList<Object>(values.size());
+            Merge[] merge = new Merge[values.size()];
+            return executeInsert(buildUpsert(params, merge, key.getColumnName()), params);
+        }
+        
+        /**
+         * Builds the INSERT ... ON DUPLICATE KEY UPDATE query template, in the dialect of the storage backend
+         * @param params List to which the values are added, in order
+         * @param merge Array in which the role of each value is stored, in order
+         * @param key Auto-increment key column to report as the generated key, or <b>null</b>
+         * @return Query template
+         */
+        private String buildUpsert(List<Object> params, Merge[] merge, String key) {
+            StorageBackend backend = Database.getBackend();
+            StringBuilder sql = new StringBuilder("INSERT INTO `").append(LocalConfiguration.DBPrefix.toString()).append(table).append("` (");
             
-            String conditionString = "";
-            for(String str : instance.conditions) {
-                if(!conditionString.equals("")) conditionString += " AND ";
-                conditionString += str;
+            StringBuilder valueString = new StringBuilder();
+            StringBuilder updateString = new StringBuilder();
+            for(Entry<Object, Object> pairs : values.entrySet()) {
+                String column = pairs.getKey().toString();
+                if(!params.isEmpty()) {
+                    sql.append(", ");
+                    valueString.append(", ");
+                    updateString.append(", ");
+                }
+                sql.append("`").append(column).append("`");
+                valueString.append("?");
+                
+                String update = updates.get(column);
+                if(update == null) updateString.append("`").append(column).append("` = ").append(backend.getInsertedValue(column));
+                else updateString.append(update);
+                Merge role = merges.get(column);
+                merge[params.size()] = role == null ? Merge.Key : role;
+                params.add(pairs.getValue());
             }
-            if(!conditionString.equals("")) sql += " WHERE " + conditionString;
+            if(key != null) updateString.append(", ").append(backend.getKeyUpdate(key));
+            sql.append(") VALUES (").append(valueString).append(") ").append(backend.getUpsertClause()).append(" ").append(updateString);
             
-            return executeUpdate(sql + ";");
+            return sql.append(";").toString();
         }
         
         /**
@@ -434,27 +732,7 @@ public class Query {
          * @return <b>true</b> if the value was successfully updated, <b>false</b> if an error occurred
          */
         public boolean update() {
-            String sql = "UPDATE `" + LocalConfiguration.DBPrefix.toString() + table + "`";
-            
-            String valueString = "";
-            Iterator<Entry<Object, Object>> it = instance.values.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<Object, Object> pairs = (Entry<Object, Object>) it.next();
-                if(!valueString.equals("")) valueString += ", ";
-                
-                valueString += "`" + pairs.getKey().toString() + "`='" + Util.parseString(pairs.getValue().toString()) + "'";
-                it.remove();
-            }
-            sql += " SET " + valueString;
-            
-            String conditionString = "";
-            for(String str : instance.conditions) {
-                if(!conditionString.equals("")) conditionString += " AND ";
-                conditionString += str;
-            }
-            if(!conditionString.equals("")) sql += " WHERE " + conditionString;
-            
-            return executeUpdate(sql + ";");
+            return update(false);
         }
         
         /**
@@ -463,28 +741,25 @@ public class Query {
          * @return <b>true</b> if the value was successfully updated, <b>false</b> if an error occurred
          */
         public boolean update(boolean merged) {
-            if(!merged) return update();
-            String sql = "UPDATE `" + LocalConfiguration.DBPrefix.toString() + table + "`";
+            StringBuilder sql = new StringBuilder("UPDATE `").append(LocalConfiguration.DBPrefix.toString()).append(table).append("` SET ");
+            List<Object> params = new ArrayList<Object>(values.size() + conditionValues.size());
+            Merge[] merge = new Merge[values.size() + conditionValues.size()];
             
-            String valueString = "";
-            Iterator<Entry<Object, Object>> it = instance.values.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<Object, Object> pairs = (Entry<Object, Object>) it.next();
-                if(!valueString.equals("")) valueString += ", ";
-                
-                valueString += "`" + pairs.getKey().toString() + "` = `" + pairs.getKey().toString() + "` + '" + pairs.getValue().toString() + "'";
-                it.remove();
+            for(Entry<Object, Object> pairs : values.entrySet()) {
+                if(!params.isEmpty()) sql.append(", ");
+                merge[params.size()] = merged ? Merge.Add : Merge.Set;
+                String key = pairs.getKey().toString();
+                if(merged) sql.append("`").append(key).append("` = `").append(key).append("` + ?");
+                else sql.append("`").append(key).append("`=?");
+                params.add(pairs.getValue());
             }
-            sql += " SET " + valueString;
-            
-            String conditionString = "";
-            for(String str : instance.conditions) {
-                if(!conditionString.equals("")) conditionString += " AND ";
-                conditionString += str;
+            appendConditions(sql);
+            for(Object value : conditionValues) {
+                merge[params.size()] = Merge.Key;
+                params.add(value);
             }
-            if(!conditionString.equals("")) sql += " WHERE " + conditionString;
             
-            return executeUpdate(sql + ";");
+            return executeUpdate(sql.append(";").toString(), params, merge, Kind.Normal, deferred);
         }
         
         /**
@@ -493,16 +768,142 @@ public class Query {
          * @return <b>true</b> if the row was deleted, <b>false</b> if an error occurred
          */
         public boolean delete() {
-            String sql = "DELETE FROM `" + LocalConfiguration.DBPrefix.toString() + table + "`";
+            StringBuilder sql = new StringBuilder("DELETE FROM `").append(LocalConfiguration.DBPrefix.toString()).append(table).append("`");
+            appendConditions(sql);
             
-            String conditionString = "";
-            for(String str : instance.conditions) {
-                if(!conditionString.equals("")) conditionString += " AND ";
-                conditionString += str;
+            return executeUpdate(sql.append(";").toString(), conditionValues, null, Kind.Normal, deferred);
+        }
+        
+        /**
+         * Appends the WHERE clause to the query template
+         * @param sql Query template
+         */
+        private void appendConditions(StringBuilder sql) {
+            for(int i = 0; i < conditions.size(); i++) {
+                sql.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
             }
-            if(!conditionString.equals("")) sql += " WHERE " + conditionString;
+        }
+        
+    }
+    
+    
+    /**
+     * Represents a query that calculates aggregate values over one or more tables.<br />
+     * Every table is aggregated in its own derived table, and the derived tables are joined into a single row,
+     * so that any number of sums can be fetched with one statement. Sums over no rows are <b>0</b>.
+     * @author bitWolfy
+     *
+     */
+    public class AggregateQuery {
+        
+        private AggregateQuery instance;
+        private List<String> sources;
+        private List<Object> conditionValues;
+        private String table;
+        private List<String> columns;
+        private List<String> conditions;
+        private List<Object> values;
+        
+        /**
+         * <b>Default constructor</b><br />
+         * Creates a new, empty aggregate query.<br />
+         * While it is possible to create an instance of this class manually, it is recommended to use the aggregate() method in the Query class.
+         */
+        public AggregateQuery() {
+            this.instance = this;
+            this.sources = new ArrayList<String>();
+            this.conditionValues = new ArrayList<Object>();
+            this.table = null;
+            this.columns = new ArrayList<String>();
+            this.conditions = new ArrayList<String>();
+            this.values = new ArrayList<Object>();
+        }
+        
+        /**
+         * Selects the table the following aggregates and conditions apply to
+         * @param table Table to aggregate
+         * @return Aggregate query
+         */
+        public AggregateQuery table(DBTable table) {
+            close();
+            this.table = table.getColumnName();
+            return instance;
+        }
+        
+        /**
+         * Applies a condition to the current table
+         * @param column Column name
+         * @param value Column value
+         * @return Aggregate query
+         */
+        public AggregateQuery condition(DBTable column, Object value) {
+            this.conditions.add("`" + column.getColumnName() + "`=?");
+            this.values.add(value);
+            return instance;
+        }
+        
+        /**
+         * Calculates the sum of the rows in the specified column of the current table
+         * @param column Column to sum
+         * @param alias Name under which the sum is returned
+         * @return Aggregate query
+         */
+        public AggregateQuery sum(DBTable column, String alias) {
+            this.columns.add("COALESCE(SUM(`" + column.getColumnName() + "`), 0) AS `" + alias + "`");
+            return instance;
+        }
+        
+        /**
+         * Calculates the greatest value in the specified column of the current table
+         * @param column Column to check
+         * @param alias Name under which the value is returned
+         * @return Aggregate query
+         */
+        public AggregateQuery maximum(DBTable column, String alias) {
+            this.columns.add("MAX(`" + column.getColumnName() + "`) AS `" + alias + "`");
+            return instance;
+        }
+        
+        /**
+         * Builds and runs the query
+         * @return <b>QueryResult</b> holding all aggregates, or <b>null</b> if an error occurred
+         */
+        public QueryResult select() {
+            close();
+            if(sources.isEmpty()) return null;
             
-            return executeUpdate(sql + ";");
+            StringBuilder sql = new StringBuilder("SELECT * FROM ");
+            for(int i = 0; i < sources.size(); i++) {
+                if(i > 0) sql.append(", ");
+                sql.append("(").append(sources.get(i)).append(") AS `t").append(i).append("`");
+            }
+            
+            List<QueryResult> results = Query.executeQuery(sql.append(";").toString(), conditionValues);
+            if(results.isEmpty()) return null;
+            return results.get(0);
+        }
+        
+        /**
+         * Adds the current table to the query as a derived table
+         */
+        private void close() {
+            if(table != null && !columns.isEmpty()) {
+                StringBuilder sql = new StringBuilder("SELECT ");
+                for(int i = 0; i < columns.size(); i++) {
+                    if(i > 0) sql.append(", ");
+                    sql.append(columns.get(i));
+                }
+                sql.append(" FROM `").append(LocalConfiguration.DBPrefix.toString()).append(table).append("`");
+                for(int i = 0; i < conditions.size(); i++) {
+                    sql.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+                }
+                sources.add(sql.toString());
+                conditionValues.addAll(values);
+            }
+            table = null;
+            columns.clear();
+            conditions.clear();
+            values.clear();
         }
         
     }
@@ -510,14 +911,17 @@ public class Query {
     
     /**
      * Represents the result of a SQL query to the database.<br />
-     * This class wraps around a Map&lt;String, String&gt;, in which the key represents the column name,
-     * and the value represents the value corresponding to the specified column.<br />
+     * Values are decoded once, into typed slots described by a layout shared by all rows of the result set,
+     * in which the key represents the column name, and the value represents the value corresponding to the specified column.<br />
      * This class exists to prevent extremely confusing lists of maps, which can be quite a handful.
      * @author bitWolfy
      *
      */
     public class QueryResult {
-        private Map<String, String> fields;
+        private ResultLayout layout;
+        private long[] numbers;
+        private String[] text;
+        private boolean[] nulls;
         
         /**
          * <b>Default constructor.</b><br />
@@ -525,7 +929,39 @@ public class Query {
          * @param fields Column-value pairs
          */
         public QueryResult(Map<String, String> fields) {
-            this.fields = fields;
+            this.layout = new ResultLayout(fields.keySet());
+            this.numbers = new long[0];
+            this.text = fields.values().toArray(new String[layout.getTextCount()]);
+        }
+        
+        /**
+         * Creates a new QueryResult from the current row of the result set
+         * @param layout Layout of the result set
+         * @param rs Result set, positioned on the row to read
+         * @throws SQLException Thrown if a value could not be read
+         */
+        public QueryResult(ResultLayout layout, ResultSet rs) throws SQLException {
+            this.layout = layout;
+            this.numbers = new long[layout.getColumnCount()];
+            this.text = new String[layout.getTextCount()];
+            
+            for(int i = 0; i < numbers.length; i++) {
+                switch(layout.getKind(i)) {
+                    case ResultLayout.INTEGRAL:
+                        numbers[i] = rs.getLong(i + 1);
+                        break;
+                    case ResultLayout.REAL:
+                        numbers[i] = Double.doubleToRawLongBits(rs.getDouble(i + 1));
+                        break;
+                    default:
+                        text[layout.getTextSlot(i)] = rs.getString(i + 1);
+                        continue;
+                }
+                if(rs.wasNull()) {
+                    if(nulls == null) nulls = new boolean[numbers.length];
+                    nulls[i] = true;
+                }
+            }
         }
         
         /**
@@ -534,7 +970,16 @@ public class Query {
          * @return <b>String</b> The value of the specified column, or <b>null</b> if there isn't one.
          */
         public String asString(String column) {
-            return fields.get(column.toString());
+            int i = layout.indexOf(column);
+            if(i == -1 || isNull(i)) return null;
+            switch(layout.getKind(i)) {
+                case ResultLayout.INTEGRAL:
+                    return Long.toString(numbers[i]);
+                case ResultLayout.REAL:
+                    return formatReal(Double.longBitsToDouble(numbers[i]));
+                default:
+                    return text[layout.getTextSlot(i)];
+            }
         }
         
         /**
@@ -549,16 +994,25 @@ public class Query {
         /**
          * Returns the value of the specified column.
          * @param column Column name
-         * @return <b>boolean</b> The value of the specified column, or <b>null</b> if there isn't one.
+         * @return <b>boolean</b> The value of the specified column, or <b>false</b> if there isn't one.
          */
         public boolean asBoolean(String column) {
-            return fields.get(column).equalsIgnoreCase("1");
+            int i = layout.indexOf(column);
+            if(i == -1 || isNull(i)) return false;
+            switch(layout.getKind(i)) {
+                case ResultLayout.INTEGRAL:
+                    return numbers[i] == 1;
+                case ResultLayout.REAL:
+                    return Double.longBitsToDouble(numbers[i]) == 1;
+                default:
+                    return "1".equals(text[layout.getTextSlot(i)]);
+            }
         }
         
         /**
          * Returns the value of the specified column.
          * @param column Column name
-         * @return <b>boolean</b> The value of the specified column, or <b>null</b> if there isn't one.
+         * @return <b>boolean</b> The value of the specified column, or <b>false</b> if there isn't one.
          */
         public boolean asBoolean(DBTable column) {
             return asBoolean(column.getColumnName());
@@ -567,16 +1021,16 @@ public class Query {
         /**
          * Returns the value of the specified column.
          * @param column Column name
-         * @return <b>int</b> The value of the specified column, or <b>null</b> if there isn't one.
+         * @return <b>int</b> The value of the specified column, or <b>-1</b> if there isn't one.
          */
         public int asInt(String column) {
-            try { return Integer.parseInt(fields.get(column)); }
-            catch (NumberFormatException e) { return -1; }
+            return (int) asLong(column);
         }
+        
         /**
          * Returns the value of the specified column.
          * @param column Column name
-         * @return <b>int</b> The value of the specified column, or <b>null</b> if there isn't one.
+         * @return <b>int</b> The value of the specified column, or <b>-1</b> if there isn't one.
          */
         public int asInt(DBTable column) {
             return asInt(column.getColumnName());
@@ -585,17 +1039,25 @@ public class Query {
         /**
          * Returns the value of the specified column.
          * @param column Column name
-         * @return <b>long</b> The value of the specified column, or <b>null</b> if there isn't one.
+         * @return <b>long</b> The value of the specified column, or <b>-1</b> if there isn't one.
          */
         public long asLong(String column) {
-            try { return Long.parseLong(fields.get(column)); }
-            catch (NumberFormatException e) { return -1; }
+            int i = layout.indexOf(column);
+            if(i == -1 || isNull(i)) return -1;
+            switch(layout.getKind(i)) {
+                case ResultLayout.INTEGRAL:
+                    return numbers[i];
+                case ResultLayout.REAL:
+                    return (long) Double.longBitsToDouble(numbers[i]);
+                default:
+                    return parseLong(text[layout.getTextSlot(i)]);
+            }
         }
         
         /**
          * Returns the value of the specified column.
          * @param column Column name
-         * @return <b>long</b> The value of the specified column, or <b>null</b> if there isn't one.
+         * @return <b>long</b> The value of the specified column, or <b>-1</b> if there isn't one.
          */
         public long asLong(DBTable column) {
             return asLong(column.getColumnName());
@@ -604,17 +1066,28 @@ public class Query {
         /**
          * Returns the raw value of the specified column.
          * @param column Column name
-         * @return <b>double</b> The value of the specified column, or <b>null</b> if there isn't one.
+         * @return <b>double</b> The value of the specified column, or <b>-1</b> if there isn't one.
          */
         public double asDouble(String column) {
-            try { return Double.parseDouble(fields.get(column)); }
-            catch (NumberFormatException e) { return -1; }
+            int i = layout.indexOf(column);
+            if(i == -1 || isNull(i)) return -1;
+            switch(layout.getKind(i)) {
+                case ResultLayout.INTEGRAL:
+                    return numbers[i];
+                case ResultLayout.REAL:
+                    return Double.longBitsToDouble(numbers[i]);
+                default:
+                    String value = text[layout.getTextSlot(i)];
+                    if(value == null) return -1;
+                    try { return Double.parseDouble(value); }
+                    catch (NumberFormatException e) { return -1; }
+            }
         }
         
         /**
          * Returns the value of the specified column.
          * @param column Column name
-         * @return <b>double</b> The value of the specified column, or <b>null</b> if there isn't one.
+         * @return <b>double</b> The value of the specified column, or <b>-1</b> if there isn't one.
          */
         public double asDouble(DBTable column) {
             return asDouble(column.getColumnName());
@@ -625,8 +1098,52 @@ public class Query {
          * @return Column values
          */
         public Map<String, String> asMap() {
+            Map<String, String> fields = new LinkedHashMap<String, String>();
+            for(int i = 0; i < layout.getColumnCount(); i++) {
+                fields.put(layout.getName(i), asString(layout.getName(i)));
+            }
             return fields;
         }
+        
+        /**
+         * Checks if the value of the specified column is NULL
+         * @param column Column index
+         * @return <b>true</b> if the value is NULL, <b>false</b> otherwise
+         */
+        private boolean isNull(int column) {
+            if(layout.getKind(column) == ResultLayout.TEXT) return text[layout.getTextSlot(column)] == null;
+            return nulls != null && nulls[column];
+        }
+        
+        /**
+         * Formats a real number the way the database prints it, without an exponent or trailing zeros
+         * @param value Number to format
+         * @return Formatted number
+         */
+        private String formatReal(double value) {
+            if(Double.isNaN(value) || Double.isInfinite(value)) return Double.toString(value);
+            if(value == 0) return "0";
+            return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+        }
+        
+        /**
+         * Parses a whole number stored as text
+         * @param value Text to parse
+         * @return Parsed number, or <b>-1</b> if the text is not a whole number
+         */
+        private long parseLong(String value) {
+            if(value == null || value.isEmpty() || value.length() > 19) return -1;
+            long result = 0;
+            boolean negative = value.charAt(0) == '-';
+            int start = negative || value.charAt(0) == '+' ? 1 : 0;
+            if(start == value.length()) return -1;
+            for(int i = start; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if(c < '0' || c > '9') return -1;
+                result = result * 10 + (c - '0');
+            }
+            return negative ? -result : result;
+        }
     }
     
 }
@@ -0,0 +1,141 @@
+/*
+ * QueryCursor.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.db;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import com.wolvencraft.yasp.db.Query.QueryResult;
+import com.wolvencraft.yasp.util.ExceptionHandler;
+import com.wolvencraft.yasp.util.Message;
+
+/**
+ * Forward-only, read-only view over the rows of a SELECT query.<br />
+ * Rows are fetched from the database as the cursor advances instead of being loaded all at once,
+ * so that large tables can be scanned in constant memory.<br />
+ * The cursor holds a connection of its own until it is closed, either explicitly or once the last row has been read.
+ * No other statements should be run on the thread while the cursor is open.
+ * @author bitWolfy
+ *
+ */
+public class QueryCursor implements Iterator<QueryResult>, Closeable {
+
+    private ConnectionPool pool;
+    private Connection connection;
+    private PreparedStatement statement;
+    private ResultSet rs;
+    private ResultLayout layout;
+
+    private QueryResult next;
+    @Getter(AccessLevel.PUBLIC) private long rowCount;
+    @Getter(AccessLevel.PUBLIC) private boolean closed;
+
+    /**
+     * <b>Default constructor</b><br />
+     * Runs the query on the connection. The connection is returned to the pool when the cursor is closed.
+     * @param pool Connection pool the connection was leased from
+     * @param connection Connection dedicated to the cursor
+     * @param statement Forward-only, read-only statement with the parameters bound
+     * @throws SQLException Thrown if the query could not be run
+     */
+    public QueryCursor(ConnectionPool pool, Connection connection, PreparedStatement statement) throws SQLException {
+        this.pool = pool;
+        this.connection = connection;
+        this.statement = statement;
+        this.rowCount = 0;
+        this.closed = false;
+
+        this.rs = statement.executeQuery();
+        this.layout = new ResultLayout(rs.getMetaData());
+    }
+
+    /**
+     * Creates an empty cursor
+     */
+    public QueryCursor() {
+        this.closed = true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(next != null) return true;
+        if(closed) return false;
+
+        try {
+            if(rs.next()) {
+                next = Query.toQueryResult(layout, rs);
+                rowCount++;
+                return true;
+            }
+        } catch (SQLException e) {
+            ExceptionHandler.handle(e);
+            if(!pool.isValid(connection)) {
+                pool.invalidate(connection);
+                connection = null;
+            }
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public QueryResult next() {
+        if(!hasNext()) throw new NoSuchElementException();
+        QueryResult result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Query cursors are read-only");
+    }
+
+    /**
+     * Stops reading the result set and returns the connection to the pool.<br />
+     * Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if(closed) return;
+        closed = true;
+        next = null;
+
+        try { if(rs != null) rs.close(); }
+        catch (SQLException e) { Message.log(Level.SEVERE, "Error closing database connection [ResultSet]"); }
+        try { if(statement != null) statement.close(); }
+        catch (SQLException e) { Message.log(Level.SEVERE, "Error closing database connection [Statement]"); }
+        if(connection != null) pool.release(connection);
+
+        rs = null;
+        statement = null;
+        connection = null;
+    }
+}
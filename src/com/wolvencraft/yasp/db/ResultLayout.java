@@ -0,0 +1,175 @@
+/*
+ * ResultLayout.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.db;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Describes the columns of a result set.<br />
+ * The layout is resolved once per result set and shared by all rows read from it,
+ * so that the rows only have to store the values themselves.
+ * @author bitWolfy
+ *
+ */
+public class ResultLayout {
+
+    /**
+     * Column holding a whole number, stored as a <code>long</code>
+     */
+    public static final byte INTEGRAL = 0;
+
+    /**
+     * Column holding a real number, stored as the bits of a <code>double</code>
+     */
+    public static final byte REAL = 1;
+
+    /**
+     * Column holding any other value, stored as a <code>String</code>
+     */
+    public static final byte TEXT = 2;
+
+    @Getter(AccessLevel.PUBLIC) private final int columnCount;
+    @Getter(AccessLevel.PUBLIC) private final int textCount;
+    private final String[] names;
+    private final byte[] kinds;
+    private final int[] slots;
+    private final Map<String, Integer> index;
+
+    /**
+     * <b>Default constructor</b><br />
+     * Resolves the layout of a result set from its metadata
+     * @param meta Result set metadata
+     * @throws SQLException Thrown if the metadata could not be read
+     */
+    public ResultLayout(ResultSetMetaData meta) throws SQLException {
+        columnCount = meta.getColumnCount();
+        names = new String[columnCount];
+        kinds = new byte[columnCount];
+        slots = new int[columnCount];
+        index = new HashMap<String, Integer>(columnCount * 2);
+
+        int text = 0;
+        for(int i = 0; i < columnCount; i++) {
+            names[i] = meta.getColumnLabel(i + 1);
+            kinds[i] = kindOf(meta.getColumnType(i + 1), meta.getScale(i + 1));
+            if(kinds[i] == TEXT) slots[i] = text++;
+            index.put(names[i], i);
+        }
+
+        for(int i = 0; i < columnCount; i++) {
+            String name = meta.getColumnName(i + 1);
+            if(name != null && !index.containsKey(name)) index.put(name, i);
+        }
+        textCount = text;
+    }
+
+    /**
+     * Creates a layout in which every column holds text
+     * @param columns Column names
+     */
+    public ResultLayout(Collection<String> columns) {
+        columnCount = columns.size();
+        textCount = columnCount;
+        names = columns.toArray(new String[columnCount]);
+        kinds = new byte[columnCount];
+        slots = new int[columnCount];
+        index = new HashMap<String, Integer>(columnCount * 2);
+
+        for(int i = 0; i < columnCount; i++) {
+            kinds[i] = TEXT;
+            slots[i] = i;
+            index.put(names[i], i);
+        }
+    }
+
+    /**
+     * Returns the index of the specified column
+     * @param column Column name or label
+     * @return Column index, or <b>-1</b> if the result set does not contain the column
+     */
+    public int indexOf(String column) {
+        Integer i = index.get(column);
+        if(i == null) return -1;
+        return i.intValue();
+    }
+
+    /**
+     * Returns the label of the column with the specified index
+     * @param column Column index
+     * @return Column label
+     */
+    public String getName(int column) {
+        return names[column];
+    }
+
+    /**
+     * Returns the kind of value stored in the column with the specified index
+     * @param column Column index
+     * @return <b>INTEGRAL</b>, <b>REAL</b>, or <b>TEXT</b>
+     */
+    public byte getKind(int column) {
+        return kinds[column];
+    }
+
+    /**
+     * Returns the position of a text column among the text columns of the layout
+     * @param column Column index
+     * @return Text slot
+     */
+    public int getTextSlot(int column) {
+        return slots[column];
+    }
+
+    /**
+     * Determines how the values of a column are stored
+     * @param type SQL type of the column
+     * @param scale Number of digits after the decimal point
+     * @return Kind of the column
+     */
+    private static byte kindOf(int type, int scale) {
+        switch(type) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return INTEGRAL;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return scale == 0 ? INTEGRAL : REAL;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return REAL;
+            default:
+                return TEXT;
+        }
+    }
+}
@@ -42,6 +42,8 @@ import java.util.logging.Level;
 
 import org.apache.commons.lang.StringUtils;
 
+import com.wolvencraft.yasp.db.backend.MySQLBackend;
+import com.wolvencraft.yasp.db.backend.StorageBackend;
 import com.wolvencraft.yasp.exceptions.RuntimeSQLException;
 import com.wolvencraft.yasp.settings.LocalConfiguration;
 import com.wolvencraft.yasp.util.Message;
@@ -59,6 +61,7 @@ public class ScriptRunner {
     private static final String DEFAULT_DELIMITER = ";";
 
     private Connection connection;
+    private StorageBackend backend;
 
     private String delimiter = ScriptRunner.DEFAULT_DELIMITER;
     private boolean fullLineDelimiter = false;
@@ -69,7 +72,18 @@ public class ScriptRunner {
      * @param connection Database connection instance
      */
     public ScriptRunner(Connection connection) {
+        this(connection, new MySQLBackend());
+    }
+    
+    /**
+     * <b>Constructor</b><br />
+     * Creates a new ScriptRunner instance that translates the statements to the dialect of the storage backend
+     * @param connection Database connection instance
+     * @param backend Storage backend
+     */
+    public ScriptRunner(Connection connection, StorageBackend backend) {
         this.connection = connection;
+        this.backend = backend;
     }
     
     /**
@@ -209,10 +223,12 @@ public class ScriptRunner {
      * @throws UnsupportedEncodingException
      */
     private void executeStatement(String command) throws SQLException, UnsupportedEncodingException {
-        Statement statement = this.connection.createStatement();
         String sql = command;
         sql = sql.replaceAll("\r\n", "\n");
+        sql = this.backend.translate(sql);
+        if(sql == null) return;
         
+        Statement statement = this.connection.createStatement();
         statement.execute(sql);
         
         try { statement.close(); }
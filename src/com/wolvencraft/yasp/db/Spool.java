@@ -0,0 +1,613 @@
+/*
+ * Spool.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+import com.wolvencraft.yasp.db.Mutation.Kind;
+import com.wolvencraft.yasp.db.Query.QueryResult;
+import com.wolvencraft.yasp.db.tables.Miscellaneous.SpoolTable;
+import com.wolvencraft.yasp.util.Message;
+
+/**
+ * Append-only journal of writes that could not be sent to the database.<br />
+ * The journal is split into memory-mapped segment files in the plugin data folder. Each record holds one unit of work,
+ * a sequence number, and a checksum; a torn or corrupted record marks the end of the journal.<br />
+ * Records are replayed in order, in batches. The sequence number of the last replayed record is committed to the <i>spool</i> table
+ * in the same transaction as the replayed rows, so that records are never applied twice, even if the server stops before the
+ * replayed segment files are removed.<br />
+ * The journal is only used by the writer thread, and is not thread-safe.
+ * @author bitWolfy
+ *
+ */
+public class Spool {
+
+    private static final int MAGIC = 0x59535031;
+    private static final int SEGMENT_HEADER = 16;
+    private static final int RECORD_HEADER = 16;
+    private static final String EXTENSION = ".spool";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File folder;
+    private final int segmentSize;
+    private final ArrayDeque<Segment> segments;
+    private final Random random;
+    private long nextSequence;
+
+    private final AtomicLong pending = new AtomicLong(0);
+    private final AtomicLong spooledCount = new AtomicLong(0);
+    private final AtomicLong replayedCount = new AtomicLong(0);
+    private final AtomicLong skippedCount = new AtomicLong(0);
+
+    /**
+     * <b>Default constructor</b><br />
+     * Opens the journal in the specified folder, recovering the records left by a previous run
+     * @param folder Folder holding the segment files
+     * @param segmentSize Size of a segment file, in bytes
+     * @throws IOException Thrown if the journal could not be opened
+     */
+    public Spool(File folder, int segmentSize) throws IOException {
+        this.folder = folder;
+        this.segmentSize = Math.max(segmentSize, 64 * 1024);
+        this.segments = new ArrayDeque<Segment>();
+        this.random = new Random();
+        this.nextSequence = 1;
+
+        if(!folder.isDirectory() && !folder.mkdirs()) throw new IOException("Could not create the spool folder: " + folder);
+        recover();
+    }
+
+    /**
+     * Checks if the journal holds records that have not been replayed yet
+     * @return <b>true</b> if the journal is empty, <b>false</b> otherwise
+     */
+    public boolean isEmpty() {
+        return pending.get() == 0;
+    }
+
+    /**
+     * Appends the writes of the units of work to the journal and flushes it to disk
+     * @param units Units of work, in order
+     * @throws IOException Thrown if the records could not be written
+     */
+    public void append(List<List<Mutation>> units) throws IOException {
+        Segment tail = null;
+        for(List<Mutation> mutations : units) {
+            if(mutations.isEmpty()) continue;
+            tail = append(encode(mutations));
+        }
+        if(tail != null) tail.buffer.force();
+    }
+
+    /**
+     * Replays the next batch of records from the head of the journal.<br />
+     * If the database rejects the batch while it is reachable, the records are replayed one by one, and the ones that still
+     * fail are skipped.
+     * @param batchSize Maximum number of writes in the batch
+     * @return Number of records replayed or skipped, or <b>-1</b> if the database could not be reached
+     */
+    public int replay(int batchSize) {
+        Segment head = segments.peekFirst();
+        if(head == null) return 0;
+
+        List<Record> records = new ArrayList<Record>();
+        int size = 0;
+        int position = head.readPosition;
+        while(batchSize <= 0 || size < batchSize || records.isEmpty()) {
+            Record record = read(head, position);
+            if(record == null) break;
+            records.add(record);
+            size += record.mutations.size();
+            position = record.end;
+        }
+
+        if(records.isEmpty()) {
+            removeHead();
+            if(segments.isEmpty()) pending.set(0);
+            return 0;
+        }
+
+        if(commit(head.epoch, records, false)) {
+            advance(head, records);
+            return records.size();
+        }
+        if(!Database.isReachable()) return -1;
+
+        int replayed = 0;
+        for(Record record : records) {
+            List<Record> single = Collections.singletonList(record);
+            if(!commit(head.epoch, single, false)) {
+                if(!Database.isReachable() || !commit(head.epoch, single, true)) return replayed == 0 ? -1 : replayed;
+                skippedCount.incrementAndGet();
+                Message.log(Level.SEVERE, "Skipped spooled record " + record.sequence + " that the database rejected");
+            }
+            advance(head, single);
+            replayed++;
+        }
+        return replayed;
+    }
+
+    /**
+     * Commits the records and the replay checkpoint in a single transaction.<br />
+     * Records at or before the checkpoint stored in the database have already been applied and are not written again.
+     * @param epoch Journal the records belong to
+     * @param records Records to commit
+     * @param skip <b>true</b> to only move the checkpoint past the records
+     * @return <b>true</b> if the transaction was committed, <b>false</b> otherwise
+     */
+    private boolean commit(long epoch, List<Record> records, boolean skip) {
+        if(!Database.beginTransaction()) return false;
+        try {
+            long checkpoint = getCheckpoint(epoch);
+            List<Mutation> mutations = new ArrayList<Mutation>();
+            for(Record record : records) {
+                if(!skip && record.sequence > checkpoint) mutations.addAll(record.mutations);
+            }
+            if(!WriteBehind.apply(mutations)) return false;
+
+            long last = records.get(records.size() - 1).sequence;
+            if(last > checkpoint && !Query.table(SpoolTable.TableName)
+                    .value(SpoolTable.Epoch, epoch)
+                    .value(SpoolTable.Sequence, last)
+                    .upsert()) return false;
+            return Database.commitTransaction();
+        } finally { Database.rollbackTransaction(); }
+    }
+
+    /**
+     * Returns the sequence number of the last record of the journal applied to the database
+     * @param epoch Journal identifier
+     * @return Sequence number, or <b>0</b> if no records have been applied
+     */
+    private long getCheckpoint(long epoch) {
+        QueryResult result = Query.table(SpoolTable.TableName)
+            .column(SpoolTable.Sequence)
+            .condition(SpoolTable.Epoch, epoch)
+            .select();
+        if(result == null) return 0;
+        return Math.max(0, result.asLong(SpoolTable.Sequence));
+    }
+
+    /**
+     * Moves the read position of the segment past the records
+     * @param segment Segment the records were read from
+     * @param records Replayed records, in order
+     */
+    private void advance(Segment segment, List<Record> records) {
+        segment.readPosition = records.get(records.size() - 1).end;
+        pending.addAndGet(-records.size());
+        replayedCount.addAndGet(records.size());
+        if(pending.get() == 0) {
+            while(!segments.isEmpty()) removeHead();
+        } else if(segment.readPosition >= segment.writePosition && segments.size() > 1) removeHead();
+    }
+    
+    /**
+     * Removes the segment at the head of the journal.<br />
+     * Once the last segment of a journal is removed, all of its records have been replayed, and its replay checkpoint is cleared.
+     * Segments of older journals left over from earlier runs come first, so each of them is cleared in turn.
+     */
+    private void removeHead() {
+        Segment head = segments.pollFirst();
+        if(head == null) return;
+        remove(head);
+        
+        Segment next = segments.peekFirst();
+        if(next == null || next.epoch != head.epoch) drained(head.epoch);
+    }
+    
+    /**
+     * Clears the replay checkpoint of a journal once all of its records have been replayed and its segment files removed
+     * @param epoch Journal identifier
+     */
+    private void drained(long epoch) {
+        Query.table(SpoolTable.TableName).condition(SpoolTable.Epoch, epoch).delete();
+    }
+
+    /**
+     * Appends a record to the tail segment, starting a new segment if it does not fit
+     * @param payload Encoded record
+     * @return Segment the record was written to
+     * @throws IOException Thrown if a new segment could not be created
+     */
+    private Segment append(byte[] payload) throws IOException {
+        int length = RECORD_HEADER + payload.length;
+        Segment tail = segments.peekLast();
+        if(tail == null || tail.writePosition + length + 4 > tail.buffer.capacity()) {
+            if(tail != null) tail.buffer.force();
+            long epoch = tail == null ? System.currentTimeMillis() * 1000 + random.nextInt(1000) : tail.epoch;
+            int index = tail == null ? 0 : tail.index + 1;
+            if(tail == null) nextSequence = 1;
+            tail = create(epoch, index, Math.max(segmentSize, SEGMENT_HEADER + length + 4));
+            segments.addLast(tail);
+        }
+
+        long sequence = nextSequence++;
+        int position = tail.writePosition;
+        MappedByteBuffer buffer = tail.buffer;
+        buffer.putLong(position + 4, sequence);
+        buffer.putInt(position + 12, checksum(sequence, payload));
+        buffer.position(position + RECORD_HEADER);
+        buffer.put(payload);
+        buffer.putInt(position + length, 0);
+        buffer.putInt(position, payload.length);
+
+        tail.writePosition = position + length;
+        pending.incrementAndGet();
+        spooledCount.incrementAndGet();
+        return tail;
+    }
+
+    /**
+     * Reads the record at the specified position of the segment
+     * @param segment Segment to read
+     * @param position Position of the record
+     * @return Record, or <b>null</b> if there is no valid record at the position
+     */
+    private Record read(Segment segment, int position) {
+        MappedByteBuffer buffer = segment.buffer;
+        if(position + RECORD_HEADER > buffer.capacity()) return null;
+
+        int length = buffer.getInt(position);
+        if(length <= 0 || position + RECORD_HEADER + length > buffer.capacity()) return null;
+        long sequence = buffer.getLong(position + 4);
+        int checksum = buffer.getInt(position + 12);
+
+        byte[] payload = new byte[length];
+        buffer.position(position + RECORD_HEADER);
+        buffer.get(payload);
+        if(checksum(sequence, payload) != checksum) return null;
+
+        try { return new Record(sequence, decode(payload), position + RECORD_HEADER + length); }
+        catch (IOException e) { return null; }
+    }
+
+    /**
+     * Opens the segment files left by a previous run and finds the end of the journal.<br />
+     * The journal ends at the first torn or corrupted record; anything after it is discarded.
+     * @throws IOException Thrown if a segment file could not be opened
+     */
+    private void recover() throws IOException {
+        File[] files = folder.listFiles();
+        if(files == null) return;
+
+        List<Segment> found = new ArrayList<Segment>();
+        for(File file : files) {
+            if(!file.getName().endsWith(EXTENSION)) continue;
+            Segment segment = open(file);
+            if(segment == null) {
+                Message.log(Level.WARNING, "Discarding an unreadable spool file: " + file.getName());
+                if(!file.delete()) file.deleteOnExit();
+                continue;
+            }
+            found.add(segment);
+        }
+        Collections.sort(found, new Comparator<Segment>() {
+
+            @Override
+            public int compare(Segment first, Segment second) {
+                if(first.epoch != second.epoch) return first.epoch < second.epoch ? -1 : 1;
+                return first.index - second.index;
+            }
+
+        });
+
+        boolean ended = false;
+        for(Segment segment : found) {
+            if(ended) {
+                Message.log(Level.WARNING, "Discarding spool file past the end of the journal: " + segment.file.getName());
+                remove(segment);
+                continue;
+            }
+
+            int position = SEGMENT_HEADER;
+            long records = 0;
+            Record record;
+            while((record = read(segment, position)) != null) {
+                position = record.end;
+                nextSequence = record.sequence + 1;
+                records++;
+            }
+            segment.writePosition = position;
+            if(position + 4 <= segment.buffer.capacity() && segment.buffer.getInt(position) != 0) {
+                Message.log(Level.WARNING, "Spool file " + segment.file.getName() + " ends with a damaged record, which was discarded");
+                segment.buffer.putInt(position, 0);
+                segment.buffer.force();
+                ended = true;
+            }
+
+            segments.addLast(segment);
+            pending.addAndGet(records);
+        }
+
+        if(pending.get() == 0) {
+            while(!segments.isEmpty()) remove(segments.pollFirst());
+        } else Message.log("Found " + pending.get() + " spooled unit(s) of work. They will be written once the database is reachable.");
+    }
+
+    /**
+     * Opens an existing segment file
+     * @param file Segment file
+     * @return Segment, or <b>null</b> if the file is not a valid segment
+     * @throws IOException Thrown if the file could not be mapped
+     */
+    private Segment open(File file) throws IOException {
+        if(file.length() < SEGMENT_HEADER || file.length() > Integer.MAX_VALUE) return null;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            MappedByteBuffer buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, raf.length());
+            if(buffer.getInt(0) != MAGIC) return null;
+            return new Segment(file, buffer.getLong(4), buffer.getInt(12), buffer);
+        } finally { raf.close(); }
+    }
+
+    /**
+     * Creates a new segment file
+     * @param epoch Journal identifier
+     * @param index Position of the segment in the journal
+     * @param size Size of the segment file, in bytes
+     * @return Segment
+     * @throws IOException Thrown if the file could not be created
+     */
+    private Segment create(long epoch, int index, int size) throws IOException {
+        File file = new File(folder, epoch + "-" + String.format("%06d", index) + EXTENSION);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, MAGIC);
+            buffer.putLong(4, epoch);
+            buffer.putInt(12, index);
+            buffer.putInt(SEGMENT_HEADER, 0);
+            buffer.force();
+            return new Segment(file, epoch, index, buffer);
+        } finally { raf.close(); }
+    }
+
+    /**
+     * Deletes a segment file
+     * @param segment Segment to delete
+     */
+    private void remove(Segment segment) {
+        if(segment == null) return;
+        segment.buffer = null;
+        if(!segment.file.delete()) {
+            Message.log(Level.WARNING, "Could not delete spool file " + segment.file.getName());
+            segment.file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Calculates the checksum of a record
+     * @param sequence Sequence number of the record
+     * @param payload Encoded record
+     * @return Checksum
+     */
+    private static int checksum(long sequence, byte[] payload) {
+        CRC32 crc = new CRC32();
+        for(int shift = 56; shift >= 0; shift -= 8) crc.update((int) (sequence >>> shift) & 0xFF);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Encodes the writes of a unit of work
+     * @param mutations Writes to encode
+     * @return Encoded record
+     * @throws IOException Never thrown
+     */
+    private static byte[] encode(List<Mutation> mutations) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(mutations.size());
+        for(Mutation mutation : mutations) {
+            writeString(out, mutation.getSql());
+            out.writeByte(mutation.getKind().ordinal());
+            Object[] params = mutation.getParams();
+            out.writeInt(params.length);
+            for(Object value : params) {
+                if(value == null) out.writeByte(0);
+                else if(value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                    out.writeByte(1);
+                    out.writeInt(((Number) value).intValue());
+                } else if(value instanceof Long) {
+                    out.writeByte(2);
+                    out.writeLong((Long) value);
+                } else if(value instanceof Double || value instanceof Float) {
+                    out.writeByte(3);
+                    out.writeDouble(((Number) value).doubleValue());
+                } else if(value instanceof Boolean) {
+                    out.writeByte(4);
+                    out.writeBoolean((Boolean) value);
+                } else {
+                    out.writeByte(5);
+                    writeString(out, value.toString());
+                }
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes the writes of a unit of work
+     * @param payload Encoded record
+     * @return Writes, in order
+     * @throws IOException Thrown if the record is malformed
+     */
+    private static List<Mutation> decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = in.readInt();
+        List<Mutation> mutations = new ArrayList<Mutation>(count);
+        for(int i = 0; i < count; i++) {
+            String sql = readString(in);
+            Kind kind = Kind.values()[in.readByte()];
+            Object[] params = new Object[in.readInt()];
+            for(int j = 0; j < params.length; j++) {
+                switch(in.readByte()) {
+                    case 0: params[j] = null; break;
+                    case 1: params[j] = in.readInt(); break;
+                    case 2: params[j] = in.readLong(); break;
+                    case 3: params[j] = in.readDouble(); break;
+                    case 4: params[j] = in.readBoolean(); break;
+                    case 5: params[j] = readString(in); break;
+                    default: throw new IOException("Unknown value type");
+                }
+            }
+            mutations.add(new Mutation(sql, Arrays.asList(params), null, kind));
+        }
+        return mutations;
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string
+     * @param out Output stream
+     * @param value String to write
+     * @throws IOException Thrown if the string could not be written
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string
+     * @param in Input stream
+     * @return String read
+     * @throws IOException Thrown if the string could not be read
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Returns the number of records waiting to be replayed
+     * @return Pending record count
+     */
+    public long getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Returns the number of records written to the journal since the plugin was enabled
+     * @return Spooled record count
+     */
+    public long getSpooledCount() {
+        return spooledCount.get();
+    }
+
+    /**
+     * Returns the number of records replayed since the plugin was enabled
+     * @return Replayed record count
+     */
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    /**
+     * Returns the number of records skipped because the database rejected them
+     * @return Skipped record count
+     */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    /**
+     * Represents a segment file of the journal
+     * @author bitWolfy
+     *
+     */
+    private static class Segment {
+
+        private final File file;
+        private final long epoch;
+        private final int index;
+        private MappedByteBuffer buffer;
+        private int readPosition;
+        private int writePosition;
+
+        /**
+         * <b>Default constructor</b><br />
+         * Creates a new segment backed by the mapped file
+         * @param file Segment file
+         * @param epoch Journal identifier
+         * @param index Position of the segment in the journal
+         * @param buffer Mapped contents of the file
+         */
+        public Segment(File file, long epoch, int index, MappedByteBuffer buffer) {
+            this.file = file;
+            this.epoch = epoch;
+            this.index = index;
+            this.buffer = buffer;
+            this.readPosition = SEGMENT_HEADER;
+            this.writePosition = SEGMENT_HEADER;
+        }
+    }
+
+    /**
+     * Represents a record read from the journal
+     * @author bitWolfy
+     *
+     */
+    private static class Record {
+
+        private final long sequence;
+        private final List<Mutation> mutations;
+        private final int end;
+
+        /**
+         * <b>Default constructor</b><br />
+         * Creates a new record
+         * @param sequence Sequence number of the record
+         * @param mutations Writes held by the record
+         * @param end Position right after the record
+         */
+        public Record(long sequence, List<Mutation> mutations, int end) {
+            this.sequence = sequence;
+            this.mutations = mutations;
+            this.end = end;
+        }
+    }
+}
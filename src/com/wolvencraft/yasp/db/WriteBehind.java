@@ -0,0 +1,758 @@
+/*
+ * WriteBehind.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+
+import com.wolvencraft.yasp.Statistics;
+import com.wolvencraft.yasp.db.Mutation.Kind;
+import com.wolvencraft.yasp.settings.LocalConfiguration;
+import com.wolvencraft.yasp.util.ExceptionHandler;
+import com.wolvencraft.yasp.util.Message;
+
+/**
+ * Write-behind queue between the data stores and the database.<br />
+ * Writes are captured as units of work and handed over to a single writer thread, which coalesces writes to the same row,
+ * groups them into JDBC batches, and commits them in transactions. Tasks scheduled with <code>Database.afterCommit(Runnable)</code>
+ * while a unit was captured are run once the unit has been committed.<br />
+ * If the database cannot be reached, or the queued units take up too much memory, units are moved to an on-disk spool
+ * and their tasks are run as soon as they are on disk. The spool is replayed once the database is reachable again.<br />
+ * There can only be one instance running at any given time.
+ * @author bitWolfy
+ *
+ */
+public class WriteBehind {
+
+    private static final long SHUTDOWN_TIMEOUT = 30000;
+    private static final long MAX_BACKOFF = 30000;
+
+    private static WriteBehind instance = null;
+    private static final ThreadLocal<Unit> capturing = new ThreadLocal<Unit>();
+
+    private static final AtomicLong flushCount = new AtomicLong(0);
+    private static final AtomicLong flushTime = new AtomicLong(0);
+    private static final AtomicLong maxFlushTime = new AtomicLong(0);
+    private static final AtomicLong writtenCount = new AtomicLong(0);
+    private static final AtomicLong coalescedCount = new AtomicLong(0);
+    private static final AtomicLong droppedCount = new AtomicLong(0);
+    private static final AtomicLong failedCount = new AtomicLong(0);
+
+    private final ArrayDeque<Unit> queue;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private final Condition stopped;
+
+    private final int capacity;
+    private final Overflow overflow;
+    private final long flushInterval;
+    private final MemoryPoolMXBean tenured;
+    private final Spool spool;
+    private final Thread writer;
+    private volatile boolean running;
+
+    /**
+     * <b>Default constructor</b><br />
+     * Starts the writer thread. Should be used once, on plugin startup, after the database connection has been established
+     */
+    public WriteBehind() {
+        queue = new ArrayDeque<Unit>();
+        lock = new ReentrantLock();
+        notEmpty = lock.newCondition();
+        notFull = lock.newCondition();
+        stopped = lock.newCondition();
+
+        capacity = Math.max(1, LocalConfiguration.DBQueueSize.toInteger());
+        overflow = Overflow.get(LocalConfiguration.DBQueueOverflow.toString());
+        flushInterval = Math.max(0, LocalConfiguration.DBFlushInterval.toInteger());
+        tenured = watchTenured(LocalConfiguration.DBSpoolMemoryThreshold.toInteger());
+        spool = openSpool();
+
+        writer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                work();
+            }
+
+        }, "Statistics-WriteBehind");
+        writer.setDaemon(true);
+        running = true;
+
+        instance = this;
+        writer.start();
+    }
+
+    /**
+     * Sets the collection usage threshold on the largest heap pool, which holds the long-lived objects.<br />
+     * Only the usage measured right after a garbage collection is compared against the threshold,
+     * so garbage that has not been collected yet does not count towards it.
+     * @param percent Threshold, in percent of the maximum pool size, or <b>0</b> to disable it
+     * @return Watched memory pool, or <b>null</b> if the threshold is disabled or not supported
+     */
+    private static MemoryPoolMXBean watchTenured(int percent) {
+        if(percent <= 0) return null;
+        MemoryPoolMXBean tenured = null;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) continue;
+            if(pool.getUsage().getMax() <= 0) continue;
+            if(tenured == null || pool.getUsage().getMax() > tenured.getUsage().getMax()) tenured = pool;
+        }
+        if(tenured == null) {
+            Message.debug("No heap pool supports a collection usage threshold, the spool memory threshold is disabled");
+            return null;
+        }
+        tenured.setCollectionUsageThreshold(Math.min(tenured.getUsage().getMax() / 100 * percent, tenured.getUsage().getMax()));
+        return tenured;
+    }
+
+    /**
+     * Opens the spool in the plugin data folder
+     * @return Spool, or <b>null</b> if the spool is disabled or could not be opened
+     */
+    private static Spool openSpool() {
+        if(!LocalConfiguration.DBSpoolEnabled.toBoolean()) return null;
+        try { return new Spool(new File(Statistics.getInstance().getDataFolder(), "spool"), LocalConfiguration.DBSpoolSegmentSize.toInteger() * 1024 * 1024); }
+        catch (IOException e) {
+            Message.log(Level.SEVERE, "Could not open the spool, queued writes will only be kept in memory: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Starts capturing the writes of the current thread into a new unit of work.<br />
+     * Writes made by the thread are queued instead of being sent to the database until <code>submit()</code> is called.
+     * Reads are not affected and do not see the captured writes.
+     */
+    public static void begin() {
+        if(capturing.get() == null) capturing.set(new Unit());
+    }
+
+    /**
+     * Stops capturing the writes of the current thread and hands the unit of work over to the writer thread.<br />
+     * If the writer thread is not running, the unit is written on the current thread instead.
+     * @return Submitted unit of work, or <b>null</b> if the thread was not capturing writes
+     */
+    public static Unit submit() {
+        Unit unit = capturing.get();
+        if(unit == null) return null;
+        capturing.remove();
+
+        WriteBehind current = instance;
+        if(current == null || !current.enqueue(unit)) flush(Collections.singletonList(unit), false);
+        return unit;
+    }
+
+    /**
+     * Waits for the units of work queued so far to be either committed or spooled.<br />
+     * Should be called before reading rows that queued writes might still change; must not be called on the main server thread.
+     * @param timeout Maximum time to wait, in milliseconds
+     * @return <b>true</b> if the units are no longer queued, <b>false</b> if the wait timed out
+     */
+    public static boolean awaitQueued(long timeout) {
+        WriteBehind current = instance;
+        if(current == null) return true;
+
+        Unit marker = new Unit();
+        if(!current.enqueue(marker)) return true;
+        return marker.await(timeout);
+    }
+
+    /**
+     * Checks if the writes of the current thread are being captured
+     * @return <b>true</b> if a unit of work is open on the current thread, <b>false</b> otherwise
+     */
+    public static boolean isCapturing() {
+        return capturing.get() != null;
+    }
+
+    /**
+     * Adds the write to the unit of work open on the current thread
+     * @param mutation Write to capture
+     * @return <b>true</b> if the write was captured, <b>false</b> if the thread is not capturing writes
+     */
+    public static boolean capture(Mutation mutation) {
+        Unit unit = capturing.get();
+        if(unit == null) return false;
+        unit.mutations.add(mutation);
+        return true;
+    }
+
+    /**
+     * Queues a single write, to be sent to the database in the background
+     * @param mutation Write to queue
+     * @return <b>true</b> if the write was queued, <b>false</b> if the writer thread is not running
+     */
+    public static boolean defer(Mutation mutation) {
+        WriteBehind current = instance;
+        if(current == null) return false;
+
+        Unit unit = new Unit();
+        unit.mutations.add(mutation);
+        return current.enqueue(unit);
+    }
+
+    /**
+     * Schedules a task to run once the unit of work open on the current thread has been committed
+     * @param task Task to run
+     * @return <b>true</b> if the task was scheduled, <b>false</b> if the thread is not capturing writes
+     */
+    public static boolean afterFlush(Runnable task) {
+        Unit unit = capturing.get();
+        if(unit == null) return false;
+        unit.tasks.add(task);
+        return true;
+    }
+
+    /**
+     * Stops accepting new writes, waits for the queued ones to be written, and stops the writer thread
+     */
+    public static void shutdown() {
+        WriteBehind current = instance;
+        if(current == null) return;
+
+        current.lock.lock();
+        try {
+            current.running = false;
+            current.notEmpty.signalAll();
+            current.notFull.signalAll();
+            current.stopped.signalAll();
+        } finally { current.lock.unlock(); }
+
+        try { current.writer.join(SHUTDOWN_TIMEOUT); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        if(current.writer.isAlive()) Message.log(Level.SEVERE, "Timed out while waiting for " + current.getSize() + " queued write(s) to be flushed");
+        instance = null;
+    }
+
+    /**
+     * Adds the unit of work to the queue.<br />
+     * If the queue is full, units holding only detailed rows are dropped if the overflow policy allows it;
+     * otherwise, the calling thread waits for the writer thread to catch up. The primary server thread never waits.
+     * @param unit Unit of work
+     * @return <b>true</b> if the unit was queued or dropped, <b>false</b> if the writer thread is not running
+     */
+    private boolean enqueue(Unit unit) {
+        boolean mayWait = Thread.currentThread() != writer && !Bukkit.isPrimaryThread();
+
+        lock.lock();
+        try {
+            while(running && queue.size() >= capacity) {
+                if(overflow == Overflow.DROP_DETAILED && unit.isDetailed()) {
+                    droppedCount.addAndGet(unit.mutations.size());
+                    Message.debug(Level.FINE, "Write-behind queue is full, dropped " + unit.mutations.size() + " detailed row(s)");
+                    unit.finish();
+                    return true;
+                }
+                if(!mayWait) break;
+                notFull.awaitUninterruptibly();
+            }
+            if(!running) return false;
+
+            queue.addLast(unit);
+            notEmpty.signal();
+            return true;
+        } finally { lock.unlock(); }
+    }
+
+    /**
+     * Main loop of the writer thread.<br />
+     * Waits for units of work to be queued, collects the units queued within the flush interval, and writes them.
+     * While the spool holds records, new units are appended to it instead, so that they are written in order once it has been replayed.
+     * Returns once the writer has been stopped and the queue is empty.
+     */
+    private void work() {
+        long backoff = 0;
+        List<Unit> units = new ArrayList<Unit>();
+        while(true) {
+            boolean spooling = spool != null && !spool.isEmpty();
+            lock.lock();
+            try {
+                while(queue.isEmpty()) {
+                    if(!running) return;
+                    if(spooling) break;
+                    notEmpty.awaitUninterruptibly();
+                }
+                long remaining = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+                while(!spooling && running && remaining > 0 && queue.size() < capacity / 2) {
+                    try { remaining = notEmpty.awaitNanos(remaining); }
+                    catch (InterruptedException e) { break; }
+                }
+                units.addAll(queue);
+                queue.clear();
+                notFull.signalAll();
+            } finally { lock.unlock(); }
+
+            if(spooling || (spool != null && isOverThreshold(units.size()))) {
+                if(!spill(units)) {
+                    requeue(units);
+                    backoff = sleep(backoff);
+                } else if(running) {
+                    int replayed = spool.replay(LocalConfiguration.DBBatchSize.toInteger());
+                    if(replayed < 0) backoff = sleep(backoff);
+                    else backoff = 0;
+                }
+                units.clear();
+                continue;
+            }
+
+            int written = flush(units, running || spool != null);
+            if(written < units.size()) {
+                List<Unit> rest = units.subList(written, units.size());
+                if(spool == null || !spill(rest)) {
+                    requeue(rest);
+                    backoff = sleep(backoff);
+                }
+            } else backoff = 0;
+            units.clear();
+        }
+    }
+
+    /**
+     * Appends the units of work to the spool, and runs their tasks once they are safely on disk
+     * @param units Units of work, in order
+     * @return <b>true</b> if the units were spooled, <b>false</b> if the spool could not be written
+     */
+    private boolean spill(List<Unit> units) {
+        if(units.isEmpty()) return true;
+
+        List<List<Mutation>> mutations = new ArrayList<List<Mutation>>(units.size());
+        for(Unit unit : units) mutations.add(unit.mutations);
+        try { spool.append(mutations); }
+        catch (IOException e) {
+            Message.log(Level.SEVERE, "Could not write to the spool: " + e.getMessage());
+            return false;
+        }
+
+        Message.debug("Spooled " + units.size() + " unit(s) of work");
+        for(Unit unit : units) unit.complete();
+        return true;
+    }
+
+    /**
+     * Checks if the queued units of work take up too much memory, and should be moved to the spool
+     * @param units Number of units drained from the queue
+     * @return <b>true</b> if the queue, or the heap after the last garbage collection, is over its threshold, <b>false</b> otherwise
+     */
+    private boolean isOverThreshold(int units) {
+        if(units >= capacity) return true;
+        return tenured != null && tenured.isCollectionUsageThresholdExceeded();
+    }
+
+    /**
+     * Returns the units of work to the head of the queue, in order
+     * @param units Units of work
+     */
+    private void requeue(List<Unit> units) {
+        lock.lock();
+        try {
+            for(int i = units.size() - 1; i >= 0; i--) queue.addFirst(units.get(i));
+        } finally { lock.unlock(); }
+    }
+
+    /**
+     * Waits before the writer thread retries, returning early if the writer is stopped.<br />
+     * The wait is doubled after each consecutive failure, up to a maximum.
+     * @param backoff Previous wait, in milliseconds, or <b>0</b> if the previous attempt was successful
+     * @return Time waited, in milliseconds
+     */
+    private long sleep(long backoff) {
+        backoff = backoff == 0 ? 1000 : Math.min(backoff * 2, MAX_BACKOFF);
+        Message.log(Level.WARNING, "The database could not be reached, retrying in " + (backoff / 1000) + " seconds");
+        lock.lock();
+        try {
+            if(running) stopped.await(backoff, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        finally { lock.unlock(); }
+        return backoff;
+    }
+
+    /**
+     * Writes the units of work to the database.<br />
+     * Units are grouped into transactions of <i>commit-interval</i> statements, and writes within a transaction are coalesced.
+     * If a transaction is rejected while the database is reachable, its units are written one by one, and the ones that still fail are discarded.
+     * Tasks of a discarded unit are not run, so the local data it was built from is kept.
+     * @param units Units of work, in order
+     * @param retryLater <b>true</b> to stop at the first unit that could not be written because the database is unreachable
+     * @return Number of units, from the start of the list, that were either written or discarded
+     */
+    private static int flush(List<Unit> units, boolean retryLater) {
+        int commitInterval = LocalConfiguration.DBCommitInterval.toInteger();
+        int start = 0;
+        while(start < units.size()) {
+            int end = start;
+            int statements = 0;
+            while(end < units.size() && (commitInterval <= 0 || statements < commitInterval || end == start)) {
+                statements += units.get(end).mutations.size();
+                end++;
+            }
+
+            List<Unit> group = units.subList(start, end);
+            if(write(group, true)) {
+                for(Unit unit : group) unit.complete();
+            } else {
+                for(int i = start; i < end; i++) {
+                    Unit unit = units.get(i);
+                    if(write(Collections.singletonList(unit), false)) unit.complete();
+                    else if(retryLater && !Database.isReachable()) return i;
+                    else {
+                        failedCount.incrementAndGet();
+                        Message.log(Level.SEVERE, "Discarded a unit of " + unit.mutations.size() + " write(s) that the database rejected. It will be pushed again from local data if possible.");
+                        unit.finish();
+                    }
+                }
+            }
+            start = end;
+        }
+        return units.size();
+    }
+
+    /**
+     * Writes the units of work to the database in a single transaction.<br />
+     * The transaction is retried up to <i>commit-retries</i> times if the commit fails.
+     * @param units Units of work, in order
+     * @param coalesce <b>true</b> to combine writes to the same row
+     * @return <b>true</b> if the transaction was committed, <b>false</b> otherwise
+     */
+    private static boolean write(List<Unit> units, boolean coalesce) {
+        List<Mutation> mutations = coalesce(units, coalesce);
+        if(mutations.isEmpty()) return true;
+
+        int retries = Math.max(0, LocalConfiguration.DBCommitRetries.toInteger());
+        for(int attempt = 0; attempt <= retries; attempt++) {
+            long start = System.nanoTime();
+            if(!Database.beginTransaction()) return false;
+            try {
+                if(!apply(mutations)) return false;
+                if(Database.commitTransaction()) {
+                    record(System.nanoTime() - start, mutations.size());
+                    return true;
+                }
+            } catch (Throwable t) {
+                ExceptionHandler.handle(t);
+                return false;
+            } finally { Database.rollbackTransaction(); }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the writes of the units of work, in order
+     * @param units Units of work, in order
+     * @param coalesce <b>true</b> to combine writes to the same row into the first of them
+     * @return Writes to apply
+     */
+    private static List<Mutation> coalesce(List<Unit> units, boolean coalesce) {
+        List<Mutation> mutations = new ArrayList<Mutation>();
+        Map<String, Integer> rows = new HashMap<String, Integer>();
+        for(Unit unit : units) {
+            for(Mutation mutation : unit.mutations) {
+                if(!coalesce || !mutation.isCoalescable()) {
+                    mutations.add(mutation);
+                    continue;
+                }
+                Integer index = rows.get(mutation.getKey());
+                if(index == null) {
+                    rows.put(mutation.getKey(), mutations.size());
+                    mutations.add(mutation);
+                } else {
+                    mutations.set(index, mutations.get(index).merge(mutation));
+                    coalescedCount.incrementAndGet();
+                }
+            }
+        }
+        return mutations;
+    }
+
+    /**
+     * Runs the writes in the current transaction.<br />
+     * Consecutive writes with the same query template are sent as one JDBC batch; the order of the writes is preserved.
+     * @param mutations Writes to run, in order
+     * @return <b>true</b> if all writes were run, <b>false</b> otherwise
+     */
+    static boolean apply(List<Mutation> mutations) {
+        int batchSize = LocalConfiguration.DBBatchSize.toInteger();
+        int i = 0;
+        while(i < mutations.size()) {
+            String sql = mutations.get(i).getSql();
+            List<List<Object>> rows = new ArrayList<List<Object>>();
+            while(i < mutations.size() && mutations.get(i).getSql().equals(sql) && (batchSize <= 0 || rows.size() < batchSize)) {
+                rows.add(mutations.get(i).getParamList());
+                i++;
+            }
+            Message.debug(Level.FINEST, "Write-behind batch of " + rows.size() + " row(s): " + sql);
+            if(!Database.executeBatch(Collections.singletonMap(sql, rows))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records the latency of a flush
+     * @param latency Time the flush took, in nanoseconds
+     * @param statements Number of statements written
+     */
+    private static void record(long latency, int statements) {
+        flushCount.incrementAndGet();
+        writtenCount.addAndGet(statements);
+        flushTime.addAndGet(latency);
+        long max;
+        do { max = maxFlushTime.get(); }
+        while(latency > max && !maxFlushTime.compareAndSet(max, latency));
+    }
+
+    /**
+     * Returns the number of units of work waiting in the queue
+     * @return Queue depth
+     */
+    private int getSize() {
+        lock.lock();
+        try { return queue.size(); }
+        finally { lock.unlock(); }
+    }
+
+    /**
+     * Checks if the writer thread is running
+     * @return <b>true</b> if writes are queued, <b>false</b> if they are sent to the database right away
+     */
+    public static boolean isRunning() {
+        return instance != null;
+    }
+
+    /**
+     * Returns the number of units of work waiting in the queue
+     * @return Queue depth
+     */
+    public static int getQueueDepth() {
+        WriteBehind current = instance;
+        if(current == null) return 0;
+        return current.getSize();
+    }
+
+    /**
+     * Returns the number of flushes committed since the plugin was enabled
+     * @return Flush count
+     */
+    public static long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Returns the number of statements written since the plugin was enabled
+     * @return Statement count
+     */
+    public static long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * Returns the number of writes that were combined with an earlier write to the same row
+     * @return Coalesced write count
+     */
+    public static long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Returns the number of detailed rows dropped because the queue was full
+     * @return Dropped row count
+     */
+    public static long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the number of units of work discarded because the database rejected them
+     * @return Failed unit count
+     */
+    public static long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Returns the number of units of work waiting in the spool
+     * @return Spooled unit count, or <b>-1</b> if the spool is disabled
+     */
+    public static long getSpoolPending() {
+        WriteBehind current = instance;
+        if(current == null || current.spool == null) return -1;
+        return current.spool.getPendingCount();
+    }
+
+    /**
+     * Returns the number of units of work written to the spool since the plugin was enabled
+     * @return Spooled unit count
+     */
+    public static long getSpooledCount() {
+        WriteBehind current = instance;
+        if(current == null || current.spool == null) return 0;
+        return current.spool.getSpooledCount();
+    }
+
+    /**
+     * Returns the number of units of work replayed from the spool since the plugin was enabled
+     * @return Replayed unit count
+     */
+    public static long getReplayedCount() {
+        WriteBehind current = instance;
+        if(current == null || current.spool == null) return 0;
+        return current.spool.getReplayedCount() - current.spool.getSkippedCount();
+    }
+
+    /**
+     * Returns the average time a flush took to complete
+     * @return Average flush latency, in milliseconds
+     */
+    public static double getAverageFlushLatency() {
+        long count = flushCount.get();
+        if(count == 0) return 0;
+        return flushTime.get() / (double) count / 1000000D;
+    }
+
+    /**
+     * Returns the longest time a flush took to complete
+     * @return Maximum flush latency, in milliseconds
+     */
+    public static double getMaxFlushLatency() {
+        return maxFlushTime.get() / 1000000D;
+    }
+
+    /**
+     * Represents a unit of work: writes that are committed together, and the tasks to run once they are
+     * @author bitWolfy
+     *
+     */
+    public static class Unit {
+
+        private final List<Mutation> mutations;
+        private final List<Runnable> tasks;
+        private boolean done;
+
+        /**
+         * <b>Default constructor</b><br />
+         * Creates a new, empty unit of work
+         */
+        public Unit() {
+            this.mutations = new ArrayList<Mutation>();
+            this.tasks = new ArrayList<Runnable>();
+            this.done = false;
+        }
+
+        /**
+         * Checks if the unit holds nothing but detailed rows
+         * @return <b>true</b> if the unit can be dropped when the queue is full, <b>false</b> otherwise
+         */
+        public boolean isDetailed() {
+            if(mutations.isEmpty()) return false;
+            for(Mutation mutation : mutations) {
+                if(mutation.getKind() != Kind.Detailed) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Checks if the unit has been either committed or discarded
+         * @return <b>true</b> if the unit is no longer queued, <b>false</b> otherwise
+         */
+        public synchronized boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Waits for the unit to be either committed or discarded
+         * @param timeout Maximum time to wait, in milliseconds
+         * @return <b>true</b> if the unit is no longer queued, <b>false</b> if the wait timed out
+         */
+        public synchronized boolean await(long timeout) {
+            long deadline = System.currentTimeMillis() + timeout;
+            while(!done) {
+                long remaining = deadline - System.currentTimeMillis();
+                if(remaining <= 0) return false;
+                try { wait(remaining); }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return done;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Runs the tasks of a committed unit and marks it as done
+         */
+        private void complete() {
+            for(Runnable task : tasks) {
+                try { task.run(); }
+                catch (Throwable t) { ExceptionHandler.handle(t); }
+            }
+            finish();
+        }
+
+        /**
+         * Marks the unit as done without running its tasks
+         */
+        private synchronized void finish() {
+            done = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Represents the action taken when a unit of work is submitted to a full queue
+     * @author bitWolfy
+     *
+     */
+    public enum Overflow {
+        /** Wait for the writer thread to catch up */
+        BLOCK,
+        /** Drop units holding only detailed rows; wait for all others */
+        DROP_DETAILED;
+
+        /**
+         * Parses the overflow policy
+         * @param name Policy name
+         * @return Overflow policy, or <b>BLOCK</b> if the name is not valid
+         */
+        public static Overflow get(String name) {
+            try { return valueOf(name.trim().toUpperCase()); }
+            catch (Exception e) {
+                Message.log(Level.WARNING, "Unknown write-behind overflow policy: " + name + ", defaulting to BLOCK");
+                return BLOCK;
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * H2Backend.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.db.backend;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.wolvencraft.yasp.Statistics;
+import com.wolvencraft.yasp.settings.LocalConfiguration;
+
+/**
+ * Stores the statistics in an embedded H2 database file in the plugin directory.<br />
+ * The database runs in MySQL compatibility mode, which accepts the upsert syntax and most of the patch scripts.
+ * Statements that only apply to a MySQL server are dropped, and table options H2 does not know are stripped.
+ * @author bitWolfy
+ *
+ */
+public class H2Backend extends StorageBackend {
+
+    private static final Pattern SKIPPED = Pattern.compile("^(SET|USE|CREATE\\s+SCHEMA|CREATE\\s+DATABASE)\\s", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TABLE_OPTIONS = Pattern.compile("\\s+(UNSIGNED\\b|(DEFAULT\\s+)?(CHARACTER\\s+SET|CHARSET)\\s*=?\\s*\\w+|COLLATE\\s*=?\\s*\\w+|ENGINE\\s*=\\s*\\w+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DOUBLE_QUOTED = Pattern.compile("\"([^\"]*)\"");
+    private static final Set<String> OWN_PATCHES = new HashSet<String>(Arrays.asList("11.yaspx"));
+
+    /**
+     * <b>Default constructor</b><br />
+     * Creates a new H2 backend
+     */
+    public H2Backend() {
+        super("h2", "org.h2.Driver");
+    }
+
+    @Override
+    public String getUrl() {
+        File file = new File(Statistics.getInstance().getDataFolder(), LocalConfiguration.DBFile.toString());
+        return "jdbc:h2:file:" + file.getAbsolutePath() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE";
+    }
+
+    @Override
+    public boolean isEmbedded() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}<br />
+     * Session variables, schema selection and storage engine options are dropped, and the tables are created in the default schema.
+     * Double-quoted string literals are turned into single-quoted ones, since H2 reads double quotes as identifiers.
+     */
+    @Override
+    public String translate(String statement) {
+        String sql = statement.trim();
+        if(SKIPPED.matcher(sql).find()) return null;
+
+        String dbName = LocalConfiguration.DBName.toString();
+        if(!dbName.isEmpty()) sql = sql.replace("`" + dbName + "`.", "");
+        sql = TABLE_OPTIONS.matcher(sql).replaceAll("");
+
+        Matcher matcher = DOUBLE_QUOTED.matcher(sql);
+        StringBuffer buffer = new StringBuffer();
+        while(matcher.find()) {
+            matcher.appendReplacement(buffer, Matcher.quoteReplacement("'" + matcher.group(1).replace("'", "''") + "'"));
+        }
+        matcher.appendTail(buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * {@inheritDoc}<br />
+     * Patches that rebuild tables with temporary tables and multi-table deletes have to be rewritten for H2.
+     */
+    @Override
+    public boolean requiresOwnPatch(String patchId) {
+        return OWN_PATCHES.contains(patchId);
+    }
+
+    /**
+     * {@inheritDoc}<br />
+     * H2 does not accept an argument to <code>LAST_INSERT_ID</code>, so no key is generated if the row already exists.
+     */
+    @Override
+    public String getKeyUpdate(String column) {
+        return "`" + column + "` = `" + column + "`";
+    }
+
+    /**
+     * {@inheritDoc}<br />
+     * H2 has no equivalent of the MySQL streaming mode; the driver default is used unless a fetch size is configured.
+     */
+    @Override
+    public int getFetchSize(int fetchSize) {
+        return Math.max(fetchSize, 0);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * MySQLBackend.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.db.backend;
+
+import com.wolvencraft.yasp.settings.LocalConfiguration;
+
+/**
+ * Stores the statistics on a remote MySQL server.<br />
+ * Patch scripts are written in the MySQL dialect, and are run as they are.
+ * @author bitWolfy
+ *
+ */
+public class MySQLBackend extends StorageBackend {
+
+    /**
+     * <b>Default constructor</b><br />
+     * Creates a new MySQL backend
+     */
+    public MySQLBackend() {
+        super("mysql", "com.mysql.jdbc.Driver");
+    }
+
+    @Override
+    public String getUrl() {
+        return "jdbc:mysql://" + LocalConfiguration.DBHost.toString() + ":" + LocalConfiguration.DBPort.toInteger() + "/" + LocalConfiguration.DBName.toString()
+                + "?useServerPrepStmts=true&rewriteBatchedStatements=true&useCursorFetch=true";
+    }
+
+    @Override
+    public boolean isEmbedded() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}<br />
+     * The MySQL driver only streams rows one by one if the fetch size is <code>Integer.MIN_VALUE</code>.
+     */
+    @Override
+    public int getFetchSize(int fetchSize) {
+        return fetchSize > 0 ? fetchSize : Integer.MIN_VALUE;
+    }
+}
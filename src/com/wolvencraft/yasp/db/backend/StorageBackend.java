@@ -0,0 +1,141 @@
+/*
+ * StorageBackend.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.db.backend;
+
+import java.util.logging.Level;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import com.wolvencraft.yasp.util.Message;
+
+/**
+ * Represents the database engine the statistics are stored in.<br />
+ * Provides the driver and connection URL, and the parts of the SQL dialect that differ between engines.
+ * Patch scripts are written for MySQL; other backends either translate them statement by statement,
+ * or provide their own version of a patch in the <code>patches/&lt;backend&gt;/</code> directory.
+ * @author bitWolfy
+ *
+ */
+@Getter(AccessLevel.PUBLIC)
+public abstract class StorageBackend {
+
+    protected String name;
+    protected String driver;
+
+    /**
+     * <b>Default constructor</b><br />
+     * Creates a new storage backend
+     * @param name Backend name, as used in the configuration and the patch directory
+     * @param driver JDBC driver class name
+     */
+    public StorageBackend(String name, String driver) {
+        this.name = name;
+        this.driver = driver;
+    }
+
+    /**
+     * Returns the JDBC connection URL
+     * @return Connection URL
+     */
+    public abstract String getUrl();
+
+    /**
+     * Checks if the database is stored locally, and does not require a database server
+     * @return <b>true</b> if the database is embedded, <b>false</b> otherwise
+     */
+    public abstract boolean isEmbedded();
+
+    /**
+     * Translates a statement of a patch script to the dialect of the backend
+     * @param statement Statement, with all placeholders replaced
+     * @return Translated statement, or <b>null</b> if the statement does not apply to this backend
+     */
+    public String translate(String statement) {
+        return statement;
+    }
+
+    /**
+     * Returns the clause that turns an INSERT into an upsert
+     * @return Upsert clause
+     */
+    public String getUpsertClause() {
+        return "ON DUPLICATE KEY UPDATE";
+    }
+
+    /**
+     * Returns the expression that refers to the value a column would have been inserted with, inside the upsert clause
+     * @param column Column name
+     * @return Inserted value expression
+     */
+    public String getInsertedValue(String column) {
+        return "VALUES(`" + column + "`)";
+    }
+
+    /**
+     * Returns the assignment, inside the upsert clause, that reports the key of an existing row as the generated key
+     * @param column Auto-increment key column
+     * @return Key assignment
+     */
+    public String getKeyUpdate(String column) {
+        return "`" + column + "` = LAST_INSERT_ID(`" + column + "`)";
+    }
+
+    /**
+     * Returns the expression that selects the greater of two values
+     * @param first First expression
+     * @param second Second expression
+     * @return Greater value expression
+     */
+    public String getGreatest(String first, String second) {
+        return "GREATEST(" + first + ", " + second + ")";
+    }
+
+    /**
+     * Checks if the backend cannot run the generic version of a patch, and needs its own version of it
+     * @param patchId Unique ID of the patch, i.e. <code>11.yaspx</code>
+     * @return <b>true</b> if the patch must be provided in the directory of the backend, <b>false</b> otherwise
+     */
+    public boolean requiresOwnPatch(String patchId) {
+        return false;
+    }
+
+    /**
+     * Returns the fetch size to use for a streaming cursor
+     * @param fetchSize Configured fetch size, or <b>0</b> to stream rows one by one
+     * @return Fetch size to set on the statement
+     */
+    public int getFetchSize(int fetchSize) {
+        return fetchSize;
+    }
+
+    /**
+     * Returns the storage backend with the specified name
+     * @param name Backend name
+     * @return Storage backend. Defaults to MySQL if the name is not recognized
+     */
+    public static StorageBackend get(String name) {
+        if(name == null || name.isEmpty() || name.equalsIgnoreCase("mysql")) return new MySQLBackend();
+        if(name.equalsIgnoreCase("h2") || name.equalsIgnoreCase("embedded")) return new H2Backend();
+        Message.log(Level.WARNING, "Unknown database type: " + name + ", defaulting to MySQL");
+        return new MySQLBackend();
+    }
+}
@@ -21,16 +21,42 @@
 package com.wolvencraft.yasp.db.data;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import lombok.AccessLevel;
 import lombok.Getter;
 
+import com.wolvencraft.yasp.db.Database;
+import com.wolvencraft.yasp.db.data.blocks.BlockData;
+import com.wolvencraft.yasp.db.data.deaths.DeathData;
+import com.wolvencraft.yasp.db.data.hooks.admincmd.AdminCmdData;
+import com.wolvencraft.yasp.db.data.hooks.banhammer.BanHammerData;
+import com.wolvencraft.yasp.db.data.hooks.commandbook.CommandBookData;
+import com.wolvencraft.yasp.db.data.hooks.factions.FactionsData;
+import com.wolvencraft.yasp.db.data.hooks.jail.JailData;
+import com.wolvencraft.yasp.db.data.hooks.mcmmo.McMMOData;
+import com.wolvencraft.yasp.db.data.hooks.mobarena.MobArenaData;
+import com.wolvencraft.yasp.db.data.hooks.pvparena.PvpArenaData;
+import com.wolvencraft.yasp.db.data.hooks.towny.TownyData;
+import com.wolvencraft.yasp.db.data.hooks.vanish.VanishData;
+import com.wolvencraft.yasp.db.data.hooks.vault.VaultData;
+import com.wolvencraft.yasp.db.data.hooks.votifier.VotifierData;
+import com.wolvencraft.yasp.db.data.hooks.worldguard.WorldGuardData;
+import com.wolvencraft.yasp.db.data.items.ItemData;
+import com.wolvencraft.yasp.db.data.pve.PVEData;
+import com.wolvencraft.yasp.db.data.pvp.PVPData;
 import com.wolvencraft.yasp.session.OnlineSession;
+import com.wolvencraft.yasp.util.LongHashMap;
 import com.wolvencraft.yasp.util.Message;
 
 /**
- * Common interface for all data stores
+ * Common interface for all data stores.<br />
+ * Event handlers append entries to the active buffers, which are lock-free queues. When the data store is pushed,
+ * the buffers are drained into a flush batch that only the pushing thread works with; entries that have not been
+ * confirmed as written by the time of the next push are merged back into the batch and pushed again.
  * @author bitWolfy
  *
  */
@@ -39,14 +65,21 @@ public abstract class DataStore<N extends NormalData, D extends DetailedData> {
     @Getter(AccessLevel.PUBLIC) private DataStoreType type;
     @Getter(AccessLevel.PUBLIC) protected OnlineSession session;
     
-    protected List<N> normalData;
-    protected List<D> detailedData;
+    protected Queue<N> normalData;
+    protected Queue<D> detailedData;
+    private final LongHashMap<N> keyedData;
+    
+    private final List<N> unflushedNormal;
+    private final List<D> unflushedDetailed;
     
     public DataStore(OnlineSession session, DataStoreType type) {
         this.session = session;
         this.type = type;
-        this.normalData = new ArrayList<N>();
-        this.detailedData = new ArrayList<D>();
+        this.normalData = new ConcurrentLinkedQueue<N>();
+        this.detailedData = new ConcurrentLinkedQueue<D>();
+        this.keyedData = new LongHashMap<N>();
+        this.unflushedNormal = new ArrayList<N>();
+        this.unflushedDetailed = new ArrayList<D>();
     }
     
     /**
@@ -55,7 +88,36 @@ public abstract class DataStore<N extends NormalData, D extends DetailedData> {
      * @return Dynamic entries in the data store
      */
     public List<N> getNormalData() {
-        return new ArrayList<N>(normalData);
+        List<N> entries;
+        synchronized(unflushedNormal) { entries = new ArrayList<N>(unflushedNormal); }
+        entries.addAll(normalData);
+        synchronized(keyedData) { entries.addAll(keyedData.values()); }
+        return entries;
+    }
+    
+    /**
+     * Returns the keyed entry with the specified key.<br />
+     * Keyed entries accumulate the totals of a single database row, and are looked up in constant time without copying the data store.
+     * @param key Packed key of the entry
+     * @return Corresponding entry, or <b>null</b> if it does not exist
+     */
+    protected N getNormalData(long key) {
+        synchronized(keyedData) { return keyedData.get(key); }
+    }
+    
+    /**
+     * Adds a keyed entry to the data store, unless an entry with the same key already exists
+     * @param key Packed key of the entry
+     * @param entry Entry to add
+     * @return Entry stored under the key
+     */
+    protected N addNormalData(long key, N entry) {
+        synchronized(keyedData) {
+            N existing = keyedData.get(key);
+            if(existing != null) return existing;
+            keyedData.put(key, entry);
+            return entry;
+        }
     }
     
     /**
@@ -63,29 +125,63 @@ public abstract class DataStore<N extends NormalData, D extends DetailedData> {
      * @return Static entries in the data store
      */
     public List<D> getDetailedData() {
-        return new ArrayList<D>(detailedData);
+        List<D> entries;
+        synchronized(unflushedDetailed) { entries = new ArrayList<D>(unflushedDetailed); }
+        entries.addAll(detailedData);
+        return entries;
     }
     
     /**
      * Synchronizes the data from the data store to the database, then removes it from local storage<br />
-     * If an entry was not synchronized, it will not be removed.
+     * The active buffers are drained into the flush batch, which also holds the entries that were not confirmed
+     * as written since the previous push. Entries are removed from the batch once the data is committed;
+     * if the write fails, they stay in the batch and are pushed again. Event handlers are never blocked by a push.
+     * Keyed entries are kept, since they only subtract the pushed amounts, and are reused by later events.
      */
     public void pushData() {
-        for(N entry : getNormalData()) {
+        final List<N> normalBatch = drain(normalData, unflushedNormal);
+        final List<N> pushedNormal = new ArrayList<N>();
+        for(N entry : normalBatch) {
+           try{
+                 if(((NormalData) entry).pushData(session.getId())) pushedNormal.add(entry);
+           } catch(NullPointerException e ){
+                 Message.debug("NPE occurred while saving NormalData: "+ ((NormalData) entry));
+                 pushedNormal.add(entry);
+           }
+        }
+        List<N> keyedEntries;
+        synchronized(keyedData) { keyedEntries = keyedData.values(); }
+        for(N entry : keyedEntries) {
            try{
-                 if(((NormalData) entry).pushData(session.getId())) normalData.remove(entry);
+                 ((NormalData) entry).pushData(session.getId());
            } catch(NullPointerException e ){
                  Message.debug("NPE occurred while saving NormalData: "+ ((NormalData) entry));
-                 normalData.remove(entry);
            }
-        }   
-        for(D entry : getDetailedData()) {
-            try{
-                 if(((DetailedData) entry).pushData(session.getId())) detailedData.remove(entry);
-            } catch(NullPointerException e ){
-                 Message.debug("NPE occurred while saving DetailedData: "+ ((DetailedData) entry));
-                 detailedData.remove(entry);
+        }
+        final List<D> pushedDetailed = DetailedData.pushAll(drain(detailedData, unflushedDetailed), session.getId());
+        
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                synchronized(unflushedNormal) { unflushedNormal.removeAll(new HashSet<N>(pushedNormal)); }
+                synchronized(unflushedDetailed) { unflushedDetailed.removeAll(new HashSet<D>(pushedDetailed)); }
             }
+            
+        });
+    }
+    
+    /**
+     * Moves all entries from the active buffer to the flush batch, and returns a snapshot of the batch
+     * @param buffer Active buffer
+     * @param batch Flush batch
+     * @return Entries to push, oldest first
+     */
+    private static <T> List<T> drain(Queue<T> buffer, List<T> batch) {
+        synchronized(batch) {
+            T entry;
+            while((entry = buffer.poll()) != null) batch.add(entry);
+            return new ArrayList<T>(batch);
         }
     }
     
@@ -93,40 +189,103 @@ public abstract class DataStore<N extends NormalData, D extends DetailedData> {
      * Clears the data store of all locally stored data.
      */
     public void dump() {
-        for(N entry : getNormalData()) {
-            normalData.remove(entry);
-        }
+        normalData.clear();
+        synchronized(unflushedNormal) { unflushedNormal.clear(); }
+        synchronized(keyedData) { keyedData.clear(); }
         
-        for(D entry : getDetailedData()) {
-            detailedData.remove(entry);
-        }
+        detailedData.clear();
+        synchronized(unflushedDetailed) { unflushedDetailed.clear(); }
     }
     
     /**
-     * Represents the data store type
+     * Represents the data store type.<br />
+     * Every type is also the factory of its data store, so that sessions can create data stores
+     * without looking up their constructors.
      * @author bitWolfy
      *
      */
+    @SuppressWarnings("rawtypes")
     public enum DataStoreType {
-        Blocks,
-        Items,
-        Deaths,
-        PVE,
-        PVP,
+        Blocks {
+            @Override
+            public DataStore create(OnlineSession session) { return new BlockData(session); }
+        },
+        Items {
+            @Override
+            public DataStore create(OnlineSession session) { return new ItemData(session); }
+        },
+        Deaths {
+            @Override
+            public DataStore create(OnlineSession session) { return new DeathData(session); }
+        },
+        PVE {
+            @Override
+            public DataStore create(OnlineSession session) { return new PVEData(session); }
+        },
+        PVP {
+            @Override
+            public DataStore create(OnlineSession session) { return new PVPData(session); }
+        },
+
+        Hook_AdminCmd {
+            @Override
+            public DataStore create(OnlineSession session) { return new AdminCmdData(session); }
+        },
+        Hook_BanHammer {
+            @Override
+            public DataStore create(OnlineSession session) { return new BanHammerData(session); }
+        },
+        Hook_CommandBook {
+            @Override
+            public DataStore create(OnlineSession session) { return new CommandBookData(session); }
+        },
+        Hook_Factions {
+            @Override
+            public DataStore create(OnlineSession session) { return new FactionsData(session); }
+        },
+        Hook_Jail {
+            @Override
+            public DataStore create(OnlineSession session) { return new JailData(session); }
+        },
+        Hook_McMMO {
+            @Override
+            public DataStore create(OnlineSession session) { return new McMMOData(session); }
+        },
+        Hook_MobArena {
+            @Override
+            public DataStore create(OnlineSession session) { return new MobArenaData(session); }
+        },
+        Hook_PvpArena {
+            @Override
+            public DataStore create(OnlineSession session) { return new PvpArenaData(session); }
+        },
+        Hook_Towny {
+            @Override
+            public DataStore create(OnlineSession session) { return new TownyData(session); }
+        },
+        Hook_Vanish {
+            @Override
+            public DataStore create(OnlineSession session) { return new VanishData(session); }
+        },
+        Hook_Vault {
+            @Override
+            public DataStore create(OnlineSession session) { return new VaultData(session); }
+        },
+        Hook_Votifier {
+            @Override
+            public DataStore create(OnlineSession session) { return new VotifierData(session); }
+        },
+        Hook_WorldGuard {
+            @Override
+            public DataStore create(OnlineSession session) { return new WorldGuardData(session); }
+        };
         
-        Hook_AdminCmd,
-        Hook_BanHammer,
-        Hook_CommandBook,
-        Hook_Factions,
-        Hook_Jail,
-        Hook_McMMO,
-        Hook_MobArena,
-        Hook_PvpArena,
-        Hook_Towny,
-        Hook_Vanish,
-        Hook_Vault,
-        Hook_Votifier,
-        Hook_WorldGuard;
+        /**
+         * Creates a new data store of this type
+         * @param session Session the data store belongs to
+         * @return New data store
+         */
+        public abstract DataStore create(OnlineSession session);
     }
 
 }
@@ -1,5 +1,15 @@
 package com.wolvencraft.yasp.db.data;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wolvencraft.yasp.db.Query;
+import com.wolvencraft.yasp.db.Query.DatabaseQuery;
+import com.wolvencraft.yasp.settings.LocalConfiguration;
+import com.wolvencraft.yasp.util.Message;
+
 /**
  * Represents data stored in a log format. New data is appended to the end of the table. No existing data can be changed.<br />
  * Multiple instances of this type could (and should) exist.
@@ -14,5 +24,76 @@ public abstract class DetailedData {
      * @param playerId Player ID
      * @return <b>true</b> if the holder has been synchronized and can be removed, <b>false</b> if it is on hold
      */
-    public abstract boolean pushData(int playerId);
+    public boolean pushData(int playerId) {
+        return getQuery(playerId).insert();
+    }
+    
+    /**
+     * Builds the INSERT query for this entry without running it
+     * @param playerId Player ID
+     * @return Database query
+     */
+    public abstract DatabaseQuery getQuery(int playerId);
+    
+    /**
+     * Pushes the entries to the remote database in batches.<br />
+     * Entries are grouped by type, so that each batch targets a single table, and each batch is committed at once.
+     * If a batch fails, its entries are retried one by one; entries that still could not be written are not returned.
+     * @param entries Entries to push
+     * @param playerId Player ID
+     * @return Entries that have been synchronized and can be removed
+     */
+    public static <D extends DetailedData> List<D> pushAll(List<D> entries, int playerId) {
+        List<D> pushed = new ArrayList<D>(entries.size());
+        if(entries.isEmpty()) return pushed;
+        
+        Map<Class<?>, List<D>> groups = new LinkedHashMap<Class<?>, List<D>>();
+        for(D entry : entries) {
+            List<D> group = groups.get(entry.getClass());
+            if(group == null) {
+                group = new ArrayList<D>();
+                groups.put(entry.getClass(), group);
+            }
+            group.add(entry);
+        }
+        
+        int batchSize = LocalConfiguration.DBBatchSize.toInteger();
+        if(batchSize < 1) batchSize = 1;
+        for(List<D> group : groups.values()) {
+            for(int from = 0; from < group.size(); from += batchSize) {
+                pushBatch(group.subList(from, Math.min(group.size(), from + batchSize)), playerId, pushed);
+            }
+        }
+        return pushed;
+    }
+    
+    /**
+     * Pushes a single batch of entries to the remote database
+     * @param batch Entries to push
+     * @param playerId Player ID
+     * @param pushed List to which the synchronized entries are added
+     */
+    private static <D extends DetailedData> void pushBatch(List<D> batch, int playerId, List<D> pushed) {
+        List<DatabaseQuery> queries = new ArrayList<DatabaseQuery>(batch.size());
+        List<D> queued = new ArrayList<D>(batch.size());
+        for(D entry : batch) {
+            try { queries.add(entry.getQuery(playerId)); }
+            catch (NullPointerException e) {
+                Message.debug("NPE occurred while saving DetailedData: " + entry);
+                pushed.add(entry);
+                continue;
+            }
+            queued.add(entry);
+        }
+        
+        if(Query.insert(queries)) {
+            pushed.addAll(queued);
+            return;
+        }
+        
+        Message.debug("Batch of " + queries.size() + " entries failed, retrying them one by one");
+        for(int i = 0; i < queries.size(); i++) {
+            if(queries.get(i).insert()) pushed.add(queued.get(i));
+        }
+    }
 }
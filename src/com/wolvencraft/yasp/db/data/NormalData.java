@@ -10,10 +10,10 @@ public abstract class NormalData {
     
     /**
      * Performs a database operation to fetch the data from the remote database.<br />
-     * If no data is found in the database, the default values are inserted.
+     * Entries that push their values with an upsert never need to read them back, and do not override this method.
      * @param playerId Player ID
      */
-    public abstract void fetchData(int playerId);
+    public void fetchData(int playerId) { }
     
     /**
      * Performs a database operation to push the local data to the remote database.<br />
@@ -189,9 +189,9 @@ public class ServerStatistics {
      * Indicates that the plugin is shutting down and registers the current shutdown time and set all online players to offline.
      */
     public void pluginShutdown() {
-        Query.table(ServerStatsTable.TableName).value("value", Util.getTimestamp()).condition("key", "last_shutdown").update();
-        Query.table(ServerStatsTable.TableName).value("value", 0).condition("key", "current_uptime").update();
-        Query.table(Normal.PlayerStats.TableName).value(Normal.PlayerStats.Online, false).condition(Normal.PlayerStats.Online, true).update();
+        Query.table(ServerStatsTable.TableName).value("value", Util.getTimestamp()).condition("key", "last_shutdown").deferred().update();
+        Query.table(ServerStatsTable.TableName).value("value", 0).condition("key", "current_uptime").deferred().update();
+        Query.table(Normal.PlayerStats.TableName).value(Normal.PlayerStats.Online, false).condition(Normal.PlayerStats.Online, true).deferred().update();
     }
     
     /**
@@ -212,8 +212,8 @@ public class ServerStatistics {
         weather = isStorming;
         weatherDuration = duration;
         
-        Query.table(ServerStatsTable.TableName).value("value", weather).condition("key", "weather").update();
-        Query.table(ServerStatsTable.TableName).value("value", weatherDuration).condition("key", "weather_duration").update();
+        Query.table(ServerStatsTable.TableName).value("value", weather).condition("key", "weather").deferred().update();
+        Query.table(ServerStatsTable.TableName).value("value", weatherDuration).condition("key", "weather_duration").deferred().update();
     }
     
     /**
@@ -30,6 +30,7 @@ import com.wolvencraft.yasp.db.data.blocks.DetailedBlockStats.BlockPlaceEntry;
 import com.wolvencraft.yasp.events.player.TrackedBlockBreakEvent;
 import com.wolvencraft.yasp.events.player.TrackedBlockPlaceEvent;
 import com.wolvencraft.yasp.session.OnlineSession;
+import com.wolvencraft.yasp.util.cache.MaterialCache;
 
 /**
  * Data store that handles all block interactions on the server
@@ -49,11 +50,9 @@ public class BlockData extends DataStore<TotalBlockStats, DetailedData> {
      * @return Corresponding entry
      */
     private TotalBlockStats getNormalData(BlockState block) {
-        for(TotalBlockStats entry : getNormalData()) {
-            if(entry.equals(block)) return entry;
-        }
-        TotalBlockStats entry = new TotalBlockStats(session.getId(), block);
-        normalData.add(entry);
+        long key = MaterialCache.key(block);
+        TotalBlockStats entry = getNormalData(key);
+        if(entry == null) entry = addNormalData(key, new TotalBlockStats(session.getId(), block));
         return entry;
     }
     
@@ -20,14 +20,17 @@
 
 package com.wolvencraft.yasp.db.data.blocks;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.bukkit.block.BlockState;
 
+import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.Query;
-import com.wolvencraft.yasp.db.Query.QueryResult;
 import com.wolvencraft.yasp.db.data.NormalData;
 import com.wolvencraft.yasp.db.tables.Normal.BlockTotals;
+import com.wolvencraft.yasp.db.totals.PlayerTotals;
 import com.wolvencraft.yasp.settings.Constants.ItemsWithMetadata;
-import com.wolvencraft.yasp.settings.RemoteConfiguration;
+import com.wolvencraft.yasp.util.VariableManager.PlayerVariable;
 import com.wolvencraft.yasp.util.cache.MaterialCache;
 
 /**
@@ -39,8 +42,8 @@ import com.wolvencraft.yasp.util.cache.MaterialCache;
 public class TotalBlockStats extends NormalData {
     
     private BlockState block;
-    private int broken;
-    private int placed;
+    private final AtomicInteger broken;
+    private final AtomicInteger placed;
 
     /**
      * <b>Default constructor</b><br />
@@ -49,55 +52,42 @@ public class TotalBlockStats extends NormalData {
      */
     public TotalBlockStats(int playerId, BlockState block) {
         this.block = block;
-        broken = 0;
-        placed = 0;
-        
-        fetchData(playerId);
+        broken = new AtomicInteger(0);
+        placed = new AtomicInteger(0);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(RemoteConfiguration.MergedDataTracking.asBoolean()) {
-            clearData(playerId);
-            return;
-        }
-        
-        QueryResult result = Query.table(BlockTotals.TableName)
-                .column(BlockTotals.Destroyed)
-                .column(BlockTotals.Placed)
-                .condition(BlockTotals.PlayerId, playerId)
-                .condition(BlockTotals.MaterialId, MaterialCache.parse(block))
-                .select();
-        
-        if(result == null) {
-            Query.table(BlockTotals.TableName)
-                .value(BlockTotals.PlayerId, playerId)
-                .value(BlockTotals.MaterialId, MaterialCache.parse(block))
-                .value(BlockTotals.Destroyed, broken)
-                .value(BlockTotals.Placed, placed)
-                .insert();
-        } else {
-            broken = result.asInt(BlockTotals.Destroyed);
-            placed = result.asInt(BlockTotals.Placed);
-        }
-    }
-
     @Override
     public boolean pushData(int playerId) {
+        final int pushedBroken = broken.get();
+        final int pushedPlaced = placed.get();
+        if(pushedBroken == 0 && pushedPlaced == 0) return true;
+        
         boolean result = Query.table(BlockTotals.TableName)
-            .value(BlockTotals.Destroyed, broken)
-            .value(BlockTotals.Placed, placed)
-            .condition(BlockTotals.PlayerId, playerId)
-            .condition(BlockTotals.MaterialId, MaterialCache.parse(block))
-            .update(RemoteConfiguration.MergedDataTracking.asBoolean());
-        fetchData(playerId);
-        return result;
+            .value(BlockTotals.PlayerId, playerId)
+            .value(BlockTotals.MaterialId, MaterialCache.parse(block))
+            .increment(BlockTotals.Destroyed, pushedBroken)
+            .increment(BlockTotals.Placed, pushedPlaced)
+            .upsert();
+        if(!result) return false;
+        PlayerTotals.pushed(playerId, PlayerVariable.BLOCKS_BROKEN, pushedBroken);
+        PlayerTotals.pushed(playerId, PlayerVariable.BLOCKS_PLACED, pushedPlaced);
+        
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                broken.addAndGet(-pushedBroken);
+                placed.addAndGet(-pushedPlaced);
+            }
+            
+        });
+        return true;
     }
     
     @Override
     public void clearData(int playerId) {
-        broken = 0;
-        placed = 0;
+        broken.set(0);
+        placed.set(0);
     }
     
     /**
@@ -117,13 +107,13 @@ public class TotalBlockStats extends NormalData {
      * Increments the number of blocks to the total number of blocks destroyed
      */
     public void addBroken() {
-        broken ++;
+        broken.incrementAndGet();
     }
     
     /**
      * Increments the number of blocks to the total number of blocks placed
      */
     public void addPlaced() {
-        placed ++;
+        placed.incrementAndGet();
     }
 }
@@ -51,15 +51,8 @@ public class DeathData extends DataStore<TotalDeathStats, NaturalDeathEntry> {
      * @param cause Death cause
      */
     public void playerDied(Location location, DamageCause cause) {
-        TotalDeathStats entry = null;
-        for(TotalDeathStats testEntry : getNormalData()) {
-            if(testEntry.getCause().equals(cause)) entry = testEntry;
-        }
-        
-        if(entry == null) {
-            entry = new TotalDeathStats(session.getId(), cause);
-            normalData.add(entry);
-        }
+        TotalDeathStats entry = getNormalData(cause.ordinal());
+        if(entry == null) entry = addNormalData(cause.ordinal(), new TotalDeathStats(session.getId(), cause));
         
         entry.addTimes();
         NaturalDeathEntry detailedEntry = new NaturalDeathEntry(location, cause);
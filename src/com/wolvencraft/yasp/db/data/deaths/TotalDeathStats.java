@@ -20,16 +20,19 @@
 
 package com.wolvencraft.yasp.db.data.deaths;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import lombok.AccessLevel;
 import lombok.Getter;
 
 import org.bukkit.event.entity.EntityDamageEvent.DamageCause;
 
+import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.Query;
-import com.wolvencraft.yasp.db.Query.QueryResult;
 import com.wolvencraft.yasp.db.data.NormalData;
 import com.wolvencraft.yasp.db.tables.Normal.DeathTotals;
-import com.wolvencraft.yasp.settings.RemoteConfiguration;
+import com.wolvencraft.yasp.db.totals.PlayerTotals;
+import com.wolvencraft.yasp.util.VariableManager.PlayerVariable;
 
 /**
  * Represents the total number of times a player died of a particular cause.<br />
@@ -41,60 +44,47 @@ import com.wolvencraft.yasp.settings.RemoteConfiguration;
 public class TotalDeathStats extends NormalData {
     
     private DamageCause cause;
-    private int times;
+    private final AtomicInteger times;
     
     public TotalDeathStats(int playerId, DamageCause cause) {
         this.cause = cause;
-        times = 0;
-        
-        fetchData(playerId);
+        times = new AtomicInteger(0);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(RemoteConfiguration.MergedDataTracking.asBoolean()) {
-            clearData(playerId);
-            return;
-        }
-        
-        QueryResult result = Query.table(DeathTotals.TableName)
-                .column(DeathTotals.Times)
-                .condition(DeathTotals.PlayerId, playerId)
-                .condition(DeathTotals.Cause, cause.name())
-                .select();
-        
-        if(result == null) {
-            Query.table(DeathTotals.TableName)
-                .value(DeathTotals.PlayerId, playerId)
-                .value(DeathTotals.Cause, cause.name())
-                .value(DeathTotals.Times, times)
-                .insert();
-        } else {
-            times = result.asInt(DeathTotals.Times);
-        }
-    }
-
     @Override
     public boolean pushData(int playerId) {
+        final int pushedTimes = times.get();
+        if(pushedTimes == 0) return true;
+        
         boolean result = Query.table(DeathTotals.TableName)
-                .value(DeathTotals.Times, times)
-                .condition(DeathTotals.PlayerId, playerId)
-                .condition(DeathTotals.Cause, cause.name())
-                .update(RemoteConfiguration.MergedDataTracking.asBoolean());
-        fetchData(playerId);
-        return result;
+            .value(DeathTotals.PlayerId, playerId)
+            .value(DeathTotals.Cause, cause.name())
+            .increment(DeathTotals.Times, pushedTimes)
+            .upsert();
+        if(!result) return false;
+        PlayerTotals.pushed(playerId, PlayerVariable.DEATHS, pushedTimes);
+        
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                times.addAndGet(-pushedTimes);
+            }
+            
+        });
+        return true;
     }
     
     @Override
     public void clearData(int playerId) {
-        times = 0;
+        times.set(0);
     }
     
     /**
      * Increments the number of times a player died from the specified cause.
      */
     public void addTimes() {
-        times++;
+        times.incrementAndGet();
     }
     
 }
@@ -33,28 +33,14 @@ public class BanHammerPlayerEntry extends NormalData {
     
     public BanHammerPlayerEntry (Player player, int playerId) {
         this.playerName = player.getName();
-        
-        fetchData(playerId);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(Query.table(BanHammerTable.TableName)
-                .condition(BanHammerTable.PlayerId, playerId)
-                .exists()) return;
-        
-        Query.table(BanHammerTable.TableName)
-            .value(BanHammerTable.PlayerId, playerId)
-            .value(BanHammerTable.Bans, BanHammerHook.getBan(playerName))
-            .insert();
-    }
-
     @Override
     public boolean pushData(int playerId) {
         return Query.table(BanHammerTable.TableName)
+            .value(BanHammerTable.PlayerId, playerId)
             .value(BanHammerTable.Bans, BanHammerHook.getBan(playerName))
-            .condition(BanHammerTable.PlayerId, playerId)
-            .update();
+            .upsert();
     }
 
     @Override
@@ -34,36 +34,18 @@ public class CommandBookPlayerEntry extends NormalData {
     
     public CommandBookPlayerEntry (Player player, int playerId) {
         this.playerName = player.getName();
-        
-        fetchData(playerId);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(Query.table(CommandBookTable.TableName)
-                .condition(CommandBookTable.PlayerId, playerId)
-                .exists()) return;
-        
-        Player player = Bukkit.getPlayerExact(playerName);
-        if(player == null) return;
-        
-        Query.table(CommandBookTable.TableName)
-            .value(CommandBookTable.PlayerId, playerId)
-            .value(CommandBookTable.Afk, CommandBookHook.isAFK(player))
-            .value(CommandBookTable.God, CommandBookHook.isGodMode(player))
-            .insert();
-    }
-
     @Override
     public boolean pushData(int playerId) {
         Player player = Bukkit.getPlayerExact(playerName);
         if(player == null) return false;
         
         return Query.table(CommandBookTable.TableName)
+            .value(CommandBookTable.PlayerId, playerId)
             .value(CommandBookTable.Afk, CommandBookHook.isAFK(player))
             .value(CommandBookTable.God, CommandBookHook.isGodMode(player))
-            .condition(CommandBookTable.PlayerId, playerId)
-            .update();
+            .upsert();
     }
 
     @Override
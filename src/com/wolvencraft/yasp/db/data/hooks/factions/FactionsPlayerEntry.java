@@ -34,44 +34,22 @@ public class FactionsPlayerEntry extends NormalData {
     
     public FactionsPlayerEntry (Player player, int playerId) {
         this.playerName = player.getName();
-        
-        fetchData(playerId);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(Query.table(FactionsTable.TableName)
-                .condition(FactionsTable.PlayerId, playerId)
-                .exists()) return;
-        
-        Player player = Bukkit.getPlayerExact(playerName);
-        if(player == null) return;
-        
-        Query.table(FactionsTable.TableName)
-            .value(FactionsTable.PlayerId, playerId)
-            .value(FactionsTable.CurrentPower, FactionsHook.getPower(player))
-            .value(FactionsTable.MaximumPower, FactionsHook.getMaxPower(player))
-            .value(FactionsTable.CurrentlyIn, FactionsHook.getCurrentLocation(player))
-            .value(FactionsTable.FactionName, FactionsHook.getCurrentFaction(player))
-            .value(FactionsTable.Title, FactionsHook.getTitle(player))
-            .value(FactionsTable.FactionRole, FactionsHook.getRole(player))
-            .insert();
-    }
-
     @Override
     public boolean pushData(int playerId) {
         Player player = Bukkit.getPlayerExact(playerName);
         if(player == null) return false;
         
         return Query.table(FactionsTable.TableName)
+            .value(FactionsTable.PlayerId, playerId)
             .value(FactionsTable.CurrentPower, FactionsHook.getPower(player))
             .value(FactionsTable.MaximumPower, FactionsHook.getMaxPower(player))
             .value(FactionsTable.CurrentlyIn, FactionsHook.getCurrentLocation(player))
             .value(FactionsTable.FactionName, FactionsHook.getCurrentFaction(player))
             .value(FactionsTable.Title, FactionsHook.getTitle(player))
             .value(FactionsTable.FactionRole, FactionsHook.getRole(player))
-            .condition(FactionsTable.PlayerId, playerId)
-            .update();
+            .upsert();
     }
 
     @Override
@@ -33,32 +33,16 @@ public class JailPlayerEntry extends NormalData {
     
     public JailPlayerEntry (Player player, int playerId) {
         this.playerName = player.getName();
-        
-        fetchData(playerId);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(Query.table(JailTable.TableName)
-                .condition(JailTable.PlayerId, playerId)
-                .exists()) return;
-        
-        Query.table(JailTable.TableName)
-            .value(JailTable.PlayerId, playerId)
-            .value(JailTable.IsJailed, JailHook.isJailed(playerName))
-            .value(JailTable.Jailer, JailHook.getJailer(playerName))
-            .value(JailTable.RemainingTime, JailHook.getRemainingTime(playerName))
-            .insert();
-    }
-
     @Override
     public boolean pushData(int playerId) {
         return Query.table(JailTable.TableName)
+            .value(JailTable.PlayerId, playerId)
             .value(JailTable.IsJailed, JailHook.isJailed(playerName))
             .value(JailTable.Jailer, JailHook.getJailer(playerName))
             .value(JailTable.RemainingTime, JailHook.getRemainingTime(playerName))
-            .condition(JailTable.PlayerId, playerId)
-            .update();
+            .upsert();
     }
 
     @Override
@@ -34,36 +34,18 @@ public class MobArenaPlayerEntry extends NormalData {
     
     public MobArenaPlayerEntry (Player player, int playerId) {
         this.playerName = player.getName();
-        
-        fetchData(playerId);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(Query.table(MobArenaTable.TableName)
-                .condition(MobArenaTable.PlayerId, playerId)
-                .exists()) return;
-        
-        Player player = Bukkit.getPlayerExact(playerName);
-        if(player == null) return;
-        
-        Query.table(MobArenaTable.TableName)
-            .value(MobArenaTable.PlayerId, playerId)
-            .value(MobArenaTable.IsPlaying, MobArenaHook.isPlaying(player))
-            .value(MobArenaTable.CurrentArena, MobArenaHook.getArenaName(player))
-            .insert();
-    }
-
     @Override
     public boolean pushData(int playerId) {
         Player player = Bukkit.getPlayerExact(playerName);
         if(player == null) return false;
         
         return Query.table(MobArenaTable.TableName)
+            .value(MobArenaTable.PlayerId, playerId)
             .value(MobArenaTable.IsPlaying, MobArenaHook.isPlaying(player))
             .value(MobArenaTable.CurrentArena, MobArenaHook.getArenaName(player))
-            .condition(MobArenaTable.PlayerId, playerId)
-            .update();
+            .upsert();
     }
 
     @Override
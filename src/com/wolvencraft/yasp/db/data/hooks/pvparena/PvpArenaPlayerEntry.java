@@ -34,36 +34,18 @@ public class PvpArenaPlayerEntry extends NormalData {
     
     public PvpArenaPlayerEntry (Player player, int playerId) {
         this.playerName = player.getName();
-        
-        fetchData(playerId);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(Query.table(PvpArenaTable.TableName)
-                .condition(PvpArenaTable.PlayerId, playerId)
-                .exists()) return;
-        
-        Player player = Bukkit.getPlayerExact(playerName);
-        if(player == null) return;
-        
-        Query.table(PvpArenaTable.TableName)
-            .value(PvpArenaTable.PlayerId, playerId)
-            .value(PvpArenaTable.IsPlaying, PvpArenaHook.isPlaying(player))
-            .value(PvpArenaTable.CurrentArena, PvpArenaHook.getArenaName(player))
-            .insert();
-    }
-
     @Override
     public boolean pushData(int playerId) {
         Player player = Bukkit.getPlayerExact(playerName);
         if(player == null) return false;
         
         return Query.table(PvpArenaTable.TableName)
+            .value(PvpArenaTable.PlayerId, playerId)
             .value(PvpArenaTable.IsPlaying, PvpArenaHook.isPlaying(player))
             .value(PvpArenaTable.CurrentArena, PvpArenaHook.getArenaName(player))
-            .condition(PvpArenaTable.PlayerId, playerId)
-            .update();
+            .upsert();
     }
 
     @Override
@@ -20,7 +20,6 @@
 
 package com.wolvencraft.yasp.db.data.hooks.towny;
 
-import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
 import com.wolvencraft.yasp.db.Query;
@@ -34,31 +33,14 @@ public class TownyPlayerEntry extends NormalData {
     
     public TownyPlayerEntry (Player player, int playerId) {
         this.playerName = player.getName();
-        
-        fetchData(playerId);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(Query.table(TownyTable.TableName)
-                .condition(TownyTable.PlayerId, playerId)
-                .exists()) return;
-        
-        Player player = Bukkit.getPlayerExact(playerName);
-        if(player == null) return;
-        
-        Query.table(TownyTable.TableName)
-            .value(TownyTable.PlayerId, playerId)
-            .value(TownyTable.PlayerData, TownyHook.getPlayerData(playerName))
-            .insert();
-    }
-
     @Override
     public boolean pushData(int playerId) {
         return Query.table(TownyTable.TableName)
+            .value(TownyTable.PlayerId, playerId)
             .value(TownyTable.PlayerData, TownyHook.getPlayerData(playerName))
-            .condition(TownyTable.PlayerId, playerId)
-            .update();
+            .upsert();
     }
 
     @Override
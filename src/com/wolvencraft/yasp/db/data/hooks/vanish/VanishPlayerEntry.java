@@ -34,34 +34,17 @@ public class VanishPlayerEntry extends NormalData {
     
     public VanishPlayerEntry (Player player, int playerId) {
         this.playerName = player.getName();
-        
-        fetchData(playerId);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(Query.table(VanishTable.TableName)
-                .condition(VanishTable.PlayerId, playerId)
-                .exists()) return;
-        
-        Player player = Bukkit.getPlayerExact(playerName);
-        if(player == null) return;
-        
-        Query.table(VanishTable.TableName)
-            .value(VanishTable.PlayerId, playerId)
-            .value(VanishTable.IsVanished, VanishHook.isVanished(player))
-            .insert();
-    }
-
     @Override
     public boolean pushData(int playerId) {
         Player player = Bukkit.getPlayerExact(playerName);
         if(player == null) return false;
         
         return Query.table(VanishTable.TableName)
+            .value(VanishTable.PlayerId, playerId)
             .value(VanishTable.IsVanished, VanishHook.isVanished(player))
-            .condition(VanishTable.PlayerId, playerId)
-            .update();
+            .upsert();
     }
 
     @Override
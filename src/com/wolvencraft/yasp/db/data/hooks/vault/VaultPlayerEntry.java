@@ -25,7 +25,6 @@ import org.bukkit.entity.Player;
 import com.wolvencraft.yasp.db.Query;
 import com.wolvencraft.yasp.db.data.NormalData;
 import com.wolvencraft.yasp.db.tables.Hook.VaultTable;
-import com.wolvencraft.yasp.settings.RemoteConfiguration;
 import com.wolvencraft.yasp.util.hooks.VaultHook;
 import com.wolvencraft.yasp.util.serializable.GroupsSerializable;
 
@@ -51,38 +50,18 @@ public class VaultPlayerEntry extends NormalData {
         this.playerName = player.getName();
         groups = "";
         balance = 0;
-        
-        fetchData(playerId);
     }
     
     @Override
-    public void fetchData(int playerId) {
-        if(RemoteConfiguration.MergedDataTracking.asBoolean()) {
-            clearData(playerId);
-            return;
-        }
-        
+    public boolean pushData(int playerId) {
         groups = GroupsSerializable.serialize(playerName);
         balance = VaultHook.getBalance(playerName);
         
-        if(Query.table(VaultTable.TableName)
-                .condition(VaultTable.PlayerId, playerId)
-                .exists()) return;
-        
-        Query.table(VaultTable.TableName)
-             .value(VaultTable.PlayerId, playerId)
-             .value(VaultTable.Balance, balance)
-             .value(VaultTable.GroupName, groups)
-             .insert();
-    }
-    
-    @Override
-    public boolean pushData(int playerId) {
         return Query.table(VaultTable.TableName)
+            .value(VaultTable.PlayerId, playerId)
             .value(VaultTable.Balance, balance)
             .value(VaultTable.GroupName, groups)
-            .condition(VaultTable.PlayerId, playerId)
-            .update();
+            .upsert();
     }
     
     @Override
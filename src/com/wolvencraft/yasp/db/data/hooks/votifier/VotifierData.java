@@ -27,7 +27,7 @@ import com.wolvencraft.yasp.session.OnlineSession;
 public class VotifierData extends DataStore<TotalVotifierEntry, DetailedVotifierEntry> {
     
     public VotifierData(OnlineSession session) {
-        super(session, DataStoreType.Hook_Vanish);
+        super(session, DataStoreType.Hook_Votifier);
     }
     
     public void playerVoted(Vote vote) {
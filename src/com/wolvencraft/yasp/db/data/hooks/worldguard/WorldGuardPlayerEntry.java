@@ -39,33 +39,18 @@ public class WorldGuardPlayerEntry extends NormalData {
     
     public WorldGuardPlayerEntry(int playerId, Player player) {
         playerName = player.getName();
-        
-        fetchData(playerId);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(Query.table(WorldGuardTable.TableName)
-                .condition(WorldGuardTable.PlayerId, playerId)
-                .exists()) return;
-        
-        Query.table(WorldGuardTable.TableName)
-             .value(WorldGuardTable.PlayerId, playerId)
-             .value(WorldGuardTable.RegionName, "")
-             .value(WorldGuardTable.RegionFlags, "")
-             .insert();
-    }
-
     @Override
     public boolean pushData(int playerId) {
         Player player = Bukkit.getServer().getPlayerExact(playerName);
         if(player == null) return false;
         
         return Query.table(WorldGuardTable.TableName)
+             .value(WorldGuardTable.PlayerId, playerId)
              .value(WorldGuardTable.RegionName, WorldGuardHook.getRegions(player.getLocation()))
              .value(WorldGuardTable.RegionFlags, WorldGuardHook.getFlags(player.getLocation()))
-             .condition(WorldGuardTable.PlayerId, playerId)
-             .update();
+             .upsert();
     }
 
     @Override
@@ -33,6 +33,7 @@ import com.wolvencraft.yasp.events.player.TrackedItemDropEvent;
 import com.wolvencraft.yasp.events.player.TrackedItemPickupEvent;
 import com.wolvencraft.yasp.events.player.TrackedItemUseEvent;
 import com.wolvencraft.yasp.session.OnlineSession;
+import com.wolvencraft.yasp.util.cache.MaterialCache;
 
 /**
  * Data store that records all item interactions on the server.
@@ -52,11 +53,9 @@ public class ItemData extends DataStore<TotalItemStats, DetailedData> {
      * @return Corresponding entry
      */
     public TotalItemStats getNormalData(ItemStack itemStack) {
-        for(TotalItemStats entry : getNormalData()) {
-            if(entry.equals(itemStack)) return entry;
-        }
-        TotalItemStats entry = new TotalItemStats(session.getId(), itemStack);
-        normalData.add(entry);
+        long key = MaterialCache.key(itemStack);
+        TotalItemStats entry = getNormalData(key);
+        if(entry == null) entry = addNormalData(key, new TotalItemStats(session.getId(), itemStack));
         return entry;
     }
     
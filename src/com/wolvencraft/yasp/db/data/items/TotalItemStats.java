@@ -20,15 +20,19 @@
 
 package com.wolvencraft.yasp.db.data.items;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
 
+import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.Query;
-import com.wolvencraft.yasp.db.Query.QueryResult;
 import com.wolvencraft.yasp.db.data.NormalData;
 import com.wolvencraft.yasp.db.tables.Normal.ItemTotals;
+import com.wolvencraft.yasp.db.totals.PlayerTotals;
+import com.wolvencraft.yasp.settings.Constants.ConsumableItems;
 import com.wolvencraft.yasp.settings.Constants.ItemsWithMetadata;
-import com.wolvencraft.yasp.settings.RemoteConfiguration;
+import com.wolvencraft.yasp.util.VariableManager.PlayerVariable;
 import com.wolvencraft.yasp.util.cache.MaterialCache;
 
 /**
@@ -40,14 +44,14 @@ import com.wolvencraft.yasp.util.cache.MaterialCache;
 public class TotalItemStats extends NormalData {
     
     private ItemStack stack;
-    private int dropped;
-    private int pickedUp;
-    private int consumed;
-    private int crafted;
-    private int broken;
-    private int smelted;
-    private int enchanted;
-    private int repaired;
+    private final AtomicInteger dropped;
+    private final AtomicInteger pickedUp;
+    private final AtomicInteger consumed;
+    private final AtomicInteger crafted;
+    private final AtomicInteger broken;
+    private final AtomicInteger smelted;
+    private final AtomicInteger enchanted;
+    private final AtomicInteger repaired;
     
     /**
      * <b>Default constructor</b><br />
@@ -58,91 +62,73 @@ public class TotalItemStats extends NormalData {
         this.stack = stack.clone();
         this.stack.setAmount(1);
         
-        dropped = 0;
-        pickedUp = 0;
-        consumed = 0;
-        crafted = 0;
-        broken = 0;
-        smelted = 0;
-        enchanted = 0;
-        repaired = 0;
-        
-        fetchData(playerId);
+        dropped = new AtomicInteger(0);
+        pickedUp = new AtomicInteger(0);
+        consumed = new AtomicInteger(0);
+        crafted = new AtomicInteger(0);
+        broken = new AtomicInteger(0);
+        smelted = new AtomicInteger(0);
+        enchanted = new AtomicInteger(0);
+        repaired = new AtomicInteger(0);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(RemoteConfiguration.MergedDataTracking.asBoolean()) {
-            clearData(playerId);
-            return;
-        }
-        
-        QueryResult result = Query.table(ItemTotals.TableName)
-                .column(ItemTotals.Dropped)
-                .column(ItemTotals.PickedUp)
-                .column(ItemTotals.Used)
-                .column(ItemTotals.Crafted)
-                .column(ItemTotals.Broken)
-                .column(ItemTotals.Smelted)
-                .column(ItemTotals.Enchanted)
-                .column(ItemTotals.Repaired)
-                .condition(ItemTotals.PlayerId, playerId)
-                .condition(ItemTotals.MaterialId, MaterialCache.parse(stack))
-                .select();
-        
-        if(result == null) {
-            Query.table(ItemTotals.TableName)
-                .value(ItemTotals.PlayerId, playerId)
-                .value(ItemTotals.MaterialId, MaterialCache.parse(stack))
-                .value(ItemTotals.Dropped, dropped)
-                .value(ItemTotals.PickedUp, pickedUp)
-                .value(ItemTotals.Used, consumed)
-                .value(ItemTotals.Crafted, crafted)
-                .value(ItemTotals.Broken, broken)
-                .value(ItemTotals.Smelted, smelted)
-                .value(ItemTotals.Enchanted, enchanted)
-                .value(ItemTotals.Repaired, repaired)
-                .insert();
-        } else {
-            dropped = result.asInt(ItemTotals.Dropped);
-            pickedUp = result.asInt(ItemTotals.PickedUp);
-            consumed = result.asInt(ItemTotals.Used);
-            crafted = result.asInt(ItemTotals.Crafted);
-            broken = result.asInt(ItemTotals.Broken);
-            smelted = result.asInt(ItemTotals.Smelted);
-            enchanted = result.asInt(ItemTotals.Enchanted);
-            repaired = result.asInt(ItemTotals.Repaired);
-        }
-    }
-
     @Override
     public boolean pushData(int playerId) {
+        final int pushedDropped = dropped.get();
+        final int pushedPickedUp = pickedUp.get();
+        final int pushedConsumed = consumed.get();
+        final int pushedCrafted = crafted.get();
+        final int pushedBroken = broken.get();
+        final int pushedSmelted = smelted.get();
+        final int pushedEnchanted = enchanted.get();
+        final int pushedRepaired = repaired.get();
+        if(pushedDropped == 0 && pushedPickedUp == 0 && pushedConsumed == 0 && pushedCrafted == 0 && pushedBroken == 0 && pushedSmelted == 0 && pushedEnchanted == 0 && pushedRepaired == 0) return true;
+        
         boolean result = Query.table(ItemTotals.TableName)
-                .value(ItemTotals.Dropped, dropped)
-                .value(ItemTotals.PickedUp, pickedUp)
-                .value(ItemTotals.Used, consumed)
-                .value(ItemTotals.Crafted, crafted)
-                .value(ItemTotals.Broken, broken)
-                .value(ItemTotals.Smelted, smelted)
-                .value(ItemTotals.Enchanted, enchanted)
-                .value(ItemTotals.Repaired, repaired)
-                .condition(ItemTotals.PlayerId, playerId)
-                .condition(ItemTotals.MaterialId, MaterialCache.parse(stack))
-                .update(RemoteConfiguration.MergedDataTracking.asBoolean());
-        fetchData(playerId);
-        return result;
+            .value(ItemTotals.PlayerId, playerId)
+            .value(ItemTotals.MaterialId, MaterialCache.parse(stack))
+            .increment(ItemTotals.Dropped, pushedDropped)
+            .increment(ItemTotals.PickedUp, pushedPickedUp)
+            .increment(ItemTotals.Used, pushedConsumed)
+            .increment(ItemTotals.Crafted, pushedCrafted)
+            .increment(ItemTotals.Broken, pushedBroken)
+            .increment(ItemTotals.Smelted, pushedSmelted)
+            .increment(ItemTotals.Enchanted, pushedEnchanted)
+            .increment(ItemTotals.Repaired, pushedRepaired)
+            .upsert();
+        if(!result) return false;
+        if(ConsumableItems.isFood(stack.getTypeId())) PlayerTotals.pushed(playerId, PlayerVariable.ITEMS_EATEN, pushedConsumed);
+        PlayerTotals.pushed(playerId, PlayerVariable.ITEMS_CRAFTED, pushedCrafted);
+        PlayerTotals.pushed(playerId, PlayerVariable.ITEMS_BROKEN, pushedBroken);
+        
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                dropped.addAndGet(-pushedDropped);
+                pickedUp.addAndGet(-pushedPickedUp);
+                consumed.addAndGet(-pushedConsumed);
+                crafted.addAndGet(-pushedCrafted);
+                broken.addAndGet(-pushedBroken);
+                smelted.addAndGet(-pushedSmelted);
+                enchanted.addAndGet(-pushedEnchanted);
+                repaired.addAndGet(-pushedRepaired);
+            }
+            
+        });
+        return true;
     }
     
     @Override
     public void clearData(int playerId) {
-        dropped = 0;
-        pickedUp = 0;
-        consumed = 0;
-        crafted = 0;
-        broken = 0;
-        smelted = 0;
-        enchanted = 0;
-        repaired = 0;
+        dropped.set(0);
+        pickedUp.set(0);
+        consumed.set(0);
+        crafted.set(0);
+        broken.set(0);
+        smelted.set(0);
+        enchanted.set(0);
+        repaired.set(0);
     }
     
     /**
@@ -163,7 +149,7 @@ public class TotalItemStats extends NormalData {
      * @param amount Number of items
      */
     public void addDropped(int amount) {
-        dropped += amount;
+        dropped.addAndGet(amount);
     }
     
     /**
@@ -171,7 +157,7 @@ public class TotalItemStats extends NormalData {
      * @param amount Number of items
      */
     public void addPickedUp(int amount) {
-        pickedUp += amount;
+        pickedUp.addAndGet(amount);
     }
     
     /**
@@ -180,7 +166,7 @@ public class TotalItemStats extends NormalData {
      * @param amount Number of items
      */
     public void addConsumed() {
-        consumed += 1;
+        consumed.incrementAndGet();
     }
     
     /**
@@ -188,7 +174,7 @@ public class TotalItemStats extends NormalData {
      * @param amount Number of items
      */
     public void addCrafted(int amount) {
-        crafted += amount;
+        crafted.addAndGet(amount);
     }
     
     /**
@@ -196,7 +182,7 @@ public class TotalItemStats extends NormalData {
      * @param amount Number of items
      */
     public void addBroken(int amount) {
-        broken += amount;
+        broken.addAndGet(amount);
     }
     
     /**
@@ -204,7 +190,7 @@ public class TotalItemStats extends NormalData {
      * @param amount Number of items
      */
     public void addSmelted(int amount) {
-        smelted += amount;
+        smelted.addAndGet(amount);
     }
     
     /**
@@ -212,7 +198,7 @@ public class TotalItemStats extends NormalData {
      * @param amount Number of items
      */
     public void addEnchanted(int amount) {
-        enchanted += amount;
+        enchanted.addAndGet(amount);
     }
     
     /**
@@ -26,6 +26,7 @@ import lombok.Getter;
 import org.bukkit.Location;
 
 import com.wolvencraft.yasp.db.Query;
+import com.wolvencraft.yasp.db.Query.DatabaseQuery;
 import com.wolvencraft.yasp.db.data.DetailedData;
 import com.wolvencraft.yasp.db.tables.Detailed.PlayerLog;
 import com.wolvencraft.yasp.util.Util;
@@ -49,7 +50,7 @@ public class DetailedLogPlayerEntry extends DetailedData {
     }
      
     @Override
-    public boolean pushData(int playerId) {
+    public DatabaseQuery getQuery(int playerId) {
         return Query.table(PlayerLog.TableName)
                 .value(PlayerLog.PlayerId, playerId)
                 .value(PlayerLog.Timestamp, time)
@@ -57,8 +58,7 @@ public class DetailedLogPlayerEntry extends DetailedData {
                 .value(PlayerLog.World, location.getWorld().getName())
                 .value(PlayerLog.XCoord, location.getBlockX())
                 .value(PlayerLog.YCoord, location.getBlockY())
-                .value(PlayerLog.ZCoord, location.getBlockZ())
-                .insert();
+                .value(PlayerLog.ZCoord, location.getBlockZ());
     }
  
 }
@@ -23,15 +23,16 @@ package com.wolvencraft.yasp.db.data.players;
 import lombok.AccessLevel;
 import lombok.Getter;
 
+import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.Query;
-import com.wolvencraft.yasp.db.Query.QueryResult;
 import com.wolvencraft.yasp.db.data.NormalData;
 import com.wolvencraft.yasp.db.tables.Normal.PlayerDistance;
-import com.wolvencraft.yasp.settings.RemoteConfiguration;
+import com.wolvencraft.yasp.db.totals.PlayerTotals;
 
 /**
  * Represents the distances a player traveled.
- * Only one entry per player is allowed.
+ * Only one entry per player is allowed. Distances are guarded by the entry itself, since they are added
+ * on the server thread and subtracted by the database thread once a push has been committed.
  * @author bitWolfy
  *
  */
@@ -46,8 +47,7 @@ public class DistancePlayerEntry extends NormalData {
     private double ride;
     
     /**
-     * Default constructor. Takes in the Player object and pulls corresponding values from the remote database.<br />
-     * If no data is found in the database, the default values are inserted.
+     * Default constructor. Creates an empty entry; the distances travelled are added to the database on push.
      * @param playerId ID of the tracked player
      */
     public DistancePlayerEntry(int playerId) {
@@ -57,62 +57,59 @@ public class DistancePlayerEntry extends NormalData {
         boat = 0;
         minecart = 0;
         ride = 0;
-        
-        fetchData(playerId);
     }
     
     @Override
-    public void fetchData(int playerId) {
-        if(RemoteConfiguration.MergedDataTracking.asBoolean()) {
-            clearData(playerId);
-            return;
+    public boolean pushData(int playerId) {
+        // Columns hold whole blocks; the fraction is kept until the next push
+        final long pushedFoot, pushedSwim, pushedFlight, pushedBoat, pushedMinecart, pushedRide;
+        synchronized(this) {
+            pushedFoot = (long) foot;
+            pushedSwim = (long) swim;
+            pushedFlight = (long) flight;
+            pushedBoat = (long) boat;
+            pushedMinecart = (long) minecart;
+            pushedRide = (long) ride;
         }
+        if(pushedFoot == 0 && pushedSwim == 0 && pushedFlight == 0 && pushedBoat == 0 && pushedMinecart == 0 && pushedRide == 0) return true;
         
-        QueryResult result = Query.table(PlayerDistance.TableName)
-                .column(PlayerDistance.Foot)
-                .column(PlayerDistance.Swim)
-                .column(PlayerDistance.Flight)
-                .column(PlayerDistance.Boat)
-                .column(PlayerDistance.Minecart)
-                .column(PlayerDistance.Ride)
-                .condition(PlayerDistance.PlayerId, playerId)
-                .select();
-        if(result == null) {
-            Query.table(PlayerDistance.TableName)
-                .value(PlayerDistance.PlayerId, playerId)
-                .value(PlayerDistance.Foot, foot)
-                .value(PlayerDistance.Swim, swim)
-                .value(PlayerDistance.Flight, flight)
-                .value(PlayerDistance.Boat, boat)
-                .value(PlayerDistance.Minecart, minecart)
-                .value(PlayerDistance.Ride, ride)
-                .insert();
-        } else {
-            foot = result.asInt(PlayerDistance.Foot);
-            swim = result.asInt(PlayerDistance.Swim);
-            flight = result.asInt(PlayerDistance.Flight);
-            boat = result.asInt(PlayerDistance.Boat);
-            minecart = result.asInt(PlayerDistance.Minecart);
-            ride = result.asInt(PlayerDistance.Ride);
-        }
-    }
-
-    @Override
-    public boolean pushData(int playerId) {
         boolean result = Query.table(PlayerDistance.TableName)
-            .value(PlayerDistance.Foot, foot)
-            .value(PlayerDistance.Swim, swim)
-            .value(PlayerDistance.Flight, flight)
-            .value(PlayerDistance.Boat, boat)
-            .value(PlayerDistance.Minecart, minecart)
-            .value(PlayerDistance.Ride, ride)
-            .condition(PlayerDistance.PlayerId, playerId)
-            .update(RemoteConfiguration.MergedDataTracking.asBoolean());
-        return result;
+            .value(PlayerDistance.PlayerId, playerId)
+            .increment(PlayerDistance.Foot, pushedFoot)
+            .increment(PlayerDistance.Swim, pushedSwim)
+            .increment(PlayerDistance.Flight, pushedFlight)
+            .increment(PlayerDistance.Boat, pushedBoat)
+            .increment(PlayerDistance.Minecart, pushedMinecart)
+            .increment(PlayerDistance.Ride, pushedRide)
+            .upsert();
+        if(!result) return false;
+        PlayerTotals.pushedDistance(playerId, PlayerDistance.Foot, pushedFoot);
+        PlayerTotals.pushedDistance(playerId, PlayerDistance.Swim, pushedSwim);
+        PlayerTotals.pushedDistance(playerId, PlayerDistance.Flight, pushedFlight);
+        PlayerTotals.pushedDistance(playerId, PlayerDistance.Boat, pushedBoat);
+        PlayerTotals.pushedDistance(playerId, PlayerDistance.Minecart, pushedMinecart);
+        PlayerTotals.pushedDistance(playerId, PlayerDistance.Ride, pushedRide);
+        
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                synchronized(DistancePlayerEntry.this) {
+                    foot -= pushedFoot;
+                    swim -= pushedSwim;
+                    flight -= pushedFlight;
+                    boat -= pushedBoat;
+                    minecart -= pushedMinecart;
+                    ride -= pushedRide;
+                }
+            }
+            
+        });
+        return true;
     }
     
     @Override
-    public void clearData(int playerId) {
+    public synchronized void clearData(int playerId) {
         foot = 0;
         swim = 0;
         flight = 0;
@@ -126,7 +123,7 @@ public class DistancePlayerEntry extends NormalData {
      * @param type Travel type
      * @param distance Distance travelled
      */
-    public void addDistance(PlayerDistance type, double distance) {
+    public synchronized void addDistance(PlayerDistance type, double distance) {
         switch(type) {
             case Foot:
                 foot += distance;
@@ -150,4 +147,22 @@ public class DistancePlayerEntry extends NormalData {
                 break;
         }
     }
+    
+    /**
+     * Increments all distances at once, so that a push never sees only a part of them
+     * @param foot Distance travelled on foot
+     * @param swim Distance swum
+     * @param flight Distance flown
+     * @param boat Distance travelled by boat
+     * @param minecart Distance travelled by minecart
+     * @param ride Distance travelled on a mount
+     */
+    public synchronized void addDistances(double foot, double swim, double flight, double boat, double minecart, double ride) {
+        this.foot += foot;
+        this.swim += swim;
+        this.flight += flight;
+        this.boat += boat;
+        this.minecart += minecart;
+        this.ride += ride;
+    }
 }
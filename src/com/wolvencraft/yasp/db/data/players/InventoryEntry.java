@@ -46,12 +46,12 @@ public class InventoryEntry extends NormalData {
     
     /**
      * <b>Default constructor</b><br />
-     * Creates a new InventoryData object based on arguments provided
+     * Creates a new InventoryData object based on arguments provided.<br />
+     * The inventory row is created by the profile loader when the player logs in.
      * @param playerId Player ID
      */
     public InventoryEntry(int playerId, Player player) {
         this.playerName = player.getName();
-        fetchData(playerId);
     }
     
     @Override
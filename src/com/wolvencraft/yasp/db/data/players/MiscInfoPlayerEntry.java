@@ -21,30 +21,52 @@
 package com.wolvencraft.yasp.db.data.players;
 
 import java.net.InetAddress;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
+import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.Query;
-import com.wolvencraft.yasp.db.Query.QueryResult;
+import com.wolvencraft.yasp.db.Query.DatabaseQuery;
 import com.wolvencraft.yasp.db.data.NormalData;
 import com.wolvencraft.yasp.db.tables.DBTable;
 import com.wolvencraft.yasp.db.tables.Normal.PlayerData;
-import com.wolvencraft.yasp.settings.RemoteConfiguration;
 import com.wolvencraft.yasp.util.Util;
 import com.wolvencraft.yasp.util.cache.OnlineSessionCache;
 
 /**
- * Represents all the miscellaneous information that does not fit any other category
+ * Represents all the miscellaneous information that does not fit any other category.<br />
+ * Statistics are changed by the event handlers and by the database thread once a push has been committed,
+ * so every read-modify-write of a value holds the lock of the entry.
  * @author bitWolfy
  *
  */
 public class MiscInfoPlayerEntry extends NormalData {
 
+    /**
+     * Statistics that are added to the values stored in the database
+     */
+    private static final EnumSet<PlayerData> counters = EnumSet.of(
+            PlayerData.FishCaught,
+            PlayerData.TimesKicked,
+            PlayerData.EggsThrown,
+            PlayerData.FoodEaten,
+            PlayerData.ArrowsShot,
+            PlayerData.DamageTaken,
+            PlayerData.BedsEntered,
+            PlayerData.PortalsEntered,
+            PlayerData.WordsSaid,
+            PlayerData.CommandsSent,
+            PlayerData.TimesJumped
+        );
+    
     private final String playerName;
-    private Map<DBTable, Object> values;
+    private final Map<DBTable, Object> values;
     
     /**
      * <b>Default constructor</b><br />
@@ -55,7 +77,7 @@ public class MiscInfoPlayerEntry extends NormalData {
     public MiscInfoPlayerEntry(int playerId, Player player) {
         playerName = player.getName();
         
-        values = new HashMap<DBTable, Object>();
+        values = new ConcurrentHashMap<DBTable, Object>();
         
         if(player.isOp()) values.put(PlayerData.IsOp, 1);
         else values.put(PlayerData.IsOp, 0);
@@ -88,53 +110,44 @@ public class MiscInfoPlayerEntry extends NormalData {
         
         values.put(PlayerData.CurKillStreak, 0);
         values.put(PlayerData.MaxKillStreak, 0);
-        
-        fetchData(playerId);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(RemoteConfiguration.MergedDataTracking.asBoolean()) {
-            clearData(playerId);
-            return;
-        }
-        
-        QueryResult result = Query.table(PlayerData.TableName)
-            .condition(PlayerData.PlayerId, playerId)
-            .select();
-        if(result == null) {
-            Query.table(PlayerData.TableName)
-                .value(PlayerData.PlayerId, playerId)
-                .valueRaw(values)
-                .insert();
-        } else {
-            values.put(PlayerData.FishCaught, result.asInt(PlayerData.FishCaught));
-            values.put(PlayerData.TimesKicked, result.asInt(PlayerData.TimesKicked));
-            values.put(PlayerData.EggsThrown, result.asInt(PlayerData.EggsThrown));
-            values.put(PlayerData.FoodEaten, result.asInt(PlayerData.FoodEaten));
-            values.put(PlayerData.ArrowsShot, result.asInt(PlayerData.ArrowsShot));
-            values.put(PlayerData.DamageTaken, result.asDouble(PlayerData.DamageTaken));
-            values.put(PlayerData.BedsEntered, result.asInt(PlayerData.BedsEntered));
-            values.put(PlayerData.PortalsEntered, result.asInt(PlayerData.PortalsEntered));
-            values.put(PlayerData.WordsSaid, result.asInt(PlayerData.WordsSaid));
-            values.put(PlayerData.CommandsSent, result.asInt(PlayerData.CommandsSent));
-            values.put(PlayerData.MaxKillStreak, result.asInt(PlayerData.MaxKillStreak));
-            values.put(PlayerData.TimesJumped, result.asInt(PlayerData.TimesJumped));
-        }
-    }
-
     @Override
     public boolean pushData(int playerId) {
         refreshPlayerData();
-        boolean result = Query.table(PlayerData.TableName)
-            .valueRaw(values)
-            .condition(PlayerData.PlayerId, playerId)
-            .update(RemoteConfiguration.MergedDataTracking.asBoolean());
-        fetchData(playerId);
-        return result;
+        
+        DatabaseQuery query = Query.table(PlayerData.TableName).value(PlayerData.PlayerId, playerId);
+        final Map<PlayerData, Double> pushed = new HashMap<PlayerData, Double>();
+        synchronized(this) {
+            for(Entry<DBTable, Object> entry : values.entrySet()) {
+                DBTable column = entry.getKey();
+                if(column == PlayerData.MaxKillStreak) {
+                    query.maximum(column, entry.getValue());
+                } else if(counters.contains(column)) {
+                    pushed.put((PlayerData) column, ((Number) entry.getValue()).doubleValue());
+                    query.increment(column, entry.getValue());
+                } else {
+                    query.value(column, entry.getValue());
+                }
+            }
+        }
+        if(!query.upsert()) return false;
+        
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                for(Entry<PlayerData, Double> entry : pushed.entrySet()) {
+                    incrementStat(entry.getKey(), -entry.getValue());
+                }
+            }
+            
+        });
+        return true;
     }
     
-    public void clearData(int playerId) {
+    @Override
+    public synchronized void clearData(int playerId) {
         values.put(PlayerData.FishCaught, 0);
         values.put(PlayerData.TimesKicked, 0);
         values.put(PlayerData.EggsThrown, 0);
@@ -178,14 +191,7 @@ public class MiscInfoPlayerEntry extends NormalData {
      * @param type Statistic type
      */
     public void incrementStat(PlayerData type) {
-        double value = 1;
-        if(values.containsKey(type)) {
-            Object valueObj = values.get(type);
-            if(valueObj instanceof Double)
-                value = ((Double) valueObj).doubleValue() + 1;
-            else value = ((Integer) valueObj).doubleValue() + 1;
-        }
-        values.put(type, value);
+        incrementStat(type, 1);
     }
     
     /**
@@ -193,13 +199,9 @@ public class MiscInfoPlayerEntry extends NormalData {
      * @param type Statistic type
      * @param value Amount
      */
-    public void incrementStat(PlayerData type, double value) {
-        if(values.containsKey(type)) {
-            Object valueObj = values.get(type);
-            if(valueObj instanceof Double)
-                value += ((Double) valueObj).doubleValue();
-            else value += ((Integer) valueObj).doubleValue();
-        }
+    public synchronized void incrementStat(PlayerData type, double value) {
+        Object valueObj = values.get(type);
+        if(valueObj != null) value += ((Number) valueObj).doubleValue();
         values.put(type, value);
     }
     
@@ -209,19 +211,21 @@ public class MiscInfoPlayerEntry extends NormalData {
      */
     public void killed(Player player) {
         OnlineSessionCache.fetch(player).died();
-        int curKillStreak = ((Integer) values.get(PlayerData.CurKillStreak)).intValue() + 1;
-        int maxKillStreak = ((Integer) values.get(PlayerData.MaxKillStreak)).intValue();
-        values.put(PlayerData.CurKillStreak, curKillStreak);
-        if(curKillStreak > maxKillStreak) {
-            maxKillStreak++;
-            values.put(PlayerData.MaxKillStreak, maxKillStreak);
+        synchronized(this) {
+            int curKillStreak = ((Integer) values.get(PlayerData.CurKillStreak)).intValue() + 1;
+            int maxKillStreak = ((Integer) values.get(PlayerData.MaxKillStreak)).intValue();
+            values.put(PlayerData.CurKillStreak, curKillStreak);
+            if(curKillStreak > maxKillStreak) {
+                maxKillStreak++;
+                values.put(PlayerData.MaxKillStreak, maxKillStreak);
+            }
         }
     }
     
     /**
      * Logs player being killed by mobs or natural causes
      */
-    public void died() {
+    public synchronized void died() {
         int curKillStreak = ((Integer) values.get(PlayerData.CurKillStreak)).intValue();
         int maxKillStreak = ((Integer) values.get(PlayerData.MaxKillStreak)).intValue();
         if(curKillStreak > maxKillStreak) {
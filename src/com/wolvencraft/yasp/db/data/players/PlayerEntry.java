@@ -20,20 +20,25 @@
 
 package com.wolvencraft.yasp.db.data.players;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import lombok.AccessLevel;
 import lombok.Getter;
 
 import org.bukkit.entity.Player;
 
+import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.Query;
-import com.wolvencraft.yasp.db.Query.QueryResult;
 import com.wolvencraft.yasp.db.data.NormalData;
+import com.wolvencraft.yasp.db.data.players.ProfileLoader.Profile;
 import com.wolvencraft.yasp.db.tables.Normal.PlayerStats;
 import com.wolvencraft.yasp.util.Util;
 
 /**
  * Represents the Player data that is being tracked.<br />
  * Each entry must have a unique player name.
+ * Playtime is pushed as the amount played since the last committed push, so that it is added to the stored total
+ * instead of overwriting it with a value that might have been loaded from a stale or missing row.
  * @author bitWolfy
  *
  */
@@ -41,48 +46,29 @@ public class PlayerEntry extends NormalData {
     
     private final String username;
     private long lastSync;
+    private final AtomicLong unpushed;
     
+    @Getter(AccessLevel.PUBLIC) private final long loginTime;
     @Getter(AccessLevel.PUBLIC) private long longestSession;
     @Getter(AccessLevel.PUBLIC) private long currentSession;
     
     @Getter(AccessLevel.PUBLIC) private long totalPlaytime;
     
-    public PlayerEntry (int playerId, Player player) {
+    /**
+     * <b>Default constructor</b><br />
+     * Creates a new PlayerEntry from the profile loaded on login
+     * @param player Player object
+     * @param profile Player profile
+     */
+    public PlayerEntry (Player player, Profile profile) {
         username = player.getName();
-        lastSync = Util.getTimestamp();
+        loginTime = profile.getLoginTime();
+        lastSync = loginTime;
+        unpushed = new AtomicLong(0);
         
         currentSession = 0;
-        longestSession = 0;
-        
-        long firstLogin = lastSync;
-        int logins = 0;
-        
-        QueryResult result = Query.table(PlayerStats.TableName)
-            .column(PlayerStats.Logins)
-            .column(PlayerStats.FirstLogin)
-            .column(PlayerStats.Playtime)
-            .column(PlayerStats.LongestSession)
-            .condition(PlayerStats.PlayerId, playerId)
-            .select();
-        
-        if(result == null) {
-            Query.table(PlayerStats.TableName)
-                 .value(PlayerStats.Name, username)
-                 .insert();
-        } else {
-            firstLogin = result.asLong(PlayerStats.FirstLogin);
-            if(firstLogin == -1) { firstLogin = lastSync; }
-            logins = result.asInt(PlayerStats.Logins);
-            this.totalPlaytime = result.asLong(PlayerStats.Playtime);
-            longestSession = result.asLong(PlayerStats.LongestSession);
-        }
-        
-        Query.table(PlayerStats.TableName)
-            .value(PlayerStats.LoginTime, lastSync)
-            .value(PlayerStats.FirstLogin, firstLogin)
-            .value(PlayerStats.Logins, ++logins)
-            .condition(PlayerStats.PlayerId, playerId)
-            .update();
+        longestSession = profile.getLongestSession();
+        totalPlaytime = profile.getPlaytime();
     }
     
     @Override
@@ -95,16 +81,31 @@ public class PlayerEntry extends NormalData {
     
     @Override
     public boolean pushData(int playerId) {
-        currentSession += Util.getTimestamp() - lastSync;
+        long now = Util.getTimestamp();
+        long played = now - lastSync;
+        lastSync = now;
+        
+        currentSession += played;
         if(longestSession < currentSession) longestSession = currentSession;
-        totalPlaytime += Util.getTimestamp() - lastSync;
-        lastSync = Util.getTimestamp();
+        totalPlaytime += played;
+        
+        final long delta = unpushed.addAndGet(played);
+        boolean result = Query.table(PlayerStats.TableName)
+            .value(PlayerStats.PlayerId, playerId)
+            .increment(PlayerStats.Playtime, delta)
+            .maximum(PlayerStats.LongestSession, currentSession)
+            .upsert();
+        if(!result) return false;
         
-        return Query.table(PlayerStats.TableName)
-            .value(PlayerStats.Playtime, totalPlaytime)
-            .value(PlayerStats.LongestSession, longestSession)
-            .condition(PlayerStats.PlayerId, playerId)
-            .update();
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                unpushed.addAndGet(-delta);
+            }
+            
+        });
+        return true;
     }
     
 }
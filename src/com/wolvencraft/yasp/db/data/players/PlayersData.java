@@ -21,12 +21,15 @@
 package com.wolvencraft.yasp.db.data.players;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 
+import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.data.DetailedData;
+import com.wolvencraft.yasp.db.data.players.ProfileLoader.Profile;
 import com.wolvencraft.yasp.settings.Module;
 
 /**
@@ -42,17 +45,28 @@ public class PlayersData {
     private MiscInfoPlayerEntry miscData;
     private InventoryEntry inventoryData;
     
-    private List<DetailedData> detailedData;
+    private final List<DetailedData> detailedData;
     
     /**
      * <b>Default constructor</b><br />
-     * Creates a new PlayersData object based on the data provided
+     * Creates a new PlayersData object, loading the profile of the player and recording the login
      * @param player Player object
      * @param playerId Player ID
      */
     public PlayersData(Player player, int playerId) {
+        this(player, playerId, ProfileLoader.load(playerId, player.getName()));
+    }
+    
+    /**
+     * <b>Constructor</b><br />
+     * Creates a new PlayersData object from a profile that has already been loaded
+     * @param player Player object
+     * @param playerId Player ID
+     * @param profile Player profile
+     */
+    public PlayersData(Player player, int playerId, Profile profile) {
         this.playerId = playerId;
-        generalData = new PlayerEntry(playerId, player);
+        generalData = new PlayerEntry(player, profile);
         distanceData = new DistancePlayerEntry(playerId);
         miscData = new MiscInfoPlayerEntry(playerId, player);
         if(Module.Inventory.isEnabled()) inventoryData = new InventoryEntry(playerId, player);
@@ -65,9 +79,7 @@ public class PlayersData {
      * @return List of DetailedData objects
      */
     private List<DetailedData> getDetailedData() {
-        List<DetailedData> temp = new ArrayList<DetailedData>();
-        for(DetailedData value : detailedData) temp.add(value);
-        return temp;
+        synchronized(detailedData) { return new ArrayList<DetailedData>(detailedData); }
     }
     
     /**
@@ -79,18 +91,22 @@ public class PlayersData {
         miscData.pushData(playerId);
         if(Module.Inventory.isEnabled()) inventoryData.pushData(playerId);
         
-        for(DetailedData entry : getDetailedData()) {
-            if(entry.pushData(playerId)) { detailedData.remove(entry); }
-        }
+        final List<DetailedData> pushed = DetailedData.pushAll(getDetailedData(), playerId);
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                synchronized(detailedData) { detailedData.removeAll(new HashSet<DetailedData>(pushed)); }
+            }
+            
+        });
     }
     
     /**
      * Erases all locally stored data
      */
     public void dump() {
-        for(DetailedData entry : getDetailedData()) {
-            detailedData.remove(entry);
-        }
+        synchronized(detailedData) { detailedData.clear(); }
     }
     
     /**
@@ -125,7 +141,7 @@ public class PlayersData {
      * @param isLogin <b>true</b> if the player has logged in, <b>false</b> otherwise
      */
     public void addPlayerLog(Location location, boolean isLogin) {
-        detailedData.add(new DetailedLogPlayerEntry(location, isLogin));
+        synchronized(detailedData) { detailedData.add(new DetailedLogPlayerEntry(location, isLogin)); }
     }
  
 }
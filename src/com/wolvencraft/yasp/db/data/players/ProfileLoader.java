@@ -0,0 +1,253 @@
+/*
+ * ProfileLoader.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.db.data.players;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import com.wolvencraft.yasp.db.Query;
+import com.wolvencraft.yasp.db.WriteBehind;
+import com.wolvencraft.yasp.db.Query.DatabaseQuery;
+import com.wolvencraft.yasp.db.Query.QueryResult;
+import com.wolvencraft.yasp.db.tables.Normal.PlayerInv;
+import com.wolvencraft.yasp.db.tables.Normal.PlayerStats;
+import com.wolvencraft.yasp.exceptions.RuntimeSQLException;
+import com.wolvencraft.yasp.settings.Module;
+import com.wolvencraft.yasp.util.ExceptionHandler;
+import com.wolvencraft.yasp.util.Message;
+import com.wolvencraft.yasp.util.Util;
+
+/**
+ * Loads the stored data of players who log in.<br />
+ * The player rows of all players that log in at the same time are read with a single query, and the login is recorded
+ * for all of them with a single batch of upserts, which also creates any rows that are missing.
+ * Whichever loading thread gets there first loads the profiles of everyone that is waiting; the others wait for it.
+ * @author bitWolfy
+ *
+ */
+public class ProfileLoader {
+    
+    private static final int MAX_BATCH = 100;
+    private static final long WAIT = 50;
+    private static final long QUEUE_WAIT = 5000;
+    
+    private static final Queue<Request> pending = new ConcurrentLinkedQueue<Request>();
+    private static final AtomicBoolean loading = new AtomicBoolean(false);
+    
+    private static final AtomicLong loadedCount = new AtomicLong(0);
+    private static final AtomicLong batchCount = new AtomicLong(0);
+    
+    private ProfileLoader() { }
+    
+    /**
+     * Loads the profile of the player and records the login.<br />
+     * Blocks until the profile is loaded; must not be called on the main server thread.
+     * @param playerId Player ID
+     * @param name Player name
+     * @return Player profile
+     * @throws RuntimeSQLException thrown if the player row could not be read
+     */
+    public static Profile load(int playerId, String name) {
+        Request request = new Request(playerId, name);
+        pending.add(request);
+        
+        boolean interrupted = false;
+        try {
+            while(true) {
+                if(loading.compareAndSet(false, true)) {
+                    try { drain(); }
+                    finally { loading.set(false); }
+                }
+                try {
+                    if(request.done.await(WAIT, TimeUnit.MILLISECONDS)) {
+                        if(request.profile == null) throw new RuntimeSQLException("Could not load the profile of " + name);
+                        return request.profile;
+                    }
+                }
+                catch (InterruptedException e) { interrupted = true; }
+            }
+        } finally {
+            if(interrupted) Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Returns the number of profiles loaded
+     * @return Loaded profile count
+     */
+    public static long getLoadedCount() {
+        return loadedCount.get();
+    }
+    
+    /**
+     * Returns the average number of profiles loaded at once
+     * @return Average batch size
+     */
+    public static double getAverageBatch() {
+        long batches = batchCount.get();
+        if(batches == 0) return 0;
+        return (double) loadedCount.get() / batches;
+    }
+    
+    /**
+     * Loads the profiles of all waiting players, in batches
+     */
+    private static void drain() {
+        while(!pending.isEmpty()) {
+            List<Request> batch = new ArrayList<Request>();
+            Request request;
+            while(batch.size() < MAX_BATCH && (request = pending.poll()) != null) batch.add(request);
+            if(batch.isEmpty()) return;
+            
+            try { load(batch); }
+            catch (Throwable t) { ExceptionHandler.handle(t); }
+            finally {
+                for(Request loaded : batch) loaded.done.countDown();
+            }
+        }
+    }
+    
+    /**
+     * Reads the player rows of the batch, and records the login of every player in it.<br />
+     * The rows are read once the writes queued by earlier sessions have been written, and the login is queued behind them,
+     * so that a player who rejoins quickly is neither loaded from nor marked offline by their previous session.
+     * @param batch Players to load
+     * @throws RuntimeSQLException thrown if the player rows could not be read
+     */
+    private static void load(List<Request> batch) {
+        long start = System.currentTimeMillis();
+        long now = Util.getTimestamp();
+        
+        List<Integer> ids = new ArrayList<Integer>(batch.size());
+        for(Request request : batch) ids.add(request.playerId);
+        
+        if(!WriteBehind.awaitQueued(QUEUE_WAIT)) Message.debug(Level.FINE, "Timed out while waiting for queued writes, loading " + batch.size() + " profile(s) anyway");
+        List<QueryResult> rows = Query.table(PlayerStats.TableName)
+                .column(PlayerStats.PlayerId)
+                .column(PlayerStats.Logins)
+                .column(PlayerStats.FirstLogin)
+                .column(PlayerStats.Playtime)
+                .column(PlayerStats.LongestSession)
+                .conditionIn(PlayerStats.PlayerId, ids)
+                .selectAll(true);
+        if(rows == null) throw new RuntimeSQLException("Could not read the rows of " + batch.size() + " player(s)");
+        Map<Integer, QueryResult> stored = new HashMap<Integer, QueryResult>(rows.size() * 2);
+        for(QueryResult row : rows) stored.put(row.asInt(PlayerStats.PlayerId), row);
+        
+        boolean inventory = Module.Inventory.isEnabled();
+        List<DatabaseQuery> upserts = new ArrayList<DatabaseQuery>(batch.size() * 2);
+        for(Request request : batch) {
+            Profile profile = new Profile(now);
+            QueryResult row = stored.get(request.playerId);
+            if(row != null) {
+                long firstLogin = row.asLong(PlayerStats.FirstLogin);
+                if(firstLogin != -1) profile.firstLogin = firstLogin;
+                profile.logins = Math.max(row.asInt(PlayerStats.Logins), 0);
+                profile.playtime = Math.max(row.asLong(PlayerStats.Playtime), 0);
+                profile.longestSession = Math.max(row.asLong(PlayerStats.LongestSession), 0);
+            }
+            profile.logins++;
+            request.profile = profile;
+            
+            upserts.add(Query.table(PlayerStats.TableName)
+                    .value(PlayerStats.PlayerId, request.playerId)
+                    .value(PlayerStats.Name, request.name)
+                    .value(PlayerStats.Online, true)
+                    .value(PlayerStats.LoginTime, now)
+                    .value(PlayerStats.FirstLogin, profile.firstLogin)
+                    .increment(PlayerStats.Logins, 1));
+            if(inventory) upserts.add(Query.table(PlayerInv.TableName).value(PlayerInv.PlayerId, request.playerId));
+        }
+        WriteBehind.begin();
+        try { Query.upsert(upserts); }
+        finally { WriteBehind.submit(); }
+        
+        loadedCount.addAndGet(batch.size());
+        batchCount.incrementAndGet();
+        Message.debug("Loaded " + batch.size() + " player profile(s) in " + (System.currentTimeMillis() - start) + "ms");
+    }
+    
+    /**
+     * The stored data of a player, as of their login
+     * @author bitWolfy
+     *
+     */
+    @Getter(AccessLevel.PUBLIC)
+    public static class Profile {
+        
+        private final long loginTime;
+        private long firstLogin;
+        private int logins;
+        private long playtime;
+        private long longestSession;
+        
+        /**
+         * <b>Default constructor</b><br />
+         * Creates the profile of a player who has never logged in
+         * @param loginTime Login timestamp
+         */
+        public Profile(long loginTime) {
+            this.loginTime = loginTime;
+            this.firstLogin = loginTime;
+            this.logins = 0;
+            this.playtime = 0;
+            this.longestSession = 0;
+        }
+    }
+    
+    /**
+     * A player waiting for their profile to be loaded
+     * @author bitWolfy
+     *
+     */
+    private static class Request {
+        
+        private final int playerId;
+        private final String name;
+        private final CountDownLatch done;
+        private volatile Profile profile;
+        
+        /**
+         * <b>Default constructor</b><br />
+         * Creates a new request
+         * @param playerId Player ID
+         * @param name Player name
+         */
+        public Request(int playerId, String name) {
+            this.playerId = playerId;
+            this.name = name;
+            this.done = new CountDownLatch(1);
+            this.profile = null;
+        }
+    }
+}
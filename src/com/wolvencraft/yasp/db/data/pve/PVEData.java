@@ -29,6 +29,7 @@ import com.wolvencraft.yasp.db.data.DataStore;
 import com.wolvencraft.yasp.db.data.pve.DetailedPVEStats.PVEEntry;
 import com.wolvencraft.yasp.events.player.TrackedPVEEvent;
 import com.wolvencraft.yasp.session.OnlineSession;
+import com.wolvencraft.yasp.util.cache.MaterialCache;
 
 /**
  * Data store that handles all PVE statistics on the server
@@ -49,11 +50,9 @@ public class PVEData extends DataStore<TotalPVEStats, PVEEntry> {
      * @return Corresponding entry
      */
     public TotalPVEStats getNormalData(EntityType type, ItemStack weapon) {
-        for(TotalPVEStats entry : getNormalData()) {
-            if(entry.equals(type, weapon)) return entry;
-        }
-        TotalPVEStats entry = new TotalPVEStats(session.getId(), type, weapon);
-        normalData.add(entry);
+        long key = ((long) type.ordinal() << 32) | (MaterialCache.key(weapon) & 0xFFFFFFFFL);
+        TotalPVEStats entry = getNormalData(key);
+        if(entry == null) entry = addNormalData(key, new TotalPVEStats(session.getId(), type, weapon));
         return entry;
     }
     
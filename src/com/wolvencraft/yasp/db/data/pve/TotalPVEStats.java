@@ -20,14 +20,17 @@
 
 package com.wolvencraft.yasp.db.data.pve;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.bukkit.entity.EntityType;
 import org.bukkit.inventory.ItemStack;
 
+import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.Query;
-import com.wolvencraft.yasp.db.Query.QueryResult;
 import com.wolvencraft.yasp.db.data.NormalData;
 import com.wolvencraft.yasp.db.tables.Normal.PVETotals;
-import com.wolvencraft.yasp.settings.RemoteConfiguration;
+import com.wolvencraft.yasp.db.totals.PlayerTotals;
+import com.wolvencraft.yasp.util.VariableManager.PlayerVariable;
 import com.wolvencraft.yasp.util.cache.EntityCache;
 import com.wolvencraft.yasp.util.cache.MaterialCache;
 
@@ -41,8 +44,8 @@ public class TotalPVEStats extends NormalData {
     
     private EntityType creatureType;
     private ItemStack weapon;
-    private int playerDeaths;
-    private int creatureDeaths;
+    private final AtomicInteger playerDeaths;
+    private final AtomicInteger creatureDeaths;
     
     /**
      * <b>Default constructor</b><br />
@@ -55,57 +58,43 @@ public class TotalPVEStats extends NormalData {
         this.creatureType = creatureType;
         this.weapon = weapon.clone();
         this.weapon.setAmount(1);
-        playerDeaths = 0;
-        creatureDeaths = 0;
-        
-        fetchData(playerId);
+        playerDeaths = new AtomicInteger(0);
+        creatureDeaths = new AtomicInteger(0);
     }
     
-    @Override
-    public void fetchData(int playerId) {
-        if(RemoteConfiguration.MergedDataTracking.asBoolean()) {
-            clearData(playerId);
-            return;
-        }
-        
-        QueryResult result = Query.table(PVETotals.TableName)
-                .column(PVETotals.PlayerKilled)
-                .column(PVETotals.CreatureKilled)
-                .condition(PVETotals.PlayerId, playerId)
-                .condition(PVETotals.CreatureId, EntityCache.parse(creatureType))
-                .condition(PVETotals.MaterialId, MaterialCache.parse(weapon))
-                .select();
-        if(result == null) {
-            Query.table(PVETotals.TableName)
-                .value(PVETotals.PlayerId, playerId)
-                .value(PVETotals.CreatureId, EntityCache.parse(creatureType))
-                .value(PVETotals.MaterialId, MaterialCache.parse(weapon))
-                .value(PVETotals.PlayerKilled, playerDeaths)
-                .value(PVETotals.CreatureKilled, creatureDeaths)
-                .insert();
-        } else {
-            playerDeaths = result.asInt(PVETotals.PlayerKilled);
-            creatureDeaths = result.asInt(PVETotals.CreatureKilled);
-        }
-    }
-
     @Override
     public boolean pushData(int playerId) {
+        final int pushedPlayerDeaths = playerDeaths.get();
+        final int pushedCreatureDeaths = creatureDeaths.get();
+        if(pushedPlayerDeaths == 0 && pushedCreatureDeaths == 0) return true;
+        
         boolean result = Query.table(PVETotals.TableName)
-                .value(PVETotals.PlayerKilled, playerDeaths)
-                .value(PVETotals.CreatureKilled, creatureDeaths)
-                .condition(PVETotals.PlayerId, playerId)
-                .condition(PVETotals.CreatureId, EntityCache.parse(creatureType))
-                .condition(PVETotals.MaterialId, MaterialCache.parse(weapon))
-                .update(RemoteConfiguration.MergedDataTracking.asBoolean());
-        fetchData(playerId);
-        return result;
+            .value(PVETotals.PlayerId, playerId)
+            .value(PVETotals.CreatureId, EntityCache.parse(creatureType))
+            .value(PVETotals.MaterialId, MaterialCache.parse(weapon))
+            .increment(PVETotals.PlayerKilled, pushedPlayerDeaths)
+            .increment(PVETotals.CreatureKilled, pushedCreatureDeaths)
+            .upsert();
+        if(!result) return false;
+        PlayerTotals.pushed(playerId, PlayerVariable.DEATHS, pushedPlayerDeaths);
+        PlayerTotals.pushed(playerId, PlayerVariable.PVE_KILLS, pushedCreatureDeaths);
+        
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                playerDeaths.addAndGet(-pushedPlayerDeaths);
+                creatureDeaths.addAndGet(-pushedCreatureDeaths);
+            }
+            
+        });
+        return true;
     }
     
     @Override
     public void clearData(int playerId) {
-        playerDeaths = 0;
-        creatureDeaths = 0;
+        playerDeaths.set(0);
+        creatureDeaths.set(0);
     }
 
     /**
@@ -125,13 +114,13 @@ public class TotalPVEStats extends NormalData {
      * Increments the number of times the player has died
      */
     public void addPlayerDeaths() {
-        playerDeaths++;
+        playerDeaths.incrementAndGet();
     }
     
     /**
      * Increments the number of times the creature has died
      */
     public void addCreatureDeaths() {
-        creatureDeaths++;
+        creatureDeaths.incrementAndGet();
     }
 }
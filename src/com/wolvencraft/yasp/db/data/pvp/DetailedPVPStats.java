@@ -28,6 +28,7 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.material.MaterialData;
 
 import com.wolvencraft.yasp.db.Query;
+import com.wolvencraft.yasp.db.Query.DatabaseQuery;
 import com.wolvencraft.yasp.db.data.DetailedData;
 import com.wolvencraft.yasp.db.tables.Detailed.PlayerKillsPVP;
 import com.wolvencraft.yasp.util.Util;
@@ -56,7 +57,7 @@ public class DetailedPVPStats {
         }
         
         @Override
-        public boolean pushData(int killerId) {
+        public DatabaseQuery getQuery(int killerId) {
             return Query.table(PlayerKillsPVP.TableName)
                     .value(PlayerKillsPVP.KillerId, killerId)
                     .value(PlayerKillsPVP.VictimId, victimId)
@@ -65,8 +66,7 @@ public class DetailedPVPStats {
                     .value(PlayerKillsPVP.XCoord, location.getBlockX())
                     .value(PlayerKillsPVP.YCoord, location.getBlockY())
                     .value(PlayerKillsPVP.ZCoord, location.getBlockZ())
-                    .value(PlayerKillsPVP.Timestamp, timestamp)
-                    .insert();
+                    .value(PlayerKillsPVP.Timestamp, timestamp);
         }
     }
 }
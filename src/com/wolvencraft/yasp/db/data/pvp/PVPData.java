@@ -28,6 +28,7 @@ import com.wolvencraft.yasp.db.data.DataStore;
 import com.wolvencraft.yasp.db.data.pvp.DetailedPVPStats.PVPEntry;
 import com.wolvencraft.yasp.events.player.TrackedPVPEvent;
 import com.wolvencraft.yasp.session.OnlineSession;
+import com.wolvencraft.yasp.util.cache.MaterialCache;
 import com.wolvencraft.yasp.util.cache.PlayerCache;
 
 /**
@@ -49,11 +50,9 @@ public class PVPData extends DataStore<TotalPVPStats, PVPEntry> {
      * @return Corresponding entry
      */
     public TotalPVPStats getNormalData(int victimId, ItemStack weapon) {
-        for(TotalPVPStats entry : getNormalData()) {
-            if(entry.equals(victimId, weapon)) return entry;
-        }
-        TotalPVPStats entry = new TotalPVPStats(session.getId(), victimId, weapon);
-        normalData.add(entry);
+        long key = ((long) victimId << 32) | (MaterialCache.key(weapon) & 0xFFFFFFFFL);
+        TotalPVPStats entry = getNormalData(key);
+        if(entry == null) entry = addNormalData(key, new TotalPVPStats(session.getId(), victimId, weapon));
         return entry;
     }
     
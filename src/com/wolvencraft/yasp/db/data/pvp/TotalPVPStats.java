@@ -20,13 +20,16 @@
 
 package com.wolvencraft.yasp.db.data.pvp;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.bukkit.inventory.ItemStack;
 
+import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.Query;
-import com.wolvencraft.yasp.db.Query.QueryResult;
 import com.wolvencraft.yasp.db.data.NormalData;
 import com.wolvencraft.yasp.db.tables.Normal.PVPTotals;
-import com.wolvencraft.yasp.settings.RemoteConfiguration;
+import com.wolvencraft.yasp.db.totals.PlayerTotals;
+import com.wolvencraft.yasp.util.VariableManager.PlayerVariable;
 import com.wolvencraft.yasp.util.cache.MaterialCache;
 
 /**
@@ -39,7 +42,7 @@ public class TotalPVPStats extends NormalData {
     
     private int victimId;
     private ItemStack weapon;
-    private int times;
+    private final AtomicInteger times;
     
     /**
      * <b>Default constructor</b><br />
@@ -52,51 +55,38 @@ public class TotalPVPStats extends NormalData {
         this.victimId = victimId;
         this.weapon = weapon.clone();
         this.weapon.setAmount(1);
-        times = 0;
-        
-        fetchData(playerId);
+        times = new AtomicInteger(0);
     }
     
-    @Override
-    public void fetchData(int killerId) {
-        if(RemoteConfiguration.MergedDataTracking.asBoolean()) {
-            clearData(killerId);
-            return;
-        }
-        
-        QueryResult result = Query.table(PVPTotals.TableName)
-                .column(PVPTotals.Times)
-                .condition(PVPTotals.PlayerId, killerId)
-                .condition(PVPTotals.VictimId, victimId)
-                .condition(PVPTotals.MaterialId, MaterialCache.parse(weapon))
-                .select();
-        if(result == null) {
-            Query.table(PVPTotals.TableName)
-                .value(PVPTotals.PlayerId, killerId)
-                .value(PVPTotals.VictimId, victimId)
-                .value(PVPTotals.MaterialId, MaterialCache.parse(weapon))
-                .value(PVPTotals.Times, times)
-                .insert();
-        } else {
-            times = result.asInt(PVPTotals.Times);
-        }
-    }
-
     @Override
     public boolean pushData(int killerId) {
+        final int pushedTimes = times.get();
+        if(pushedTimes == 0) return true;
+        
         boolean result = Query.table(PVPTotals.TableName)
-                .value(PVPTotals.Times, times)
-                .condition(PVPTotals.PlayerId, killerId)
-                .condition(PVPTotals.VictimId, victimId)
-                .condition(PVPTotals.MaterialId, MaterialCache.parse(weapon))
-                .update(RemoteConfiguration.MergedDataTracking.asBoolean());
-        fetchData(killerId);
-        return result;
+            .value(PVPTotals.PlayerId, killerId)
+            .value(PVPTotals.VictimId, victimId)
+            .value(PVPTotals.MaterialId, MaterialCache.parse(weapon))
+            .increment(PVPTotals.Times, pushedTimes)
+            .upsert();
+        if(!result) return false;
+        PlayerTotals.pushed(killerId, PlayerVariable.PVP_KILLS, pushedTimes);
+        PlayerTotals.pushed(victimId, PlayerVariable.DEATHS, pushedTimes);
+        
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                times.addAndGet(-pushedTimes);
+            }
+            
+        });
+        return true;
     }
     
     @Override
     public void clearData(int playerId) {
-        times = 0;
+        times.set(0);
     }
     
     /**
@@ -117,7 +107,7 @@ public class TotalPVPStats extends NormalData {
      * Increments the number of times the victim was killed
      */
     public void addTimes() {
-        times++;
+        times.incrementAndGet();
     }
     
 }
@@ -68,6 +68,38 @@ public class Miscellaneous {
         public String toString() { return columnName; }
     }
     
+    /**
+     * Represents the <i>server_totals</i> table.
+     * @author bitWolfy
+     *
+     */
+    @AllArgsConstructor(access=AccessLevel.PUBLIC)
+    @Getter(AccessLevel.PUBLIC)
+    public enum ServerTotalsTable implements DBTable {
+        TableName       ("server_totals"),
+        Id              ("id"),
+        BlocksBroken    ("blocks_broken"),
+        BlocksPlaced    ("blocks_placed"),
+        DistanceFoot    ("distance_foot"),
+        DistanceRide    ("distance_ride"),
+        DistanceMinecart("distance_minecart"),
+        DistanceBoat    ("distance_boat"),
+        DistanceFlight  ("distance_flight"),
+        DistanceSwim    ("distance_swim"),
+        ToolsBroken     ("tools_broken"),
+        ItemsCrafted    ("items_crafted"),
+        SnacksEaten     ("snacks_eaten"),
+        PvpKills        ("pvp_kills"),
+        PveKills        ("pve_kills"),
+        Deaths          ("deaths"),
+        RebuiltAt       ("rebuilt_at");
+        
+        private String columnName;
+        
+        @Override
+        public String toString() { return columnName; }
+    }
+    
     /**
      * Represents the <i>materials</i> table.
      * @author bitWolfy
@@ -104,4 +136,22 @@ public class Miscellaneous {
         public String toString() { return columnName; }
     }
     
+    /**
+     * Represents the <i>spool</i> table.
+     * @author bitWolfy
+     *
+     */
+    @AllArgsConstructor(access=AccessLevel.PUBLIC)
+    @Getter(AccessLevel.PUBLIC)
+    public enum SpoolTable implements DBTable {
+        TableName       ("spool"),
+        Epoch           ("epoch"),
+        Sequence        ("sequence");
+        
+        private String columnName;
+        
+        @Override
+        public String toString() { return columnName; }
+    }
+    
 }
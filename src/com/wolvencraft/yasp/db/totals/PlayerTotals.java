@@ -20,15 +20,19 @@
 
 package com.wolvencraft.yasp.db.totals;
 
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.ChatColor;
 
 import com.wolvencraft.yasp.Statistics;
 import com.wolvencraft.yasp.db.Query;
+import com.wolvencraft.yasp.db.Query.QueryResult;
 import com.wolvencraft.yasp.db.tables.Normal.PlayerDistance;
 import com.wolvencraft.yasp.db.tables.Normal.PlayerStats;
 import com.wolvencraft.yasp.db.tables.Normal.BlockTotals;
@@ -36,87 +40,254 @@ import com.wolvencraft.yasp.db.tables.Normal.DeathTotals;
 import com.wolvencraft.yasp.db.tables.Normal.ItemTotals;
 import com.wolvencraft.yasp.db.tables.Normal.PVETotals;
 import com.wolvencraft.yasp.db.tables.Normal.PVPTotals;
+import com.wolvencraft.yasp.session.OnlineSession;
+import com.wolvencraft.yasp.settings.LocalConfiguration;
 import com.wolvencraft.yasp.util.NamedInteger;
 import com.wolvencraft.yasp.util.Util;
 import com.wolvencraft.yasp.util.VariableManager.PlayerVariable;
+import com.wolvencraft.yasp.util.cache.OnlineSessionCache;
 
 /**
- * Generic Player information used on DisplaySigns and books.
+ * Generic Player information used on DisplaySigns and books.<br />
+ * Increments are also kept until the entries that pushed them report the push as committed. When the totals are fetched again,
+ * the increments that are not in the database yet are added back onto the fetched values.
  * @author bitWolfy
  *
  */
 public class PlayerTotals {
     
+    private static final ThreadLocal<Pushed> pushing = new ThreadLocal<Pushed>();
+    
     private int playerId;
+    private boolean online;
     private Map<PlayerVariable, Object> values;
+    private long totalPlaytime;
+    private long fetchedAt;
+    private Map<PlayerVariable, Double> unpushed;
     
     /**
      * <b>Default Constructor</b><br />
-     * Sets up the default values for the data holder.
+     * Loads the totals of a player who is not online. The totals are not expected to change.
+     * @param playerId Player ID
      */
     public PlayerTotals(int playerId) {
+        this(playerId, false);
+    }
+    
+    /**
+     * <b>Constructor</b><br />
+     * Loads the totals of a player from the database.<br />
+     * The totals of an online player are kept current in memory as events are registered.
+     * @param playerId Player ID
+     * @param online <b>true</b> if the player is online, <b>false</b> otherwise
+     */
+    public PlayerTotals(int playerId, boolean online) {
         this.playerId = playerId;
+        this.online = online;
         
-        values = new HashMap<PlayerVariable, Object>();
+        values = new ConcurrentHashMap<PlayerVariable, Object>();
         values.put(PlayerVariable.SESSION_START, Util.getTimestamp());
         values.put(PlayerVariable.KILL_DEATH_RATIO, 1);
+        totalPlaytime = 0;
+        fetchedAt = 0;
+        unpushed = new EnumMap<PlayerVariable, Double>(PlayerVariable.class);
         
         fetchData();
     }
     
     /**
      * Fetches the data from the remote database.<br />
-     * Automatically calculates values from the contents of corresponding tables.
+     * All totals are calculated from the contents of the corresponding tables with a single query.
+     * Increments that have not been committed yet are added onto the fetched values.
      */
     public void fetchData() {
         
         if(!Statistics.getInstance().isEnabled()) return;
         
-        try { values.put(PlayerVariable.SESSION_START, Query.table(PlayerStats.TableName).column(PlayerStats.LoginTime).condition(PlayerStats.PlayerId, playerId).select().asLong(PlayerStats.LoginTime)); }
-        catch (NullPointerException ex) { values.put(PlayerVariable.SESSION_START, Util.getTimestamp()); }
+        QueryResult result = Query.aggregate()
+                .table(PlayerStats.TableName).condition(PlayerStats.PlayerId, playerId)
+                    .maximum(PlayerStats.LoginTime, "login_time")
+                    .maximum(PlayerStats.Playtime, "playtime")
+                .table(BlockTotals.TableName).condition(BlockTotals.PlayerId, playerId)
+                    .sum(BlockTotals.Destroyed, "blocks_broken")
+                    .sum(BlockTotals.Placed, "blocks_placed")
+                .table(PlayerDistance.TableName).condition(PlayerDistance.PlayerId, playerId)
+                    .sum(PlayerDistance.Foot, "distance_foot")
+                    .sum(PlayerDistance.Boat, "distance_boat")
+                    .sum(PlayerDistance.Minecart, "distance_cart")
+                    .sum(PlayerDistance.Ride, "distance_ride")
+                    .sum(PlayerDistance.Swim, "distance_swim")
+                    .sum(PlayerDistance.Flight, "distance_flight")
+                .table(ItemTotals.TableName).condition(ItemTotals.PlayerId, playerId)
+                    .sum(ItemTotals.Broken, "items_broken")
+                    .sum(ItemTotals.Crafted, "items_crafted")
+                    .sum(ItemTotals.Used, "items_eaten")
+                .table(PVPTotals.TableName).condition(PVPTotals.PlayerId, playerId)
+                    .sum(PVPTotals.Times, "pvp_kills")
+                .table(PVPTotals.TableName).condition(PVPTotals.VictimId, playerId)
+                    .sum(PVPTotals.Times, "pvp_deaths")
+                .table(PVETotals.TableName).condition(PVETotals.PlayerId, playerId)
+                    .sum(PVETotals.CreatureKilled, "pve_kills")
+                .table(DeathTotals.TableName).condition(DeathTotals.PlayerId, playerId)
+                    .sum(DeathTotals.Times, "other_deaths")
+                .select();
+        if(result == null) return;
         
-        long sessionStart = (Long) values.get(PlayerVariable.SESSION_START);
-        long totalPlaytime = Query.table(PlayerStats.TableName).column(PlayerStats.Playtime).condition(PlayerStats.PlayerId, playerId).select().asLong(PlayerStats.Playtime);
-        values.put(PlayerVariable.SESSION_LENGTH, Util.parseTimestamp(Util.getTimestamp() - sessionStart));
-        values.put(PlayerVariable.SESSION_LENGTH_RAW, (Util.getTimestamp() - sessionStart));
-        values.put(PlayerVariable.TOTAL_PLAYTIME, Util.parseTimestamp(totalPlaytime));
-        values.put(PlayerVariable.TOTAL_PLAYTIME_RAW, totalPlaytime);
+        synchronized(this) {
+            apply(result);
+            for(Entry<PlayerVariable, Double> delta : unpushed.entrySet()) addValue(delta.getKey(), delta.getValue());
+            updateRatio();
+        }
+    }
+    
+    /**
+     * Replaces the totals with the values fetched from the database
+     * @param result Fetched values
+     */
+    private void apply(QueryResult result) {
+        long sessionStart = result.asLong("login_time");
+        if(sessionStart <= 0) sessionStart = Util.getTimestamp();
+        values.put(PlayerVariable.SESSION_START, sessionStart);
         
-        values.put(PlayerVariable.BLOCKS_BROKEN, (int) Query.table(BlockTotals.TableName).column(BlockTotals.Destroyed).condition(BlockTotals.PlayerId, playerId).sum());
-        values.put(PlayerVariable.BLOCKS_PLACED, (int) Query.table(BlockTotals.TableName).column(BlockTotals.Placed).condition(BlockTotals.PlayerId, playerId).sum());
+        totalPlaytime = Math.max(0, result.asLong("playtime"));
+        fetchedAt = Util.getTimestamp();
         
-        values.put(PlayerVariable.DISTANCE_FOOT, Query.table(PlayerDistance.TableName).column(PlayerDistance.Foot).condition(PlayerDistance.PlayerId, playerId).sum());
-        values.put(PlayerVariable.DISTANCE_BOAT, Query.table(PlayerDistance.TableName).column(PlayerDistance.Boat).condition(PlayerDistance.PlayerId, playerId).sum());
-        values.put(PlayerVariable.DISTANCE_CART, Query.table(PlayerDistance.TableName).column(PlayerDistance.Minecart).condition(PlayerDistance.PlayerId, playerId).sum());
-        values.put(PlayerVariable.DISTANCE_RIDE, Query.table(PlayerDistance.TableName).column(PlayerDistance.Ride).condition(PlayerDistance.PlayerId, playerId).sum());
-        values.put(PlayerVariable.DISTANCE_SWIM, Query.table(PlayerDistance.TableName).column(PlayerDistance.Swim).condition(PlayerDistance.PlayerId, playerId).sum());
-        values.put(PlayerVariable.DISTANCE_FLIGHT, Query.table(PlayerDistance.TableName).column(PlayerDistance.Flight).condition(PlayerDistance.PlayerId, playerId).sum());
+        values.put(PlayerVariable.BLOCKS_BROKEN, result.asInt("blocks_broken"));
+        values.put(PlayerVariable.BLOCKS_PLACED, result.asInt("blocks_placed"));
         
-        double totalDistance = ((Double) values.get(PlayerVariable.DISTANCE_FOOT))
-                + ((Double) values.get(PlayerVariable.DISTANCE_BOAT))
-                + ((Double) values.get(PlayerVariable.DISTANCE_CART))
-                + ((Double) values.get(PlayerVariable.DISTANCE_RIDE))
-                + ((Double) values.get(PlayerVariable.DISTANCE_SWIM))
-                + ((Double) values.get(PlayerVariable.DISTANCE_FLIGHT));
-        values.put(PlayerVariable.DISTANCE_TRAVELED, totalDistance);
+        values.put(PlayerVariable.DISTANCE_FOOT, result.asDouble("distance_foot"));
+        values.put(PlayerVariable.DISTANCE_BOAT, result.asDouble("distance_boat"));
+        values.put(PlayerVariable.DISTANCE_CART, result.asDouble("distance_cart"));
+        values.put(PlayerVariable.DISTANCE_RIDE, result.asDouble("distance_ride"));
+        values.put(PlayerVariable.DISTANCE_SWIM, result.asDouble("distance_swim"));
+        values.put(PlayerVariable.DISTANCE_FLIGHT, result.asDouble("distance_flight"));
         
-        values.put(PlayerVariable.ITEMS_BROKEN, (int) Query.table(ItemTotals.TableName).column(ItemTotals.Broken).condition(ItemTotals.PlayerId, playerId).sum());
-        values.put(PlayerVariable.ITEMS_CRAFTED, (int) Query.table(ItemTotals.TableName).column(ItemTotals.Crafted).condition(ItemTotals.PlayerId, playerId).sum());
-        values.put(PlayerVariable.ITEMS_EATEN, (int) Query.table(ItemTotals.TableName).column(ItemTotals.Used).condition(ItemTotals.PlayerId, playerId).sum());
+        double totalDistance = result.asDouble("distance_foot")
+                + result.asDouble("distance_boat")
+                + result.asDouble("distance_cart")
+                + result.asDouble("distance_ride")
+                + result.asDouble("distance_swim")
+                + result.asDouble("distance_flight");
+        values.put(PlayerVariable.DISTANCE_TRAVELED, totalDistance);
         
-        int pvpKills = (int) Query.table(PVPTotals.TableName).column(PVPTotals.Times).condition(PVPTotals.PlayerId, playerId).sum();
-        values.put(PlayerVariable.PVP_KILLS, pvpKills);
-        values.put(PlayerVariable.PVE_KILLS, (int) Query.table(PVETotals.TableName).column(PVETotals.CreatureKilled).condition(PVETotals.PlayerId, playerId).sum());
+        values.put(PlayerVariable.ITEMS_BROKEN, result.asInt("items_broken"));
+        values.put(PlayerVariable.ITEMS_CRAFTED, result.asInt("items_crafted"));
+        values.put(PlayerVariable.ITEMS_EATEN, result.asInt("items_eaten"));
         
-        int pvpDeaths = (int) Query.table(PVPTotals.TableName).column(PVPTotals.Times).condition(PVPTotals.VictimId, playerId).sum();
-        int otherDeaths = (int) Query.table(DeathTotals.TableName).column(DeathTotals.Times).condition(DeathTotals.PlayerId, playerId).sum();
-        int deaths = pvpDeaths + otherDeaths;
-        values.put(PlayerVariable.DEATHS, deaths);
+        values.put(PlayerVariable.PVP_KILLS, result.asInt("pvp_kills"));
+        values.put(PlayerVariable.PVE_KILLS, result.asInt("pve_kills"));
+        values.put(PlayerVariable.DEATHS, result.asInt("pvp_deaths") + result.asInt("other_deaths"));
+    }
+    
+    /**
+     * Starts recording the increments pushed by the current thread.<br />
+     * Entries report the amounts they push with <code>pushed(int, PlayerVariable, double)</code>, so that exactly those
+     * amounts are forgotten once the push has been committed, no matter when the corresponding events were registered.
+     * @return Record to pass to <code>reconcile(Pushed)</code> once the push has been committed
+     */
+    public static Pushed beginPush() {
+        Pushed pushed = new Pushed();
+        pushing.set(pushed);
+        return pushed;
+    }
+    
+    /**
+     * Stops recording the increments pushed by the current thread
+     */
+    public static void endPush() {
+        pushing.remove();
+    }
+    
+    /**
+     * Records an increment pushed by the current thread.<br />
+     * Has no effect if the thread is not recording a push.
+     * @param playerId ID of the player whose totals include the increment
+     * @param type Incremented value
+     * @param value Amount pushed
+     */
+    public static void pushed(int playerId, PlayerVariable type, double value) {
+        Pushed pushed = pushing.get();
+        if(pushed == null || value == 0) return;
+        pushed.add(playerId, type, value);
+    }
+    
+    /**
+     * Records a distance pushed by the current thread, along with the total distance traveled
+     * @param playerId Player ID
+     * @param type Travel type
+     * @param distance Distance pushed
+     */
+    public static void pushedDistance(int playerId, PlayerDistance type, double distance) {
+        if(distance == 0) return;
+        pushed(playerId, PlayerVariable.DISTANCE_TRAVELED, distance);
+        switch(type) {
+            case Foot:
+                pushed(playerId, PlayerVariable.DISTANCE_FOOT, distance);
+                break;
+            case Swim:
+                pushed(playerId, PlayerVariable.DISTANCE_SWIM, distance);
+                break;
+            case Flight:
+                pushed(playerId, PlayerVariable.DISTANCE_FLIGHT, distance);
+                break;
+            case Boat:
+                pushed(playerId, PlayerVariable.DISTANCE_BOAT, distance);
+                break;
+            case Minecart:
+                pushed(playerId, PlayerVariable.DISTANCE_CART, distance);
+                break;
+            case Ride:
+                pushed(playerId, PlayerVariable.DISTANCE_RIDE, distance);
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Forgets the increments of the committed push, and fetches the data from the remote database again
+     * if the reconciliation interval has passed.<br />
+     * Increments the push made to the totals of other online players, such as the deaths of a PvP victim, are forgotten by them.
+     * Corrects any drift between the totals kept in memory and the contents of the database.
+     * @param pushed Record returned by <code>beginPush()</code> before the push
+     * @return <b>true</b> if the data was fetched, <b>false</b> otherwise
+     */
+    public boolean reconcile(Pushed pushed) {
+        for(Entry<Integer, Map<PlayerVariable, Double>> player : pushed.deltas.entrySet()) {
+            if(player.getKey() == playerId) {
+                forget(player.getValue());
+                continue;
+            }
+            for(OnlineSession session : OnlineSessionCache.getSessions()) {
+                if(session.getId() != player.getKey() || session.getPlayerTotals() == null) continue;
+                session.getPlayerTotals().forget(player.getValue());
+            }
+        }
         
-        double kdr = 1;
-        if(deaths != 0) kdr = (double) Math.round((pvpKills / deaths) * 100000) / 100000;
-        else kdr = pvpKills;
-        values.put(PlayerVariable.KILL_DEATH_RATIO, kdr);
+        long interval = LocalConfiguration.TotalsReconcileInterval.toInteger();
+        if(interval <= 0 || Util.getTimestamp() - fetchedAt < interval) return false;
+        fetchData();
+        return true;
+    }
+    
+    /**
+     * Forgets increments that are now in the database
+     * @param deltas Committed increments
+     */
+    private synchronized void forget(Map<PlayerVariable, Double> deltas) {
+        for(Entry<PlayerVariable, Double> delta : deltas.entrySet()) addUnpushed(delta.getKey(), -delta.getValue());
+    }
+    
+    /**
+     * Records an increment that is not in the database yet
+     * @param type Incremented value
+     * @param value Amount
+     */
+    private void addUnpushed(PlayerVariable type, double value) {
+        Double delta = unpushed.get(type);
+        if(delta == null) unpushed.put(type, value);
+        else if(delta + value == 0) unpushed.remove(type);
+        else unpushed.put(type, delta + value);
     }
     
     /**
@@ -125,16 +296,62 @@ public class PlayerTotals {
      * @return Variable value
      */
     public Object getValue(PlayerVariable type) {
-        if(values.containsKey(type)) return values.get(type);
+        switch(type) {
+            case SESSION_LENGTH:
+                return Util.parseTimestamp(getSessionLength());
+            case SESSION_LENGTH_RAW:
+                return getSessionLength();
+            case TOTAL_PLAYTIME:
+                return Util.parseTimestamp(getTotalPlaytimeRaw());
+            case TOTAL_PLAYTIME_RAW:
+                return getTotalPlaytimeRaw();
+            default:
+                break;
+        }
+        Object value = values.get(type);
+        if(value != null) return value;
         values.put(type, 0);
         return 0;
     }
     
+    /**
+     * Returns the length of the current session
+     * @return Session length, in seconds
+     */
+    private long getSessionLength() {
+        Object sessionStart = values.get(PlayerVariable.SESSION_START);
+        if(!(sessionStart instanceof Long)) return 0;
+        return Util.getTimestamp() - (Long) sessionStart;
+    }
+    
+    /**
+     * Returns the total playtime of the player.<br />
+     * For online players, the time since the data was fetched is added to the stored playtime.
+     * @return Total playtime, in seconds
+     */
+    private long getTotalPlaytimeRaw() {
+        if(!online || fetchedAt == 0) return totalPlaytime;
+        return totalPlaytime + (Util.getTimestamp() - fetchedAt);
+    }
+    
+    /**
+     * Recalculates the kill-death ratio from the current totals
+     */
+    private synchronized void updateRatio() {
+        int deaths = ((Number) getValue(PlayerVariable.DEATHS)).intValue();
+        int pvpKills = ((Number) getValue(PlayerVariable.PVP_KILLS)).intValue();
+        double kdr;
+        if(deaths != 0) kdr = (double) Math.round(((double) pvpKills / deaths) * 100000) / 100000;
+        else kdr = pvpKills;
+        values.put(PlayerVariable.KILL_DEATH_RATIO, kdr);
+    }
+    
     /**
      * Safely increments the specified value by 1
      * @param type Value to increment
      */
-    public void incrementValue(PlayerVariable type) {
+    public synchronized void incrementValue(PlayerVariable type) {
+        addUnpushed(type, 1);
         int value = 1;
         if(values.containsKey(type)) {
             Object valueObj = values.get(type);
@@ -149,13 +366,23 @@ public class PlayerTotals {
      * Safely increments the specified value by 1
      * @param type Value to increment
      */
-    public void incrementValue(PlayerVariable type, double value) {
-        if(values.containsKey(type)) {
-            Object valueObj = values.get(type);
-            if(valueObj instanceof Double)
-                value += ((Double) valueObj).doubleValue();
-            else value += ((Integer) valueObj).doubleValue();
+    public synchronized void incrementValue(PlayerVariable type, double value) {
+        addUnpushed(type, value);
+        addValue(type, value);
+    }
+    
+    /**
+     * Adds the amount to the specified value, keeping whole numbers whole
+     * @param type Value to add to
+     * @param value Amount
+     */
+    private void addValue(PlayerVariable type, double value) {
+        Object valueObj = values.get(type);
+        if(valueObj instanceof Integer && value == Math.rint(value)) {
+            values.put(type, (Integer) valueObj + (int) value);
+            return;
         }
+        if(valueObj != null) value += ((Number) valueObj).doubleValue();
         values.put(type, value);
     }
     
@@ -351,10 +578,11 @@ public class PlayerTotals {
     }
     
     /**
-     * Registers an item being crafted
+     * Registers items being crafted
+     * @param amount Number of items crafted
      */
-    public void itemCraft() {
-        incrementValue(PlayerVariable.ITEMS_CRAFTED);
+    public void itemCraft(int amount) {
+        incrementValue(PlayerVariable.ITEMS_CRAFTED, amount);
         Statistics.getServerTotals().itemCraft();
     }
     
@@ -370,13 +598,8 @@ public class PlayerTotals {
      * Registers a player being killed in PvP
      */
     public void pvpKill() {
-        double kdr = 1;
-        int deaths = (Integer) values.get(PlayerVariable.DEATHS), pvpKills = (Integer) values.get(PlayerVariable.PVP_KILLS);
-        if(deaths != 0) kdr = (double) Math.round((pvpKills / deaths) * 100000) / 100000;
-        else kdr = pvpKills;
-        values.put(PlayerVariable.KILL_DEATH_RATIO, kdr);
-        
         incrementValue(PlayerVariable.PVP_KILLS);
+        updateRatio();
         Statistics.getServerTotals().pvpKill();
     }
     
@@ -384,13 +607,8 @@ public class PlayerTotals {
      * Registers the player dying
      */
     public void death() {
-        double kdr = 1;
-        int deaths = (Integer) values.get(PlayerVariable.DEATHS), pvpKills = (Integer) values.get(PlayerVariable.PVP_KILLS);
-        if(deaths != 0) kdr = (double) Math.round((pvpKills / deaths) * 100000) / 100000;
-        else kdr = pvpKills;
-        values.put(PlayerVariable.KILL_DEATH_RATIO, kdr);
-        
         incrementValue(PlayerVariable.DEATHS);
+        updateRatio();
         Statistics.getServerTotals().death();
     }
     
@@ -402,4 +620,38 @@ public class PlayerTotals {
         Statistics.getServerTotals().pveKill();
     }
     
+    
+    /**
+     * Increments pushed by a single push, per player
+     * @author bitWolfy
+     *
+     */
+    public static class Pushed {
+        
+        private final Map<Integer, Map<PlayerVariable, Double>> deltas;
+        
+        /**
+         * <b>Default constructor</b><br />
+         * Creates an empty record
+         */
+        public Pushed() {
+            this.deltas = new HashMap<Integer, Map<PlayerVariable, Double>>();
+        }
+        
+        /**
+         * Records a pushed increment
+         * @param playerId Player ID
+         * @param type Incremented value
+         * @param value Amount
+         */
+        public void add(int playerId, PlayerVariable type, double value) {
+            Map<PlayerVariable, Double> player = deltas.get(playerId);
+            if(player == null) {
+                player = new EnumMap<PlayerVariable, Double>(PlayerVariable.class);
+                deltas.put(playerId, player);
+            }
+            Double delta = player.get(type);
+            player.put(type, delta == null ? value : delta + value);
+        }
+    }
 }
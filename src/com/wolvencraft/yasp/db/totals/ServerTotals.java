@@ -22,95 +22,184 @@ package com.wolvencraft.yasp.db.totals;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Level;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 
 import com.wolvencraft.yasp.Statistics;
+import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.Query;
+import com.wolvencraft.yasp.db.Query.AggregateQuery;
+import com.wolvencraft.yasp.db.Query.DatabaseQuery;
+import com.wolvencraft.yasp.db.Query.QueryResult;
+import com.wolvencraft.yasp.db.tables.Miscellaneous.ServerTotalsTable;
 import com.wolvencraft.yasp.db.tables.Normal.PlayerDistance;
 import com.wolvencraft.yasp.db.tables.Normal.BlockTotals;
 import com.wolvencraft.yasp.db.tables.Normal.DeathTotals;
 import com.wolvencraft.yasp.db.tables.Normal.ItemTotals;
 import com.wolvencraft.yasp.db.tables.Normal.PVETotals;
 import com.wolvencraft.yasp.db.tables.Normal.PVPTotals;
+import com.wolvencraft.yasp.settings.LocalConfiguration;
+import com.wolvencraft.yasp.util.Message;
+import com.wolvencraft.yasp.util.Util;
 import com.wolvencraft.yasp.util.VariableManager.ServerVariable;
 
 /**
- * Generic Server information used on DisplaySigns and books.
+ * Generic Server information used on DisplaySigns and books.<br />
+ * The totals are stored in a single row of the <i>server_totals</i> table, which is updated with the totals registered
+ * on this server at every synchronization, and read with a primary key lookup. The row can be rebuilt from the totals tables.
  * @author bitWolfy
  *
  */
 public class ServerTotals {
     
+    private static final int ROW_ID = 1;
+    
+    private double[] stored;
+    private double[] pending;
+    private long rebuiltAt;
+    
     /**
      * <b>Default Constructor</b><br />
      * Sets up the default values for the data holder.
      */
     public ServerTotals() {
-        blocksBroken = 0;
-        blocksPlaced = 0;
-        
-        distanceTotal = 0;
-        distanceFoot = 0;
-        distanceRide = 0;
-        distanceMinecart = 0;
-        distanceBoat = 0;
-        distanceFlight = 0;
-        distanceSwim = 0;
-        
-        toolsBroken = 0;
-        itemsCrafted = 0;
-        snacksEaten = 0;
-        
-        pvpKills = 0;
+        stored = new double[Total.values().length];
+        pending = new double[Total.values().length];
+        rebuiltAt = 0;
     }
     
-    private int blocksBroken;
-    private int blocksPlaced;
-    
-    private double distanceTotal;
-    private double distanceFoot;
-    private double distanceRide;
-    private double distanceMinecart;
-    private double distanceBoat;
-    private double distanceFlight;
-    private double distanceSwim;
-    
-    private int toolsBroken;
-    private int itemsCrafted;
-    private int snacksEaten;
-    
-    private int pvpKills;
-    private int pveKills;
-    private int deaths;
-    
     /**
      * Fetches the data from the remote database.<br />
-     * Automatically calculates values from the contents of corresponding tables.
+     * Reads the server totals row, and rebuilds it from the totals tables if it does not exist yet.
      */
     public void fetchData() {
-
+        
         if(!Statistics.getInstance().isEnabled()) return;
         
-        blocksBroken = (int) Query.table(BlockTotals.TableName).column(BlockTotals.Destroyed).sum();
-        blocksPlaced = (int) Query.table(BlockTotals.TableName).column(BlockTotals.Placed).sum();
+        QueryResult result = Query.table(ServerTotalsTable.TableName).condition(ServerTotalsTable.Id, ROW_ID).select();
+        if(result == null) {
+            rebuild();
+            return;
+        }
+        
+        synchronized(this) {
+            for(Total total : Total.values()) stored[total.ordinal()] = Math.max(0, result.asDouble(total.getColumn()));
+            rebuiltAt = result.asLong(ServerTotalsTable.RebuiltAt);
+        }
+    }
+    
+    /**
+     * Recalculates the server totals row from the contents of the totals tables.<br />
+     * Totals registered on this server that have not been pushed yet are kept, and are added on the next push.
+     * Should be run in its own unit of work, once all earlier units have been written, so that the tables
+     * hold every change that has already been added to the row. The local totals are replaced once the row is written.
+     * @return <b>true</b> if the row was rebuilt, <b>false</b> if an error occurred
+     */
+    public boolean rebuild() {
+        
+        if(!Statistics.getInstance().isEnabled()) return false;
+        
+        AggregateQuery query = Query.aggregate();
+        query.table(BlockTotals.TableName)
+            .sum(BlockTotals.Destroyed, "blocks_broken")
+            .sum(BlockTotals.Placed, "blocks_placed");
+        query.table(PlayerDistance.TableName)
+            .sum(PlayerDistance.Foot, "distance_foot")
+            .sum(PlayerDistance.Ride, "distance_ride")
+            .sum(PlayerDistance.Minecart, "distance_minecart")
+            .sum(PlayerDistance.Boat, "distance_boat")
+            .sum(PlayerDistance.Flight, "distance_flight")
+            .sum(PlayerDistance.Swim, "distance_swim");
+        query.table(ItemTotals.TableName)
+            .sum(ItemTotals.Broken, "tools_broken")
+            .sum(ItemTotals.Crafted, "items_crafted")
+            .sum(ItemTotals.Used, "snacks_eaten");
+        query.table(PVPTotals.TableName)
+            .sum(PVPTotals.Times, "pvp_kills");
+        query.table(PVETotals.TableName)
+            .sum(PVETotals.CreatureKilled, "pve_kills")
+            .sum(PVETotals.PlayerKilled, "pve_deaths");
+        query.table(DeathTotals.TableName)
+            .sum(DeathTotals.Times, "other_deaths");
         
-        distanceFoot = Query.table(PlayerDistance.TableName).column(PlayerDistance.Foot).sum();
-        distanceRide = Query.table(PlayerDistance.TableName).column(PlayerDistance.Foot).sum();
-        distanceMinecart = Query.table(PlayerDistance.TableName).column(PlayerDistance.Foot).sum();
-        distanceBoat = Query.table(PlayerDistance.TableName).column(PlayerDistance.Foot).sum();
-        distanceFlight = Query.table(PlayerDistance.TableName).column(PlayerDistance.Foot).sum();
-        distanceSwim = Query.table(PlayerDistance.TableName).column(PlayerDistance.Foot).sum();
-        distanceTotal = distanceFoot + distanceRide + distanceMinecart + distanceBoat + distanceFlight + distanceSwim;
+        QueryResult result = query.select();
+        if(result == null) {
+            Message.log(Level.WARNING, "Unable to rebuild the server totals");
+            return false;
+        }
+        
+        final double[] totals = new double[Total.values().length];
+        for(Total total : Total.values()) {
+            if(total == Total.Deaths) continue;
+            totals[total.ordinal()] = result.asDouble(total.getColumn());
+        }
+        totals[Total.Deaths.ordinal()] = result.asDouble("pvp_kills") + result.asDouble("pve_deaths") + result.asDouble("other_deaths");
+        
+        final long timestamp = Util.getTimestamp();
+        DatabaseQuery row = Query.table(ServerTotalsTable.TableName).value(ServerTotalsTable.Id, ROW_ID);
+        for(Total total : Total.values()) row.value(total.getTable(), totals[total.ordinal()]);
+        if(!row.value(ServerTotalsTable.RebuiltAt, timestamp).upsert()) return false;
         
-        toolsBroken = (int) Query.table(ItemTotals.TableName).column(ItemTotals.Broken).sum();
-        itemsCrafted = (int) Query.table(ItemTotals.TableName).column(ItemTotals.Crafted).sum();
-        snacksEaten = (int) Query.table(ItemTotals.TableName).column(ItemTotals.Used).sum();
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                synchronized(ServerTotals.this) {
+                    stored = totals;
+                    rebuiltAt = timestamp;
+                }
+                Message.debug("Rebuilt the server totals from the totals tables");
+            }
+            
+        });
+        return true;
+    }
+    
+    /**
+     * Rebuilds the server totals row if the rebuild interval has passed
+     * @return <b>true</b> if the row was rebuilt, <b>false</b> otherwise
+     */
+    public boolean refresh() {
+        long interval = LocalConfiguration.TotalsRebuildInterval.toInteger();
+        if(interval <= 0 || Util.getTimestamp() - rebuiltAt < interval) return false;
+        return rebuild();
+    }
+    
+    /**
+     * Pushes the totals registered since the last push to the server totals row.<br />
+     * The pushed totals are kept locally until the push has been committed.
+     */
+    public void pushData() {
+        final double[] delta;
+        synchronized(this) { delta = pending.clone(); }
         
-        pvpKills = (int) Query.table(PVPTotals.TableName).column(PVPTotals.Times).sum();
-        pveKills = (int) Query.table(PVETotals.TableName).column(PVETotals.CreatureKilled).sum();
+        boolean changed = false;
+        DatabaseQuery row = Query.table(ServerTotalsTable.TableName).value(ServerTotalsTable.Id, ROW_ID);
+        for(Total total : Total.values()) {
+            double value = delta[total.ordinal()];
+            if(value == 0) continue;
+            row.increment(total.getTable(), value);
+            changed = true;
+        }
+        if(!changed) return;
+        row.upsert();
         
-        int pveDeaths = (int) Query.table(PVETotals.TableName).column(PVETotals.PlayerKilled).sum();
-        int otherKills = (int) Query.table(DeathTotals.TableName).column(DeathTotals.Times).sum();
-        deaths = pveDeaths + otherKills;
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                synchronized(ServerTotals.this) {
+                    for(int i = 0; i < delta.length; i++) {
+                        pending[i] -= delta[i];
+                        stored[i] += delta[i];
+                    }
+                }
+            }
+            
+        });
     }
     
     /**
@@ -118,47 +207,52 @@ public class ServerTotals {
      * @return Map of values
      */
     public Map<ServerVariable, Object> getValues() {
-        @SuppressWarnings("serial")
-        Map<ServerVariable, Object> values = new HashMap<ServerVariable, Object>()
-        {{
-            put(ServerVariable.BLOCKS_BROKEN, blocksBroken);
-            put(ServerVariable.BLOCKS_PLACED, blocksPlaced);
-            
-            put(ServerVariable.DISTANCE_TRAVELED, distanceTotal);
-            put(ServerVariable.DISTANCE_FOOT, distanceFoot);
-            put(ServerVariable.DISTANCE_RIDE, distanceRide);
-            put(ServerVariable.DISTANCE_CART, distanceMinecart);
-            put(ServerVariable.DISTANCE_BOAT, distanceBoat);
-            put(ServerVariable.DISTANCE_FLIGHT, distanceFlight);
-            put(ServerVariable.DISTANCE_SWIM, distanceSwim);
-            
-            put(ServerVariable.ITEMS_BROKEN, toolsBroken);
-            put(ServerVariable.ITEMS_CRAFTED, itemsCrafted);
-            put(ServerVariable.ITEMS_EATEN, snacksEaten);
-            
-            put(ServerVariable.PVP_KILLS, pvpKills);
-            put(ServerVariable.PVE_KILLS, pveKills);
-            put(ServerVariable.DEATHS, deaths);
-        }};
+        Map<ServerVariable, Object> values = new HashMap<ServerVariable, Object>();
+        double distanceTotal = 0;
+        synchronized(this) {
+            for(Total total : Total.values()) {
+                double value = stored[total.ordinal()] + pending[total.ordinal()];
+                if(total.isDistance()) {
+                    values.put(total.getVariable(), value);
+                    distanceTotal += value;
+                } else values.put(total.getVariable(), (int) value);
+            }
+        }
+        values.put(ServerVariable.DISTANCE_TRAVELED, distanceTotal);
         
         values.putAll(Statistics.getServerStatistics().getValueMap());
         return values;
     }
     
-
+    /**
+     * Returns the time the totals were last rebuilt from the totals tables
+     * @return Rebuild timestamp, or <b>0</b> if they never were
+     */
+    public synchronized long getRebuiltAt() {
+        return rebuiltAt;
+    }
+    
+    /**
+     * Registers a change to one of the totals
+     * @param total Changed total
+     * @param amount Amount to add
+     */
+    private synchronized void add(Total total, double amount) {
+        pending[total.ordinal()] += amount;
+    }
     
     /**
      * Registers a block being broken
      */
     public void blockBreak() {
-        blocksBroken++;
+        add(Total.BlocksBroken, 1);
     }
     
     /**
      * Registers a block being places
      */
     public void blockPlace() {
-        blocksPlaced++;
+        add(Total.BlocksPlaced, 1);
     }
     
     /**
@@ -167,25 +261,24 @@ public class ServerTotals {
      * @param distance Distance traveled
      */
     public void addDistance(PlayerDistance type, double distance) {
-        distanceTotal += distance;
         switch(type) {
             case Foot:
-                distanceFoot += distance;
+                add(Total.DistanceFoot, distance);
                 break;
             case Swim:
-                distanceSwim += distance;
+                add(Total.DistanceSwim, distance);
                 break;
             case Flight:
-                distanceFlight += distance;
+                add(Total.DistanceFlight, distance);
                 break;
             case Boat:
-                distanceBoat += distance;
+                add(Total.DistanceBoat, distance);
                 break;
             case Minecart:
-                distanceMinecart += distance;
+                add(Total.DistanceMinecart, distance);
                 break;
             case Ride:
-                distanceRide += distance;
+                add(Total.DistanceRide, distance);
                 break;
             default:
                 break;
@@ -196,42 +289,72 @@ public class ServerTotals {
      * Registers a tool being broken
      */
     public void toolBreak() {
-        toolsBroken++;
+        add(Total.ToolsBroken, 1);
     }
     
     /**
      * Registers an item being crafted
      */
     public void itemCraft() {
-        itemsCrafted++;
+        add(Total.ItemsCrafted, 1);
     }
     
     /**
      * Registers a food item being eaten
      */
     public void snacksEaten() {
-        snacksEaten++;
+        add(Total.SnacksEaten, 1);
     }
     
     /**
      * Registers a player being killed in PvP
      */
     public void pvpKill() {
-        pvpKills++;
+        add(Total.PvpKills, 1);
     }
     
     /**
      * Registers the player dying
      */
     public void death() {
-        deaths++;
+        add(Total.Deaths, 1);
     }
     
     /**
      * Registers a player killing a mob
      */
     public void pveKill() {
-        pveKills++;
+        add(Total.PveKills, 1);
+    }
+    
+    /**
+     * Represents a single server total, along with its column and the variable it is displayed as
+     * @author bitWolfy
+     *
+     */
+    @AllArgsConstructor(access=AccessLevel.PRIVATE)
+    @Getter(AccessLevel.PUBLIC)
+    private enum Total {
+        BlocksBroken        (ServerTotalsTable.BlocksBroken, ServerVariable.BLOCKS_BROKEN, false),
+        BlocksPlaced        (ServerTotalsTable.BlocksPlaced, ServerVariable.BLOCKS_PLACED, false),
+        DistanceFoot        (ServerTotalsTable.DistanceFoot, ServerVariable.DISTANCE_FOOT, true),
+        DistanceRide        (ServerTotalsTable.DistanceRide, ServerVariable.DISTANCE_RIDE, true),
+        DistanceMinecart    (ServerTotalsTable.DistanceMinecart, ServerVariable.DISTANCE_CART, true),
+        DistanceBoat        (ServerTotalsTable.DistanceBoat, ServerVariable.DISTANCE_BOAT, true),
+        DistanceFlight      (ServerTotalsTable.DistanceFlight, ServerVariable.DISTANCE_FLIGHT, true),
+        DistanceSwim        (ServerTotalsTable.DistanceSwim, ServerVariable.DISTANCE_SWIM, true),
+        ToolsBroken         (ServerTotalsTable.ToolsBroken, ServerVariable.ITEMS_BROKEN, false),
+        ItemsCrafted        (ServerTotalsTable.ItemsCrafted, ServerVariable.ITEMS_CRAFTED, false),
+        SnacksEaten         (ServerTotalsTable.SnacksEaten, ServerVariable.ITEMS_EATEN, false),
+        PvpKills            (ServerTotalsTable.PvpKills, ServerVariable.PVP_KILLS, false),
+        PveKills            (ServerTotalsTable.PveKills, ServerVariable.PVE_KILLS, false),
+        Deaths              (ServerTotalsTable.Deaths, ServerVariable.DEATHS, false);
+        
+        private ServerTotalsTable table;
+        private ServerVariable variable;
+        private boolean distance;
+        
+        public String getColumn() { return table.getColumnName(); }
     }
     
 }
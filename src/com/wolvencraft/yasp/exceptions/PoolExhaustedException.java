@@ -0,0 +1,55 @@
+/*
+ * PoolExhaustedException.java
+ * 
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.exceptions;
+
+import java.sql.SQLException;
+
+/**
+ * Exception thrown when no pooled connection became available in time.<br />
+ * Says nothing about the database itself, which might be perfectly reachable.
+ * @author bitWolfy
+ *
+ */
+public class PoolExhaustedException extends SQLException {
+    private static final long serialVersionUID = -3360941288612815073L;
+
+    public PoolExhaustedException() {
+        super();
+    }
+
+    public PoolExhaustedException(String message) {
+        super(message);
+    }
+
+    public PoolExhaustedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public PoolExhaustedException(Throwable cause) {
+        super(cause);
+    }
+
+    @Override
+    public String toString() {
+        String message = this.getLocalizedMessage();
+        return message != null ? message : "No database connection became available in time";
+    }
+}
@@ -49,13 +49,13 @@ public class DeathListener implements Listener {
         Player player = event.getEntity();
         if(!HandlerManager.playerLookup(player, StatPerms.Death)) return;
         
-        HandlerManager.runAsyncTask(new PlayerDeath(player, event));
+        HandlerManager.publish(player, new PlayerDeath(player, event));
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onMonsterDeath(EntityDeathEvent event) {
         if(Statistics.isPaused()) return;
 
-        HandlerManager.runAsyncTask(new MonsterDeath(event));
+        HandlerManager.publish(event.getEntity().getKiller(), new MonsterDeath(event));
     }
 }
@@ -66,7 +66,7 @@ public class ItemListener implements Listener {
         if(!HandlerManager.playerLookup(player, StatPerms.ItemPickUp)) return;
         if(event.getItem().getItemStack().getAmount() == 0) return;
         
-        HandlerManager.runAsyncTask(new ItemPickup(player, player.getLocation(), event.getItem().getItemStack(), event.getItem().getItemStack().getAmount()));
+        HandlerManager.publish(player, new ItemPickup(player, player.getLocation(), event.getItem().getItemStack(), event.getItem().getItemStack().getAmount()));
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -75,7 +75,7 @@ public class ItemListener implements Listener {
         if(!HandlerManager.playerLookup(player, StatPerms.ItemDrop)) return;
         if(event.getItemDrop().getItemStack().getAmount() == 0) return;
 
-        HandlerManager.runAsyncTask(new ItemDrop(player, player.getLocation(), event.getItemDrop().getItemStack()));
+        HandlerManager.publish(player, new ItemDrop(player, player.getLocation(), event.getItemDrop().getItemStack()));
     }
     
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -83,7 +83,7 @@ public class ItemListener implements Listener {
         Player player = event.getPlayer();
         if(!HandlerManager.playerLookup(player, StatPerms.ItemUse)) return;
 
-        HandlerManager.runAsyncTask(new ItemConsume(player, event.getItem()));
+        HandlerManager.publish(player, new ItemConsume(player, event.getItem()));
     }
     
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -92,7 +92,7 @@ public class ItemListener implements Listener {
         if(!HandlerManager.playerLookup(player, StatPerms.ItemCraft)) return;
         
         //The metod of tracken the amount of craftet items in bukkit is returns wrong amount of items on shift + klick an workaround for this would be to complicated at the moment
-        HandlerManager.runAsyncTask(new ItemCraft(player, player.getLocation(), event.getCurrentItem()));
+        HandlerManager.publish(player, new ItemCraft(player, player.getLocation(), event.getCurrentItem()));
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
@@ -109,7 +109,7 @@ public class ItemListener implements Listener {
         Player player = event.getPlayer();
         if(!HandlerManager.playerLookup(player, StatPerms.ItemBreak)) return;
 
-        HandlerManager.runAsyncTask(new ToolBreak(player, player.getLocation(), event.getBrokenItem()));
+        HandlerManager.publish(player, new ToolBreak(player, player.getLocation(), event.getBrokenItem()));
     }
     
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -117,7 +117,7 @@ public class ItemListener implements Listener {
         Player player = event.getEnchanter();
         if(!HandlerManager.playerLookup(player, StatPerms.ItemMisc)) return;
 
-        HandlerManager.runAsyncTask(new ItemEnchant(player, player.getLocation(), event.getItem()));
+        HandlerManager.publish(player, new ItemEnchant(player, player.getLocation(), event.getItem()));
     }
     
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -126,7 +126,7 @@ public class ItemListener implements Listener {
         if(!HandlerManager.playerLookup(player, StatPerms.ItemAnvil)) return;
         
 
-        HandlerManager.runAsyncTask(new ItemRepair(player, event));
+        HandlerManager.publish(player, new ItemRepair(player, event));
     }
     
 }
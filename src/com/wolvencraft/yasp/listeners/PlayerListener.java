@@ -40,9 +40,9 @@ import org.bukkit.event.player.PlayerTeleportEvent;
 import com.wolvencraft.yasp.Statistics;
 import com.wolvencraft.yasp.db.tables.Normal.PlayerData;
 import com.wolvencraft.yasp.listeners.handlers.HandlerManager;
-import com.wolvencraft.yasp.listeners.handlers.PlayerHandlers.PlayerMove;
 import com.wolvencraft.yasp.listeners.handlers.PlayerHandlers.PlayerIncrementStat;
 import com.wolvencraft.yasp.settings.Constants.StatPerms;
+import com.wolvencraft.yasp.util.tasks.MovementTask;
 
 /**
  * Listens to miscellaneous player events on the server and reports them to the plugin.
@@ -63,7 +63,7 @@ public class PlayerListener implements Listener {
         Player player = event.getPlayer();
         if(!HandlerManager.playerLookup(player, StatPerms.PlayerDistances)) return;
         
-        HandlerManager.runTask(new PlayerMove(player, event.getFrom(), event.getTo()));
+        MovementTask.track(player, event.getFrom(), event.getTo());
     }
     
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -73,7 +73,7 @@ public class PlayerListener implements Listener {
         Player player = event.getPlayer();
         if(!HandlerManager.playerLookup(player, StatPerms.PlayerMisc)) return;
         
-        HandlerManager.runAsyncTask(new PlayerIncrementStat(player, PlayerData.FishCaught));
+        HandlerManager.publish(player, new PlayerIncrementStat(player, PlayerData.FishCaught));
     }
     
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -81,7 +81,7 @@ public class PlayerListener implements Listener {
         Player player = event.getPlayer();
         if(!HandlerManager.playerLookup(player, StatPerms.PlayerMisc)) return;
         
-        HandlerManager.runAsyncTask(new PlayerIncrementStat(player, PlayerData.TimesKicked));
+        HandlerManager.publish(player, new PlayerIncrementStat(player, PlayerData.TimesKicked));
     }
     
     @EventHandler(priority = EventPriority.MONITOR)
@@ -89,7 +89,7 @@ public class PlayerListener implements Listener {
         Player player = event.getPlayer();
         if(!HandlerManager.playerLookup(player, StatPerms.PlayerMisc)) return;
 
-        HandlerManager.runAsyncTask(new PlayerIncrementStat(player, PlayerData.EggsThrown));
+        HandlerManager.publish(player, new PlayerIncrementStat(player, PlayerData.EggsThrown));
     }
     
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -99,7 +99,7 @@ public class PlayerListener implements Listener {
         Player player = (Player) event.getEntity();
         if(!HandlerManager.playerLookup(player, StatPerms.PlayerMisc)) return;
 
-        HandlerManager.runAsyncTask(new PlayerIncrementStat(player, PlayerData.ArrowsShot));
+        HandlerManager.publish(player, new PlayerIncrementStat(player, PlayerData.ArrowsShot));
     }
     
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -109,7 +109,7 @@ public class PlayerListener implements Listener {
         Player player = (Player) event.getEntity();
         if(!HandlerManager.playerLookup(player, StatPerms.PlayerMisc)) return;
 
-        HandlerManager.runAsyncTask(new PlayerIncrementStat(player, PlayerData.DamageTaken, event.getDamage()));
+        HandlerManager.publish(player, new PlayerIncrementStat(player, PlayerData.DamageTaken, event.getDamage()));
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -117,7 +117,7 @@ public class PlayerListener implements Listener {
         Player player = event.getPlayer();
         if(!HandlerManager.playerLookup(player, StatPerms.PlayerMisc)) return;
 
-        HandlerManager.runAsyncTask(new PlayerIncrementStat(player, PlayerData.BedsEntered));
+        HandlerManager.publish(player, new PlayerIncrementStat(player, PlayerData.BedsEntered));
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -125,7 +125,7 @@ public class PlayerListener implements Listener {
         Player player = event.getPlayer();
         if(!HandlerManager.playerLookup(player, StatPerms.PlayerMisc)) return;
 
-        HandlerManager.runAsyncTask(new PlayerIncrementStat(player, PlayerData.PortalsEntered));
+        HandlerManager.publish(player, new PlayerIncrementStat(player, PlayerData.PortalsEntered));
     }
     
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -133,7 +133,7 @@ public class PlayerListener implements Listener {
         Player player = event.getPlayer();
         if(!HandlerManager.playerLookup(player, StatPerms.PlayerMisc)) return;
 
-        HandlerManager.runAsyncTask(new PlayerIncrementStat(player, PlayerData.WordsSaid, event.getMessage().split(" ").length));
+        HandlerManager.publish(player, new PlayerIncrementStat(player, PlayerData.WordsSaid, event.getMessage().split(" ").length));
     }
     
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -141,6 +141,6 @@ public class PlayerListener implements Listener {
         Player player = event.getPlayer();
         if(!HandlerManager.playerLookup(player, StatPerms.PlayerMisc)) return;
         
-        HandlerManager.runAsyncTask(new PlayerIncrementStat(player, PlayerData.CommandsSent));
+        HandlerManager.publish(player, new PlayerIncrementStat(player, PlayerData.CommandsSent));
     }
 }
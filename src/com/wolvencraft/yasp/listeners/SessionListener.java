@@ -24,6 +24,8 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent.Result;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
@@ -32,6 +34,9 @@ import com.wolvencraft.yasp.listeners.handlers.HandlerManager;
 import com.wolvencraft.yasp.listeners.handlers.SessionHandlers.PlayerLogin;
 import com.wolvencraft.yasp.listeners.handlers.SessionHandlers.PlayerLogout;
 import com.wolvencraft.yasp.settings.Constants.StatPerms;
+import com.wolvencraft.yasp.util.cache.OnlineSessionCache;
+import com.wolvencraft.yasp.util.cache.PlayerCache;
+import com.wolvencraft.yasp.util.tasks.MovementTask;
 
 public class SessionListener implements Listener {
     
@@ -39,6 +44,12 @@ public class SessionListener implements Listener {
         plugin.getServer().getPluginManager().registerEvents(this, plugin);
     }
     
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        if(event.getLoginResult() != Result.ALLOWED) return;
+        PlayerCache.prefetch(event.getName(), event.getUniqueId());
+    }
+    
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
@@ -50,6 +61,8 @@ public class SessionListener implements Listener {
     public void onPlayerQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
         if(!HandlerManager.playerLookup(player, StatPerms.Statistics)) return;
+        MovementTask.flush(player);
+        OnlineSessionCache.logout(player);
         HandlerManager.runTask(new PlayerLogout(player));
     }
     
@@ -46,9 +46,9 @@ public class BlockHandlers {
         
         @Override
         public void run() {
-            //Skip data tracking if not all players data is read from database
+            //Buffer the event until all players data is read from database
             OnlineSession session = OnlineSessionCache.fetch(player);
-            if(session.isReady()){       
+            if(!session.defer(this)){       
                 ((BlockData) session.getDataStore(DataStoreType.Blocks)).blockBreak(block);
                 session.getPlayerTotals().blockBreak();
             }
@@ -70,8 +70,8 @@ public class BlockHandlers {
         @Override
         public void run() {
             OnlineSession session = OnlineSessionCache.fetch(player);
-            //Skip data tracking if not all players data is read from database
-            if(session.isReady()){
+            //Buffer the event until all players data is read from database
+            if(!session.defer(this)){
                 ((BlockData) session.getDataStore(DataStoreType.Blocks)).blockPlace(block);
                 session.getPlayerTotals().blockPlace();
             }
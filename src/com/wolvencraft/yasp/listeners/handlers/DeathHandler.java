@@ -60,8 +60,8 @@ public class DeathHandler {
         public void run() {
             EntityDamageEvent lastDamageEvent = player.getLastDamageCause();
             OnlineSession session = OnlineSessionCache.fetch(player);
-            //Skip data tracking if not all players data is read from database
-            if(session.isReady()){
+            //Buffer the event until all players data is read from database
+            if(!session.defer(this)){
             
                 if (lastDamageEvent == null) return;
                 DamageCause cause = lastDamageEvent.getCause();
@@ -0,0 +1,332 @@
+/*
+ * EventRing.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.listeners.handlers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+import org.bukkit.entity.Player;
+
+import com.wolvencraft.yasp.settings.LocalConfiguration;
+import com.wolvencraft.yasp.util.ExceptionHandler;
+import com.wolvencraft.yasp.util.Message;
+
+/**
+ * Preallocated ring buffers between the event listeners and the event handlers.<br />
+ * Listeners publish handlers into the rings instead of scheduling an asynchronous task for every event.
+ * Each ring is drained in batches by its own consumer thread. Events of a player always go to the same ring,
+ * so that they are handled in the order they were fired.<br />
+ * If a ring is full, the publishing thread waits briefly for the consumer to make room, and drops the event if it does not;
+ * scheduling it elsewhere would let it overtake the events already in the ring.
+ * There can only be one instance running at any given time.
+ * @author bitWolfy
+ *
+ */
+public class EventRing {
+
+    private static final long SHUTDOWN_TIMEOUT = 10000;
+    private static final long IDLE_PARK = 10000000L;
+    private static final int BATCH_SIZE = 256;
+    private static final long OVERFLOW_PARK = 50000L;
+    private static final long OVERFLOW_TIMEOUT = 50000000L;
+
+    private static EventRing instance = null;
+
+    private static final AtomicLong publishedCount = new AtomicLong(0);
+    private static final AtomicLong handledCount = new AtomicLong(0);
+    private static final AtomicLong overflowCount = new AtomicLong(0);
+    private static final AtomicLong droppedCount = new AtomicLong(0);
+    private static final AtomicLong batchCount = new AtomicLong(0);
+
+    private final Partition[] partitions;
+    private final int capacity;
+    private volatile boolean running;
+
+    /**
+     * <b>Default constructor</b><br />
+     * Allocates the rings and starts the consumer threads. Should be used once, on plugin startup
+     */
+    public EventRing() {
+        int consumers = Math.max(1, LocalConfiguration.EventConsumers.toInteger());
+        int size = 16;
+        while(size < LocalConfiguration.EventRingSize.toInteger() && size < (1 << 24)) size <<= 1;
+
+        capacity = size;
+        partitions = new Partition[consumers];
+        running = true;
+        for(int i = 0; i < consumers; i++) partitions[i] = new Partition(i, size);
+
+        instance = this;
+        for(Partition partition : partitions) partition.consumer.start();
+    }
+
+    /**
+     * Publishes the event handler into the ring of the player.<br />
+     * If the ring is full, waits up to 50 ms for the consumer to make room before the event is dropped.
+     * @param player Player the event belongs to, or <b>null</b> if there is none
+     * @param handler Event handler
+     */
+    public static void publish(Player player, Runnable handler) {
+        EventRing current = instance;
+        if(current == null || !current.running) {
+            HandlerManager.runAsyncTask(handler);
+            return;
+        }
+
+        Partition[] partitions = current.partitions;
+        int index = 0;
+        if(player != null && partitions.length > 1) {
+            int hash = player.getUniqueId().hashCode();
+            index = ((hash ^ (hash >>> 16)) & 0x7FFFFFFF) % partitions.length;
+        }
+
+        Partition partition = partitions[index];
+        if(partition.offer(handler)) {
+            publishedCount.incrementAndGet();
+            return;
+        }
+
+        overflowCount.incrementAndGet();
+        long deadline = System.nanoTime() + OVERFLOW_TIMEOUT;
+        while(current.running && System.nanoTime() < deadline) {
+            LockSupport.unpark(partition.consumer);
+            LockSupport.parkNanos(OVERFLOW_PARK);
+            if(partition.offer(handler)) {
+                publishedCount.incrementAndGet();
+                return;
+            }
+        }
+        droppedCount.incrementAndGet();
+    }
+
+    /**
+     * Stops the consumer threads once the rings have been drained
+     */
+    public static void shutdown() {
+        EventRing current = instance;
+        if(current == null) return;
+
+        current.running = false;
+        for(Partition partition : current.partitions) LockSupport.unpark(partition.consumer);
+
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT;
+        for(Partition partition : current.partitions) {
+            long remaining = deadline - System.currentTimeMillis();
+            try { if(remaining > 0) partition.consumer.join(remaining); }
+            catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+        if(getOccupancy() > 0) Message.log(Level.SEVERE, "Timed out while waiting for " + getOccupancy() + " queued event(s) to be handled");
+        instance = null;
+    }
+
+    /**
+     * Checks if the consumer threads are running
+     * @return <b>true</b> if the consumer threads are running, <b>false</b> otherwise
+     */
+    public static boolean isRunning() {
+        EventRing current = instance;
+        return current != null && current.running;
+    }
+
+    /**
+     * Returns the number of events waiting in the rings
+     * @return Ring occupancy
+     */
+    public static long getOccupancy() {
+        EventRing current = instance;
+        if(current == null) return 0;
+        long occupancy = 0;
+        for(Partition partition : current.partitions) occupancy += partition.size();
+        return occupancy;
+    }
+
+    /**
+     * Returns the total number of slots in the rings
+     * @return Ring capacity
+     */
+    public static long getCapacity() {
+        EventRing current = instance;
+        if(current == null) return 0;
+        return (long) current.capacity * current.partitions.length;
+    }
+
+    /**
+     * Returns the number of consumer threads
+     * @return Consumer count
+     */
+    public static int getConsumerCount() {
+        EventRing current = instance;
+        if(current == null) return 0;
+        return current.partitions.length;
+    }
+
+    /**
+     * Returns the number of events published into the rings
+     * @return Published event count
+     */
+    public static long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * Returns the number of events handled by the consumer threads
+     * @return Handled event count
+     */
+    public static long getHandledCount() {
+        return handledCount.get();
+    }
+
+    /**
+     * Returns the number of events that had to wait for room because a ring was full
+     * @return Overflow count
+     */
+    public static long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    /**
+     * Returns the number of events that were dropped because a ring stayed full
+     * @return Dropped event count
+     */
+    public static long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the average number of events handled per batch
+     * @return Average batch size
+     */
+    public static double getAverageBatch() {
+        long batches = batchCount.get();
+        if(batches == 0) return 0;
+        return (double) handledCount.get() / batches;
+    }
+
+    /**
+     * A single ring, with any number of producers and one consumer thread.<br />
+     * Producers claim a slot by advancing the tail, and publish the handler by writing it into the slot.
+     * The consumer clears a slot before advancing the head past it, so a slot is only claimed once it is free.
+     * @author bitWolfy
+     *
+     */
+    private class Partition {
+
+        private final AtomicReferenceArray<Runnable> slots;
+        private final int mask;
+        private final AtomicLong tail;
+        private final AtomicLong head;
+        private final Thread consumer;
+        private volatile boolean idle;
+
+        /**
+         * <b>Default constructor</b><br />
+         * Allocates the ring and creates its consumer thread
+         * @param id Ring number
+         * @param size Number of slots, a power of two
+         */
+        public Partition(int id, int size) {
+            slots = new AtomicReferenceArray<Runnable>(size);
+            mask = size - 1;
+            tail = new AtomicLong(0);
+            head = new AtomicLong(0);
+            idle = false;
+            consumer = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    consume();
+                }
+
+            }, "Statistics-Events-" + id);
+            consumer.setDaemon(true);
+        }
+
+        /**
+         * Publishes the handler into the ring
+         * @param handler Event handler
+         * @return <b>true</b> if the handler was published, <b>false</b> if the ring is full
+         */
+        public boolean offer(Runnable handler) {
+            long claimed;
+            do {
+                claimed = tail.get();
+                if(claimed - head.get() >= slots.length()) return false;
+            } while(!tail.compareAndSet(claimed, claimed + 1));
+
+            slots.lazySet((int) claimed & mask, handler);
+            if(idle) LockSupport.unpark(consumer);
+            return true;
+        }
+
+        /**
+         * Returns the number of events waiting in the ring
+         * @return Ring occupancy
+         */
+        public long size() {
+            return Math.max(0, tail.get() - head.get());
+        }
+
+        /**
+         * Drains the ring until the plugin is disabled and no events are left.<br />
+         * Parks the thread while the ring is empty.
+         */
+        private void consume() {
+            while(true) {
+                int handled = drain();
+                if(handled > 0) continue;
+                if(!running && size() == 0) return;
+
+                idle = true;
+                if(size() == 0 && running) LockSupport.parkNanos(this, IDLE_PARK);
+                idle = false;
+            }
+        }
+
+        /**
+         * Handles up to one batch of published events
+         * @return Number of events handled
+         */
+        private int drain() {
+            long next = head.get();
+            int handled = 0;
+            while(handled < BATCH_SIZE) {
+                int index = (int) next & mask;
+                Runnable handler = slots.get(index);
+                if(handler == null) break;
+
+                slots.lazySet(index, null);
+                head.lazySet(++next);
+                handled++;
+
+                try { handler.run(); }
+                catch (Throwable t) { ExceptionHandler.handle(t); }
+            }
+
+            if(handled > 0) {
+                handledCount.addAndGet(handled);
+                batchCount.incrementAndGet();
+            }
+            return handled;
+        }
+    }
+}
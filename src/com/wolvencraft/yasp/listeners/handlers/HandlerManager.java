@@ -74,6 +74,10 @@ public class HandlerManager {
         return Bukkit.getScheduler().runTaskAsynchronously(Statistics.getInstance(), task);
     }
     
+    public static void publish(Player player, Runnable handler) {
+        EventRing.publish(player, handler);
+    }
+    
     public static BukkitTask runTaskLater(Runnable task, long delay) {
         return Bukkit.getScheduler().runTaskLater(Statistics.getInstance(), task, delay);
     }
@@ -57,8 +57,8 @@ public class ItemsHandler {
         @Override
         public void run() {
             OnlineSession session = OnlineSessionCache.fetch(player);
-            //Skip data tracking if not all players data is read from database
-            if(session.isReady()){
+            //Buffer the event until all players data is read from database
+            if(!session.defer(this)){
                 ((ItemData) session.getDataStore(DataStoreType.Items)).itemPickUp(location, itemStack, amount);
             }
         }
@@ -79,8 +79,8 @@ public class ItemsHandler {
         @Override
         public void run() {
             OnlineSession session = OnlineSessionCache.fetch(player);
-            //Skip data tracking if not all players data is read from database
-            if(session.isReady()){
+            //Buffer the event until all players data is read from database
+            if(!session.defer(this)){
                 ((ItemData) session.getDataStore(DataStoreType.Items)).itemDrop(location, itemStack);
             }
         }
@@ -100,8 +100,8 @@ public class ItemsHandler {
         @Override
         public void run() {
             OnlineSession session = OnlineSessionCache.fetch(player);
-            //Skip data tracking if not all players data is read from database
-            if(session.isReady()){
+            //Buffer the event until all players data is read from database
+            if(!session.defer(this)){
                 ((ItemData) session.getDataStore(DataStoreType.Items)).itemConsume(player.getLocation(), itemStack);
                 if(ConsumableItems.isFood(itemStack.getTypeId())){
                 session.getPlayerTotals().snacksEaten();
@@ -126,10 +126,10 @@ public class ItemsHandler {
         @Override
         public void run() {
             OnlineSession session = OnlineSessionCache.fetch(player);
-            //Skip data tracking if not all players data is read from database
-            if(session.isReady()){
+            //Buffer the event until all players data is read from database
+            if(!session.defer(this)){
                 ((ItemData) session.getDataStore(DataStoreType.Items)).itemCraft(location, itemStack);
-                session.getPlayerTotals().itemCraft();
+                session.getPlayerTotals().itemCraft(itemStack.getAmount());
             }
         }
     }
@@ -149,8 +149,8 @@ public class ItemsHandler {
         @Override
         public void run() {
             OnlineSession session = OnlineSessionCache.fetch(player);
-            //Skip data tracking if not all players data is read from database
-            if(session.isReady()){
+            //Buffer the event until all players data is read from database
+            if(!session.defer(this)){
                 ((ItemData) session.getDataStore(DataStoreType.Items)).itemSmelt(location, itemStack);
             }
         }
@@ -171,8 +171,8 @@ public class ItemsHandler {
         @Override
         public void run() {
             OnlineSession session = OnlineSessionCache.fetch(player);
-            //Skip data tracking if not all players data is read from database
-            if(session.isReady()){
+            //Buffer the event until all players data is read from database
+            if(!session.defer(this)){
                 ((ItemData) session.getDataStore(DataStoreType.Items)).itemBreak(location, itemStack);
                 session.getPlayerTotals().toolBreak();
             }
@@ -194,8 +194,8 @@ public class ItemsHandler {
         @Override
         public void run() {
             OnlineSession session = OnlineSessionCache.fetch(player);
-            //Skip data tracking if not all players data is read from database
-            if(session.isReady()){
+            //Buffer the event until all players data is read from database
+            if(!session.defer(this)){
                 ((ItemData) session.getDataStore(DataStoreType.Items)).itemEnchant(location, itemStack);
             }
         }
@@ -23,60 +23,14 @@ package com.wolvencraft.yasp.listeners.handlers;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 
-import org.bukkit.Location;
-import org.bukkit.Material;
-import org.bukkit.block.BlockFace;
-import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 
-import com.wolvencraft.yasp.db.tables.Normal.PlayerDistance;
 import com.wolvencraft.yasp.db.tables.Normal.PlayerData;
 import com.wolvencraft.yasp.session.OnlineSession;
 import com.wolvencraft.yasp.util.cache.OnlineSessionCache;
 
 public class PlayerHandlers {
     
-    /**
-     * Executed when a player moves
-     * @author bitWolfy
-     *
-     */
-    @AllArgsConstructor(access=AccessLevel.PUBLIC)
-    public static class PlayerMove implements Runnable {
-        
-        private Player player;
-        private Location from;
-        private Location to;
-        
-        @Override
-        public void run() {
-            OnlineSession session = OnlineSessionCache.fetch(player);
-            //Skip data tracking if not all players data is read from database
-            if(session.isReady()){
-                if(!from.getWorld().equals(to.getWorld())) return;
-                double distance = from.distance(to);
-                if(player.isInsideVehicle()) {
-                    EntityType vehicle = player.getVehicle().getType();
-                    if(vehicle.equals(EntityType.MINECART)) {
-                        session.addDistance(PlayerDistance.Minecart, distance);
-                    } else if(vehicle.equals(EntityType.BOAT)) {
-                        session.addDistance(PlayerDistance.Boat, distance);
-                    } else if(vehicle.equals(EntityType.PIG) || vehicle.equals(EntityType.HORSE)) {
-                        session.addDistance(PlayerDistance.Ride, distance);
-                    }
-                } else if (from.getBlock().getType().equals(Material.WATER) || from.getBlock().getType().equals(Material.STATIONARY_WATER)) {
-                    session.addDistance(PlayerDistance.Swim, distance);
-                } else if (player.isFlying()) {
-                    session.addDistance(PlayerDistance.Flight, distance);
-                } else {
-                    if(from.getY() < to.getY() && to.getBlock().getRelative(BlockFace.DOWN).getType().equals(Material.AIR))
-                        session.getPlayersData().getMiscData().incrementStat(PlayerData.TimesJumped);
-                        session.addDistance(PlayerDistance.Foot, distance);
-                }
-            }
-        }
-    }
-
     /**
      * Executed when a player's stat has to be incremented asynchronously
      * @author bitWolfy
@@ -97,8 +51,9 @@ public class PlayerHandlers {
         
         @Override
         public void run() {
-            OnlineSessionCache
-                .fetch(player)
+            OnlineSession session = OnlineSessionCache.fetch(player);
+            if(session.defer(this)) return;
+            session
                 .getPlayersData()
                 .getMiscData()
                 .incrementStat(stat, value);
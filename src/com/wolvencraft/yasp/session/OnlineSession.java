@@ -21,8 +21,13 @@
 package com.wolvencraft.yasp.session;
 
 import com.wolvencraft.yasp.Statistics;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
 
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -39,7 +44,9 @@ import org.bukkit.scoreboard.Objective;
 import org.bukkit.scoreboard.Scoreboard;
 import org.bukkit.scoreboard.ScoreboardManager;
 
+import com.wolvencraft.yasp.db.Database;
 import com.wolvencraft.yasp.db.Query;
+import com.wolvencraft.yasp.db.Query.DatabaseQuery;
 import com.wolvencraft.yasp.db.data.DataStore;
 import com.wolvencraft.yasp.db.data.DataStore.DataStoreType;
 import com.wolvencraft.yasp.db.data.deaths.DeathData;
@@ -49,9 +56,13 @@ import com.wolvencraft.yasp.db.data.pvp.PVPData;
 import com.wolvencraft.yasp.db.tables.Normal.PlayerDistance;
 import com.wolvencraft.yasp.db.tables.Normal.PlayerStats;
 import com.wolvencraft.yasp.db.totals.PlayerTotals;
+import com.wolvencraft.yasp.db.totals.PlayerTotals.Pushed;
+import com.wolvencraft.yasp.exceptions.RuntimeSQLException;
+import com.wolvencraft.yasp.settings.LocalConfiguration;
+import com.wolvencraft.yasp.settings.Module;
+import com.wolvencraft.yasp.util.ExceptionHandler;
 import com.wolvencraft.yasp.util.Message;
 import com.wolvencraft.yasp.util.NamedInteger;
-import com.wolvencraft.yasp.util.Util;
 import com.wolvencraft.yasp.util.cache.OnlineSessionCache;
 import com.wolvencraft.yasp.util.cache.PlayerCache;
 
@@ -66,13 +77,30 @@ import com.wolvencraft.yasp.util.cache.PlayerCache;
 @Getter(AccessLevel.PUBLIC)
 public class OnlineSession implements PlayerSession {
     
+    private static final int LOADING = 0;
+    private static final int REPLAYING = 1;
+    private static final int READY = 2;
+    private static final int FAILED = 3;
+    
+    private static final AtomicLong bufferedCount = new AtomicLong(0);
+    private static final AtomicLong replayedCount = new AtomicLong(0);
+    private static final AtomicLong overflowCount = new AtomicLong(0);
+    
     private final int id;
+    private final UUID uuid;
     private final String name;
-    private boolean isready;
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger state;
+    @Getter(AccessLevel.NONE)
+    private final Queue<Runnable> pending;
+    @Getter(AccessLevel.NONE)
+    private volatile Thread replayThread;
+    private volatile boolean online;
     private PlayerTotals playerTotals;
     
     private PlayersData playersData;
-    private List<DataStore> dataStores;
+    @Getter(AccessLevel.NONE)
+    private final AtomicReferenceArray<DataStore> dataStores;
     
     private Scoreboard scoreboard;
     
@@ -84,12 +112,14 @@ public class OnlineSession implements PlayerSession {
     public OnlineSession(Player player) {
         final Player tmp_player = player;
         name = tmp_player.getName();
+        uuid = tmp_player.getUniqueId();
         id = PlayerCache.get(tmp_player);       
-        this.isready = false;
+        this.state = new AtomicInteger(LOADING);
+        this.pending = new ArrayDeque<Runnable>();
+        this.replayThread = null;
+        this.online = true;
         
-        this.dataStores = new ArrayList<DataStore>();
-        this.dataStores.addAll(Util.getModules(this));
-        this.dataStores.addAll(Util.getHooks(this));
+        this.dataStores = new AtomicReferenceArray<DataStore>(DataStoreType.values().length);
         
         this.scoreboard = null;
         
@@ -97,7 +127,8 @@ public class OnlineSession implements PlayerSession {
         Bukkit.getScheduler().runTaskAsynchronously(Statistics.getInstance(), new Runnable() {
             @Override
             public void run(){
-                        
+                boolean loaded = false;
+                try {
                     playersData = new PlayersData(tmp_player, id);
                     
                     //If player is still online add an login location to the database
@@ -106,22 +137,110 @@ public class OnlineSession implements PlayerSession {
                     }
                     
                     setPlayersData(playersData);
-                    playerTotals = new PlayerTotals(id);
+                    playerTotals = new PlayerTotals(id, true);
                     setPlayersTotals(playerTotals);
-        
-                    Query.table(PlayerStats.TableName)
-                    .value(PlayerStats.Online, true)
-                    .condition(PlayerStats.PlayerId, id)
-                    .update();  
-                    
-                    setReady();
+                    loaded = true;
+                } catch (RuntimeSQLException e) {
+                    Message.debug(Level.FINE, e.getMessage());
+                } finally {
+                    if(loaded) setReady();
+                    else setFailed();
+                }
             }
         });
     }
     
-    private synchronized void setReady(){
-        Message.debug("Session is ready!");
-        this.isready = true;        
+    /**
+     * Marks the session as ready, replaying the events that were buffered while it was loading.<br />
+     * Events that arrive during the replay are buffered as well, so that all events are handled in the order they were fired.
+     */
+    private void setReady() {
+        if(!state.compareAndSet(LOADING, REPLAYING)) return;
+        replayThread = Thread.currentThread();
+        int replayed = 0;
+        try {
+            while(true) {
+                Runnable handler;
+                synchronized(pending) {
+                    handler = pending.poll();
+                    if(handler == null) {
+                        state.set(READY);
+                        break;
+                    }
+                }
+                try { handler.run(); }
+                catch (Throwable t) { ExceptionHandler.handle(t); }
+                replayed++;
+            }
+        } finally {
+            replayThread = null;
+            if(state.get() != READY) {
+                synchronized(pending) { state.set(READY); }
+            }
+        }
+        replayedCount.addAndGet(replayed);
+        Message.debug("Session is ready! Replayed " + replayed + " buffered event(s)");
+    }
+    
+    /**
+     * Marks the session as failed, releasing the events that were buffered while it was loading
+     */
+    private void setFailed() {
+        int discarded;
+        synchronized(pending) {
+            state.set(FAILED);
+            discarded = pending.size();
+            pending.clear();
+        }
+        Message.log(Level.SEVERE, "Could not load the statistics of " + name + ", discarding " + discarded + " buffered event(s)");
+    }
+    
+    /**
+     * Buffers the event handler if the session is not ready yet.<br />
+     * Buffered handlers are run in order once the session has loaded. If the buffer is full, or the session
+     * could not be loaded, the event is dropped.
+     * @param handler Event handler
+     * @return <b>true</b> if the handler was buffered or dropped, <b>false</b> if it should be run right away
+     */
+    public boolean defer(Runnable handler) {
+        int current = state.get();
+        if(current == READY || replayThread == Thread.currentThread()) return false;
+        if(current == FAILED) return true;
+        synchronized(pending) {
+            if(state.get() == READY) return false;
+            if(state.get() == FAILED) return true;
+            if(pending.size() >= LocalConfiguration.EventPreReadyBuffer.toInteger()) {
+                overflowCount.incrementAndGet();
+                return true;
+            }
+            pending.add(handler);
+        }
+        bufferedCount.incrementAndGet();
+        return true;
+    }
+    
+    /**
+     * Returns the number of events buffered while sessions were loading
+     * @return Buffered event count
+     */
+    public static long getBufferedCount() {
+        return bufferedCount.get();
+    }
+    
+    /**
+     * Returns the number of buffered events that were replayed once their session was ready
+     * @return Replayed event count
+     */
+    public static long getReplayedCount() {
+        return replayedCount.get();
+    }
+    
+    /**
+     * Returns the number of events that were dropped because the buffer of their session was full
+     * @return Overflow count
+     */
+    public static long getOverflowCount() {
+        return overflowCount.get();
     }
     
     private synchronized void setPlayersTotals(PlayerTotals data){
@@ -132,14 +251,39 @@ public class OnlineSession implements PlayerSession {
         this.playersData = data;        
     }
     
+    /**
+     * Checks if the data of the player has been loaded from the database
+     * @return <b>true</b> if the session is ready, <b>false</b> otherwise
+     */
     public boolean isReady() {
-        return this.isready;
+        return state.get() == READY;
     }
     
+    /**
+     * Checks if the data of the player is still being loaded from the database
+     * @return <b>true</b> if the session is loading, <b>false</b> if it is ready or could not be loaded
+     */
+    public boolean isLoading() {
+        int current = state.get();
+        return current == LOADING || current == REPLAYING;
+    }
+    
+    /**
+     * Checks if the player is online.<br />
+     * The session is marked offline when the player logs out, and online again if they log back in before it is removed.
+     * @return <b>true</b> if the player is online, <b>false</b> otherwise
+     */
     @Override
     public boolean isOnline() {
-        if(Bukkit.getPlayerExact(name) == null) return false;
-        return true;
+        return online;
+    }
+    
+    /**
+     * Marks the session as online or offline
+     * @param online <b>true</b> if the player is online, <b>false</b> otherwise
+     */
+    public void setOnline(boolean online) {
+        this.online = online;
     }
     
     /**
@@ -151,40 +295,67 @@ public class OnlineSession implements PlayerSession {
     }
     
     /**
-     * Returns the data store with the specified type
+     * Returns the data store with the specified type.<br />
+     * Data stores are created on first use, as long as the module they belong to is active.
      * @param type Data store type
-     * @return Data store, or <b>null</b> if the type is not valid
+     * @return Data store, or <b>null</b> if the module is not active
      */
     public DataStore getDataStore(DataStoreType type) {
-        for(DataStore store : dataStores) {
-            if(store.getType().equals(type)) return store;
-        }
-        return null;
+        int index = type.ordinal();
+        DataStore store = dataStores.get(index);
+        if(store != null) return store;
+        
+        if(!Module.getModule(type).isActive()) return null;
+        store = type.create(this);
+        if(dataStores.compareAndSet(index, null, store)) return store;
+        return dataStores.get(index);
     }
     
     /**
      * Performs a database operation to push the locally stored data.
      */
     public void pushData() {
-        playersData.sync();
-        for(DataStore store : dataStores) store.pushData();
+        if(!isReady()) return;
+        final Pushed pushed = PlayerTotals.beginPush();
+        try {
+            playersData.sync();
+            for(int i = 0; i < dataStores.length(); i++) {
+                DataStore store = dataStores.get(i);
+                if(store != null) store.pushData();
+            }
+        } finally { PlayerTotals.endPush(); }
         
-        playerTotals.fetchData();
+        Database.afterCommit(new Runnable() {
+            
+            @Override
+            public void run() {
+                playerTotals.reconcile(pushed);
+            }
+            
+        });
     }
     
     /**
      * Dumps all locally stored data
      */
     public void dumpData() {
-        for(DataStore store : dataStores) store.dump();
+        for(int i = 0; i < dataStores.length(); i++) {
+            DataStore store = dataStores.get(i);
+            if(store != null) store.dump();
+        }
     }
     
+    /**
+     * Marks the player as offline.<br />
+     * Only the login recorded for this session is marked, so that a late call never marks a newer session of the player as offline.
+     */
     @Override
     public void finalize() {
-        Query.table(PlayerStats.TableName)
+        DatabaseQuery query = Query.table(PlayerStats.TableName)
             .value(PlayerStats.Online, false)
-            .condition(PlayerStats.PlayerId, id)
-            .update();
+            .condition(PlayerStats.PlayerId, id);
+        if(playersData != null) query.condition(PlayerStats.LoginTime, playersData.getGeneralData().getLoginTime());
+        query.deferred().update();
     }
     
     /**
@@ -197,6 +368,25 @@ public class OnlineSession implements PlayerSession {
         playerTotals.addDistance(type, distance);
     }
     
+    /**
+     * Adds the distances of all travel types to the statistics at once
+     * @param foot Distance traveled on foot
+     * @param swim Distance swum
+     * @param flight Distance flown
+     * @param boat Distance traveled by boat
+     * @param minecart Distance traveled by minecart
+     * @param ride Distance traveled on a mount
+     */
+    public void addDistances(double foot, double swim, double flight, double boat, double minecart, double ride) {
+        playersData.getDistanceData().addDistances(foot, swim, flight, boat, minecart, ride);
+        if(foot != 0) playerTotals.addDistance(PlayerDistance.Foot, foot);
+        if(swim != 0) playerTotals.addDistance(PlayerDistance.Swim, swim);
+        if(flight != 0) playerTotals.addDistance(PlayerDistance.Flight, flight);
+        if(boat != 0) playerTotals.addDistance(PlayerDistance.Boat, boat);
+        if(minecart != 0) playerTotals.addDistance(PlayerDistance.Minecart, minecart);
+        if(ride != 0) playerTotals.addDistance(PlayerDistance.Ride, ride);
+    }
+    
     /**
      * Registers the player death in the data store
      * @param victim Player who was killed 
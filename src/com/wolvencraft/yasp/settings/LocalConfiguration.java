@@ -38,7 +38,33 @@ public enum LocalConfiguration {
     DBUser          ("database.user"),
     DBPass          ("database.pass"),
     DBPrefix        ("database.prefix"),
-    DBConnect       ("jdbc:mysql://" + DBHost.toString() + ":" + DBPort.toInteger() + "/" + DBName.toString(), true),
+    DBType          ("database.type"),
+    DBFile          ("database.file"),
+    DBPoolMinSize   ("database.pool.min-size"),
+    DBPoolMaxSize   ("database.pool.max-size"),
+    DBPoolTimeout   ("database.pool.timeout"),
+    DBBatchSize     ("database.batch-size"),
+    DBCommitInterval("database.commit-interval"),
+    DBCommitRetries ("database.commit-retries"),
+    DBFetchSize     ("database.fetch-size"),
+    DBQueueSize     ("database.write-behind.queue-size"),
+    DBQueueOverflow ("database.write-behind.overflow"),
+    DBFlushInterval ("database.write-behind.flush-interval"),
+    DBSpoolEnabled  ("database.spool.enabled"),
+    DBSpoolSegmentSize("database.spool.segment-size"),
+    DBSpoolMemoryThreshold("database.spool.memory-threshold"),
+    DBBreakerThreshold("database.breaker.failure-threshold"),
+    DBBreakerBaseDelay("database.breaker.base-delay"),
+    DBBreakerMaxDelay("database.breaker.max-delay"),
+    EventRingSize   ("events.ring-size"),
+    EventConsumers  ("events.consumers"),
+    EventPreReadyBuffer("events.pre-ready-buffer"),
+    TotalsReconcileInterval("totals.reconcile-interval"),
+    TotalsRebuildInterval("totals.rebuild-interval"),
+    CachePlayers    ("cache.players"),
+    CacheOfflineSize("cache.offline-sessions.size"),
+    CacheOfflineTtl ("cache.offline-sessions.ttl"),
+    CacheOfflineExpire("cache.offline-sessions.expire"),
     LogPrefix       ("log-prefix"),
     ;
     
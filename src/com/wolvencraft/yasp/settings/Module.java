@@ -21,66 +21,43 @@
 package com.wolvencraft.yasp.settings;
 
 import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import lombok.AccessLevel;
 import lombok.Getter;
 
-import org.bukkit.Bukkit;
-
 import com.google.common.collect.Lists;
-import com.wolvencraft.yasp.Statistics;
-import com.wolvencraft.yasp.db.Query;
-import com.wolvencraft.yasp.db.Query.QueryResult;
-import com.wolvencraft.yasp.db.data.DataStore;
-import com.wolvencraft.yasp.db.data.blocks.BlockData;
-import com.wolvencraft.yasp.db.data.deaths.DeathData;
-import com.wolvencraft.yasp.db.data.hooks.admincmd.AdminCmdData;
-import com.wolvencraft.yasp.db.data.hooks.banhammer.BanHammerData;
-import com.wolvencraft.yasp.db.data.hooks.commandbook.CommandBookData;
-import com.wolvencraft.yasp.db.data.hooks.factions.FactionsData;
-import com.wolvencraft.yasp.db.data.hooks.jail.JailData;
-import com.wolvencraft.yasp.db.data.hooks.mcmmo.McMMOData;
-import com.wolvencraft.yasp.db.data.hooks.mobarena.MobArenaData;
-import com.wolvencraft.yasp.db.data.hooks.pvparena.PvpArenaData;
-import com.wolvencraft.yasp.db.data.hooks.towny.TownyData;
-import com.wolvencraft.yasp.db.data.hooks.vanish.VanishData;
-import com.wolvencraft.yasp.db.data.hooks.vault.VaultData;
-import com.wolvencraft.yasp.db.data.hooks.votifier.VotifierData;
-import com.wolvencraft.yasp.db.data.hooks.worldguard.WorldGuardData;
-import com.wolvencraft.yasp.db.data.items.ItemData;
-import com.wolvencraft.yasp.db.data.pve.PVEData;
-import com.wolvencraft.yasp.db.data.pvp.PVPData;
-import com.wolvencraft.yasp.db.tables.Miscellaneous.SettingsTable;
+import com.wolvencraft.yasp.db.data.DataStore.DataStoreType;
 
 /**
  * Represents the different plugin modules
  * @author bitWolfy
  *
  */
-@SuppressWarnings("unchecked")
 public enum Module {
     
     Server      ("server", false),
-    Blocks      ("blocks", false, BlockData.class),
-    Items       ("items", false, ItemData.class),
-    Deaths      ("deaths", false, DeathData.class, PVEData.class, PVPData.class),
+    Blocks      ("blocks", false, DataStoreType.Blocks),
+    Items       ("items", false, DataStoreType.Items),
+    Deaths      ("deaths", false, DataStoreType.Deaths, DataStoreType.PVE, DataStoreType.PVP),
     Inventory   ("inventory", false),
     
-    AdminCmd    ("admincmd", true, AdminCmdData.class),
-    BanHammer   ("banhammer", true, BanHammerData.class),
-    CommandBook ("commandbook", true, CommandBookData.class),
-    Factions    ("factions", true, FactionsData.class),
-    Jail        ("jail", true, JailData.class),
+    AdminCmd    ("admincmd", true, DataStoreType.Hook_AdminCmd),
+    BanHammer   ("banhammer", true, DataStoreType.Hook_BanHammer),
+    CommandBook ("commandbook", true, DataStoreType.Hook_CommandBook),
+    Factions    ("factions", true, DataStoreType.Hook_Factions),
+    Jail        ("jail", true, DataStoreType.Hook_Jail),
     McBans      ("mcbans", true),
-    McMMO       ("mcmmo", true, McMMOData.class),
-    MobArena    ("mobarena", true, MobArenaData.class),
-    PvpArena    ("pvparena", true, PvpArenaData.class),
-    Towny       ("towny", true, TownyData.class),
-    Vanish      ("vanishnopacket", true, VanishData.class),
-    Vault       ("vault", true, VaultData.class),
-    Votifier    ("votifier", true, VotifierData.class),
-    WorldGuard  ("worldguard", true, WorldGuardData.class),
+    McMMO       ("mcmmo", true, DataStoreType.Hook_McMMO),
+    MobArena    ("mobarena", true, DataStoreType.Hook_MobArena),
+    PvpArena    ("pvparena", true, DataStoreType.Hook_PvpArena),
+    Towny       ("towny", true, DataStoreType.Hook_Towny),
+    Vanish      ("vanishnopacket", true, DataStoreType.Hook_Vanish),
+    Vault       ("vault", true, DataStoreType.Hook_Vault),
+    Votifier    ("votifier", true, DataStoreType.Hook_Votifier),
+    WorldGuard  ("worldguard", true, DataStoreType.Hook_WorldGuard),
     
     Unknown     ("unknown", false)
     ;
@@ -91,26 +68,26 @@ public enum Module {
     private boolean hook;
     
     @Getter(AccessLevel.PUBLIC)
-    private List<Class<? extends DataStore<?, ?>>> dataStores;
+    private List<DataStoreType> dataStores;
+    
+    private volatile boolean active;
     
-    private boolean refreshScheduled;
+    private static final Map<DataStoreType, Module> owners = new EnumMap<DataStoreType, Module>(DataStoreType.class);
     
-    private boolean enabled;
-    private boolean active;
-    private int version;
+    static {
+        for(Module module : values()) {
+            for(DataStoreType type : module.dataStores) owners.put(type, module);
+        }
+    }
     
-    Module(String key, boolean isHook, Class<? extends DataStore<?, ?>>... dataStores) {
+    Module(String key, boolean isHook, DataStoreType... dataStores) {
         this.hook = isHook;
         this.KEY = key;
         
-        try { updateCache(); }
-        catch(Throwable t) { }
-        
-        if(dataStores.length == 0) this.dataStores = Lists.newArrayList();
+        if(dataStores.length == 0) this.dataStores = Lists.<DataStoreType>newArrayList();
         else this.dataStores = Arrays.asList(dataStores);
         
         if(!isHook) active = true;
-        refreshScheduled = false;
     }
 
     /**
@@ -118,8 +95,9 @@ public enum Module {
      * @return <b>true</b> if the module is enabled, <b>false</b> if it is not
      */
     public boolean isEnabled() {
-        if(refreshScheduled) updateCacheAsynchronously();
-        return enabled;
+        String value = RemoteSettings.get(getStateKey());
+        if(value == null) return true;
+        return "1".equals(value);
     }
 
     /**
@@ -144,8 +122,11 @@ public enum Module {
      * @return Module version
      */
     public int getVersion() {
-        if(refreshScheduled) updateCacheAsynchronously();
-        return version;
+        if(!hook) return -1;
+        String value = RemoteSettings.get("version." + KEY);
+        if(value == null) return 0;
+        try { return (int) Double.parseDouble(value); }
+        catch (NumberFormatException e) { return 0; }
     }
     
     /**
@@ -154,62 +135,28 @@ public enum Module {
      * @param version New version
      */
     public void setVersion(int version) {
-        if(refreshScheduled) updateCacheAsynchronously();
-        this.version = version;
         if(!hook) return;
-        String versionKey = "version." + KEY;
-        Query.table(SettingsTable.TableName)
-             .value("value", version)
-             .condition("key", versionKey)
-             .update();
-    }
-    
-    /**
-     * Fetches the module variables from the database
-     */
-    private void updateCache() {
-        String stateKey = "";
-        if(hook) {
-            stateKey = "hook." + KEY;
-            
-            String versionKey = "version." + KEY;
-            QueryResult versionResult = Query.table(SettingsTable.TableName).column("value").condition("key", versionKey).select();
-            if(versionResult == null) {
-                Query.table(SettingsTable.TableName).value("key", versionKey).value("value", 0).insert();
-                version = 0;
-            } else {
-                version = versionResult.asInt("value");
-            }
-        } else {
-            stateKey = "module." + KEY;
-            version = -1;
-        }
-        
-        QueryResult enabledResult = Query.table(SettingsTable.TableName).column("value").condition("key", stateKey).select();
-        if(enabledResult == null) {
-            Query.table(SettingsTable.TableName).value("key", stateKey).value("value", false).insert();
-            enabled = true;
-        } else {
-            enabled = enabledResult.asBoolean("value");
-        }
+        RemoteSettings.update("version." + KEY, version);
     }
     
     /**
-     * Fetches the module variables from the database asynchronously
+     * Returns the module the data store type belongs to
+     * @param type Data store type
+     * @return Module, or <b>Unknown</b> if the type does not belong to any module
      */
-    private void updateCacheAsynchronously() {
-        if(!Statistics.getInstance().isEnabled()) return;
-        Bukkit.getScheduler().runTaskAsynchronously(Statistics.getInstance(), new Runnable() {
-            @Override
-            public void run() { updateCache(); }
-        });
+    public static Module getModule(DataStoreType type) {
+        Module module = owners.get(type);
+        if(module == null) return Unknown;
+        return module;
     }
     
     /**
-     * Schedules all the modules to refresh
+     * Returns the key of the setting that enables or disables the module
+     * @return Setting key
      */
-    public static void clearCache() {
-        for(Module module : Module.values()) module.refreshScheduled = true;
+    String getStateKey() {
+        if(hook) return "hook." + KEY;
+        return "module." + KEY;
     }
     
 }
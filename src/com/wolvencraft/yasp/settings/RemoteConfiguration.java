@@ -20,16 +20,9 @@
 
 package com.wolvencraft.yasp.settings;
 
-import org.bukkit.Bukkit;
-
-import com.wolvencraft.yasp.Statistics;
-import com.wolvencraft.yasp.db.Query;
-import com.wolvencraft.yasp.db.Query.QueryResult;
-import com.wolvencraft.yasp.db.tables.Miscellaneous.SettingsTable;
-
 /**
  * Represents the configuration pulled from the database.<br />
- * No data is stored locally; all information is pulled from the database during runtime.
+ * No data is stored locally; the values are read from the snapshot of the settings table held by <b>RemoteSettings</b>.
  * @author bitWolfy
  *
  */
@@ -49,8 +42,6 @@ public enum RemoteConfiguration {
     ;
     
     String key;
-    QueryResult entry;
-    boolean refreshScheduled;
     
     /**
      * <b>Default constructor</b><br />
@@ -58,9 +49,7 @@ public enum RemoteConfiguration {
      * @param key Entry key
      */
     RemoteConfiguration(String key) {
-        refreshScheduled = false;
         this.key = key;
-        updateCache();
     }
     
     /**
@@ -78,9 +67,9 @@ public enum RemoteConfiguration {
      * @return Configuration value
      */
     public String asString() {
-        if(refreshScheduled) updateCacheAsynchronously();
-        try { return entry.asString("value"); }
-        catch (Throwable t) { return ""; }
+        String value = RemoteSettings.get(key);
+        if(value == null) return "";
+        return value;
     }
     
     /**
@@ -88,9 +77,10 @@ public enum RemoteConfiguration {
      * @return Configuration value
      */
     public int asInteger() { 
-        if(refreshScheduled) updateCacheAsynchronously();
-        try { return entry.asInt("value"); }
-        catch (Throwable t) { com.wolvencraft.yasp.util.Message.log("Entry is null (" + t.getMessage() + ")"); return 0; }
+        String value = RemoteSettings.get(key);
+        if(value == null) { com.wolvencraft.yasp.util.Message.log("Entry is null (" + key + ")"); return 0; }
+        try { return (int) Double.parseDouble(value); }
+        catch (NumberFormatException e) { return -1; }
     }
     
     /**
@@ -98,9 +88,7 @@ public enum RemoteConfiguration {
      * @return Configuration value
      */
     public boolean asBoolean() {
-        if(refreshScheduled) updateCacheAsynchronously();
-        try { return entry.asBoolean("value"); }
-        catch (Throwable t) { return false; }
+        return "1".equals(RemoteSettings.get(key));
     }
     
     /**
@@ -109,37 +97,6 @@ public enum RemoteConfiguration {
      * @return <b>true</b> if the update was successful, <b>false</b> otherwise
      */
     public boolean update(Object value) {
-        return Query.table(SettingsTable.TableName).value("value", value).condition("key", key).update();
-    }
-    
-    /**
-     * Fetches the configuration data from the database
-     */
-    private void updateCache() {
-        entry = Query.table(SettingsTable.TableName)
-                .column("value")
-                .condition("key", key)
-                .select();
-        refreshScheduled = false;
-    }
-    
-    /**
-     * Fetches the configuration data from the database asynchronously
-     */
-    private void updateCacheAsynchronously() {
-        if(!Statistics.getInstance().isEnabled()) return;
-        Bukkit.getScheduler().runTaskAsynchronously(Statistics.getInstance(), new Runnable() {
-            @Override
-            public void run() { updateCache(); }
-        });
-    }
-    
-    /**
-     * Signals the plugin to pull the stored value from the database next time it is called
-     */
-    public static void clearCache() {
-        for(RemoteConfiguration configEntry : RemoteConfiguration.values()) {
-            configEntry.refreshScheduled = true;
-        }
+        return RemoteSettings.update(key, value);
     }
 }
@@ -0,0 +1,185 @@
+/*
+ * RemoteSettings.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.settings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.wolvencraft.yasp.db.Query;
+import com.wolvencraft.yasp.db.Query.DatabaseQuery;
+import com.wolvencraft.yasp.db.Query.QueryResult;
+import com.wolvencraft.yasp.db.tables.Miscellaneous.SettingsTable;
+import com.wolvencraft.yasp.util.Message;
+
+/**
+ * Holds the contents of the settings table.<br />
+ * The whole table is read with a single query into an immutable snapshot, which replaces the previous one at once,
+ * so readers never see a partially loaded configuration and never query the database themselves.
+ * Only one refresh runs at any given time. Settings the plugin expects, but the table does not contain,
+ * are inserted with their default values in one batch.
+ * @author bitWolfy
+ *
+ */
+public class RemoteSettings {
+    
+    private static volatile Snapshot snapshot = new Snapshot(0, new HashMap<String, String>());
+    private static final AtomicBoolean loading = new AtomicBoolean(false);
+    private static Map<String, String> updated = null;
+    
+    private RemoteSettings() { }
+    
+    /**
+     * Reads the settings table into a new snapshot, unless a refresh is already in progress.<br />
+     * Settings updated while the table is being read are carried over into the new snapshot,
+     * since the read might have happened before the update reached the database.
+     * @return <b>true</b> if the snapshot was refreshed, <b>false</b> otherwise
+     */
+    public static boolean refresh() {
+        if(!loading.compareAndSet(false, true)) return false;
+        try {
+            synchronized(RemoteSettings.class) { updated = new HashMap<String, String>(); }
+            List<QueryResult> rows = Query.table(SettingsTable.TableName)
+                    .column(SettingsTable.Key)
+                    .column(SettingsTable.Value)
+                    .selectAll();
+            if(rows.isEmpty()) return false;
+            
+            Map<String, String> values = new HashMap<String, String>(rows.size() * 2);
+            for(QueryResult row : rows) values.put(row.asString(SettingsTable.Key), row.asString(SettingsTable.Value));
+            
+            Map<String, Object> missing = new LinkedHashMap<String, Object>();
+            for(Module module : Module.values()) {
+                if(module.isHook()) {
+                    String versionKey = "version." + module.KEY;
+                    if(!values.containsKey(versionKey)) {
+                        missing.put(versionKey, 0);
+                        values.put(versionKey, "0");
+                    }
+                }
+                if(!values.containsKey(module.getStateKey())) {
+                    missing.put(module.getStateKey(), false);
+                    values.put(module.getStateKey(), "0");
+                }
+            }
+            if(!missing.isEmpty()) insert(missing);
+            
+            synchronized(RemoteSettings.class) {
+                values.putAll(updated);
+                snapshot = new Snapshot(snapshot.version + 1, values);
+            }
+            Message.debug("Loaded " + values.size() + " settings (snapshot " + snapshot.version + ")");
+            return true;
+        } finally {
+            synchronized(RemoteSettings.class) { updated = null; }
+            loading.set(false);
+        }
+    }
+    
+    /**
+     * Returns the value of the setting in the current snapshot
+     * @param key Setting key
+     * @return Setting value, or <b>null</b> if there is none
+     */
+    public static String get(String key) {
+        return snapshot.values.get(key);
+    }
+    
+    /**
+     * Checks if the setting is present in the current snapshot
+     * @param key Setting key
+     * @return <b>true</b> if the setting is present, <b>false</b> otherwise
+     */
+    public static boolean contains(String key) {
+        return snapshot.values.containsKey(key);
+    }
+    
+    /**
+     * Updates the setting in the database, and publishes a snapshot holding the new value
+     * @param key Setting key
+     * @param value New value
+     * @return <b>true</b> if the update was successful, <b>false</b> otherwise
+     */
+    public static boolean update(String key, Object value) {
+        boolean result = Query.table(SettingsTable.TableName).value(SettingsTable.Value, value).condition(SettingsTable.Key, key).update();
+        String stored;
+        if(value instanceof Boolean) stored = ((Boolean) value) ? "1" : "0";
+        else stored = value.toString();
+        synchronized(RemoteSettings.class) {
+            Snapshot current = snapshot;
+            Map<String, String> values = new HashMap<String, String>(current.values);
+            values.put(key, stored);
+            if(updated != null) updated.put(key, stored);
+            snapshot = new Snapshot(current.version + 1, values);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the version of the current snapshot.<br />
+     * The version is incremented every time a new snapshot is published.
+     * @return Snapshot version
+     */
+    public static long getVersion() {
+        return snapshot.version;
+    }
+    
+    /**
+     * Inserts the missing settings in a single batch
+     * @param missing Setting keys mapped to their default values
+     */
+    private static void insert(Map<String, Object> missing) {
+        List<DatabaseQuery> queries = new ArrayList<DatabaseQuery>(missing.size());
+        for(Map.Entry<String, Object> entry : missing.entrySet()) {
+            queries.add(Query.table(SettingsTable.TableName)
+                    .value(SettingsTable.Key, entry.getKey())
+                    .value(SettingsTable.Value, entry.getValue()));
+        }
+        Query.insert(queries);
+        Message.debug("Inserted " + missing.size() + " missing settings");
+    }
+    
+    /**
+     * An immutable copy of the settings table
+     * @author bitWolfy
+     *
+     */
+    private static class Snapshot {
+        
+        private final long version;
+        private final Map<String, String> values;
+        
+        /**
+         * <b>Default constructor</b><br />
+         * Creates a new snapshot of the specified values
+         * @param version Snapshot version
+         * @param values Setting keys mapped to their values
+         */
+        public Snapshot(long version, Map<String, String> values) {
+            this.version = version;
+            this.values = Collections.unmodifiableMap(values);
+        }
+    }
+}
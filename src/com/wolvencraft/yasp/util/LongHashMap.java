@@ -0,0 +1,216 @@
+/*
+ * LongHashMap.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hash map keyed by a primitive <code>long</code>.<br />
+ * Uses open addressing with linear probing, so that lookups neither box the key nor allocate.
+ * Null values are not permitted. The map is not synchronized.
+ * @author bitWolfy
+ *
+ * @param <V> Value type
+ */
+public class LongHashMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    private Object[] values;
+    private int shift;
+    private int size;
+
+    /**
+     * <b>Default constructor</b><br />
+     * Creates an empty map
+     */
+    public LongHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * <b>Constructor</b><br />
+     * Creates an empty map that holds the specified number of entries without growing
+     * @param expected Expected number of entries
+     */
+    public LongHashMap(int expected) {
+        int capacity = DEFAULT_CAPACITY;
+        while(capacity < expected * 2) capacity <<= 1;
+        allocate(capacity);
+    }
+
+    /**
+     * <b>Constructor</b><br />
+     * Creates a map holding the same entries as the specified one
+     * @param source Map to copy
+     */
+    public LongHashMap(LongHashMap<V> source) {
+        keys = source.keys.clone();
+        values = source.values.clone();
+        shift = source.shift;
+        size = source.size;
+    }
+
+    /**
+     * Returns the value mapped to the key
+     * @param key Key
+     * @return Mapped value, or <b>null</b> if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int mask = values.length - 1;
+        for(int i = index(key); values[i] != null; i = (i + 1) & mask) {
+            if(keys[i] == key) return (V) values[i];
+        }
+        return null;
+    }
+
+    /**
+     * Maps the value to the key
+     * @param key Key
+     * @param value Value to map. Cannot be <b>null</b>
+     * @return Value previously mapped to the key, or <b>null</b> if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if(value == null) throw new IllegalArgumentException("Null values are not permitted");
+        int mask = values.length - 1;
+        int i = index(key);
+        for(; values[i] != null; i = (i + 1) & mask) {
+            if(keys[i] != key) continue;
+            V previous = (V) values[i];
+            values[i] = value;
+            return previous;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if(++size * 2 > values.length) resize(values.length << 1);
+        return null;
+    }
+
+    /**
+     * Removes the value mapped to the key
+     * @param key Key
+     * @return Removed value, or <b>null</b> if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int mask = values.length - 1;
+        int i = index(key);
+        for(; values[i] != null; i = (i + 1) & mask) {
+            if(keys[i] == key) break;
+        }
+        if(values[i] == null) return null;
+        V removed = (V) values[i];
+
+        // Shift the following entries of the probe sequence back, so that no lookup stops at the freed slot
+        int gap = i;
+        for(int j = (gap + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = index(keys[j]);
+            if(((j - home) & mask) < ((j - gap) & mask)) continue;
+            keys[gap] = keys[j];
+            values[gap] = values[j];
+            gap = j;
+        }
+        values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Returns the number of entries in the map
+     * @return Entry count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the map is empty
+     * @return <b>true</b> if there are no entries, <b>false</b> otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all entries from the map
+     */
+    public void clear() {
+        for(int i = 0; i < values.length; i++) values[i] = null;
+        size = 0;
+    }
+
+    /**
+     * Returns the values in the map.<br />
+     * Changes to the returned List will not affect the map.
+     * @return Mapped values
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> result = new ArrayList<V>(size);
+        for(Object value : values) {
+            if(value != null) result.add((V) value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the slot the key hashes to
+     * @param key Key
+     * @return Slot index
+     */
+    private int index(long key) {
+        return (int) ((key * MIX) >>> shift);
+    }
+
+    /**
+     * Allocates empty tables of the specified capacity
+     * @param capacity Table capacity, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * Moves all entries to tables of the specified capacity
+     * @param capacity New capacity, a power of two
+     */
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for(int j = 0; j < oldValues.length; j++) {
+            if(oldValues[j] == null) continue;
+            int i = index(oldKeys[j]);
+            while(values[i] != null) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+}
@@ -23,6 +23,7 @@ public class PlayerUtil {
              
            return Query.table(Normal.PlayerStats.TableName)
                         .condition(Normal.PlayerStats.Name, name)
+                        .deferred()
                         .delete();  
         
     }
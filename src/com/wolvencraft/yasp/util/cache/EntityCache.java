@@ -20,31 +20,38 @@
 
 package com.wolvencraft.yasp.util.cache;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.bukkit.entity.EntityType;
 
 import com.wolvencraft.yasp.db.Query;
+import com.wolvencraft.yasp.db.QueryCursor;
+import com.wolvencraft.yasp.db.WriteBehind;
 import com.wolvencraft.yasp.db.tables.Miscellaneous.EntitiesTable;
+import com.wolvencraft.yasp.util.LongHashMap;
+import com.wolvencraft.yasp.util.Message;
 import com.wolvencraft.yasp.util.cache.CachedData.CachedDataProcess;
 
 /**
- * Caches entity IDs server-side
+ * Caches entity IDs server-side.<br />
+ * The contents of the entities table are loaded once, on startup, into a map keyed by the entity type ID.
+ * Lookups never touch the database; entities that are not in the table yet are added to the map right away,
+ * and registered in the database in batches.
  * @author bitWolfy
  *
  */
 public class EntityCache implements CachedDataProcess {
     
-    private final long REFRESH_RATE_TICKS = (long)(24 * 3600 * 20);
-    private static List<String> entities;
+    private final long REFRESH_RATE_TICKS = (long)(5 * 20);
+    private static volatile LongHashMap<String> entities = new LongHashMap<String>();
+    private static final Queue<String[]> unregistered = new ConcurrentLinkedQueue<String[]>();
     
     /**
      * <b>Default constructor</b><br />
-     * Creates a new List for data storage
+     * Creates a new cache process
      */
     public EntityCache() {
-        entities = new ArrayList<String>();
     }
     
     @Override
@@ -54,25 +61,100 @@ public class EntityCache implements CachedDataProcess {
     
     @Override
     public void run() {
-        entities.clear();
+        flush();
     }
     
     /**
-     * Parses the entity type and returns a valid entity ID
+     * Loads the contents of the entities table into the cache.<br />
+     * Should be used once, on plugin startup, after the database connection has been established
+     */
+    public static void load() {
+        int count = 0;
+        QueryCursor results = Query.table(EntitiesTable.TableName).column(EntitiesTable.EntityId).stream();
+        try {
+            synchronized(EntityCache.class) {
+                LongHashMap<String> loaded = new LongHashMap<String>(entities);
+                while(results.hasNext()) {
+                    String entity = results.next().asString(EntitiesTable.EntityId);
+                    if(entity == null) continue;
+                    try {
+                        long key = Integer.parseInt(entity);
+                        if(loaded.get(key) == null) loaded.put(key, entity);
+                        count++;
+                    } catch (NumberFormatException ex) { continue; }
+                }
+                entities = loaded;
+            }
+        } finally { results.close(); }
+        Message.debug("Loaded " + count + " entities");
+    }
+    
+    /**
+     * Registers the entities that are not in the entities table yet.<br />
+     * All pending entities are written in a single unit of work.
+     */
+    public static void flush() {
+        synchronized(EntityCache.class) {
+            if(unregistered.isEmpty()) return;
+            WriteBehind.begin();
+            try { drain(); }
+            finally { WriteBehind.submit(); }
+        }
+    }
+    
+    /**
+     * Registers all pending entities in the unit of work captured by the current thread.<br />
+     * Runs before data referring to an entity is pushed, so that the entity is written first.
+     */
+    private static void drain() {
+        synchronized(EntityCache.class) {
+            String[] entry;
+            while((entry = unregistered.poll()) != null) register(entry);
+        }
+    }
+    
+    /**
+     * Queues a new entry for the entities table, unless the entity is already there
+     * @param entry Entity ID and name
+     */
+    private static void register(String[] entry) {
+        Query.table(EntitiesTable.TableName)
+             .value(EntitiesTable.EntityId, entry[0])
+             .initial(EntitiesTable.TpName, entry[1])
+             .deferred()
+             .upsert();
+    }
+    
+    /**
+     * Parses the entity type and returns a valid entity ID.<br />
+     * If the entity is not cached yet, it is added to the cache and queued for registration.
      * @param type Entity type
      * @return Entity ID
      */
     public static String parse(EntityType type) {
-        String typeId = type.getTypeId() + ""; // TODO Use the correct metadata
-        if(entities.contains(typeId)) return typeId;
-        entities.add(typeId);
-        if(!Query.table(EntitiesTable.TableName).condition(EntitiesTable.EntityId, typeId).exists()) {
-            Query.table(EntitiesTable.TableName)
-                 .value(EntitiesTable.EntityId, typeId)
-                 .value(EntitiesTable.TpName, "custom_" + type.getName().toLowerCase().replace(" ", "_"))
-                 .insert();
+        if(!unregistered.isEmpty() && WriteBehind.isCapturing()) drain();
+        
+        int key = type.getTypeId(); // TODO Use the correct metadata
+        String cached = entities.get(key);
+        if(cached != null) return cached;
+        
+        String[] entry;
+        synchronized(EntityCache.class) {
+            cached = entities.get(key);
+            if(cached != null) return cached;
+            
+            cached = Integer.toString(key);
+            LongHashMap<String> updated = new LongHashMap<String>(entities);
+            updated.put(key, cached);
+            entities = updated;
+            
+            String name = type.getName() == null ? type.name() : type.getName();
+            entry = new String[] {cached, "custom_" + name.toLowerCase().replace(" ", "_")};
         }
-        return typeId + "";
+        
+        if(WriteBehind.isCapturing()) register(entry);
+        else unregistered.add(entry);
+        return cached;
     }
     
 }
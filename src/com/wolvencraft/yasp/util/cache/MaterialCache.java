@@ -20,8 +20,8 @@
 
 package com.wolvencraft.yasp.util.cache;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.bukkit.Material;
 import org.bukkit.block.BlockState;
@@ -29,27 +29,33 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.material.MaterialData;
 
 import com.wolvencraft.yasp.db.Query;
+import com.wolvencraft.yasp.db.QueryCursor;
+import com.wolvencraft.yasp.db.WriteBehind;
 import com.wolvencraft.yasp.db.tables.Miscellaneous.MaterialsTable;
-import com.wolvencraft.yasp.settings.Constants;
 import com.wolvencraft.yasp.settings.Constants.ItemsWithMetadata;
+import com.wolvencraft.yasp.util.LongHashMap;
+import com.wolvencraft.yasp.util.Message;
 import com.wolvencraft.yasp.util.cache.CachedData.CachedDataProcess;
 
 /**
- * Caches material IDs server-side
+ * Caches material IDs server-side.<br />
+ * The contents of the materials table are loaded once, on startup, into a map keyed by the packed type ID and data value.
+ * Lookups never touch the database; materials that are not in the table yet are added to the map right away,
+ * and registered in the database in batches.
  * @author bitWolfy
  *
  */
 public class MaterialCache implements CachedDataProcess {
 
-    private final long REFRESH_RATE_TICKS = (long)(24 * 3600 * 20);
-    private static List<String> materials;
+    private final long REFRESH_RATE_TICKS = (long)(5 * 20);
+    private static volatile LongHashMap<String> materials = new LongHashMap<String>();
+    private static final Queue<String[]> unregistered = new ConcurrentLinkedQueue<String[]>();
     
     /**
      * <b>Default constructor</b><br />
-     * Creates a new List for data storage
+     * Creates a new cache process
      */
     public MaterialCache() {
-        materials = new ArrayList<String>();
     }
     
     @Override
@@ -59,34 +65,155 @@ public class MaterialCache implements CachedDataProcess {
     
     @Override
     public void run() {
-        materials.clear();
+        flush();
     }
     
     /**
-     * Parses a block type ID and data value and returns a String representation of the material.<br />
-     * Inserts a new entry into the materials table
+     * Loads the contents of the materials table into the cache.<br />
+     * Should be used once, on plugin startup, after the database connection has been established
+     */
+    public static void load() {
+        int count = 0;
+        QueryCursor results = Query.table(MaterialsTable.TableName).column(MaterialsTable.MaterialId).stream();
+        try {
+            synchronized(MaterialCache.class) {
+                LongHashMap<String> loaded = new LongHashMap<String>(materials);
+                while(results.hasNext()) {
+                    String material = results.next().asString(MaterialsTable.MaterialId);
+                    if(material == null) continue;
+                    int separator = material.indexOf(':');
+                    if(separator == -1) continue;
+                    try {
+                        int type = Integer.parseInt(material.substring(0, separator));
+                        int data = Integer.parseInt(material.substring(separator + 1));
+                        long key = type == -1 ? -1 : (type << 16) | (data & 0xFFFF);
+                        if(loaded.get(key) == null) loaded.put(key, material);
+                        count++;
+                    } catch (NumberFormatException ex) { continue; }
+                }
+                materials = loaded;
+            }
+        } finally { results.close(); }
+        Message.debug("Loaded " + count + " materials");
+    }
+    
+    /**
+     * Registers the materials that are not in the materials table yet.<br />
+     * All pending materials are written in a single unit of work.
+     */
+    public static void flush() {
+        synchronized(MaterialCache.class) {
+            if(unregistered.isEmpty()) return;
+            WriteBehind.begin();
+            try { drain(); }
+            finally { WriteBehind.submit(); }
+        }
+    }
+    
+    /**
+     * Registers all pending materials in the unit of work captured by the current thread.<br />
+     * Runs before data referring to a material is pushed, so that the material is written first.
+     */
+    private static void drain() {
+        synchronized(MaterialCache.class) {
+            String[] entry;
+            while((entry = unregistered.poll()) != null) register(entry);
+        }
+    }
+    
+    /**
+     * Returns the String representation of the material with the specified key.<br />
+     * If the material is not cached yet, it is added to the cache and queued for registration.
+     * @param key Material key
      * @param type Type ID
      * @param data Data value
-     * @param name Item name
+     * @param material Material type
      * @return Material string
      */
-    private static String parse(int type, int data, String name) {
-        String material = "";
-    
-        if(type == -1) return "-1:0";
-        if(Material.getMaterial(type) == null) return "0:0";
-        if(!Constants.ItemsWithMetadata.contains(type)) material = type + ":" + "0";
-        else material = type + ":" + ItemsWithMetadata.get(type).getValidData(data);
+    private static String lookup(int key, int type, int data, Material material) {
+        if(!unregistered.isEmpty() && WriteBehind.isCapturing()) drain();
+        
+        String cached = materials.get(key);
+        if(cached != null) return cached;
         
-        if(materials.contains(material)) return material;
-        materials.add(material);
-        if(!Query.table(MaterialsTable.TableName).condition(MaterialsTable.MaterialId, material).exists()) {
-            Query.table(MaterialsTable.TableName)
-                 .value(MaterialsTable.MaterialId, material)
-                 .value(MaterialsTable.TpName, "custom_" + name + "_" + data)
-                 .insert();
+        String[] entry;
+        synchronized(MaterialCache.class) {
+            cached = materials.get(key);
+            if(cached != null) return cached;
+            
+            if(key == -1) cached = "-1:0";
+            else if(key == 0) cached = "0:0";
+            else cached = (key >>> 16) + ":" + (key & 0xFFFF);
+            
+            LongHashMap<String> updated = new LongHashMap<String>(materials);
+            updated.put(key, cached);
+            materials = updated;
+            
+            String name = material == null ? "unknown" : material.name().toLowerCase();
+            entry = new String[] {cached, "custom_" + name + "_" + data};
         }
-        return material;
+        
+        if(WriteBehind.isCapturing()) register(entry);
+        else unregistered.add(entry);
+        return cached;
+    }
+    
+    /**
+     * Queues a new entry for the materials table, unless the material is already there
+     * @param entry Material string and name
+     */
+    private static void register(String[] entry) {
+        Query.table(MaterialsTable.TableName)
+             .value(MaterialsTable.MaterialId, entry[0])
+             .initial(MaterialsTable.TpName, entry[1])
+             .deferred()
+             .upsert();
+    }
+    
+    /**
+     * Packs a block type ID and data value into a numeric key.<br />
+     * Two materials have the same key if, and only if, they have the same String representation.
+     * @param type Type ID
+     * @param data Data value
+     * @return Material key
+     */
+    private static int key(int type, int data) {
+        if(type == -1) return -1;
+        if(Material.getMaterial(type) == null) return 0;
+        ItemsWithMetadata entry = ItemsWithMetadata.get(type);
+        if(entry == null) return type << 16;
+        return (type << 16) | (entry.getValidData(data) & 0xFFFF);
+    }
+    
+    /**
+     * Packs a block type ID and data value into a numeric key, and makes sure that the material is registered
+     * @param type Type ID
+     * @param data Data value
+     * @param material Material type
+     * @return Material key
+     */
+    private static int resolve(int type, int data, Material material) {
+        int key = key(type, data);
+        if(materials.get(key) == null) lookup(key, type, data, material);
+        return key;
+    }
+    
+    /**
+     * Packs the material of an item stack into a numeric key
+     * @param stack Item stack
+     * @return Material key
+     */
+    public static int key(ItemStack stack) {
+        return resolve(stack.getTypeId(), stack.getDurability(), stack.getType());
+    }
+    
+    /**
+     * Packs the material of a block into a numeric key
+     * @param block Block
+     * @return Material key
+     */
+    public static int key(BlockState block) {
+        return resolve(block.getTypeId(), block.getRawData(), block.getType());
     }
     
     /**
@@ -95,7 +222,8 @@ public class MaterialCache implements CachedDataProcess {
      * @return Material string
      */
     public static String parse(ItemStack stack) {
-        return parse(stack.getTypeId(), stack.getDurability(), stack.getType().name().toLowerCase());
+        int key = key(stack.getTypeId(), stack.getDurability());
+        return lookup(key, stack.getTypeId(), stack.getDurability(), stack.getType());
     }
     
     /**
@@ -104,7 +232,8 @@ public class MaterialCache implements CachedDataProcess {
      * @return Material string
      */
     public static String parse(MaterialData material) {
-        return parse(material.getItemTypeId(), material.getData(), material.getItemType().name().toLowerCase());
+        int key = key(material.getItemTypeId(), material.getData());
+        return lookup(key, material.getItemTypeId(), material.getData(), material.getItemType());
     }
     
     /**
@@ -113,7 +242,8 @@ public class MaterialCache implements CachedDataProcess {
      * @return Material string
      */
     public static String parse(BlockState block) {
-        return parse(block.getTypeId(), block.getRawData(), block.getType().name().toLowerCase());
+        int key = key(block.getTypeId(), block.getRawData());
+        return lookup(key, block.getTypeId(), block.getRawData(), block.getType());
     }
     
 }
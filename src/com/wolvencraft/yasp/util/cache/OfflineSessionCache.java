@@ -21,52 +21,121 @@
 package com.wolvencraft.yasp.util.cache;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.wolvencraft.yasp.listeners.handlers.HandlerManager;
 import com.wolvencraft.yasp.session.OfflineSession;
+import com.wolvencraft.yasp.settings.LocalConfiguration;
+import com.wolvencraft.yasp.util.ExceptionHandler;
 import com.wolvencraft.yasp.util.cache.CachedData.CachedDataProcess;
 
 /**
- * Caches Offline sessions server-side
+ * Caches Offline sessions server-side.<br />
+ * The cache holds a limited number of sessions, and drops the least recently used ones first.
+ * A session is loaded once, no matter how many threads request it at the same time. Once its totals are older
+ * than the configured lifetime, the stale totals are still served while they are refreshed in the background.
+ * Sessions that have not been requested for a while, and sessions of players who are online, are expired.
  * @author bitWolfy
  *
  */
 public class OfflineSessionCache implements CachedDataProcess {
 
-    private final long REFRESH_RATE_TICKS = (long)(24 * 3600 * 20);
-    private static List<OfflineSession> sessions;
+    private final long REFRESH_RATE_TICKS = (long)(60 * 20);
     
-    /**
-     * <b>Default constructor</b><br />
-     * Creates an list of Offline sessions for storage
-     */
-    public OfflineSessionCache() {
-        sessions = new ArrayList<OfflineSession>();
-    }
+    private static final Map<String, Entry> sessions = new LinkedHashMap<String, Entry>(16, 0.75F, true);
+    
+    private static final AtomicLong hitCount = new AtomicLong(0);
+    private static final AtomicLong missCount = new AtomicLong(0);
+    private static final AtomicLong evictionCount = new AtomicLong(0);
+    private static final AtomicLong refreshCount = new AtomicLong(0);
     
     @Override
     public long getRefreshRate() {
         return REFRESH_RATE_TICKS;
     }
     
+    /**
+     * Expires the sessions of players who are online, and of players who have not been looked up recently
+     */
     @Override
     public void run() {
-        for(OfflineSession session : new ArrayList<OfflineSession>(sessions)) {
-            if(!session.isOnline()) sessions.remove(session);
+        long expire = LocalConfiguration.CacheOfflineExpire.toInteger() * 1000L;
+        long now = System.currentTimeMillis();
+        
+        List<Entry> candidates = new ArrayList<Entry>();
+        synchronized(sessions) {
+            for(Entry entry : sessions.values()) {
+                if(!entry.loader.isDone()) continue;
+                if(expire > 0 && now - entry.accessedAt > expire) evict(entry);
+                else candidates.add(entry);
+            }
+        }
+        
+        for(Entry entry : candidates) {
+            OfflineSession session = entry.get();
+            if(session == null || !session.isOnline()) continue;
+            synchronized(sessions) { evict(entry); }
         }
     }
     
     /**
-     * Fetches the OfflineSession from the cache
+     * Fetches the OfflineSession from the cache.<br />
+     * If the session is not cached, it is loaded on the calling thread; concurrent requests for the same player
+     * wait for that load to complete instead of starting their own.
      * @param username Player name
-     * @return Offline session
+     * @return Offline session. If the load failed, an uncached session is returned
      */
     public static OfflineSession fetch(String username) {
-        for(OfflineSession session : sessions) {
-            if(session.getName().equals(username)) return session;
+        final String name = username;
+        String key = username.toLowerCase();
+        Entry entry;
+        boolean owner = false;
+        synchronized(sessions) {
+            entry = sessions.get(key);
+            if(entry == null) {
+                entry = new Entry(key, new Callable<OfflineSession>() {
+
+                    @Override
+                    public OfflineSession call() {
+                        return new OfflineSession(name);
+                    }
+
+                });
+                sessions.put(key, entry);
+                owner = true;
+                
+                int capacity = Math.max(1, LocalConfiguration.CacheOfflineSize.toInteger());
+                Iterator<Entry> it = sessions.values().iterator();
+                while(sessions.size() > capacity && it.hasNext()) {
+                    Entry eldest = it.next();
+                    if(eldest == entry) continue;
+                    it.remove();
+                    evictionCount.incrementAndGet();
+                }
+            }
+            entry.accessedAt = System.currentTimeMillis();
         }
-        OfflineSession session = new OfflineSession(username);
-        sessions.add(session);
+        
+        if(owner) {
+            missCount.incrementAndGet();
+            entry.loader.run();
+        } else hitCount.incrementAndGet();
+        
+        OfflineSession session = entry.get();
+        if(session == null) {
+            synchronized(sessions) { if(sessions.get(key) == entry) sessions.remove(key); }
+            return new OfflineSession(username);
+        }
+        
+        if(!owner) entry.revalidate(session);
         return session;
     }
     
@@ -75,6 +144,137 @@ public class OfflineSessionCache implements CachedDataProcess {
      * @return List of stored player sessions
      */
     public static List<OfflineSession> getSessions() {
-        return new ArrayList<OfflineSession>(sessions);
+        List<Entry> entries;
+        synchronized(sessions) { entries = new ArrayList<Entry>(sessions.values()); }
+        
+        List<OfflineSession> result = new ArrayList<OfflineSession>(entries.size());
+        for(Entry entry : entries) {
+            if(!entry.loader.isDone()) continue;
+            OfflineSession session = entry.get();
+            if(session != null) result.add(session);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the number of cached sessions
+     * @return Cache size
+     */
+    public static int size() {
+        synchronized(sessions) { return sessions.size(); }
+    }
+    
+    /**
+     * Returns the number of lookups that were served from the cache
+     * @return Hit count
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+    
+    /**
+     * Returns the number of lookups that had to load the session
+     * @return Miss count
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+    
+    /**
+     * Returns the number of sessions that were dropped from the cache
+     * @return Eviction count
+     */
+    public static long getEvictionCount() {
+        return evictionCount.get();
+    }
+    
+    /**
+     * Returns the number of background refreshes of stale sessions
+     * @return Refresh count
+     */
+    public static long getRefreshCount() {
+        return refreshCount.get();
+    }
+    
+    /**
+     * Removes the entry from the cache. The caller must hold the cache lock
+     * @param entry Entry to remove
+     */
+    private static void evict(Entry entry) {
+        if(sessions.get(entry.key) != entry) return;
+        sessions.remove(entry.key);
+        evictionCount.incrementAndGet();
+    }
+    
+    /**
+     * A cached session, along with the task that loads it
+     * @author bitWolfy
+     *
+     */
+    private static class Entry {
+        
+        private final String key;
+        private final FutureTask<OfflineSession> loader;
+        private final AtomicBoolean refreshing;
+        private volatile long loadedAt;
+        private volatile long accessedAt;
+        
+        /**
+         * <b>Default constructor</b><br />
+         * Creates a new entry that has not been loaded yet
+         * @param key Cache key
+         * @param loader Task that creates the session
+         */
+        public Entry(String key, Callable<OfflineSession> loader) {
+            this.key = key;
+            this.loader = new FutureTask<OfflineSession>(loader);
+            this.refreshing = new AtomicBoolean(false);
+            this.loadedAt = System.currentTimeMillis();
+            this.accessedAt = loadedAt;
+        }
+        
+        /**
+         * Waits for the session to be loaded
+         * @return Offline session, or <b>null</b> if it could not be loaded
+         */
+        public OfflineSession get() {
+            boolean interrupted = false;
+            try {
+                while(true) {
+                    try { return loader.get(); }
+                    catch (InterruptedException e) { interrupted = true; }
+                    catch (ExecutionException e) {
+                        ExceptionHandler.handle(e.getCause());
+                        return null;
+                    }
+                }
+            } finally {
+                if(interrupted) Thread.currentThread().interrupt();
+            }
+        }
+        
+        /**
+         * Refreshes the totals of the session in the background if they are older than the configured lifetime.<br />
+         * Only one refresh of an entry runs at any given time.
+         * @param session Loaded session
+         */
+        public void revalidate(final OfflineSession session) {
+            long ttl = LocalConfiguration.CacheOfflineTtl.toInteger() * 1000L;
+            if(ttl <= 0 || System.currentTimeMillis() - loadedAt < ttl) return;
+            if(!refreshing.compareAndSet(false, true)) return;
+            
+            refreshCount.incrementAndGet();
+            HandlerManager.runAsyncTask(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        session.getPlayerTotals().fetchData();
+                        loadedAt = System.currentTimeMillis();
+                    } finally { refreshing.set(false); }
+                }
+
+            });
+        }
     }
 }
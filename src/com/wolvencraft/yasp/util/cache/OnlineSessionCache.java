@@ -20,8 +20,11 @@
 
 package com.wolvencraft.yasp.util.cache;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
@@ -36,18 +39,22 @@ import com.wolvencraft.yasp.session.OnlineSession;
 import com.wolvencraft.yasp.settings.Constants.StatPerms;
 import com.wolvencraft.yasp.settings.RemoteConfiguration;
 import com.wolvencraft.yasp.util.Message;
-import com.wolvencraft.yasp.util.PlayerUtil;
 import com.wolvencraft.yasp.util.cache.CachedData.CachedDataProcess;
+import com.wolvencraft.yasp.util.tasks.DatabaseTask;
 
 /**
- * Caches Online player sessions server-side
+ * Caches Online player sessions server-side.<br />
+ * Sessions are keyed by the unique ID of the player, with a secondary index by name.
+ * Lookups are lock-free; only the creation of a new session is serialized, so that concurrent handlers never create two sessions for one player.
  * @author bitWolfy
  *
  */
 public class OnlineSessionCache implements CachedDataProcess {
 
     private final long REFRESH_RATE_TICKS = (long)(5 * 60 * 20);
-    private static List<OnlineSession> sessions = new ArrayList<OnlineSession>();
+    private static final ConcurrentMap<UUID, OnlineSession> sessions = new ConcurrentHashMap<UUID, OnlineSession>();
+    private static final ConcurrentMap<String, UUID> names = new ConcurrentHashMap<String, UUID>();
+    private static final Object createLock = new Object();
     
     /**
      * <b>Default constructor</b><br />
@@ -85,16 +92,9 @@ public class OnlineSessionCache implements CachedDataProcess {
         Message.debug("Refreshing Online Sesseion Cache.");
         for(OnlineSession session : getSessions()) {
             if(session.isOnline()) continue;
+            if(!DatabaseTask.commit(session)) break;
             session.finalize();
-            Message.debug("Saving online player data: "+session.getName()+ " ID:" + session.getId() +" (offline)");
-            session.pushData();
             removeSession(session);
-            
-            long delay = RemoteConfiguration.LogDelay.asInteger();
-            if(delay == 0 || session.getPlayersData().getGeneralData().getTotalPlaytime() > delay) continue;
-            
-            //removes the Player from the database
-            PlayerUtil.remove(session.getName());
         }
       Statistics.getInstance().setWorking(this.getClass().getSimpleName(),false);  
     }
@@ -107,18 +107,48 @@ public class OnlineSessionCache implements CachedDataProcess {
      * @return OnlineSession associated with the player
      */
     public static OnlineSession fetch(Player player, boolean login) {
-        for(OnlineSession session : sessions) {
-            if(session.getName().equals(player.getName())) {
-                if(login && RemoteConfiguration.ShowWelcomeMessages.asBoolean()) {
-                    Message.send(player, RemoteConfiguration.WelcomeMessage.asString().replace("<PLAYER>", player.getPlayerListName()));
+        UUID uuid = player.getUniqueId();
+        OnlineSession session = sessions.get(uuid);
+        if(session == null) {
+            OnlineSession newSession = null;
+            synchronized(createLock) {
+                session = sessions.get(uuid);
+                if(session == null) {
+                    Message.debug("Creating a new user session for " + player.getName() + "(#" + sessions.size() + ")");
+                    newSession = new OnlineSession(player);
+                    sessions.put(uuid, newSession);
+                    names.put(newSession.getName(), uuid);
                 }
-                return session;
             }
+            if(newSession != null) return created(newSession, player, login);
         }
-        Message.debug("Creating a new user session for " + player.getName() + "(#" + sessions.size() + ")");
-        OnlineSession newSession = new OnlineSession(player);
-        sessions.add(newSession);
-        
+        return welcome(session, player, login);
+    }
+    
+    /**
+     * Marks an existing session as online again, and greets the player if they have just logged in
+     * @param session Existing session
+     * @param player Tracked player
+     * @param login <b>true</b> if the player has just logged in
+     * @return Player session
+     */
+    private static OnlineSession welcome(OnlineSession session, Player player, boolean login) {
+        if(!login) return session;
+        session.setOnline(true);
+        if(RemoteConfiguration.ShowWelcomeMessages.asBoolean()) {
+            Message.send(player, RemoteConfiguration.WelcomeMessage.asString().replace("<PLAYER>", player.getPlayerListName()));
+        }
+        return session;
+    }
+    
+    /**
+     * Announces a newly created session
+     * @param newSession New session
+     * @param player Tracked player
+     * @param login <b>true</b> if the player has just logged in
+     * @return Player session
+     */
+    private static OnlineSession created(OnlineSession newSession, Player player, boolean login) {
         if(login && RemoteConfiguration.ShowFirstJoinMessages.asBoolean()) {
             Message.send(
                 player,
@@ -140,22 +170,45 @@ public class OnlineSessionCache implements CachedDataProcess {
         return fetch(player, false);
     }
     
+    /**
+     * Returns the session of the player with the specified name, if one exists
+     * @param name Player name
+     * @return Player session, or <b>null</b> if the player has no session
+     */
+    public static OnlineSession get(String name) {
+        UUID uuid = names.get(name);
+        if(uuid == null) return null;
+        return sessions.get(uuid);
+    }
+    
+    /**
+     * Marks the session of the player as offline.<br />
+     * The session is saved and removed on the next cache refresh, unless the player logs back in first.
+     * @param player Player that logged out
+     */
+    public static void logout(Player player) {
+        OnlineSession session = sessions.get(player.getUniqueId());
+        if(session != null) session.setOnline(false);
+    }
+    
     /**
      * Removes the specified session
      * @param session Session to remove
      */
     private static void removeSession(OnlineSession session) {
         Message.debug("Removing a user session for " + session.getName());
+        if(!sessions.remove(session.getUuid(), session)) return;
+        names.remove(session.getName(), session.getUuid());
         Bukkit.getServer().getPluginManager().callEvent(new SessionRemoveEvent(session.getName()));
-        sessions.remove(session);
     }
     
     /**
-     * Returns all stored sessions.
-     * @return List of stored player sessions
+     * Returns all stored sessions.<br />
+     * The collection is a live view; iterating over it does not copy the sessions, and is safe while sessions are added or removed.
+     * @return Stored player sessions
      */
-    public static List<OnlineSession> getSessions() {
-        return new ArrayList<OnlineSession>(sessions);
+    public static Collection<OnlineSession> getSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
     }
 
     
@@ -168,7 +221,6 @@ public class OnlineSessionCache implements CachedDataProcess {
             session.dumpData();
             removeSession(session);
         }
-        sessions.clear();
     }
     
     @Override
@@ -20,86 +20,172 @@
 
 package com.wolvencraft.yasp.util.cache;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+
 import org.bukkit.entity.Player;
-import org.bukkit.metadata.FixedMetadataValue;
 
-import com.wolvencraft.yasp.Statistics;
 import com.wolvencraft.yasp.db.Query;
 import com.wolvencraft.yasp.db.Query.QueryResult;
 import com.wolvencraft.yasp.db.tables.Normal.PlayerStats;
+import com.wolvencraft.yasp.settings.LocalConfiguration;
 import com.wolvencraft.yasp.util.Message;
 
 /**
- * Caches player names and IDs server-side
+ * Caches player names and IDs server-side.<br />
+ * IDs are kept in a bounded map, keyed by both the player name and the unique ID, and the least recently used ones
+ * are dropped first. The IDs of joining players are resolved before they log in, so that online sessions never
+ * have to wait for the database on the main server thread.
  * @author bitWolfy
  *
  */
 public class PlayerCache {
     
+    private static final int MAX_TRIES = 3;
+    
+    private static final Map<String, Integer> names = new IdMap<String>();
+    private static final Map<UUID, Integer> uuids = new IdMap<UUID>();
+    
     private PlayerCache() { }
     
+    /**
+     * Resolves and caches the ID of a player that is about to log in.<br />
+     * Should be called off the main server thread.
+     * @param username Player name
+     * @param uuid Player unique ID
+     */
+    public static void prefetch(String username, UUID uuid) {
+        long start = System.currentTimeMillis();
+        int playerId = lookup(username);
+        if(playerId == -1) playerId = resolve(username);
+        if(playerId == -1) return;
+        
+        synchronized(names) { uuids.put(uuid, playerId); }
+        Message.debug("Took " + (System.currentTimeMillis() - start) + "ms to prefetch " + username + "'s ID.");
+    }
+    
     /**
      * Returns the ID of the player
      * @param player Player to look up
      * @return Player ID
      */
     public static int get(Player player) {
-        long start = System.currentTimeMillis();
-        if(player.hasMetadata("stats_id")) {
-            int playerId = player.getMetadata("stats_id").get(0).asInt();
-            if (playerId != -1){
-                                
-                long stop = System.currentTimeMillis();
-                Message.debug("Took "+(stop-start)+"ms to retrieve " + player.getName()+"'s ID from cache.");
-                
-                return playerId;
-            } else {
-                playerId = get(player.getName());
-                player.setMetadata("stats_id", new FixedMetadataValue(Statistics.getInstance(), playerId));
-                
-                long stop = System.currentTimeMillis();
-                Message.debug("Took "+(stop-start)+"ms to retrieve " + player.getName()+"'s ID from database.");
-                
-                return playerId;  
-            }
-        } else {
-            int playerId = get(player.getName());
-            player.setMetadata("stats_id", new FixedMetadataValue(Statistics.getInstance(), playerId));
-                            
-            long stop = System.currentTimeMillis();
-            Message.debug("Took "+(stop-start)+"ms to retrieve " + player.getName()+"'s ID from database.");
-                
-            return playerId;
+        UUID uuid = player.getUniqueId();
+        synchronized(names) {
+            Integer playerId = uuids.get(uuid);
+            if(playerId != null) return playerId;
+        }
+        
+        int playerId = get(player.getName());
+        if(playerId != -1) {
+            synchronized(names) { uuids.put(uuid, playerId); }
         }
+        return playerId;
     }
     
     /**
      * Returns the player ID based on his name.<br />
-     * Very resource-heavy; if possible, use <code>get(Player player);</code>
+     * Queries the database if the ID is not cached; if possible, use <code>get(Player player);</code>
      * @param username Player name to look up
-     * @return Player ID
+     * @return Player ID, or <b>-1</b> if it could not be resolved
      */
     public static int get(String username) {
-        Message.debug("Retrieving a player ID for " + username);
+        int playerId = lookup(username);
+        if(playerId != -1) return playerId;
         
+        long start = System.currentTimeMillis();
+        playerId = resolve(username);
+        Message.debug("Took " + (System.currentTimeMillis() - start) + "ms to retrieve " + username + "'s ID from database.");
+        return playerId;
+    }
+    
+    /**
+     * Drops the cached ID of the player, so that it is resolved again the next time it is requested.<br />
+     * Used when the player might get removed from the database.
+     * @param player Player to forget
+     */
+    public static void invalidate(Player player) {
+        synchronized(names) {
+            uuids.remove(player.getUniqueId());
+            names.remove(player.getName().toLowerCase());
+        }
+    }
+    
+    /**
+     * Returns the number of cached IDs
+     * @return Cache size
+     */
+    public static int size() {
+        synchronized(names) { return names.size(); }
+    }
+    
+    /**
+     * Returns the cached ID of the player
+     * @param username Player name
+     * @return Player ID, or <b>-1</b> if it is not cached
+     */
+    private static int lookup(String username) {
+        synchronized(names) {
+            Integer playerId = names.get(username.toLowerCase());
+            return playerId == null ? -1 : playerId;
+        }
+    }
+    
+    /**
+     * Fetches the ID of the player from the database, creating the player row if there is none, and caches it.<br />
+     * The row is upserted with a single statement that reports the ID as the generated key. If the backend cannot
+     * report the ID of an existing row, it is selected instead.
+     * @param username Player name
+     * @return Player ID, or <b>-1</b> if it could not be resolved
+     */
+    private static int resolve(String username) {
         int playerId = -1;
-        int tries = 0;
-        do {
-            tries++;
+        for(int tries = 1; tries <= MAX_TRIES && playerId == -1; tries++) {
+            long key = Query.table(PlayerStats.TableName)
+                    .value(PlayerStats.Name, username)
+                    .upsertKey(PlayerStats.PlayerId);
+            if(key > 0) {
+                playerId = (int) key;
+                break;
+            }
+            
             QueryResult playerRow = Query.table(PlayerStats.TableName)
                     .column(PlayerStats.PlayerId)
                     .condition(PlayerStats.Name, username)
                     .select();
-            
-            if(playerRow == null) {
-                Query.table(PlayerStats.TableName)
-                    .value(PlayerStats.Name, username)
-                    .insert();
-                continue;
-            }
-            playerId = playerRow.asInt(PlayerStats.PlayerId);
-        } while (playerId == -1);
-        Message.debug("User ID (" + playerId +") after "+tries +" tries found.");
+            if(playerRow != null) playerId = playerRow.asInt(PlayerStats.PlayerId);
+        }
+        
+        if(playerId == -1) {
+            Message.log(Level.WARNING, "Could not retrieve a player ID for " + username);
+            return -1;
+        }
+        synchronized(names) { names.put(username.toLowerCase(), playerId); }
         return playerId;
     }
+    
+    /**
+     * Access-ordered map that drops its least recently used entry once it holds more IDs than configured
+     * @author bitWolfy
+     *
+     * @param <K> Key type
+     */
+    private static class IdMap<K> extends LinkedHashMap<K, Integer> {
+        private static final long serialVersionUID = 6215329107454817723L;
+        
+        /**
+         * <b>Default constructor</b><br />
+         * Creates a new, empty access-ordered map
+         */
+        public IdMap() {
+            super(16, 0.75F, true);
+        }
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Integer> eldest) {
+            return size() > Math.max(1, LocalConfiguration.CachePlayers.toInteger());
+        }
+    }
 }
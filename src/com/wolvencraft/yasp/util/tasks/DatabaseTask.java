@@ -20,18 +20,23 @@
 
 package com.wolvencraft.yasp.util.tasks;
 
+import java.util.logging.Level;
+
 import org.bukkit.Bukkit;
 
 import com.wolvencraft.yasp.Statistics;
+import com.wolvencraft.yasp.db.Database;
+import com.wolvencraft.yasp.db.WriteBehind;
+import com.wolvencraft.yasp.db.WriteBehind.Unit;
+import com.wolvencraft.yasp.db.data.players.PlayersData;
 import com.wolvencraft.yasp.events.plugin.SynchronizationCompleteEvent;
 import com.wolvencraft.yasp.events.plugin.SynchronizationEvent;
-import com.wolvencraft.yasp.session.OfflineSession;
 import com.wolvencraft.yasp.session.OnlineSession;
 import com.wolvencraft.yasp.settings.LocalConfiguration;
-import com.wolvencraft.yasp.settings.Module;
 import com.wolvencraft.yasp.settings.RemoteConfiguration;
+import com.wolvencraft.yasp.settings.RemoteSettings;
 import com.wolvencraft.yasp.util.Message;
-import com.wolvencraft.yasp.util.cache.OfflineSessionCache;
+import com.wolvencraft.yasp.util.PlayerUtil;
 import com.wolvencraft.yasp.util.cache.OnlineSessionCache;
 
 /**
@@ -41,7 +46,10 @@ import com.wolvencraft.yasp.util.cache.OnlineSessionCache;
  */
 public class DatabaseTask implements Runnable {
     
+    private static final long WAIT_TIMEOUT = 30000;
+    
     private static int iteration;
+    private static volatile Unit pending = null;
 
     /**
      * <b>Default constructor.</b>
@@ -72,51 +80,134 @@ public class DatabaseTask implements Runnable {
         });
     }
     
+    /**
+     * Commits collected data to the database.<br />
+     * Wraps around <code>public static void commit(boolean wait);</code>
+     */
+    public static void commit() {
+        commit(false);
+    }
+    
+    /**
+     * Commits collected data to the database.<br />
+     * Wraps around <code>private static boolean commit(boolean wait, boolean rebuild);</code>
+     * @param wait <b>true</b> to wait for the previous synchronization to be written instead of skipping this one
+     */
+    public static void commit(boolean wait) {
+        commit(wait, false);
+    }
+    
+    /**
+     * Pushes the data of a player who has logged off, in a unit of work of its own.<br />
+     * Waits for the previous synchronization to be written first, since the data it pushed is only removed from the session
+     * once it has been. The next synchronization waits for this unit of work in turn.
+     * Players who have played for less than the log delay are removed from the database in the same unit of work, after their data.
+     * @param session Session of the player
+     * @return <b>true</b> if the data was pushed, <b>false</b> if the previous synchronization is still being written
+     */
+    public static synchronized boolean commit(OnlineSession session) {
+        if(pending != null && !pending.isDone() && !pending.await(WAIT_TIMEOUT)) {
+            Message.log(Level.WARNING, "Timed out while waiting for the previous synchronization to be written");
+            return false;
+        }
+        
+        Message.debug("Saving online player data: " + session.getName() + " ID:" + session.getId() + " (offline)");
+        WriteBehind.begin();
+        try {
+            session.pushData();
+            
+            long delay = RemoteConfiguration.LogDelay.asInteger();
+            PlayersData playersData = session.getPlayersData();
+            if(delay != 0 && playersData != null && playersData.getGeneralData().getTotalPlaytime() <= delay)
+                PlayerUtil.remove(session.getName());
+        } finally { pending = WriteBehind.submit(); }
+        return true;
+    }
+    
+    /**
+     * Recalculates the server totals from the totals tables as part of a synchronization.<br />
+     * Waits for the previous synchronization to be written, so that the totals tables hold every change
+     * that has already been added to the server totals.
+     * @return <b>true</b> if the server totals were rebuilt, <b>false</b> otherwise
+     */
+    public static boolean rebuildTotals() {
+        return commit(true, true);
+    }
+    
     /**
      * Commits collected data to the database.<br />
      * Performs actions in the following order:<br />
      * <ul>
-     * <li>Confirm that the synchronization is not paused.</li>
-     * <li>Push all player data to the database</li>
-     * <li>Push generic server statistics to the database</li>
-     * <li>Fetch server totals for signs and statistics books</li>
+     * <li>Confirm that the synchronization is not paused, and that the previous one has been written</li>
+     * <li>Rebuild the server totals if they are due, or if a rebuild was requested</li>
+     * <li>Push all player data to the write-behind queue, one unit of work per session</li>
+     * <li>Push generic server statistics and server totals to the write-behind queue</li>
+     * <li>Fetch server totals for signs and statistics books once they are written</li>
      * <li>Clear settings cache</li>
      * </ul>
-     * This method is likely to freeze the main server thread.
-     * Asynchronous threading is strongly recommended.
+     * Local data is only removed once the unit of work holding it has been committed.
+     * If the previous synchronization is still waiting in the queue, the data is left for the next one.
+     * @param wait <b>true</b> to wait for the previous synchronization to be written instead of skipping this one
+     * @param rebuild <b>true</b> to rebuild the server totals even if they are not due
+     * @return <b>true</b> if the server totals were rebuilt, <b>false</b> otherwise
      */
-    public static void commit() {
-        if(Statistics.isPaused()) return;
+    private static synchronized boolean commit(boolean wait, boolean rebuild) {
+        if(Statistics.isPaused()) return false;
+        
+        if(pending != null && !pending.isDone()) {
+            if(!wait) {
+                Message.debug("Previous synchronization is still being written, skipping");
+                return false;
+            }
+            if(!pending.await(WAIT_TIMEOUT)) {
+                Message.log(Level.WARNING, "Timed out while waiting for the previous synchronization to be written");
+                return false;
+            }
+        }
         
         SynchronizationEvent event = new SynchronizationEvent(iteration);
         Bukkit.getServer().getPluginManager().callEvent(event);
-        if(event.isCancelled()) return;
+        if(event.isCancelled()) return false;
         
         Message.debug("Database synchronization in progress");
         
+        boolean rebuilt;
+        WriteBehind.begin();
+        try {
+            if(rebuild) rebuilt = Statistics.getServerTotals().rebuild();
+            else rebuilt = Statistics.getServerTotals().refresh();
+        } finally { WriteBehind.submit(); }
+        
         for(OnlineSession session : OnlineSessionCache.getSessions()) {
             if(!session.isOnline()){
                 Message.debug("Skipping player "+session.getName());
                 continue;
             }
             Message.debug("Saving online player data: "+session.getName()+ " ID:" + session.getId());
-            session.pushData();
-            session.getPlayerTotals().fetchData();
-        }
-        
-        for(OfflineSession session : OfflineSessionCache.getSessions()) {
-            Message.debug("Saving offline player data: " +session.getName()+ " ID:" + session.getId());
-            session.getPlayerTotals().fetchData();
+            WriteBehind.begin();
+            try { session.pushData(); }
+            finally { WriteBehind.submit(); }
         }
         
-        Statistics.getServerStatistics().pushData();
-        Statistics.getServerTotals().fetchData();
+        WriteBehind.begin();
+        try {
+            Statistics.getServerStatistics().pushData();
+            Statistics.getServerTotals().pushData();
+            Database.afterCommit(new Runnable() {
+                
+                @Override
+                public void run() {
+                    Statistics.getServerTotals().fetchData();
+                }
+                
+            });
+        } finally { pending = WriteBehind.submit(); }
         
-        Module.clearCache();
-        RemoteConfiguration.clearCache();
+        RemoteSettings.refresh();
         LocalConfiguration.clearCache();
         
         Bukkit.getServer().getPluginManager().callEvent(new SynchronizationCompleteEvent(iteration));
         iteration++;
+        return rebuilt;
     }
 }
@@ -0,0 +1,161 @@
+/*
+ * MovementTask.java
+ *
+ * Statistics
+ * Copyright (C) 2013 bitWolfy <http://www.wolvencraft.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.wolvencraft.yasp.util.tasks;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+
+import com.wolvencraft.yasp.db.tables.Normal.PlayerData;
+import com.wolvencraft.yasp.session.OnlineSession;
+import com.wolvencraft.yasp.util.cache.OnlineSessionCache;
+
+/**
+ * Accumulates the distances players travel, and adds them to the player sessions in one pass.<br />
+ * Move events are recorded in place by the listener; the accumulated distances and jumps of all players
+ * are folded into their sessions every time the task runs. Must only be used on the primary server thread.
+ * @author bitWolfy
+ *
+ */
+public class MovementTask implements Runnable {
+
+    private static final double MIN_DISTANCE_SQUARED = 1.0E-6;
+
+    private static final Map<UUID, Movement> movements = new HashMap<UUID, Movement>();
+
+    /**
+     * Records a single move of a player
+     * @param player Player that moved
+     * @param from Location the player moved from
+     * @param to Location the player moved to
+     */
+    public static void track(Player player, Location from, Location to) {
+        if(!from.getWorld().equals(to.getWorld())) return;
+
+        double dx = to.getX() - from.getX();
+        double dy = to.getY() - from.getY();
+        double dz = to.getZ() - from.getZ();
+        double squared = dx * dx + dy * dy + dz * dz;
+        if(squared < MIN_DISTANCE_SQUARED) return;
+
+        UUID uuid = player.getUniqueId();
+        Movement movement = movements.get(uuid);
+        if(movement == null) {
+            movement = new Movement(player.getName());
+            movements.put(uuid, movement);
+        }
+
+        double distance = Math.sqrt(squared);
+        if(player.isInsideVehicle()) {
+            EntityType vehicle = player.getVehicle().getType();
+            if(vehicle == EntityType.MINECART) movement.minecart += distance;
+            else if(vehicle == EntityType.BOAT) movement.boat += distance;
+            else if(vehicle == EntityType.PIG || vehicle == EntityType.HORSE) movement.ride += distance;
+        } else {
+            Material material = from.getBlock().getType();
+            if(material == Material.WATER || material == Material.STATIONARY_WATER) movement.swim += distance;
+            else if(player.isFlying()) movement.flight += distance;
+            else {
+                if(dy > 0 && to.getBlock().getRelative(BlockFace.DOWN).getType() == Material.AIR) movement.jumps++;
+                movement.foot += distance;
+            }
+        }
+    }
+
+    /**
+     * Adds the accumulated movement of the player to their session, and stops tracking them
+     * @param player Player to flush the movement of
+     */
+    public static void flush(Player player) {
+        Movement movement = movements.remove(player.getUniqueId());
+        if(movement != null) movement.fold();
+    }
+
+    /**
+     * Adds the accumulated movement of all players to their sessions
+     */
+    public static void flushAll() {
+        Iterator<Movement> it = movements.values().iterator();
+        while(it.hasNext()) {
+            Movement movement = it.next();
+            if(!movement.fold()) it.remove();
+        }
+    }
+
+    @Override
+    public void run() {
+        flushAll();
+    }
+
+    /**
+     * Distances and jumps a player has accumulated since the last flush
+     * @author bitWolfy
+     *
+     */
+    private static class Movement {
+
+        private final String name;
+        private double foot;
+        private double swim;
+        private double flight;
+        private double boat;
+        private double minecart;
+        private double ride;
+        private int jumps;
+
+        /**
+         * <b>Default constructor</b><br />
+         * Creates an empty accumulator
+         * @param name Player name
+         */
+        public Movement(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Adds the accumulated values to the player session, and resets them.<br />
+         * Movement recorded while the session is loading is kept until the next flush; movement of players without a loaded session is discarded.
+         * @return <b>true</b> if the player had any movement to add, <b>false</b> if the accumulator was idle
+         */
+        public boolean fold() {
+            boolean moved = foot != 0 || swim != 0 || flight != 0 || boat != 0 || minecart != 0 || ride != 0 || jumps != 0;
+            if(!moved) return false;
+
+            OnlineSession session = OnlineSessionCache.get(name);
+            if(session != null && session.isLoading()) return true;
+            if(session != null && session.isReady()) {
+                session.addDistances(foot, swim, flight, boat, minecart, ride);
+                if(jumps != 0) session.getPlayersData().getMiscData().incrementStat(PlayerData.TimesJumped, jumps);
+            }
+
+            foot = swim = flight = boat = minecart = ride = 0;
+            jumps = 0;
+            return true;
+        }
+    }
+}